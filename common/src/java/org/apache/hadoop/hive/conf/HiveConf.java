@@ -353,6 +353,15 @@ private static void populateLlapDaemonVarsSet(Set<String> llapDaemonVarsSetLocal
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_ALLOCATOR_DIRECT.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_USE_LRFU.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_LRFU_LAMBDA.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_CACHE_POLICY_BUFFERED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_ADMISSION_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_DECODED_CACHE_SIZE.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_PREFETCH_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_PREFETCH_MAX_PENDING.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_PREFETCH_MAX_STRIPES.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_TRACK_ATTRIBUTION.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_ATTRIBUTION_MAX_ENTRIES.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_CACHE_ALLOW_SYNTHETIC_FILEID.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_USE_FILEID_PATH.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_DECODING_METRICS_PERCENTILE_INTERVALS.varname);
@@ -373,6 +382,8 @@ private static void populateLlapDaemonVarsSet(Set<String> llapDaemonVarsSetLocal
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_YARN_SHUFFLE_PORT.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_YARN_CONTAINER_MB.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_SHUFFLE_DIR_WATCHER_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_AM_LIVENESS_HEARTBEAT_INTERVAL_MS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_AM_LIVENESS_CONNECTION_TIMEOUT_MS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_AM_LIVENESS_CONNECTION_SLEEP_BETWEEN_RETRIES_MS.varname);
@@ -389,6 +400,8 @@ private static void populateLlapDaemonVarsSet(Set<String> llapDaemonVarsSetLocal
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_DOWNLOAD_PERMANENT_FNS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_TASK_SCHEDULER_WAIT_QUEUE_SIZE.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_WAIT_QUEUE_COMPARATOR_CLASS_NAME.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_FAIR_SHARE_USAGE_HALF_LIFE.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_FAIR_SHARE_AGING_FACTOR.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_TASK_SCHEDULER_ENABLE_PREEMPTION.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_TASK_PREEMPTION_METRICS_INTERVALS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_WEB_PORT.varname);
@@ -397,6 +410,10 @@ private static void populateLlapDaemonVarsSet(Set<String> llapDaemonVarsSetLocal
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_VALIDATE_ACLS.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_LOGGER.varname);
     llapDaemonVarsSetLocal.add(ConfVars.LLAP_DAEMON_AM_USE_FQDN.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_MAPJOIN_SHARED_HASHTABLE_MAX_IDLE_SIZE.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_PARQUET_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_PERSISTENT_ENABLED.varname);
+    llapDaemonVarsSetLocal.add(ConfVars.LLAP_IO_CACHE_PERSISTENT_PATH.varname);
   }
 
   /**
@@ -828,6 +845,17 @@ public static enum ConfVars {
         new TimeValidator(TimeUnit.MILLISECONDS),
         "Sleep interval between retries to acquire a notification lock as described part of property "
             + NOTIFICATION_SEQUENCE_LOCK_MAX_RETRIES.name()),
+    NOTIFICATION_SEQUENCE_BLOCK_SIZE("hive.notification.sequence.block.size", 1,
+        "Number of notification event IDs that a metastore takes from NOTIFICATION_SEQUENCE at a time.\n" +
+        "With 1, the NOTIFICATION_SEQUENCE row stays locked until the metastore transaction that adds the\n" +
+        "event commits, so the event IDs are in commit order. With more, the row is only locked while a\n" +
+        "block is taken, so the transactions adding events don't serialize on it, and the IDs can have\n" +
+        "gaps. More than 1 is only used with hive.notification.sequence.single.metastore."),
+    NOTIFICATION_SEQUENCE_SINGLE_METASTORE("hive.notification.sequence.single.metastore", false,
+        "Whether this is the only metastore instance adding events to NOTIFICATION_LOG. Required for\n" +
+        "hive.notification.sequence.block.size to take effect: the metastore keeps the events of\n" +
+        "its blocks that are not committed yet from its readers, so that they don't skip them, but it\n" +
+        "can't do that for the blocks of other metastores."),
     METASTORE_EVENT_DB_LISTENER_TTL("hive.metastore.event.db.listener.timetolive", "86400s",
         new TimeValidator(TimeUnit.SECONDS),
         "time after which events will be removed from the database listener queue"),
@@ -930,6 +958,29 @@ public static enum ConfVars {
         "hive.metastore.cached.rawstore.cache.update.frequency", "60", new TimeValidator(
             TimeUnit.SECONDS),
         "The time after which metastore cache is updated from metastore DB."),
+    METASTORE_CACHED_RAW_STORE_INCREMENTAL_UPDATE(
+        "hive.metastore.cached.rawstore.incremental.update", false,
+        "Whether to keep the metastore cache up to date by applying the events from the notification\n" +
+        "log once it is prewarmed; otherwise the cache is only loaded from metastore DB when it is\n" +
+        "prewarmed. Requires DbNotificationListener to be configured on all the metastore instances.\n" +
+        "The events are applied in ID order, which needs hive.notification.sequence.block.size\n" +
+        "to be 1 unless hive.notification.sequence.single.metastore is set."),
+    METASTORE_CACHED_RAW_STORE_FULL_UPDATE_FREQUENCY(
+        "hive.metastore.cached.rawstore.full.update.frequency", "3600s", new TimeValidator(
+            TimeUnit.SECONDS),
+        "The time after which the metastore cache that is updated from the notification log is\n" +
+        "still reloaded from metastore DB, to reconcile the changes that the events don't cover\n" +
+        "(e.g. the column statistics). Should be well below hive.metastore.event.db.listener.timetolive."),
+    METASTORE_CACHED_RAW_STORE_EVENT_BATCH_SIZE(
+        "hive.metastore.cached.rawstore.event.batch.size", 1000,
+        "The maximum number of notification events to read in one batch when updating the\n" +
+        "metastore cache from the notification log."),
+    METASTORE_CACHED_RAW_STORE_MAX_PARTITION_CACHE_SIZE(
+        "hive.metastore.cached.rawstore.max.partition.cache.size", 0L,
+        "The approximate memory budget for the partitions in the metastore cache, in bytes. When\n" +
+        "it's set, the partitions are only cached when they are looked up, the least recently\n" +
+        "used ones are evicted to stay within the budget, and the partition listings and stats\n" +
+        "are read from the underlying store. 0 caches all the partitions of the cached tables."),
     METASTORE_CACHED_RAW_STORE_CACHED_OBJECTS_WHITELIST(
         "hive.metastore.cached.rawstore.cached.object.whitelist", ".*", "Comma separated list of regular expressions \n " +
         "to select the tables (and its partitions, stats etc) that will be cached by CachedStore. \n" +
@@ -1224,6 +1275,25 @@ public static enum ConfVars {
     HIVEMAPAGGRHASHMINREDUCTION("hive.map.aggr.hash.min.reduction", (float) 0.5,
         "Hash aggregation will be turned off if the ratio between hash  table size and input rows is bigger than this number. \n" +
         "Set to 1 to make sure hash aggregation is never turned off."),
+    HIVE_MAP_AGGR_HASH_SPILL_ENABLED("hive.map.aggr.hash.spill.enabled", false,
+        "Whether map-side group aggregation spills hash partitions to local disk when the hash table\n" +
+        "is full instead of forwarding partial aggregates early.  The spilled partitions are merged\n" +
+        "back at close so each key is forwarded once.  Used by both the row and the vectorized\n" +
+        "GROUP BY operator; the vectorized one does not use the native hash tables when this is on.\n" +
+        "Not used with DISTINCT aggregations."),
+    HIVE_MAP_AGGR_HASH_SPILL_PARTITIONS("hive.map.aggr.hash.spill.partitions", 16,
+        "Number of hash partitions used when map-side group aggregation spills to disk.\n" +
+        "Rounded up to a power of 2."),
+    HIVE_MAP_AGGR_HASH_ADAPTIVE_ENABLED("hive.map.aggr.hash.adaptive.enabled", false,
+        "Whether map-side group aggregation keeps sampling the reduction ratio of the hash table.\n" +
+        "When the ratio of new hash table entries to input rows of the last hive.groupby.mapaggr.checkinterval\n" +
+        "rows exceeds hive.map.aggr.hash.min.reduction, rows are streamed through without hashing, and hash\n" +
+        "aggregation is tried again after hive.map.aggr.hash.adaptive.passthrough.rows rows.  When disabled,\n" +
+        "hash aggregation is turned off for the rest of the task the first time the check fails."),
+    HIVE_MAP_AGGR_HASH_ADAPTIVE_PASSTHROUGH_ROWS("hive.map.aggr.hash.adaptive.passthrough.rows", 1000000L,
+        "Number of rows streamed through without hashing before adaptive map-side group aggregation\n" +
+        "tries hash aggregation again.  Doubles each time the retry does not pay off, up to 64 times\n" +
+        "the initial value."),
     HIVEMULTIGROUPBYSINGLEREDUCER("hive.multigroupby.singlereducer", true,
         "Whether to optimize multi group by query to generate single M/R  job plan. If the multi group by query has \n" +
         "common group by keys, it will be optimized to generate single M/R job."),
@@ -1966,6 +2036,17 @@ public static enum ConfVars {
     HIVE_COUNT_OPEN_TXNS_INTERVAL("hive.count.open.txns.interval", "1s",
         new TimeValidator(TimeUnit.SECONDS), "Time in seconds between checks to count open transactions."),
 
+    HIVE_TXN_LOCKS_IN_MEMORY("hive.txn.locks.in.memory", false,
+        "Whether to keep the lock queue of the transaction manager in the metastore memory. The\n" +
+        "locks are then checked, heartbeated and released without going to the database, and\n" +
+        "their state is written to HIVE_LOCKS in the background; the locks that are there are\n" +
+        "reloaded when the metastore starts. This is only correct when a single metastore\n" +
+        "instance serves the transaction and lock calls."),
+    HIVE_TXN_LOCKS_IN_MEMORY_FLUSH_INTERVAL("hive.txn.locks.in.memory.flush.interval", "1000ms",
+        new TimeValidator(TimeUnit.MILLISECONDS),
+        "How often the changes to the in-memory locks are written to HIVE_LOCKS, when\n" +
+        "hive.txn.locks.in.memory is set."),
+
     HIVE_TXN_MAX_OPEN_BATCH("hive.txn.max.open.batch", 1000,
         "Maximum number of transactions that can be fetched in one call to open_txns().\n" +
         "This controls how many transactions streaming agents such as Flume or Storm open\n" +
@@ -2912,6 +2993,18 @@ public static enum ConfVars {
          "This flag should be set to true to enable vector map join hash tables to\n" +
          "use max / max filtering for integer join queries using MapJoin.\n" +
          "The default value is false."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_ENABLED("hive.vectorized.execution.mapjoin.bloom.filter.enabled", false,
+         "This flag should be set to true to enable native fast vector map join hash tables to\n" +
+         "build a bloom filter of the small table keys for integer join queries using MapJoin.\n" +
+         "Inner and left semi joins drop big table rows whose key is not in the bloom filter\n" +
+         "before looking them up in the hash table.\n" +
+         "The default value is false."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_BITS_PER_KEY("hive.vectorized.execution.mapjoin.bloom.filter.bits.per.key", 16,
+         "The number of bloom filter bits per small table key for\n" +
+         "hive.vectorized.execution.mapjoin.bloom.filter.enabled."),
+    HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_MAX_PASS_RATE("hive.vectorized.execution.mapjoin.bloom.filter.max.pass.rate", 0.5f,
+         "When more than this fraction of the big table rows pass the bloom filter, the vector map join\n" +
+         "stops probing it for a while, since most rows need a hash table lookup anyway."),
     HIVE_VECTORIZATION_MAPJOIN_NATIVE_OVERFLOW_REPEATED_THRESHOLD("hive.vectorized.execution.mapjoin.overflow.repeated.threshold", -1,
          "The number of small table rows for a match in vector map join hash tables\n" +
          "where we use the repeated field optimization in overflow vectorized row batch for join queries using MapJoin.\n" +
@@ -2927,10 +3020,20 @@ public static enum ConfVars {
         "Exceeding this will trigger a flush irrelevant of memory pressure condition."),
     HIVE_VECTORIZATION_GROUPBY_FLUSH_PERCENT("hive.vectorized.groupby.flush.percent", (float) 0.1,
         "Percent of entries in the group by aggregation hash flushed when the memory threshold is exceeded."),
+    HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED("hive.vectorized.groupby.native.hash.enabled", false,
+        "This flag should be set to true to enable the native vector group by hash aggregation that\n" +
+        "keeps single long, single string or serialized multi-column keys in specialized open addressing\n" +
+        "hash tables instead of key wrapper objects.  Not used with grouping sets.\n" +
+        "The default value is false."),
     HIVE_VECTORIZATION_REDUCESINK_NEW_ENABLED("hive.vectorized.execution.reducesink.new.enabled", true,
         "This flag should be set to true to enable the new vectorization\n" +
         "of queries using ReduceSink.\ni" +
         "The default value is true."),
+    HIVE_VECTORIZATION_REDUCESINK_TOPN_FILTER_ENABLED("hive.vectorized.execution.reducesink.topn.filter.enabled", false,
+        "Whether the native vectorized ReduceSink with a top-N limit (ORDER BY ... LIMIT, or a rank()/row_number()\n" +
+        "limit pushed to the windowing ReduceSink) filters the rows of each batch against the N best values\n" +
+        "of the leading primitive sort key seen so far, before serializing them for the top-N hash.\n" +
+        "The windowing ReduceSink with a pushed rank limit is only native when this is enabled."),
     HIVE_VECTORIZATION_USE_VECTORIZED_INPUT_FILE_FORMAT("hive.vectorized.use.vectorized.input.format", true,
         "This flag should be set to true to enable vectorizing with vectorized input file format capable SerDe.\n" +
         "The default value is true."),
@@ -2960,6 +3063,11 @@ public static enum ConfVars {
     HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BATCH_COUNT("hive.vectorized.ptf.max.memory.buffering.batch.count", 25,
         "Maximum number of vectorized row batches to buffer in memory for PTF\n" +
         "The default value is 25"),
+    HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BYTES("hive.vectorized.ptf.max.memory.buffering.bytes",
+        256L * 1024 * 1024,
+        "Maximum estimated size in bytes of the vectorized row batches of a PTF group buffered in\n" +
+        "memory.  The oldest buffered batches are spilled to local disk beyond it, so a large group\n" +
+        "with wide rows spills before it reaches hive.vectorized.ptf.max.memory.buffering.batch.count."),
     HIVE_VECTORIZATION_TESTING_REDUCER_BATCH_SIZE("hive.vectorized.testing.reducer.batch.size", -1,
         "internal use only, used for creating small group key vectorized row batches to exercise more logic\n" +
         "The default value is -1 which means don't restrict for testing",
@@ -2982,6 +3090,12 @@ public static enum ConfVars {
         "This flag should be set to true to use overflow checked vector expressions when available.\n" +
         "For example, arithmetic expressions which can overflow the output data type can be evaluated using\n" +
         " checked vector expressions so that they produce same result as non-vectorized evaluation."),
+    HIVE_VECTORIZATION_EXPRESSION_CODEGEN_ENABLED("hive.vectorized.expression.codegen.enabled", false,
+        "This flag should be set to true to compile FILTER predicates and SELECT expressions that only use\n" +
+        "numeric columns, constants, arithmetic, comparisons, AND/OR/NOT and IS [NOT] NULL into a single\n" +
+        "generated class that evaluates the whole expression in one loop over the batch, instead of one\n" +
+        "loop and one scratch column per expression node. Expressions that cannot be compiled use the\n" +
+        "regular vector expressions."),
     HIVE_VECTORIZED_INPUT_FORMAT_SUPPORTS_ENABLED(
         "hive.vectorized.input.format.supports.enabled",
         "decimal_64",
@@ -3174,6 +3288,10 @@ public static enum ConfVars {
         "not the case, an adjusted size will be used. Using powers of 2 is recommended."),
     LLAP_IO_MEMORY_MAX_SIZE("hive.llap.io.memory.size", "1Gb", new SizeValidator(),
         "Maximum size for IO allocator or ORC low-level cache.", "hive.llap.io.cache.orc.size"),
+    LLAP_IO_DECODED_CACHE_SIZE("hive.llap.io.decoded.cache.size", "0Mb", new SizeValidator(),
+        "Maximum on-heap size of the LLAP IO cache for decoded ORC column vectors; 0 disables\n" +
+        "it. The row groups served from this cache skip ORC decompression and decoding, which\n" +
+        "helps small, frequently read tables. This is in addition to hive.llap.io.memory.size."),
     LLAP_ALLOCATOR_DIRECT("hive.llap.io.allocator.direct", true,
         "Whether ORC low-level cache should use direct allocation."),
     LLAP_ALLOCATOR_MAPPED("hive.llap.io.allocator.mmap", false,
@@ -3182,6 +3300,14 @@ public static enum ConfVars {
     LLAP_ALLOCATOR_MAPPED_PATH("hive.llap.io.allocator.mmap.path", "/tmp",
         new WritableDirectoryValidator(),
         "The directory location for mapping NVDIMM/NVMe flash storage into the ORC low-level cache."),
+    LLAP_IO_CACHE_PERSISTENT_ENABLED("hive.llap.io.cache.persistent.enabled", false,
+        "Whether LLAP daemon should save the contents of the ORC low-level cache to local disk\n" +
+        "when it is stopped, and load them back into the cache when it is started, to avoid\n" +
+        "starting with a cold cache after a restart."),
+    LLAP_IO_CACHE_PERSISTENT_PATH("hive.llap.io.cache.persistent.path", "/tmp",
+        new WritableDirectoryValidator(),
+        "The local directory where LLAP daemon saves the low-level cache contents, if\n" +
+        "hive.llap.io.cache.persistent.enabled is true."),
     LLAP_ALLOCATOR_DISCARD_METHOD("hive.llap.io.allocator.discard.method", "both",
         new StringSet("freelist", "brute", "both"),
         "Which method to use to force-evict blocks to deal with fragmentation:\n" +
@@ -3193,6 +3319,13 @@ public static enum ConfVars {
     LLAP_TRACK_CACHE_USAGE("hive.llap.io.track.cache.usage", true,
          "Whether to tag LLAP cache contents, mapping them to Hive entities (paths for\n" +
          "partitions and tables) for reporting."),
+    LLAP_IO_TRACK_ATTRIBUTION("hive.llap.io.track.attribution", true,
+        "Whether to attribute the LLAP IO cache hits and misses, the allocator wait time and the\n" +
+        "decoding time to the queries and tables they are for, for reporting via the daemon\n" +
+        "metrics and the web UI."),
+    LLAP_IO_ATTRIBUTION_MAX_ENTRIES("hive.llap.io.attribution.max.entries", 1000,
+        "The maximum number of recent queries, and separately of tables, to keep the LLAP IO\n" +
+        "attribution stats for; see hive.llap.io.track.attribution."),
     LLAP_USE_LRFU("hive.llap.io.use.lrfu", true,
         "Whether ORC low-level cache should use LRFU cache policy instead of default (FIFO)."),
     LLAP_LRFU_LAMBDA("hive.llap.io.lrfu.lambda", 0.000001f,
@@ -3201,6 +3334,24 @@ public static enum ConfVars {
         "The meaning of this parameter is the inverse of the number of time ticks (cache\n" +
         " operations, currently) that cause the combined recency-frequency of a block in cache\n" +
         " to be halved."),
+    LLAP_CACHE_POLICY_BUFFERED("hive.llap.io.cache.policy.buffered", false,
+        "Whether ORC low-level cache should record buffer accesses in per-thread buffers and\n" +
+        "apply them to the cache policy in batches, instead of updating the policy on every\n" +
+        "access. This reduces contention on the cache policy with many executors and IO threads."),
+    LLAP_IO_CACHE_ADMISSION_ENABLED("hive.llap.io.cache.admission.enabled", false,
+        "Whether ORC low-level cache should only give the normal cache priority to the data that\n" +
+        "has been read recently, according to an approximate frequency sketch. Other data is\n" +
+        "cached with low priority, i.e. it is evicted before everything else; this keeps large\n" +
+        "read-once scans from pushing frequently used data out of the cache."),
+    LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY("hive.llap.io.cache.admission.min.frequency", 2,
+        "The number of recent reads of the same data after which the cache admission filter\n" +
+        "(see hive.llap.io.cache.admission.enabled) gives it the normal cache priority."),
+    LLAP_IO_CACHE_HINT("hive.llap.io.cache.hint", null,
+        new StringSet("normal", "pin", "none"),
+        "The LLAP IO cache priority for the data read by the query: 'pin' caches it with high\n" +
+        "priority, so that it stays in the cache through large scans of other data; 'none'\n" +
+        "caches it with low priority, so it's evicted before any other data; 'normal' bypasses\n" +
+        "the table-level hints. If not set, the 'llap.io.cache.hint' table property is used."),
     LLAP_CACHE_ALLOW_SYNTHETIC_FILEID("hive.llap.cache.allow.synthetic.fileid", false,
         "Whether LLAP cache should use synthetic file ID if real one is not available. Systems\n" +
         "like HDFS, Isilon, etc. provide a unique file/inode ID. On other FSes (e.g. local\n" +
@@ -3243,6 +3394,11 @@ public static enum ConfVars {
     LLAP_IO_ENCODE_SLICE_LRR("hive.llap.io.encode.slice.lrr", true,
         "Whether to separate cache slices when reading encoded data from text inputs via MR\n" +
         "MR LineRecordRedader into LLAP cache, if this feature is enabled. Safety flag."),
+    LLAP_IO_PARQUET_ENABLED("hive.llap.io.parquet.enabled", false,
+        "Whether LLAP IO should read vectorized Parquet tables on its IO threads, decoding the\n" +
+        "column chunks cached in the LLAP cache into column vectors ahead of the operators.\n" +
+        "Otherwise, Parquet readers only use the LLAP caches from the task thread. This is used\n" +
+        "on LLAP Server side to determine if the infrastructure for that is initialized."),
     LLAP_ORC_ENABLE_TIME_COUNTERS("hive.llap.io.orc.time.counters", true,
         "Whether to enable time counters for LLAP IO layer (time spent in HDFS, etc.)"),
     LLAP_IO_VRB_QUEUE_LIMIT_BASE("hive.llap.io.vrb.queue.limit.base", 10000,
@@ -3277,12 +3433,32 @@ public static enum ConfVars {
         "Chooses whether query fragments will run in container or in llap"),
     LLAP_OBJECT_CACHE_ENABLED("hive.llap.object.cache.enabled", true,
         "Cache objects (plans, hashtables, etc) in llap"),
+    LLAP_MAPJOIN_SHARED_HASHTABLE_ENABLED("hive.llap.mapjoin.shared.hashtable.enabled", false,
+        "Whether map join hash tables built from transactional tables are shared by the fragments\n" +
+        "of all queries in an LLAP daemon. The hash table is reused when the small table side\n" +
+        "reads the same tables, partitions and write id snapshot, and has the same operators\n" +
+        "and join key layout."),
+    LLAP_MAPJOIN_SHARED_HASHTABLE_MAX_IDLE_SIZE("hive.llap.mapjoin.shared.hashtable.max.idle.size",
+        "1Gb", new SizeValidator(),
+        "The estimated size of the shared map join hash tables that an LLAP daemon keeps after\n" +
+        "the last fragment using them has finished, for later queries. The least recently used\n" +
+        "idle hash tables are dropped beyond it."),
     LLAP_IO_DECODING_METRICS_PERCENTILE_INTERVALS("hive.llap.io.decoding.metrics.percentiles.intervals", "30",
         "Comma-delimited set of integers denoting the desired rollover intervals (in seconds)\n" +
         "for percentile latency metrics on the LLAP daemon IO decoding time.\n" +
         "hive.llap.queue.metrics.percentiles.intervals"),
     LLAP_IO_THREADPOOL_SIZE("hive.llap.io.threadpool.size", 10,
         "Specify the number of threads to use for low-level IO thread pool."),
+    LLAP_IO_PREFETCH_ENABLED("hive.llap.io.prefetch.enabled", false,
+        "Whether LLAP IO reads the ORC file and stripe footers for the splits of the fragments\n" +
+        "that wait for an executor into the metadata cache, so that they don't start with a cold\n" +
+        "read. The prefetch runs at low priority, never evicts anything from the cache, and is\n" +
+        "cancelled when the fragment is killed or preempted."),
+    LLAP_IO_PREFETCH_MAX_PENDING("hive.llap.io.prefetch.max.pending", 64,
+        "The maximum number of fragments queued for LLAP IO prefetch; the fragments submitted\n" +
+        "when the queue is full are not prefetched."),
+    LLAP_IO_PREFETCH_MAX_STRIPES("hive.llap.io.prefetch.max.stripes", 4,
+        "The maximum number of stripes per split whose footers LLAP IO prefetch reads."),
     LLAP_KERBEROS_PRINCIPAL(HIVE_LLAP_DAEMON_SERVICE_PRINCIPAL_NAME, "",
         "The name of the LLAP daemon's service principal."),
     LLAP_KERBEROS_KEYTAB_FILE("hive.llap.daemon.keytab.file", "",
@@ -3363,6 +3539,22 @@ public static enum ConfVars {
         "Published to the llap registry. Should never be set by users"),
     LLAP_DAEMON_SHUFFLE_DIR_WATCHER_ENABLED("hive.llap.daemon.shuffle.dir.watcher.enabled", false,
       "TODO doc", "llap.daemon.shuffle.dir-watcher.enabled"),
+    LLAP_DAEMON_SHUFFLE_MEMORY_DIR("hive.llap.daemon.shuffle.memory.dir", "",
+      "A directory on a memory-backed file system (e.g. tmpfs) for the shuffle output of the\n" +
+      "queries. When set, it is added as one more directory next to the work directories for the\n" +
+      "queries that start while the file system has enough free space. It is not preferred over\n" +
+      "the work directories: Tez rotates the output files over all the directories with room for\n" +
+      "them, and spreads the files of unknown size by free space, so only about 1/(number of work\n" +
+      "directories + 1) of the output of such a query, often less, is kept in memory. Co-located\n" +
+      "consumers read that output from memory, and the shuffle handler serves it from memory to\n" +
+      "remote consumers. The other queries only use the work directories. The memory of the file\n" +
+      "system is not part of the daemon memory (e.g.\n" +
+      "hive.llap.daemon.memory.per.instance.mb) and needs to be provided for separately.\n" +
+      "Empty means disabled."),
+    LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE("hive.llap.daemon.shuffle.memory.dir.min.free", "1Gb",
+      new SizeValidator(),
+      "The free space that hive.llap.daemon.shuffle.memory.dir needs to have for a new query to\n" +
+      "use it."),
     LLAP_DAEMON_AM_LIVENESS_HEARTBEAT_INTERVAL_MS(
       "hive.llap.daemon.am.liveness.heartbeat.interval.ms", "10000ms",
       new TimeValidator(TimeUnit.MILLISECONDS),
@@ -3492,8 +3684,21 @@ public static enum ConfVars {
       "hive.llap.daemon.wait.queue.comparator.class.name",
       "org.apache.hadoop.hive.llap.daemon.impl.comparator.ShortestJobFirstComparator",
       "The priority comparator to use for LLAP scheduler priority queue. The built-in options\n" +
-      "are org.apache.hadoop.hive.llap.daemon.impl.comparator.ShortestJobFirstComparator and\n" +
-      ".....FirstInFirstOutComparator", "llap.daemon.wait.queue.comparator.class.name"),
+      "are org.apache.hadoop.hive.llap.daemon.impl.comparator.ShortestJobFirstComparator,\n" +
+      ".....FirstInFirstOutComparator and .....FairShareComparator. The latter shares the\n" +
+      "executors between queries and users based on their recent executor time, and ages the\n" +
+      "waiting fragments so that they are not starved.",
+      "llap.daemon.wait.queue.comparator.class.name"),
+    LLAP_DAEMON_FAIR_SHARE_USAGE_HALF_LIFE(
+      "hive.llap.daemon.task.scheduler.fair.usage.half-life", "60s",
+      new TimeValidator(TimeUnit.MILLISECONDS),
+      "The half-life of the executor time used by queries and users, when\n" +
+      "FairShareComparator is used. The recent executor time matters more than the old one."),
+    LLAP_DAEMON_FAIR_SHARE_AGING_FACTOR(
+      "hive.llap.daemon.task.scheduler.fair.aging.factor", 1.0f,
+      "The priority boost for the waiting fragments when FairShareComparator is used, as the\n" +
+      "amount of executor time by which the usage of a fragment's query is discounted for each\n" +
+      "unit of time the fragment has been waiting. 0 disables aging."),
     LLAP_DAEMON_TASK_SCHEDULER_ENABLE_PREEMPTION(
       "hive.llap.daemon.task.scheduler.enable.preemption", true,
       "Whether non-finishable running tasks (e.g. a reducer waiting for inputs) should be\n" +
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.llap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.EvictionListener;
+import org.apache.hadoop.hive.llap.cache.LlapCacheableBuffer;
+import org.apache.hadoop.hive.llap.cache.LlapDataBuffer;
+import org.apache.hadoop.hive.llap.cache.LowLevelBufferedCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheImpl;
+import org.apache.hadoop.hive.llap.cache.LowLevelCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelLrfuCachePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Models the LLAP cache policy traffic of many executor and IO threads: most threads lock and
+ * unlock random cached buffers, re-caching the ones that were evicted, while one thread keeps
+ * evicting to make room for new data.
+ *
+ * Run with:
+ * java -jar target/benchmarks.jar org.apache.hive.benchmark.llap.LlapCachePolicyBench
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LlapCachePolicyBench {
+  private static final int BUFFER_COUNT = 64 * 1024;
+  private static final int EVICT_COUNT = 64;
+
+  @Param({"lrfu", "buffered"})
+  public String policyType;
+
+  private LowLevelCachePolicy policy;
+  private AtomicReferenceArray<LlapDataBuffer> buffers;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private final Random random = new Random();
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Configuration conf = new Configuration();
+    conf.setFloat(HiveConf.ConfVars.LLAP_LRFU_LAMBDA.varname, 0.000001f);
+    LowLevelCachePolicy lrfu = new LowLevelLrfuCachePolicy(1, BUFFER_COUNT, conf);
+    policy = "buffered".equals(policyType) ? new LowLevelBufferedCachePolicy(lrfu) : lrfu;
+    policy.setEvictionListener(new EvictionListener() {
+      @Override
+      public void notifyEvicted(LlapCacheableBuffer buffer) {
+        // The evicted buffers are replaced when they are next used.
+      }
+    });
+    buffers = new AtomicReferenceArray<>(BUFFER_COUNT);
+    for (int i = 0; i < BUFFER_COUNT; ++i) {
+      buffers.set(i, cacheNewBuffer());
+    }
+  }
+
+  private LlapDataBuffer cacheNewBuffer() {
+    LlapDataBuffer buffer = LowLevelCacheImpl.allocateFake();
+    buffer.incRef();
+    policy.cache(buffer, Priority.NORMAL);
+    if (buffer.decRef() == 0) {
+      policy.notifyUnlock(buffer);
+    }
+    return buffer;
+  }
+
+  @Benchmark
+  @Group("cache")
+  @GroupThreads(7)
+  public void lockUnlock(ThreadState state) {
+    int ix = state.random.nextInt(BUFFER_COUNT);
+    LlapDataBuffer buffer = buffers.get(ix);
+    int rc = buffer.incRef();
+    if (rc < 0) {
+      // Evicted; read the data again.
+      LlapDataBuffer newBuffer = cacheNewBuffer();
+      buffers.compareAndSet(ix, buffer, newBuffer);
+      return;
+    }
+    if (rc == 1) {
+      policy.notifyLock(buffer);
+    }
+    if (buffer.decRef() == 0) {
+      policy.notifyUnlock(buffer);
+    }
+  }
+
+  @Benchmark
+  @Group("cache")
+  @GroupThreads(1)
+  public long evict() {
+    return policy.evictSomeBlocks(EVICT_COUNT);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(".*" + LlapCachePolicyBench.class.getSimpleName() +
+        ".*").build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.llap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.llap.shufflehandler.ShuffleHandler;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.common.security.JobTokenSecretManager;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Models a reducer task that fetches many small partitions of many map outputs from one LLAP
+ * daemon, through a local LLAP shuffle handler: with one request per map output and partition,
+ * with one request per partition for all the map outputs, and with one request for a range of
+ * partitions of all the map outputs.
+ *
+ * Run with:
+ * java -jar target/benchmarks.jar org.apache.hive.benchmark.llap.LlapShuffleFetchBench
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LlapShuffleFetchBench {
+  private static final String APP_ID = "application_1_0001";
+  private static final String JOB_ID = "job_1_0001";
+  private static final int DAG_ID = 1;
+
+  @Param({"64"})
+  public int mapCount;
+
+  @Param({"32"})
+  public int partitionCount;
+
+  @Param({"128"})
+  public int partitionSize;
+
+  private File baseDir;
+  private int port;
+  private JobTokenSecretManager clientSecretManager;
+  private String allMaps;
+  private byte[] buffer = new byte[64 * 1024];
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    baseDir = new File(System.getProperty("java.io.tmpdir"),
+        LlapShuffleFetchBench.class.getSimpleName() + "-" + System.nanoTime());
+    String user = UserGroupInformation.getCurrentUser().getShortUserName();
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    conf.set(ShuffleHandler.SHUFFLE_HANDLER_LOCAL_DIRS, baseDir.getAbsolutePath());
+    conf.setBoolean(ShuffleHandler.SHUFFLE_MANAGE_OS_CACHE, false);
+
+    StringBuilder maps = new StringBuilder();
+    File outputDir = new File(baseDir,
+        "usercache/" + user + "/appcache/" + APP_ID + "/" + DAG_ID + "/output");
+    for (int i = 0; i < mapCount; ++i) {
+      String mapId = "attempt_1_0001_1_00_" + String.format("%06d", i) + "_0";
+      writeMapOutput(new File(outputDir, mapId), conf);
+      maps.append(i == 0 ? "" : ",").append(mapId);
+    }
+    allMaps = maps.toString();
+
+    ShuffleHandler.initializeAndStart(conf);
+    port = ShuffleHandler.get().getPort();
+    JobTokenSecretManager secretManager = new JobTokenSecretManager();
+    Token<JobTokenIdentifier> token =
+        new Token<>(new JobTokenIdentifier(new Text(JOB_ID)), secretManager);
+    ShuffleHandler.get().registerDag(APP_ID, DAG_ID, token, user, new String[0]);
+    clientSecretManager = new JobTokenSecretManager(
+        JobTokenSecretManager.createSecretKey(token.getPassword()));
+  }
+
+  private void writeMapOutput(File dir, Configuration conf) throws IOException {
+    if (!dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    byte[] data = new byte[partitionSize];
+    new Random(dir.getName().hashCode()).nextBytes(data);
+    TezSpillRecord spillRecord = new TezSpillRecord(partitionCount);
+    try (FileOutputStream out = new FileOutputStream(new File(dir, "file.out"))) {
+      for (int i = 0; i < partitionCount; ++i) {
+        out.write(data);
+        spillRecord.putIndex(
+            new TezIndexRecord((long) i * partitionSize, partitionSize, partitionSize), i);
+      }
+    }
+    spillRecord.writeToFile(
+        new Path(new File(dir, "file.out.index").getAbsolutePath()), conf);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    ShuffleHandler.shutdown();
+    FileUtil.fullyDelete(baseDir);
+  }
+
+  private long fetch(String maps, String reduce) throws IOException {
+    URL url = new URL("http://localhost:" + port + "/mapOutput?job=" + JOB_ID + "&dag=" + DAG_ID
+        + "&reduce=" + reduce + "&map=" + maps + "&keepAlive=true");
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    connection.setRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+    connection.setRequestProperty(SecureShuffleUtils.HTTP_HEADER_URL_HASH,
+        SecureShuffleUtils.hashFromString(SecureShuffleUtils.buildMsgFrom(url),
+            clientSecretManager));
+    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      throw new IOException("Fetch failed: " + connection.getResponseCode());
+    }
+    long total = 0;
+    try (InputStream in = connection.getInputStream()) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        total += read;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fetchEachPartitionOfEachMap() throws IOException {
+    long total = 0;
+    for (String mapId : allMaps.split(",")) {
+      for (int i = 0; i < partitionCount; ++i) {
+        total += fetch(mapId, Integer.toString(i));
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fetchEachPartition() throws IOException {
+    long total = 0;
+    for (int i = 0; i < partitionCount; ++i) {
+      total += fetch(allMaps, Integer.toString(i));
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fetchPartitionRange() throws IOException {
+    return fetch(allMaps, "0-" + (partitionCount - 1));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(".*" + LlapShuffleFetchBench.class.getSimpleName() +
+        ".*").build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.metastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.api.AllocateTableWriteIdsRequest;
+import org.apache.hadoop.hive.metastore.api.CommitTxnRequest;
+import org.apache.hadoop.hive.metastore.api.DataOperationType;
+import org.apache.hadoop.hive.metastore.api.LockComponent;
+import org.apache.hadoop.hive.metastore.api.LockLevel;
+import org.apache.hadoop.hive.metastore.api.LockRequest;
+import org.apache.hadoop.hive.metastore.api.LockResponse;
+import org.apache.hadoop.hive.metastore.api.LockState;
+import org.apache.hadoop.hive.metastore.api.LockType;
+import org.apache.hadoop.hive.metastore.api.OpenTxnRequest;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf.ConfVars;
+import org.apache.hadoop.hive.metastore.txn.TxnDbUtil;
+import org.apache.hadoop.hive.metastore.txn.TxnStore;
+import org.apache.hadoop.hive.metastore.txn.TxnUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of TxnHandler.lock() against the transaction tables in an embedded Derby
+ * db, for the transactions that write to a given number of static partitions of a table; each
+ * transaction allocates a write id, locks the partitions and commits, which releases the locks.
+ * Every benchmark thread uses its own table, so the locks of the threads don't conflict, but they
+ * still contend for the lock id and the check lock mutex; run with -t to see that.
+ *
+ * Run with:
+ * java -jar target/benchmarks.jar org.apache.hive.benchmark.metastore.TxnHandlerLockBench
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TxnHandlerLockBench {
+  private static final String DB_NAME = "benchdb";
+
+  @Param({"10", "100", "1000"})
+  public int partitionCount;
+
+  private final AtomicInteger tableCount = new AtomicInteger();
+  private Configuration conf;
+  private TxnStore txnHandler;
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private String tableName;
+
+    @Setup(Level.Trial)
+    public void setup(TxnHandlerLockBench bench) {
+      tableName = "benchtbl" + bench.tableCount.incrementAndGet();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    conf = MetastoreConf.newMetastoreConf();
+    MetastoreConf.setVar(conf, ConfVars.CONNECTURLKEY,
+        "jdbc:derby:memory:" + getClass().getSimpleName() + ";create=true");
+    TxnDbUtil.setConfValues(conf);
+    TxnDbUtil.prepDb(conf);
+    txnHandler = TxnUtils.getTxnStore(conf);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    TxnDbUtil.cleanDb(conf);
+  }
+
+  @Benchmark
+  public LockState lockPartitions(ThreadState state) throws Exception {
+    long txnId = txnHandler.openTxns(new OpenTxnRequest(1, "me", "localhost")).getTxn_ids().get(0);
+    txnHandler.allocateTableWriteIds(new AllocateTableWriteIdsRequest(
+        Collections.singletonList(txnId), DB_NAME, state.tableName));
+    List<LockComponent> components = new ArrayList<>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      LockComponent comp = new LockComponent(LockType.SHARED_WRITE, LockLevel.PARTITION, DB_NAME);
+      comp.setTablename(state.tableName);
+      comp.setPartitionname("p=" + i);
+      comp.setOperationType(DataOperationType.INSERT);
+      comp.setIsDynamicPartitionWrite(false);
+      components.add(comp);
+    }
+    LockRequest rqst = new LockRequest(components, "me", "localhost");
+    rqst.setTxnid(txnId);
+    LockResponse response = txnHandler.lock(rqst);
+    txnHandler.commitTxn(new CommitTxnRequest(txnId));
+    return response.getState();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(".*" + TxnHandlerLockBench.class.getSimpleName() +
+        ".*").build();
+    new Runner(opt).run();
+  }
+}
@@ -13,15 +13,23 @@
  */
 package org.apache.hive.benchmark.vectorization;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedBatchUtil;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -52,6 +60,36 @@ protected VectorizedRowBatch buildRowBatch(ColumnVector output, int colNum, Colu
     return rowBatch;
   }
 
+  /**
+   * Vectorizes exprDesc over the columns col0, col1, ... as the regular vector expression
+   * tree, or as one fused generated loop, and builds a batch of cols plus the scratch columns.
+   */
+  protected void buildExpression(ExprNodeDesc exprDesc, VectorExpressionDescriptor.Mode mode,
+      boolean isFused, ColumnVector... cols) {
+    List<String> columnNames = new ArrayList<String>();
+    for (int i = 0; i < cols.length; i++) {
+      columnNames.add("col" + i);
+    }
+    HiveConf hiveConf = new HiveConf();
+    hiveConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_EXPRESSION_CODEGEN_ENABLED, isFused);
+    VectorizationContext vContext = new VectorizationContext("bench", columnNames, hiveConf);
+    try {
+      expression = vContext.getVectorExpression(exprDesc, mode);
+      expression = vContext.getFusedVectorExpression(exprDesc, expression, mode);
+    } catch (HiveException e) {
+      throw new RuntimeException(e);
+    }
+    String[] scratchColumnTypeNames = vContext.getScratchColumnTypeNames();
+    rowBatch = new VectorizedRowBatch(cols.length + scratchColumnTypeNames.length);
+    for (int i = 0; i < cols.length; i++) {
+      rowBatch.cols[i] = cols[i];
+    }
+    for (int i = 0; i < scratchColumnTypeNames.length; i++) {
+      rowBatch.cols[cols.length + i] =
+          VectorizedBatchUtil.createColumnVector(scratchColumnTypeNames[i]);
+    }
+  }
+
   @Setup
   public abstract void setup();
 
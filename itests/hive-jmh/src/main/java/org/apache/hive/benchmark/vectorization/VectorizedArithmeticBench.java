@@ -13,13 +13,26 @@
  */
 package org.apache.hive.benchmark.vectorization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.LongColDivideLongColumn;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.DoubleColAddDoubleColumn;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.DoubleColDivideDoubleColumn;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.LongColAddLongColumn;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.LongColAddLongColumnChecked;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPPlus;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
@@ -126,6 +139,67 @@ public void setup() {
     }
   }
 
+  private static ExprNodeDesc arithmetic(TypeInfo typeInfo, GenericUDF udf,
+      ExprNodeDesc left, ExprNodeDesc right) {
+    return new ExprNodeGenericFuncDesc(typeInfo, udf,
+        new ArrayList<ExprNodeDesc>(Arrays.asList(left, right)));
+  }
+
+  // (col0 + col1) * col2
+  private static ExprNodeDesc getLongAddMultiply() {
+    TypeInfo typeInfo = TypeInfoFactory.longTypeInfo;
+    return arithmetic(typeInfo, new GenericUDFOPMultiply(),
+        arithmetic(typeInfo, new GenericUDFOPPlus(),
+            new ExprNodeColumnDesc(typeInfo, "col0", "t", false),
+            new ExprNodeColumnDesc(typeInfo, "col1", "t", false)),
+        new ExprNodeColumnDesc(typeInfo, "col2", "t", false));
+  }
+
+  // (col0 - col1) / col2
+  private static ExprNodeDesc getDoubleSubtractDivide() {
+    TypeInfo typeInfo = TypeInfoFactory.doubleTypeInfo;
+    return arithmetic(typeInfo, new GenericUDFOPDivide(),
+        arithmetic(typeInfo, new GenericUDFOPMinus(),
+            new ExprNodeColumnDesc(typeInfo, "col0", "t", false),
+            new ExprNodeColumnDesc(typeInfo, "col1", "t", false)),
+        new ExprNodeColumnDesc(typeInfo, "col2", "t", false));
+  }
+
+  public static class LongColAddLongColumnMultiplyLongColumnBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getLongAddMultiply(), VectorExpressionDescriptor.Mode.PROJECTION, false,
+          getLongColumnVector(), getLongColumnVector(), getLongColumnVectorWithNull());
+    }
+  }
+
+  public static class LongColAddLongColumnMultiplyLongColumnFusedBench
+      extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getLongAddMultiply(), VectorExpressionDescriptor.Mode.PROJECTION, true,
+          getLongColumnVector(), getLongColumnVector(), getLongColumnVectorWithNull());
+    }
+  }
+
+  public static class DoubleColSubtractDoubleColumnDivideDoubleColumnBench
+      extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getDoubleSubtractDivide(), VectorExpressionDescriptor.Mode.PROJECTION,
+          false, getDoubleColumnVector(), getDoubleColumnVector(), getDoubleColumnVector());
+    }
+  }
+
+  public static class DoubleColSubtractDoubleColumnDivideDoubleColumnFusedBench
+      extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getDoubleSubtractDivide(), VectorExpressionDescriptor.Mode.PROJECTION,
+          true, getDoubleColumnVector(), getDoubleColumnVector(), getDoubleColumnVector());
+    }
+  }
+
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder().include(".*" + VectorizedArithmeticBench.class.getSimpleName() +
         ".*").build();
@@ -13,11 +13,26 @@
  */
 package org.apache.hive.benchmark.vectorization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.ColAndCol;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.ColOrCol;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.IfExprLongColumnLongColumn;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.NotCol;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.runner.Runner;
@@ -139,6 +154,58 @@ public void setup() {
     }
   }
 
+  private static ExprNodeDesc bool(GenericUDF udf, ExprNodeDesc... children) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, udf,
+        new ArrayList<ExprNodeDesc>(Arrays.asList(children)));
+  }
+
+  private static ExprNodeDesc longColumn(String name) {
+    return new ExprNodeColumnDesc(TypeInfoFactory.longTypeInfo, name, "t", false);
+  }
+
+  // (col0 > 0 AND col1 < 0) OR col2 = 1
+  private static ExprNodeDesc getAndOrComparisons() {
+    ExprNodeDesc zero = new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 0L);
+    ExprNodeDesc one = new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 1L);
+    return bool(new GenericUDFOPOr(),
+        bool(new GenericUDFOPAnd(),
+            bool(new GenericUDFOPGreaterThan(), longColumn("col0"), zero),
+            bool(new GenericUDFOPLessThan(), longColumn("col1"), zero)),
+        bool(new GenericUDFOPEqual(), longColumn("col2"), one));
+  }
+
+  public static class FilterAndOrComparisonsBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getAndOrComparisons(), VectorExpressionDescriptor.Mode.FILTER, false,
+          getLongColumnVector(), getLongColumnVectorWithNull(), getBooleanLongColumnVector());
+    }
+  }
+
+  public static class FilterAndOrComparisonsFusedBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getAndOrComparisons(), VectorExpressionDescriptor.Mode.FILTER, true,
+          getLongColumnVector(), getLongColumnVectorWithNull(), getBooleanLongColumnVector());
+    }
+  }
+
+  public static class AndOrComparisonsBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getAndOrComparisons(), VectorExpressionDescriptor.Mode.PROJECTION, false,
+          getLongColumnVector(), getLongColumnVectorWithNull(), getBooleanLongColumnVector());
+    }
+  }
+
+  public static class AndOrComparisonsFusedBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      buildExpression(getAndOrComparisons(), VectorExpressionDescriptor.Mode.PROJECTION, true,
+          getLongColumnVector(), getLongColumnVectorWithNull(), getBooleanLongColumnVector());
+    }
+  }
+
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder().include(".*" + VectorizedLogicBench.class.getSimpleName() +
         ".*").build();
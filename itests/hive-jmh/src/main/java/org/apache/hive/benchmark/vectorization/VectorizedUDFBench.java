@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hive.benchmark.vectorization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFAdaptor;
+import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFArgDesc;
+import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFNativeExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.VectorizedUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This test measures the performance of a custom UDF in vectorized mode, evaluated a row at a
+ * time through the VectorUDFAdaptor versus a batch at a time through VectorizedUDF.
+ * <p/>
+ * This test uses JMH framework for benchmarking.
+ * You may execute this benchmark tool using JMH command line in different ways:
+ * <p/>
+ * To use the settings shown in the main() function, use:
+ * $ java -cp target/benchmarks.jar org.apache.hive.benchmark.vectorization.VectorizedUDFBench
+ * <p/>
+ * To use the default settings used by JMH, use:
+ * $ java -jar target/benchmarks.jar org.apache.hive.benchmark.vectorization.VectorizedUDFBench
+ */
+@State(Scope.Benchmark)
+public class VectorizedUDFBench {
+
+  /**
+   * Adds two bigints, both row by row and a batch at a time.
+   */
+  public static class LongAddUDF extends GenericUDF implements VectorizedUDF {
+    private transient PrimitiveObjectInspector[] argumentOIs;
+    private final LongWritable result = new LongWritable();
+
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+      argumentOIs = new PrimitiveObjectInspector[] {
+          (PrimitiveObjectInspector) arguments[0], (PrimitiveObjectInspector) arguments[1]};
+      return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+    }
+
+    @Override
+    public Object evaluate(DeferredObject[] arguments) throws HiveException {
+      Object a = arguments[0].get();
+      Object b = arguments[1].get();
+      if (a == null || b == null) {
+        return null;
+      }
+      result.set(PrimitiveObjectInspectorUtils.getLong(a, argumentOIs[0]) +
+          PrimitiveObjectInspectorUtils.getLong(b, argumentOIs[1]));
+      return result;
+    }
+
+    @Override
+    public void evaluateBatch(ColumnVector[] arguments, boolean selectedInUse, int[] selected,
+        int size, ColumnVector result) {
+      LongColumnVector a = (LongColumnVector) arguments[0];
+      LongColumnVector b = (LongColumnVector) arguments[1];
+      LongColumnVector out = (LongColumnVector) result;
+      out.isRepeating = false;
+      out.noNulls = a.noNulls && b.noNulls;
+      for (int j = 0; j < size; j++) {
+        final int i = (selectedInUse ? selected[j] : j);
+        final int ai = (a.isRepeating ? 0 : i);
+        final int bi = (b.isRepeating ? 0 : i);
+        out.isNull[i] = (!a.noNulls && a.isNull[ai]) || (!b.noNulls && b.isNull[bi]);
+        out.vector[i] = a.vector[ai] + b.vector[bi];
+      }
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+      return getStandardDisplayString("longadd", children);
+    }
+  }
+
+  private static ExprNodeGenericFuncDesc getLongAddDesc() {
+    TypeInfo typeInfo = TypeInfoFactory.longTypeInfo;
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+    children.add(new ExprNodeColumnDesc(typeInfo, "col0", "tablename", false));
+    children.add(new ExprNodeColumnDesc(typeInfo, "col1", "tablename", false));
+    return new ExprNodeGenericFuncDesc(typeInfo, new LongAddUDF(), "longadd", children);
+  }
+
+  private static VectorUDFAdaptor getAdaptor() {
+    VectorUDFArgDesc[] argDescs = new VectorUDFArgDesc[2];
+    for (int i = 0; i < argDescs.length; i++) {
+      argDescs[i] = new VectorUDFArgDesc();
+      argDescs[i].setVariable(i);
+    }
+    try {
+      return new VectorUDFAdaptor(getLongAddDesc(), 2, "bigint", argDescs);
+    } catch (HiveException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static class LongAddAdaptorBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      rowBatch = buildRowBatch(new LongColumnVector(), 2, getLongColumnVector(),
+          getLongColumnVector());
+      expression = getAdaptor();
+    }
+  }
+
+  public static class LongAddNativeBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      rowBatch = buildRowBatch(new LongColumnVector(), 2, getLongColumnVector(),
+          getLongColumnVector());
+      expression = new VectorUDFNativeExpression(getLongAddDesc(), new int[] {0, 1}, 2);
+    }
+  }
+
+  public static class LongAddWithNullAdaptorBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      rowBatch = buildRowBatch(new LongColumnVector(), 2, getLongColumnVectorWithNull(),
+          getLongColumnVector());
+      expression = getAdaptor();
+    }
+  }
+
+  public static class LongAddWithNullNativeBench extends AbstractExpression {
+    @Override
+    public void setup() {
+      rowBatch = buildRowBatch(new LongColumnVector(), 2, getLongColumnVectorWithNull(),
+          getLongColumnVector());
+      expression = new VectorUDFNativeExpression(getLongAddDesc(), new int[] {0, 1}, 2);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder().include(".*" + VectorizedUDFBench.class.getSimpleName() +
+        ".*").build();
+    new Runner(opt).run();
+  }
+}
@@ -16,15 +16,19 @@
 
 package org.apache.hive.benchmark.vectorization.operators;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.VectorGroupByOperator;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
@@ -117,9 +121,31 @@ public class VectorGroupByOperatorBench extends AbstractOperatorBench {
   })
   private String dataType;
 
+  @Param({
+    "none",
+    "bigint",
+    "string"
+  })
+  private String keyType;
+
+  @Param({
+    "false",
+    "true"
+  })
+  private boolean nativeHash;
+
+  @Param({
+    "1000",
+    "1000000"
+  })
+  private int keyCardinality;
+
+  private static final int KEY_BATCH_COUNT = 256;
+
   private Random rand = new Random(1234);
   private VectorGroupByOperator vgo;
-  private VectorizedRowBatch vrb;
+  private VectorizedRowBatch[] vrbs;
+  private int vrbIndex;
   private int size = VectorizedRowBatch.DEFAULT_SIZE;
 
   @Setup
@@ -128,17 +154,43 @@ public void setup() {
       dataType = dataType.replaceAll("_", ",");
       TypeInfo typeInfo = TypeInfoFactory.getPrimitiveTypeInfo(dataType);
       ColumnVector cv = ColumnVectorGenUtil.generateColumnVector(typeInfo, hasNulls, isRepeating, size, rand);
-      TypeDescription typeDescription = TypeDescription.fromString(dataType);
-      vrb = typeDescription.createRowBatch(size);
-      vrb.size = size;
-      vrb.cols[0] = cv;
-      VectorizationContext ctx = new VectorizationContext("name", ImmutableList.of("A"));
+      TypeInfo keyTypeInfo = null;
+      VectorizationContext ctx;
+      if (keyType.equals("none")) {
+        TypeDescription typeDescription = TypeDescription.fromString(dataType);
+        VectorizedRowBatch vrb = typeDescription.createRowBatch(size);
+        vrb.size = size;
+        vrb.cols[0] = cv;
+        vrbs = new VectorizedRowBatch[] { vrb };
+        ctx = new VectorizationContext("name", ImmutableList.of("A"));
+      } else {
+        // Spread the keys over many batches so the hash table really sees keyCardinality keys.
+        keyTypeInfo = TypeInfoFactory.getPrimitiveTypeInfo(keyType);
+        vrbs = new VectorizedRowBatch[KEY_BATCH_COUNT];
+        for (int i = 0; i < KEY_BATCH_COUNT; i++) {
+          VectorizedRowBatch vrb = new VectorizedRowBatch(2, size);
+          vrb.size = size;
+          vrb.cols[0] = cv;
+          vrb.cols[1] = generateKeyColumnVector();
+          vrbs[i] = vrb;
+        }
+        ctx = new VectorizationContext("name", ImmutableList.of("A", "K"));
+      }
       GroupByDesc desc = buildGroupByDescType(aggregation, evalMode, "A", typeInfo, processMode);
+      if (keyTypeInfo != null) {
+        ArrayList<ExprNodeDesc> keys = new ArrayList<ExprNodeDesc>();
+        keys.add(new ExprNodeColumnDesc(keyTypeInfo, "K", "table", false));
+        desc.setKeys(keys);
+        desc.getOutputColumnNames().add("_col1");
+      }
       Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(new CompilationOpContext(), desc);
       VectorGroupByDesc vectorGroupByDesc = new VectorGroupByDesc();
       vectorGroupByDesc.setProcessingMode(ProcessingMode.HASH);
       vgo = (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorGroupByDesc);
-      vgo.initialize(new Configuration(), null);
+      Configuration conf = new Configuration();
+      conf.setBoolean(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED.varname,
+          nativeHash);
+      vgo.initialize(conf, null);
     } catch (Exception e) {
       // likely unsupported combination of params
       // https://bugs.openjdk.java.net/browse/CODETOOLS-7901296 is not available yet to skip benchmark cleanly
@@ -147,6 +199,23 @@ public void setup() {
     }
   }
 
+  private ColumnVector generateKeyColumnVector() {
+    if (keyType.equals("bigint")) {
+      LongColumnVector keyColVector = new LongColumnVector(size);
+      for (int i = 0; i < size; i++) {
+        keyColVector.vector[i] = rand.nextInt(keyCardinality);
+      }
+      return keyColVector;
+    }
+    BytesColumnVector keyColVector = new BytesColumnVector(size);
+    keyColVector.initBuffer();
+    for (int i = 0; i < size; i++) {
+      byte[] bytes = ("key_" + rand.nextInt(keyCardinality)).getBytes(StandardCharsets.UTF_8);
+      keyColVector.setVal(i, bytes, 0, bytes.length);
+    }
+    return keyColVector;
+  }
+
   private GroupByDesc buildGroupByDescType(
     String aggregate,
     GenericUDAFEvaluator.Mode mode,
@@ -206,7 +275,10 @@ public void tearDown() throws HiveException {
 
   @Benchmark
   public void testAggCount() throws HiveException {
-    vgo.process(vrb, 0);
+    vgo.process(vrbs[vrbIndex], 0);
+    if (++vrbIndex == vrbs.length) {
+      vrbIndex = 0;
+    }
   }
 
   /*
@@ -221,6 +293,7 @@ public void testAggCount() throws HiveException {
    *    $ java -jar target/benchmarks.jar VectorGroupByOperatorCountBench -prof perfasm  -f 1 (Linux)
    *    $ java -jar target/benchmarks.jar VectorGroupByOperatorCountBench -prof gc  -f 1 (allocation counting via gc)
    *    $ java -jar target/benchmarks.jar VectorGroupByOperatorBench -p hasNulls=true -p isRepeating=false -p aggregation=bloom_filter  -p processMode=HASH -p evalMode=PARTIAL1
+   *    $ java -jar target/benchmarks.jar VectorGroupByOperatorBench -p hasNulls=false -p isRepeating=false -p aggregation=sum -p dataType=bigint -p processMode=HASH -p evalMode=PARTIAL1 -p keyType=bigint -p nativeHash=false,true
    *    $ java -agentlib:jdwp=transport=dt_socket,address=127.0.0.1:6006,suspend=y,server=y -jar target/benchmarks.jar VectorGroupByOperatorBench
    */
 
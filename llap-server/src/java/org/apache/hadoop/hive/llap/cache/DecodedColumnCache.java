@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampColumnVector;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * On-heap cache of decoded column vectors, per ORC row group and set of columns. A row group
+ * served from this cache skips decompression and decoding; the vectors are copied into the
+ * consumer's batches (string data is referenced, not copied), since the batches are reused.
+ *
+ * The cache has its own memory budget, enforced by a LowLevelCacheMemoryManager with its own
+ * LRFU policy; the entries are cacheable buffers that the policy evicts when memory is needed.
+ * Only primitive columns are cached.
+ */
+public class DecodedColumnCache implements EvictionListener {
+  /** The policy heap is sized assuming the entries are at least this large. */
+  private static final int MIN_ENTRY_SIZE = 64 * 1024;
+
+  /** Identifies the decoded data of one row group. */
+  public static final class Key {
+    private final Object fileKey;
+    private final int stripeIx, rgIx;
+    /** Describes the columns and their types; different readers may decode the same data
+     * differently (e.g. due to schema evolution). */
+    private final String columns;
+
+    public Key(Object fileKey, int stripeIx, int rgIx, String columns) {
+      this.fileKey = fileKey;
+      this.stripeIx = stripeIx;
+      this.rgIx = rgIx;
+      this.columns = columns;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((fileKey.hashCode() * 31 + stripeIx) * 31 + rgIx) * 31 + columns.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return stripeIx == other.stripeIx && rgIx == other.rgIx
+          && fileKey.equals(other.fileKey) && columns.equals(other.columns);
+    }
+
+    @Override
+    public String toString() {
+      return "[" + fileKey + ", stripe " + stripeIx + ", rgIx " + rgIx + "]";
+    }
+  }
+
+  /** The decoded batches of one row group. */
+  public static final class Entry extends LlapCacheableBuffer {
+    private final Key key;
+    private final ColumnVector[][] batches;
+    private final int[] batchSizes;
+    private final long memoryUsage;
+    /** The number of readers using the entry; -1 once it's evicted. */
+    private final AtomicInteger refCount = new AtomicInteger(0);
+
+    private Entry(Key key, ColumnVector[][] batches, int[] batchSizes, long memoryUsage) {
+      this.key = key;
+      this.batches = batches;
+      this.batchSizes = batchSizes;
+      this.memoryUsage = memoryUsage;
+    }
+
+    public int getBatchCount() {
+      return batches.length;
+    }
+
+    public ColumnVector[] getBatch(int ix) {
+      return batches[ix];
+    }
+
+    public int getBatchSize(int ix) {
+      return batchSizes[ix];
+    }
+
+    private int incRef() {
+      while (true) {
+        int rc = refCount.get();
+        if (rc < 0) return rc;
+        if (refCount.compareAndSet(rc, rc + 1)) return rc + 1;
+      }
+    }
+
+    private int decRef() {
+      return refCount.decrementAndGet();
+    }
+
+    @Override
+    protected int invalidate() {
+      if (refCount.compareAndSet(0, -1)) return INVALIDATE_OK;
+      return refCount.get() < 0 ? INVALIDATE_ALREADY_INVALID : INVALIDATE_FAILED;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+      return memoryUsage;
+    }
+
+    @Override
+    public void notifyEvicted(EvictionDispatcher evictionDispatcher) {
+      // Not used; the entries are only evicted by the policy of the decoded cache.
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getTag() {
+      return null;
+    }
+
+    @Override
+    protected boolean isLocked() {
+      return refCount.get() > 0;
+    }
+  }
+
+  /** Accumulates copies of the decoded batches of a row group, to be cached at the end. */
+  public final class EntryBuilder {
+    private final List<ColumnVector[]> batches = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private long memoryUsage = 0;
+
+    private EntryBuilder() {
+    }
+
+    /**
+     * Copies the batch.
+     * @return false if the row group cannot be cached, due to its size or column types.
+     */
+    public boolean add(ColumnVector[] cols, int size) {
+      ColumnVector[] copy = new ColumnVector[cols.length];
+      for (int i = 0; i < cols.length; ++i) {
+        copy[i] = copyForCache(cols[i], size);
+        if (copy[i] == null) return false;
+        memoryUsage += estimateMemoryUsage(copy[i], size);
+      }
+      if (memoryUsage > maxEntrySize) return false;
+      batches.add(copy);
+      batchSizes.add(size);
+      return true;
+    }
+  }
+
+  private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+  private final LowLevelCachePolicy policy;
+  private final LowLevelCacheMemoryManager memoryManager;
+  private final LlapDaemonCacheMetrics metrics;
+  private final long maxEntrySize;
+
+  public DecodedColumnCache(long maxSize, Configuration conf, LlapDaemonCacheMetrics metrics) {
+    this.policy = new LowLevelLrfuCachePolicy(MIN_ENTRY_SIZE, maxSize, conf);
+    this.policy.setEvictionListener(this);
+    this.memoryManager = new LowLevelCacheMemoryManager(maxSize, policy, metrics);
+    this.metrics = metrics;
+    this.maxEntrySize = Math.max(1, maxSize / 8);
+    metrics.setCacheCapacityTotal(maxSize);
+    LlapIoImpl.LOG.info("Decoded column cache with max size {}", maxSize);
+  }
+
+  public EntryBuilder createEntryBuilder() {
+    return new EntryBuilder();
+  }
+
+  /**
+   * Gets the cached entry. The entry cannot be evicted until it is released.
+   * @return The entry, or null if it's not cached.
+   */
+  public Entry get(Key key) {
+    metrics.incrCacheReadRequests();
+    Entry entry = cache.get(key);
+    if (entry == null) return null;
+    int rc = entry.incRef();
+    if (rc < 0) {
+      cache.remove(key, entry); // Evicted.
+      return null;
+    }
+    if (rc == 1) {
+      policy.notifyLock(entry);
+    }
+    metrics.incrCacheHitBytes(entry.memoryUsage);
+    return entry;
+  }
+
+  public void release(Entry entry) {
+    if (entry.decRef() == 0) {
+      policy.notifyUnlock(entry);
+    }
+  }
+
+  /** Caches the batches accumulated by the builder, if there's memory for them. */
+  public void put(Key key, EntryBuilder builder) {
+    if (builder.batches.isEmpty() || cache.containsKey(key)) return;
+    if (!memoryManager.reserveMemory(builder.memoryUsage, false)) return;
+    int[] sizes = new int[builder.batchSizes.size()];
+    for (int i = 0; i < sizes.length; ++i) {
+      sizes[i] = builder.batchSizes.get(i);
+    }
+    Entry entry = new Entry(key, builder.batches.toArray(new ColumnVector[sizes.length][]),
+        sizes, builder.memoryUsage);
+    entry.incRef();
+    if (cache.putIfAbsent(key, entry) != null) {
+      memoryManager.releaseMemory(entry.memoryUsage); // Someone else has cached the same data.
+      return;
+    }
+    policy.cache(entry, Priority.NORMAL);
+    release(entry);
+  }
+
+  @Override
+  public void notifyEvicted(LlapCacheableBuffer buffer) {
+    Entry entry = (Entry) buffer;
+    cache.remove(entry.key, entry);
+  }
+
+  @VisibleForTesting
+  int size() {
+    return cache.size();
+  }
+
+  /**
+   * Makes a compact copy of the vector for the cache.
+   * @return The copy, or null if the vector type is not supported.
+   */
+  @VisibleForTesting
+  static ColumnVector copyForCache(ColumnVector src, int size) {
+    ColumnVector dest;
+    int count = src.isRepeating ? Math.min(1, size) : size;
+    if (src instanceof LongColumnVector) {
+      LongColumnVector lcv = new LongColumnVector(size);
+      System.arraycopy(((LongColumnVector) src).vector, 0, lcv.vector, 0, count);
+      dest = lcv;
+    } else if (src instanceof DoubleColumnVector) {
+      DoubleColumnVector dcv = new DoubleColumnVector(size);
+      System.arraycopy(((DoubleColumnVector) src).vector, 0, dcv.vector, 0, count);
+      dest = dcv;
+    } else if (src instanceof TimestampColumnVector) {
+      TimestampColumnVector srcTcv = (TimestampColumnVector) src;
+      TimestampColumnVector tcv = new TimestampColumnVector(size);
+      System.arraycopy(srcTcv.time, 0, tcv.time, 0, count);
+      System.arraycopy(srcTcv.nanos, 0, tcv.nanos, 0, count);
+      dest = tcv;
+    } else if (src instanceof DecimalColumnVector) {
+      DecimalColumnVector srcDcv = (DecimalColumnVector) src;
+      DecimalColumnVector dcv = new DecimalColumnVector(size, srcDcv.precision, srcDcv.scale);
+      for (int i = 0; i < count; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          dcv.vector[i].set(srcDcv.vector[i]);
+        }
+      }
+      dest = dcv;
+    } else if (src instanceof BytesColumnVector) {
+      dest = copyBytesForCache((BytesColumnVector) src, size, count);
+    } else {
+      return null;
+    }
+    dest.noNulls = src.noNulls;
+    dest.isRepeating = src.isRepeating;
+    if (!src.noNulls) {
+      System.arraycopy(src.isNull, 0, dest.isNull, 0, count);
+    }
+    return dest;
+  }
+
+  private static BytesColumnVector copyBytesForCache(BytesColumnVector src, int size, int count) {
+    // Store all the values in one array.
+    int totalLength = 0;
+    for (int i = 0; i < count; ++i) {
+      if (src.noNulls || !src.isNull[i]) {
+        totalLength += src.length[i];
+      }
+    }
+    byte[] data = new byte[totalLength];
+    BytesColumnVector dest = new BytesColumnVector(size);
+    int offset = 0;
+    for (int i = 0; i < count; ++i) {
+      if (!src.noNulls && src.isNull[i]) continue;
+      System.arraycopy(src.vector[i], src.start[i], data, offset, src.length[i]);
+      dest.vector[i] = data;
+      dest.start[i] = offset;
+      dest.length[i] = src.length[i];
+      offset += src.length[i];
+    }
+    return dest;
+  }
+
+  private static long estimateMemoryUsage(ColumnVector cv, int size) {
+    long result = size; // isNull
+    if (cv instanceof BytesColumnVector) {
+      BytesColumnVector bcv = (BytesColumnVector) cv;
+      result += size * 16L; // vector, start, length
+      for (byte[] data : bcv.vector) {
+        if (data != null) {
+          result += data.length; // All the values of a cached vector share one array.
+          break;
+        }
+      }
+    } else if (cv instanceof DecimalColumnVector) {
+      result += size * 64L;
+    } else if (cv instanceof TimestampColumnVector) {
+      result += size * 12L;
+    } else {
+      result += size * 8L;
+    }
+    return result;
+  }
+
+  /**
+   * Copies the cached vector into a vector of the same type, that has been reset and sized.
+   * The string values are not copied; the destination refers to the cached data, which is
+   * never modified.
+   */
+  public static void copyFromCache(ColumnVector src, ColumnVector dest, int size) {
+    int count = src.isRepeating ? Math.min(1, size) : size;
+    dest.noNulls = src.noNulls;
+    dest.isRepeating = src.isRepeating;
+    if (!src.noNulls) {
+      System.arraycopy(src.isNull, 0, dest.isNull, 0, count);
+    }
+    if (src instanceof LongColumnVector) {
+      System.arraycopy(((LongColumnVector) src).vector, 0,
+          ((LongColumnVector) dest).vector, 0, count);
+    } else if (src instanceof DoubleColumnVector) {
+      System.arraycopy(((DoubleColumnVector) src).vector, 0,
+          ((DoubleColumnVector) dest).vector, 0, count);
+    } else if (src instanceof TimestampColumnVector) {
+      TimestampColumnVector srcTcv = (TimestampColumnVector) src;
+      TimestampColumnVector destTcv = (TimestampColumnVector) dest;
+      System.arraycopy(srcTcv.time, 0, destTcv.time, 0, count);
+      System.arraycopy(srcTcv.nanos, 0, destTcv.nanos, 0, count);
+    } else if (src instanceof DecimalColumnVector) {
+      DecimalColumnVector srcDcv = (DecimalColumnVector) src;
+      DecimalColumnVector destDcv = (DecimalColumnVector) dest;
+      for (int i = 0; i < count; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          destDcv.vector[i].set(srcDcv.vector[i]);
+        }
+      }
+    } else if (src instanceof BytesColumnVector) {
+      BytesColumnVector srcBcv = (BytesColumnVector) src;
+      BytesColumnVector destBcv = (BytesColumnVector) dest;
+      for (int i = 0; i < count; ++i) {
+        if (src.noNulls || !src.isNull[i]) {
+          destBcv.setRef(i, srcBcv.vector[i], srcBcv.start[i], srcBcv.length[i]);
+        }
+      }
+    } else {
+      throw new AssertionError("Unexpected cached vector " + src.getClass().getSimpleName());
+    }
+  }
+}
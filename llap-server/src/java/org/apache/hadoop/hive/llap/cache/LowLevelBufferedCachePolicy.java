@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A cache policy wrapper that records buffer unlocks in striped lock-free buffers, and applies
+ * them to the real policy in batches, by one thread at a time. The real policy (e.g. LRFU) has
+ * to lock its heap to process an unlock; with many IO and executor threads, doing that on every
+ * unlock makes the threads queue up behind the policy lock. Here, a thread only appends to its
+ * stripe, and the thread that fills a stripe drains all of them if noone else is doing it.
+ *
+ * Unlocked buffers are not evictable until their unlock is applied, so the pending unlocks are
+ * always applied before eviction; a thread that finds its stripe too far behind waits for the
+ * drain, so that the buffers cannot pile up. Locks and new buffers are passed thru - for the
+ * LRFU policy they are cheap.
+ */
+public class LowLevelBufferedCachePolicy implements LowLevelCachePolicy {
+  /** The number of pending unlocks in a stripe at which a drain is attempted. */
+  @VisibleForTesting
+  static final int DRAIN_THRESHOLD = 64;
+  /** The number of pending unlocks in a stripe at which the unlocking thread waits to drain. */
+  private static final int MAX_PENDING = 16 * DRAIN_THRESHOLD;
+
+  private static final class Stripe {
+    private final ConcurrentLinkedQueue<LlapCacheableBuffer> pending =
+        new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+  }
+
+  private final LowLevelCachePolicy realPolicy;
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final ReentrantLock drainLock = new ReentrantLock();
+
+  public LowLevelBufferedCachePolicy(LowLevelCachePolicy realPolicy) {
+    this(realPolicy, Runtime.getRuntime().availableProcessors());
+  }
+
+  @VisibleForTesting
+  LowLevelBufferedCachePolicy(LowLevelCachePolicy realPolicy, int stripeCount) {
+    this.realPolicy = realPolicy;
+    int count = Integer.highestOneBit(Math.max(1, stripeCount) * 2 - 1); // Next power of two.
+    this.stripes = new Stripe[count];
+    for (int i = 0; i < count; ++i) {
+      stripes[i] = new Stripe();
+    }
+    this.stripeMask = count - 1;
+    LlapIoImpl.LOG.info("Buffered cache policy with {} stripes", count);
+  }
+
+  @Override
+  public void cache(LlapCacheableBuffer buffer, Priority priority) {
+    realPolicy.cache(buffer, priority);
+  }
+
+  @Override
+  public void notifyLock(LlapCacheableBuffer buffer) {
+    realPolicy.notifyLock(buffer);
+  }
+
+  @Override
+  public void notifyUnlock(LlapCacheableBuffer buffer) {
+    Stripe stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+    stripe.pending.offer(buffer);
+    int size = stripe.size.incrementAndGet();
+    if (size < DRAIN_THRESHOLD) return;
+    if (size >= MAX_PENDING) {
+      drainLock.lock();
+    } else if (!drainLock.tryLock()) {
+      return; // Someone else is draining.
+    }
+    try {
+      drainUnderLock();
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  @Override
+  public long evictSomeBlocks(long memoryToReserve) {
+    drain();
+    return realPolicy.evictSomeBlocks(memoryToReserve);
+  }
+
+  /** Applies all the pending unlocks to the real policy. */
+  @VisibleForTesting
+  void drain() {
+    drainLock.lock();
+    try {
+      drainUnderLock();
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  private void drainUnderLock() {
+    for (Stripe stripe : stripes) {
+      // Only drain what is there now, so that a busy stripe cannot keep us here forever.
+      int toDrain = stripe.size.get();
+      for (int i = 0; i < toDrain; ++i) {
+        LlapCacheableBuffer buffer = stripe.pending.poll();
+        if (buffer == null) break;
+        stripe.size.decrementAndGet();
+        realPolicy.notifyUnlock(buffer);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getPendingCount() {
+    int result = 0;
+    for (Stripe stripe : stripes) {
+      result += stripe.size.get();
+    }
+    return result;
+  }
+
+  @Override
+  public void setEvictionListener(EvictionListener listener) {
+    realPolicy.setEvictionListener(listener);
+  }
+
+  @Override
+  public void setParentDebugDumper(LlapOomDebugDump dumper) {
+    realPolicy.setParentDebugDumper(dumper);
+  }
+
+  @Override
+  public String debugDumpForOom() {
+    return "buffered policy with " + getPendingCount() + " pending unlocks; "
+        + realPolicy.debugDumpForOom();
+  }
+
+  @Override
+  public void debugDumpShort(StringBuilder sb) {
+    sb.append("\nBuffered cache policy: ").append(getPendingCount()).append(" pending unlocks");
+    realPolicy.debugDumpShort(sb);
+  }
+}
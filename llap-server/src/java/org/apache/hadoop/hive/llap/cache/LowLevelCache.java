@@ -26,6 +26,8 @@
 
 public interface LowLevelCache extends LlapOomDebugDump {
   public enum Priority {
+    /** Data that is not expected to be read again soon; it's evicted before other data. */
+    LOW,
     NORMAL,
     HIGH
   }
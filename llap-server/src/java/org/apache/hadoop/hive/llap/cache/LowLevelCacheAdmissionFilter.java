@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+
+/**
+ * Frequency-based cache admission filter. Every time some data is read from disk and put into
+ * the cache, its key is recorded in a count-min sketch; only the data that has been read at
+ * least minFrequency times recently is cached with its requested priority, and the rest is
+ * cached with low priority, so that one large scan of read-once data only evicts itself.
+ *
+ * The counts are halved every time the number of recorded reads reaches 8 times the sketch
+ * width, so the old reads are gradually forgotten. The counters are updated without locking;
+ * a lost update can only make the estimate lower, which is harmless for a filter like this.
+ */
+public class LowLevelCacheAdmissionFilter {
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int MAX_WIDTH = 1 << 22;
+
+  private final byte[][] counts;
+  private final int mask;
+  private final int minFrequency;
+  private final int resetSize;
+  private final AtomicInteger recordCount = new AtomicInteger(0);
+
+  /**
+   * @param expectedKeys The expected number of distinct keys in the cache, e.g. the number of
+   *                     minimum-size allocations that fit in it.
+   * @param minFrequency The number of reads after which the data gets its requested priority.
+   */
+  public LowLevelCacheAdmissionFilter(long expectedKeys, int minFrequency) {
+    int width = (int) Math.min(MAX_WIDTH, Math.max(1024, expectedKeys));
+    width = Integer.highestOneBit(width * 2 - 1); // Next power of two.
+    this.counts = new byte[DEPTH][width];
+    this.mask = width - 1;
+    this.minFrequency = Math.max(1, Math.min(MAX_COUNT, minFrequency));
+    this.resetSize = width * 8;
+    LlapIoImpl.LOG.info("Cache admission filter with width {} and min frequency {}",
+        width, this.minFrequency);
+  }
+
+  /**
+   * Records a read of the data, and determines the priority to cache it with.
+   * @param fileKey The file key of the data.
+   * @param offset The offset, or another identifier of the data within the file.
+   * @param priority The requested priority; only the normal priority is filtered.
+   * @return The priority to cache the data with.
+   */
+  public Priority admit(Object fileKey, long offset, Priority priority) {
+    if (priority != Priority.NORMAL) return priority;
+    return record(fileKey, offset) >= minFrequency ? priority : Priority.LOW;
+  }
+
+  /**
+   * Records a read of the data.
+   * @return The estimated number of recent reads, including this one.
+   */
+  int record(Object fileKey, long offset) {
+    int hash = mix(fileKey.hashCode() * 31 + (int) (offset ^ (offset >>> 32)));
+    int hash2 = mix(hash) | 1;
+    int estimate = MAX_COUNT;
+    for (int i = 0; i < DEPTH; ++i) {
+      byte[] row = counts[i];
+      int ix = (hash + i * hash2) & mask;
+      int count = row[ix];
+      if (count < MAX_COUNT) {
+        row[ix] = (byte) ++count;
+      }
+      estimate = Math.min(estimate, count);
+    }
+    if (recordCount.incrementAndGet() == resetSize) {
+      age();
+    }
+    return estimate;
+  }
+
+  private void age() {
+    for (byte[] row : counts) {
+      for (int i = 0; i < row.length; ++i) {
+        row[i] >>>= 1;
+      }
+    }
+    recordCount.addAndGet(-resetSize / 2);
+  }
+
+  private static int mix(int hash) {
+    // The finalization step of murmur3.
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
@@ -20,6 +20,8 @@
 public interface LowLevelCacheCounters {
   void recordCacheHit(long bytesHit);
   void recordCacheMiss(long bytesMissed);
+  /** Records the misses, already recorded via recordCacheMiss, on the evicted data. */
+  void recordEvictionMiss(long bytesMissed);
   void recordAllocBytes(long bytesWasted, long bytesAllocated);
   void recordHdfsTime(long timeUs);
   long startTimeCounter();
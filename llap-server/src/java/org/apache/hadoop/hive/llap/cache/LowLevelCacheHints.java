@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+
+/**
+ * Determines the cache priority for the data read by a query, from the query config
+ * (hive.llap.io.cache.hint) or, if it's not set, from the table or partition property
+ * llap.io.cache.hint. Pinned data is cached with high priority; the data of tables that
+ * should not be cached is cached with low priority, so that it's evicted first.
+ */
+public final class LowLevelCacheHints {
+  public static final String TABLE_PROPERTY = "llap.io.cache.hint";
+
+  private LowLevelCacheHints() {
+  }
+
+  public static Priority getPriority(
+      Configuration jobConf, Map<Path, PartitionDesc> parts, Path path) {
+    String hint = HiveConf.getVar(jobConf, ConfVars.LLAP_IO_CACHE_HINT);
+    if (hint == null && parts != null) {
+      try {
+        PartitionDesc part = HiveFileFormatUtils.getFromPathRecursively(
+            parts, path, null, true, true);
+        if (part != null) {
+          hint = getHint(part.getProperties());
+          if (hint == null && part.getTableDesc() != null) {
+            hint = getHint(part.getTableDesc().getProperties());
+          }
+        }
+      } catch (IOException ex) {
+        LlapIoImpl.LOG.warn("Cannot find the partition for " + path, ex);
+      }
+    }
+    return toPriority(hint);
+  }
+
+  private static String getHint(Properties props) {
+    return props == null ? null : props.getProperty(TABLE_PROPERTY);
+  }
+
+  static Priority toPriority(String hint) {
+    if (hint == null) return Priority.NORMAL;
+    switch (hint.trim().toLowerCase()) {
+    case "pin": return Priority.HIGH;
+    case "none": return Priority.LOW;
+    case "normal": return Priority.NORMAL;
+    default:
+      LlapIoImpl.LOG.warn("Ignoring unknown cache hint " + hint);
+      return Priority.NORMAL;
+    }
+  }
+}
@@ -56,6 +56,7 @@ public class LowLevelCacheImpl implements LowLevelCache, BufferUsageManager, Lla
   private final long cleanupInterval;
   private final LlapDaemonCacheMetrics metrics;
   private final boolean doAssumeGranularBlocks;
+  private LowLevelCacheAdmissionFilter admissionFilter;
 
   private static final Function<Void, ConcurrentSkipListMap<Long, LlapDataBuffer>> CACHE_CTOR =
       new Function<Void, ConcurrentSkipListMap<Long, LlapDataBuffer>>() {
@@ -81,6 +82,10 @@ public LowLevelCacheImpl(LlapDaemonCacheMetrics metrics, LowLevelCachePolicy cac
     this.doAssumeGranularBlocks = doAssumeGranularBlocks;
   }
 
+  public void setAdmissionFilter(LowLevelCacheAdmissionFilter admissionFilter) {
+    this.admissionFilter = admissionFilter;
+  }
+
   public void startThreads() {
     if (cleanupInterval < 0) return;
     cleanupThread = new CleanupThread(cache, newEvictions, cleanupInterval);
@@ -112,13 +117,21 @@ public DiskRangeList getFileData(Object fileKey, DiskRangeList ranges, long base
         gotAllData.value = true;
       }
       DiskRangeList current = ranges;
+      long bytesEvicted = 0;
       while (current != null) {
         metrics.incrCacheRequestedBytes(current.getLength());
         // We assume ranges in "ranges" are non-overlapping; thus, we will save next in advance.
         DiskRangeList next = current.next;
-        getOverlappingRanges(baseOffset, current, subCache.getCache(), factory, gotAllData);
+        bytesEvicted += getOverlappingRanges(
+            baseOffset, current, subCache.getCache(), factory, gotAllData);
         current = next;
       }
+      if (bytesEvicted > 0) {
+        metrics.incrCacheEvictionMissBytes(bytesEvicted);
+        if (qfCounters != null) {
+          qfCounters.recordEvictionMiss(bytesEvicted);
+        }
+      }
     } finally {
       subCache.decRef();
     }
@@ -175,7 +188,12 @@ public DiskRangeList getFileData(Object fileKey, DiskRangeList ranges, long base
     return prev.next;
   }
 
-  private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCached,
+  /**
+   * @return The length of the evicted buffers found for the range, i.e. of the data that would
+   *         have been a cache hit if it had not been evicted. The buffers already removed from
+   *         the cache by the cleanup thread are not counted.
+   */
+  private long getOverlappingRanges(long baseOffset, DiskRangeList currentNotCached,
       ConcurrentSkipListMap<Long, LlapDataBuffer> cache, DiskRangeListFactory factory,
       BooleanRef gotAllData) {
     long absOffset = currentNotCached.getOffset() + baseOffset;
@@ -189,7 +207,7 @@ private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCache
     Iterator<Map.Entry<Long, LlapDataBuffer>> matches = cache.subMap(
         absOffset, currentNotCached.getEnd() + baseOffset)
         .entrySet().iterator();
-    long cacheEnd = -1;
+    long cacheEnd = -1, bytesEvicted = 0;
     while (matches.hasNext()) {
       assert currentNotCached != null;
       Map.Entry<Long, LlapDataBuffer> e = matches.next();
@@ -203,6 +221,7 @@ private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCache
       if (!lockBuffer(buffer, true)) {
         // If we cannot lock, remove this from cache and continue.
         matches.remove();
+        bytesEvicted += Math.max(0, buffer.declaredCachedLength);
         if (gotAllData != null) {
           gotAllData.value = false;
         }
@@ -225,6 +244,7 @@ private void getOverlappingRanges(long baseOffset, DiskRangeList currentNotCache
         gotAllData.value = false;
       }
     }
+    return bytesEvicted;
   }
 
   /**
@@ -309,7 +329,8 @@ public long[] putFileData(Object fileKey, DiskRange[] ranges, MemoryBuffer[] buf
           LlapDataBuffer oldVal = subCache.getCache().putIfAbsent(offset, buffer);
           if (oldVal == null) {
             // Cached successfully, add to policy.
-            cachePolicy.cache(buffer, priority);
+            cachePolicy.cache(buffer, admissionFilter == null
+                ? priority : admissionFilter.admit(fileKey, offset, priority));
             if (qfCounters != null) {
               qfCounters.recordAllocBytes(buffer.byteBuffer.remaining(), buffer.allocSize);
             }
@@ -447,6 +468,11 @@ public Allocator getAllocator() {
     return allocator;
   }
 
+  /** The file caches; used to snapshot the cache contents (see LowLevelCacheSnapshot). */
+  ConcurrentHashMap<Object, FileCache<ConcurrentSkipListMap<Long, LlapDataBuffer>>> getFiles() {
+    return cache;
+  }
+
   @Override
   public String debugDumpForOom() {
     StringBuilder sb = new StringBuilder("File cache state ");
@@ -23,6 +23,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
 
@@ -65,6 +66,7 @@ public boolean reserveMemory(final long memoryToReserve, boolean waitForEviction
     int badCallCount = 0;
     int nextLog = 4;
     long evictedTotalMetric = 0, reservedTotalMetric = 0, remainingToReserve = memoryToReserve;
+    long waitStartTime = 0;
     boolean result = true;
     while (remainingToReserve > 0) {
       long usedMem = usedMemory.get(), newUsedMem = usedMem + remainingToReserve;
@@ -76,6 +78,9 @@ public boolean reserveMemory(final long memoryToReserve, boolean waitForEviction
         continue;
       }
       if (evictor == null) return false;
+      if (waitStartTime == 0) {
+        waitStartTime = System.nanoTime();
+      }
       // TODO: for one-block case, we could move notification for the last block out of the loop.
       long evicted = evictor.evictSomeBlocks(remainingToReserve);
       if (evicted == 0) {
@@ -116,6 +121,11 @@ public boolean reserveMemory(final long memoryToReserve, boolean waitForEviction
       reservedTotalMetric = 0;
     }
     metrics.incrCacheCapacityUsed(reservedTotalMetric - evictedTotalMetric);
+    if (waitStartTime != 0) {
+      long waitTime = System.nanoTime() - waitStartTime;
+      metrics.incrCacheAllocatorWaitTime(waitTime);
+      LlapIoAttribution.recordAllocatorWait(waitTime);
+    }
     return result;
   }
 
@@ -141,6 +151,13 @@ public void debugDumpShort(StringBuilder sb) {
     evictor.debugDumpShort(sb);
   }
 
+  /**
+   * @return The memory that can currently be reserved without evicting anything.
+   */
+  public long getAvailableMemory() {
+    return maxSize - usedMemory.get();
+  }
+
   @Override
   public void updateMaxSize(long maxSize) {
     this.maxSize = maxSize;
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.hadoop.hive.common.io.Allocator;
+import org.apache.hadoop.hive.common.io.Allocator.AllocatorOutOfMemoryException;
+import org.apache.hadoop.hive.common.io.Allocator.BufferObjectFactory;
+import org.apache.hadoop.hive.common.io.DiskRange;
+import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.ql.io.SyntheticFileId;
+
+/**
+ * Saves the contents of the low level cache to a local directory when the daemon stops, and
+ * loads them back when it starts, so that a restarted daemon does not begin with a cold cache.
+ *
+ * The snapshot is an index file with one entry per cached range (file key, offset, cached
+ * length, data length, priority and the position of the data), and a data file with the
+ * buffer contents. Entries are written in the order of decreasing cache priority, and only
+ * file keys that identify immutable file contents (inode IDs and synthetic file IDs, which
+ * include the modification time and the length) are saved, so the data is valid as long as
+ * the key is; ranges of deleted files simply age out of the cache.
+ */
+public class LowLevelCacheSnapshot {
+  private static final int MAGIC = 0x4c4c4143; // "LLAC"
+  private static final int VERSION = 1;
+  private static final String INDEX_FILE = "llap-cache.index", DATA_FILE = "llap-cache.data",
+      TMP_SUFFIX = ".tmp";
+  private static final byte KEY_LONG = 0, KEY_SYNTHETIC = 1;
+
+  private static final class Entry {
+    private final Object fileKey;
+    private final long offset;
+    private final LlapDataBuffer buffer;
+    private final double priority;
+    private int cachedLength, dataLength;
+    private long dataPos;
+    private String tag;
+
+    private Entry(Object fileKey, long offset, LlapDataBuffer buffer, double priority) {
+      this.fileKey = fileKey;
+      this.offset = offset;
+      this.buffer = buffer;
+      this.priority = priority;
+    }
+  }
+
+  private final File dir;
+
+  public LowLevelCacheSnapshot(String dir) {
+    this.dir = new File(dir);
+  }
+
+  /**
+   * Writes the cache contents to the snapshot directory, replacing the old snapshot.
+   * @param maxBytes The maximum data size to save.
+   * @return The number of bytes saved.
+   */
+  public long save(LowLevelCacheImpl cache, long maxBytes) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    for (Map.Entry<Object, FileCache<ConcurrentSkipListMap<Long, LlapDataBuffer>>> e :
+        cache.getFiles().entrySet()) {
+      Object fileKey = e.getKey();
+      if (!(fileKey instanceof Long || fileKey instanceof SyntheticFileId)) continue;
+      if (!e.getValue().incRef()) continue;
+      try {
+        for (Map.Entry<Long, LlapDataBuffer> e2 : e.getValue().getCache().entrySet()) {
+          LlapDataBuffer buffer = e2.getValue();
+          entries.add(new Entry(fileKey, e2.getKey(), buffer, buffer.priority));
+        }
+      } finally {
+        e.getValue().decRef();
+      }
+    }
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry o1, Entry o2) {
+        return Double.compare(o2.priority, o1.priority);
+      }
+    });
+
+    File dataTmp = new File(dir, DATA_FILE + TMP_SUFFIX);
+    List<Entry> saved = new ArrayList<>();
+    long dataPos = 0;
+    try (FileOutputStream dataOut = new FileOutputStream(dataTmp)) {
+      WritableByteChannel channel = dataOut.getChannel();
+      for (Entry entry : entries) {
+        if (dataPos >= maxBytes) break;
+        LlapDataBuffer buffer = entry.buffer;
+        if (buffer.tryIncRef() < 0) continue; // Evicted or being moved.
+        try {
+          if (buffer.declaredCachedLength == LlapDataBuffer.UNKNOWN_CACHED_LENGTH) continue;
+          ByteBuffer data = buffer.getByteBufferDup();
+          entry.cachedLength = buffer.declaredCachedLength;
+          entry.dataLength = data.remaining();
+          entry.tag = buffer.getTag();
+          entry.dataPos = dataPos;
+          while (data.hasRemaining()) {
+            channel.write(data);
+          }
+        } finally {
+          buffer.decRef();
+        }
+        dataPos += entry.dataLength;
+        saved.add(entry);
+      }
+    }
+
+    File indexTmp = new File(dir, INDEX_FILE + TMP_SUFFIX);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(indexTmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(saved.size());
+      for (Entry entry : saved) {
+        if (entry.fileKey instanceof Long) {
+          out.writeByte(KEY_LONG);
+          out.writeLong((Long) entry.fileKey);
+        } else {
+          out.writeByte(KEY_SYNTHETIC);
+          ((SyntheticFileId) entry.fileKey).write(out);
+        }
+        out.writeLong(entry.offset);
+        out.writeInt(entry.cachedLength);
+        out.writeInt(entry.dataLength);
+        out.writeLong(entry.dataPos);
+        out.writeBoolean(entry.tag != null);
+        if (entry.tag != null) {
+          out.writeUTF(entry.tag);
+        }
+      }
+    }
+    // Replace the data first; a data file without a matching index is never read.
+    File index = new File(dir, INDEX_FILE);
+    if (index.exists() && !index.delete()) {
+      throw new IOException("Cannot delete " + index);
+    }
+    rename(dataTmp, new File(dir, DATA_FILE));
+    rename(indexTmp, index);
+    LlapIoImpl.LOG.info("Saved " + saved.size() + " cache buffers (" + dataPos + " bytes) to "
+        + dir);
+    return dataPos;
+  }
+
+  /**
+   * Loads the cache contents saved by save into the cache, as long as there's memory, and
+   * deletes the snapshot. The buffers with the highest priority are cached last.
+   * @return The number of bytes loaded.
+   */
+  public long load(LowLevelCacheImpl cache) throws IOException {
+    File index = new File(dir, INDEX_FILE), data = new File(dir, DATA_FILE);
+    if (!index.exists() || !data.exists()) {
+      LlapIoImpl.LOG.info("No cache snapshot found in " + dir);
+      return 0;
+    }
+    List<Entry> entries = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(index)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LlapIoImpl.LOG.warn("Ignoring the cache snapshot in " + dir + " of unknown format");
+        return 0;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; ++i) {
+        Object fileKey;
+        byte keyType = in.readByte();
+        if (keyType == KEY_LONG) {
+          fileKey = in.readLong();
+        } else if (keyType == KEY_SYNTHETIC) {
+          SyntheticFileId id = new SyntheticFileId();
+          id.readFields(in);
+          fileKey = id;
+        } else {
+          throw new IOException("Unknown file key type " + keyType);
+        }
+        Entry entry = new Entry(fileKey, in.readLong(), null, 0);
+        entry.cachedLength = in.readInt();
+        entry.dataLength = in.readInt();
+        entry.dataPos = in.readLong();
+        entry.tag = in.readBoolean() ? in.readUTF() : null;
+        entries.add(entry);
+      }
+    } catch (EOFException ex) {
+      LlapIoImpl.LOG.warn("Ignoring the truncated cache snapshot in " + dir);
+      return 0;
+    }
+
+    Allocator allocator = cache.getAllocator();
+    BufferObjectFactory factory = new BufferObjectFactory() {
+      @Override
+      public MemoryBuffer create() {
+        return new LlapDataBuffer();
+      }
+    };
+    long loaded = 0;
+    int loadedCount = 0;
+    try (RandomAccessFile dataFile = new RandomAccessFile(data, "r")) {
+      FileChannel channel = dataFile.getChannel();
+      for (int i = entries.size() - 1; i >= 0; --i) {
+        Entry entry = entries.get(i);
+        if (entry.dataLength > allocator.getMaxAllocation() || entry.dataLength == 0
+            || entry.dataPos + entry.dataLength > channel.size()) {
+          continue;
+        }
+        MemoryBuffer[] buffers = new MemoryBuffer[1];
+        try {
+          allocator.allocateMultiple(buffers, entry.dataLength, factory);
+        } catch (AllocatorOutOfMemoryException ex) {
+          LlapIoImpl.LOG.info("Cannot load more of the cache snapshot: " + ex.getMessage());
+          break;
+        }
+        LlapDataBuffer buffer = (LlapDataBuffer) buffers[0];
+        ByteBuffer dest = buffer.getByteBufferRaw();
+        int startPos = dest.position();
+        dest.limit(startPos + entry.dataLength);
+        long pos = entry.dataPos;
+        try {
+          while (dest.hasRemaining()) {
+            int read = channel.read(dest, pos);
+            if (read < 0) throw new EOFException("Unexpected end of " + data);
+            pos += read;
+          }
+        } catch (IOException ex) {
+          allocator.deallocate(buffer);
+          throw ex;
+        }
+        dest.position(startPos);
+        DiskRange[] ranges = new DiskRange[] {
+            new DiskRange(entry.offset, entry.offset + entry.cachedLength) };
+        long[] replaced = cache.putFileData(
+            entry.fileKey, ranges, buffers, 0, Priority.NORMAL, null, entry.tag);
+        if (replaced != null) {
+          // Already cached; the cached buffer is returned locked, and ours is not used.
+          allocator.deallocate(buffer);
+        } else {
+          loaded += entry.dataLength;
+          ++loadedCount;
+        }
+        cache.decRefBuffer(buffers[0]);
+      }
+    } finally {
+      if (!index.delete() || !data.delete()) {
+        LlapIoImpl.LOG.warn("Failed to delete the cache snapshot in " + dir);
+      }
+    }
+    LlapIoImpl.LOG.info("Loaded " + loadedCount + " of " + entries.size() + " cache buffers ("
+        + loaded + " bytes) from " + dir);
+    return loaded;
+  }
+
+  private static void rename(File src, File dest) throws IOException {
+    if (dest.exists() && !dest.delete()) {
+      throw new IOException("Cannot delete " + dest);
+    }
+    if (!src.renameTo(dest)) {
+      throw new IOException("Cannot rename " + src + " to " + dest);
+    }
+  }
+}
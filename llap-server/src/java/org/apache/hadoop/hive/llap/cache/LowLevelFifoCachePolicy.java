@@ -40,10 +40,14 @@ public LowLevelFifoCachePolicy() {
 
   @Override
   public void cache(LlapCacheableBuffer buffer, Priority pri) {
-    // Ignore priority.
+    // Ignore priority, except that low priority buffers are evicted first.
     lock.lock();
     try {
-      buffers.add(buffer);
+      if (pri == Priority.LOW) {
+        buffers.addFirst(buffer);
+      } else {
+        buffers.add(buffer);
+      }
     } finally {
       lock.unlock();
     }
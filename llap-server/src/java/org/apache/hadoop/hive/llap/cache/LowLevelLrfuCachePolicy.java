@@ -97,6 +97,10 @@ public void cache(LlapCacheableBuffer buffer, Priority priority) {
       // to start with. Think of the multiplier as the number of accesses after which the data
       // becomes more important than some random read-once metadata, in a pure-LFU scheme.
       buffer.priority *= 3;
+    } else if (priority == Priority.LOW) {
+      // Zero priority is never produced by touching the buffer, so it marks the low priority
+      // buffers for the first notifyUnlock.
+      buffer.priority = 0;
     } else {
       assert priority == Priority.NORMAL;
     }
@@ -121,10 +125,18 @@ public void notifyUnlock(LlapCacheableBuffer buffer) {
       LlapIoImpl.CACHE_LOGGER.trace("Touching {} at {}", buffer, time);
     }
     synchronized (heap) {
+      boolean isNewLowPriority = buffer.priority == 0
+          && buffer.indexInHeap == LlapCacheableBuffer.NOT_IN_CACHE;
       // First, update buffer priority - we have just been using it.
       buffer.priority = (buffer.lastUpdate == -1) ? F0
           : touchPriority(time, buffer.lastUpdate, buffer.priority);
       buffer.lastUpdate = time;
+      if (isNewLowPriority && heapSize == heap.length) {
+        // Low priority data that is not in cache yet should not push anything out of the heap;
+        // put it at the tail of the list, to be evicted before everything else.
+        addToListTail(buffer);
+        return;
+      }
       // Then, if the buffer was in the list, remove it.
       if (buffer.indexInHeap == LlapCacheableBuffer.IN_LIST) {
         listLock.lock();
@@ -355,6 +367,24 @@ private void removeFromListAndUnlock(LlapCacheableBuffer buffer) {
     }
   }
 
+  private void addToListTail(LlapCacheableBuffer buffer) {
+    listLock.lock();
+    try {
+      buffer.indexInHeap = LlapCacheableBuffer.IN_LIST;
+      buffer.next = null;
+      if (listTail != null) {
+        buffer.prev = listTail;
+        listTail.next = buffer;
+        listTail = buffer;
+      } else {
+        buffer.prev = null;
+        listHead = listTail = buffer;
+      }
+    } finally {
+      listLock.unlock();
+    }
+  }
+
   private void removeFromListUnderLock(LlapCacheableBuffer buffer) {
     buffer.indexInHeap = LlapCacheableBuffer.NOT_IN_CACHE;
     boolean isTail = buffer == listTail, isHead = buffer == listHead;
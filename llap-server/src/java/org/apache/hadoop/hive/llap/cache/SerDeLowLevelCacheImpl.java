@@ -52,6 +52,7 @@ public class SerDeLowLevelCacheImpl implements BufferUsageManager, LlapOomDebugD
   private final LowLevelCachePolicy cachePolicy;
   private final long cleanupInterval;
   private final LlapDaemonCacheMetrics metrics;
+  private LowLevelCacheAdmissionFilter admissionFilter;
 
   public static final class LlapSerDeDataBuffer extends LlapAllocatorBuffer {
     public boolean isCached = false;
@@ -264,6 +265,10 @@ public SerDeLowLevelCacheImpl(
     LlapIoImpl.LOG.info("SerDe low-level level cache; cleanup interval {} sec", cleanupInterval);
   }
 
+  public void setAdmissionFilter(LowLevelCacheAdmissionFilter admissionFilter) {
+    this.admissionFilter = admissionFilter;
+  }
+
   public void startThreads() {
     if (cleanupInterval < 0) return;
     cleanupThread = new CleanupThread(cache, newEvictions, cleanupInterval);
@@ -405,7 +410,7 @@ private void getCacheDataForOneSlice(int stripeIx, FileData cached, FileData res
     }
     StripeData stripe = StripeData.duplicateStructure(cStripe);
     result.stripes.add(stripe);
-    boolean isMissed = false;
+    boolean isMissed = false, isEvicted = false;
     for (int colIx = 0; colIx < cached.colCount; ++colIx) {
       if (!includes[colIx]) continue;
       if (cStripe.encodings[colIx] == null || cStripe.data[colIx] == null) {
@@ -435,7 +440,7 @@ private void getCacheDataForOneSlice(int stripeIx, FileData cached, FileData res
 
             handleRemovedColumnData(cColData);
             cColData = null;
-            isMissed = true;
+            isMissed = isEvicted = true;
             if (gotAllData != null) {
               gotAllData.value = false;
             }
@@ -450,12 +455,12 @@ private void getCacheDataForOneSlice(int stripeIx, FileData cached, FileData res
         stripe.encodings[colIx] = null;
       }
     }
-    doMetricsStuffForOneSlice(qfCounters, stripe, isMissed);
+    doMetricsStuffForOneSlice(qfCounters, stripe, isMissed, isEvicted);
   }
 
 
   private void doMetricsStuffForOneSlice(
-      LowLevelCacheCounters qfCounters, StripeData stripe, boolean isMissed) {
+      LowLevelCacheCounters qfCounters, StripeData stripe, boolean isMissed, boolean isEvicted) {
     // Slice boundaries may not match split boundaries due to torn rows in either direction,
     // so this counter may not be consistent with splits. This is also why we increment
     // requested bytes here, instead of based on the split - we don't want the metrics to be
@@ -465,10 +470,15 @@ private void doMetricsStuffForOneSlice(
     metrics.incrCacheRequestedBytes(bytes);
     if (!isMissed) {
       metrics.incrCacheHitBytes(bytes);
+    } else if (isEvicted) {
+      metrics.incrCacheEvictionMissBytes(bytes);
     }
     if (qfCounters != null) {
       if (isMissed) {
         qfCounters.recordCacheMiss(bytes);
+        if (isEvicted) {
+          qfCounters.recordEvictionMiss(bytes);
+        }
       } else {
         qfCounters.recordCacheHit(bytes);
       }
@@ -529,7 +539,7 @@ public FileData apply(Void input) {
       }
       try {
         for (StripeData si : data.stripes) {
-          lockAllBuffersForPut(si, priority, tag);
+          lockAllBuffersForPut(data.fileKey, si, priority, tag);
         }
         if (data == cached) {
           if (LlapIoImpl.CACHE_LOGGER.isTraceEnabled()) {
@@ -574,10 +584,14 @@ public FileData apply(Void input) {
     }
   }
 
-  private void lockAllBuffersForPut(StripeData si, Priority priority, String tag) {
+  private void lockAllBuffersForPut(
+      Object fileKey, StripeData si, Priority priority, String tag) {
     for (int i = 0; i < si.data.length; ++i) {
       LlapSerDeDataBuffer[][] colData = si.data[i];
       if (colData == null) continue;
+      // The slice start and the column identify the data; see the admission filter.
+      Priority colPriority = admissionFilter == null ? priority
+          : admissionFilter.admit(fileKey, si.firstStart * 31 + i, priority);
       for (int j = 0; j < colData.length; ++j) {
         LlapSerDeDataBuffer[] streamData = colData[j];
         if (streamData == null) continue;
@@ -585,7 +599,7 @@ private void lockAllBuffersForPut(StripeData si, Priority priority, String tag)
           boolean canLock = lockBuffer(streamData[k], false); // false - not in cache yet
           assert canLock;
           streamData[k].setTag(tag);
-          cachePolicy.cache(streamData[k], priority);
+          cachePolicy.cache(streamData[k], colPriority);
           streamData[k].isCached = true;
         }
       }
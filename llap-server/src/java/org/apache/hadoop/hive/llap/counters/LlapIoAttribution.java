@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.counters;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.orc.TypeDescription.Category;
+import org.codehaus.jackson.JsonGenerator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Attributes the LLAP IO work to the queries and the tables it is done for, so that it's possible
+ * to tell which of them use (or thrash) the cache, and where the decoding time goes. The stats
+ * are striped counters, so the IO threads can update them without contention; only the stats
+ * for the most recently used queries and tables are kept.
+ */
+public class LlapIoAttribution {
+  public enum Stat {
+    CACHE_HIT_BYTES,
+    CACHE_MISS_BYTES,
+    /** The misses on the data that was in the cache, but has been evicted. */
+    CACHE_EVICTION_MISS_BYTES,
+    /** The time spent waiting for the cache to evict the data to allocate the new buffers. */
+    ALLOCATOR_WAIT_NS
+  }
+
+  /** The stats for a query or a table. */
+  public static final class Usage {
+    private final LongAdder[] stats = createAdders(Stat.values().length);
+    /** Decoding time per ORC column type. */
+    private final LongAdder[] decodeTimes = createAdders(Category.values().length);
+
+    void add(Stat stat, long delta) {
+      stats[stat.ordinal()].add(delta);
+    }
+
+    void addDecodeTime(Category category, long timeNs) {
+      decodeTimes[category.ordinal()].add(timeNs);
+    }
+
+    public long get(Stat stat) {
+      return stats[stat.ordinal()].sum();
+    }
+
+    public long getDecodeTime(Category category) {
+      return decodeTimes[category.ordinal()].sum();
+    }
+
+    private static LongAdder[] createAdders(int count) {
+      LongAdder[] result = new LongAdder[count];
+      for (int i = 0; i < count; ++i) {
+        result[i] = new LongAdder();
+      }
+      return result;
+    }
+  }
+
+  /** The fragment that the IO thread is currently reading the data for. */
+  private static final ThreadLocal<QueryFragmentCounters> currentCounters = new ThreadLocal<>();
+
+  private final Cache<String, Usage> queries, tables;
+
+  public LlapIoAttribution(int maxEntries) {
+    this.queries = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    this.tables = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+  }
+
+  public Usage getQueryUsage(String queryId) {
+    return getUsage(queries, queryId);
+  }
+
+  public Usage getTableUsage(String tableName) {
+    return getUsage(tables, tableName);
+  }
+
+  private static Usage getUsage(Cache<String, Usage> usages, String key) {
+    try {
+      return usages.get(key, new Callable<Usage>() {
+        @Override
+        public Usage call() {
+          return new Usage();
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new AssertionError(e); // The loader doesn't throw.
+    }
+  }
+
+  /**
+   * Sets the fragment that the IO work done on this thread is attributed to, for the work that
+   * is done too deep in the IO layers to pass the counters to (e.g. the allocation).
+   * @param counters The counters; null to reset.
+   */
+  public static void setCurrentCounters(QueryFragmentCounters counters) {
+    if (counters == null) {
+      currentCounters.remove();
+    } else {
+      currentCounters.set(counters);
+    }
+  }
+
+  /**
+   * Records the time spent waiting for the allocation on this thread.
+   */
+  public static void recordAllocatorWait(long timeNs) {
+    QueryFragmentCounters counters = currentCounters.get();
+    if (counters != null) {
+      counters.recordAllocatorWait(timeNs);
+    }
+  }
+
+  /**
+   * Writes the stats for the recent queries and tables as JSON.
+   */
+  public void writeJson(JsonGenerator jg) throws IOException {
+    jg.writeStartObject();
+    writeJson(jg, "queries", queries);
+    writeJson(jg, "tables", tables);
+    jg.writeEndObject();
+  }
+
+  private static void writeJson(
+      JsonGenerator jg, String name, Cache<String, Usage> usages) throws IOException {
+    jg.writeArrayFieldStart(name);
+    for (Map.Entry<String, Usage> e : usages.asMap().entrySet()) {
+      Usage usage = e.getValue();
+      jg.writeStartObject();
+      jg.writeStringField("name", e.getKey());
+      for (Stat stat : Stat.values()) {
+        jg.writeNumberField(stat.name(), usage.get(stat));
+      }
+      jg.writeObjectFieldStart("DECODE_TIME_NS");
+      for (Category category : Category.values()) {
+        long timeNs = usage.getDecodeTime(category);
+        if (timeNs == 0) continue;
+        jg.writeNumberField(category.name(), timeNs);
+      }
+      jg.writeEndObject();
+      jg.writeEndObject();
+    }
+    jg.writeEndArray();
+  }
+}
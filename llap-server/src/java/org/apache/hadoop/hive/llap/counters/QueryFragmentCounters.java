@@ -23,6 +23,9 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.llap.cache.LowLevelCacheCounters;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution.Stat;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution.Usage;
+import org.apache.orc.TypeDescription.Category;
 import org.apache.tez.common.counters.TezCounters;
 
 /**
@@ -41,12 +44,27 @@ public static enum Desc {
   private final AtomicLongArray fixedCounters;
   private final Object[] descs;
   private final TezCounters tezCounters;
+  private final LlapIoAttribution attribution;
+  private final Usage queryUsage;
+  private volatile Usage tableUsage;
 
   public QueryFragmentCounters(Configuration conf, final TezCounters tezCounters) {
+    this(conf, tezCounters, null, null);
+  }
+
+  /**
+   * @param attribution The daemon-wide attribution stats to also update; null if not tracked.
+   * @param queryId The query to attribute the IO work to.
+   */
+  public QueryFragmentCounters(Configuration conf, final TezCounters tezCounters,
+      LlapIoAttribution attribution, String queryId) {
     fixedCounters = new AtomicLongArray(LlapIOCounters.values().length);
     descs = new Object[Desc.values().length];
     doUseTimeCounters = HiveConf.getBoolVar(conf, ConfVars.LLAP_ORC_ENABLE_TIME_COUNTERS);
     this.tezCounters = tezCounters;
+    this.attribution = attribution;
+    this.queryUsage = (attribution == null || queryId == null)
+        ? null : attribution.getQueryUsage(queryId);
     if (!doUseTimeCounters) {
       setCounter(LlapIOCounters.TOTAL_IO_TIME_NS, -1);
       setCounter(LlapIOCounters.DECODE_TIME_NS, -1);
@@ -89,16 +107,64 @@ public void setCounter(LlapIOCounters counter, long value) {
 
   public void setDesc(Desc key, Object desc) {
     descs[key.ordinal()] = desc;
+    if (key == Desc.TABLE && attribution != null && desc != null) {
+      tableUsage = attribution.getTableUsage(desc.toString());
+    }
+  }
+
+  private void addUsage(Stat stat, long delta) {
+    if (queryUsage != null) {
+      queryUsage.add(stat, delta);
+    }
+    Usage tableUsage = this.tableUsage;
+    if (tableUsage != null) {
+      tableUsage.add(stat, delta);
+    }
   }
 
   @Override
   public void recordCacheHit(long bytesHit) {
     incrCounter(LlapIOCounters.CACHE_HIT_BYTES, bytesHit);
+    addUsage(Stat.CACHE_HIT_BYTES, bytesHit);
   }
 
   @Override
   public void recordCacheMiss(long bytesMissed) {
     incrCounter(LlapIOCounters.CACHE_MISS_BYTES, bytesMissed);
+    addUsage(Stat.CACHE_MISS_BYTES, bytesMissed);
+  }
+
+  @Override
+  public void recordEvictionMiss(long bytesMissed) {
+    addUsage(Stat.CACHE_EVICTION_MISS_BYTES, bytesMissed);
+  }
+
+  public void recordAllocatorWait(long timeNs) {
+    addUsage(Stat.ALLOCATOR_WAIT_NS, timeNs);
+  }
+
+  /**
+   * Starts the timer for decoding a single column; unlike startTimeCounter, only runs when the
+   * decoding time is attributed to the queries and tables.
+   */
+  public long startColumnDecodeTimer() {
+    return (doUseTimeCounters && attribution != null) ? System.nanoTime() : 0;
+  }
+
+  /**
+   * @return The time the column took to decode; 0 if the timer has not been started.
+   */
+  public long recordColumnDecodeTime(Category category, long startTime) {
+    if (startTime == 0) return 0;
+    long timeNs = System.nanoTime() - startTime;
+    if (queryUsage != null) {
+      queryUsage.addDecodeTime(category, timeNs);
+    }
+    Usage tableUsage = this.tableUsage;
+    if (tableUsage != null) {
+      tableUsage.addDecodeTime(category, timeNs);
+    }
+    return timeNs;
   }
 
   @Override
@@ -143,7 +143,7 @@ public ContainerRunnerImpl(Configuration conf, int numExecutors, int waitQueueSi
     String waitQueueSchedulerClassName = HiveConf.getVar(
         conf, ConfVars.LLAP_DAEMON_WAIT_QUEUE_COMPARATOR_CLASS_NAME);
     this.executorService = new TaskExecutorService(numExecutors, waitQueueSize,
-        waitQueueSchedulerClassName, enablePreemption, classLoader, metrics, null);
+        waitQueueSchedulerClassName, enablePreemption, classLoader, metrics, null, conf);
     completionListener = (SchedulerFragmentCompletingListener) executorService;
 
     addIfService(executorService);
@@ -412,6 +412,10 @@ public QueryCompleteResponseProto queryComplete(
         executorService.killFragment(fragmentInfo.getFragmentIdentifierString());
       }
       amReporter.queryComplete(queryIdentifier);
+      if (metrics != null) {
+        metrics.removeQueryMetrics(constructUniqueQueryId(
+            queryInfo.getHiveQueryIdString(), queryInfo.getDagIdentifier()));
+      }
     }
     return QueryCompleteResponseProto.getDefaultInstance();
   }
@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hive.llap.daemon.impl;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,6 +107,18 @@ public synchronized boolean remove(E e) {
     return removed;
   }
 
+  /**
+   * Re-sorts the queue; used when the priorities of the elements may have changed, e.g. when the
+   * comparator depends on some state that has been updated.
+   */
+  public synchronized void reorder() {
+    List<E> elements = new ArrayList<>(deque.size());
+    deque.drainTo(elements);
+    for (E e : elements) {
+      offerToDequeueInternal(e);
+    }
+  }
+
   private void offerToDequeueInternal(E e) {
     boolean result = deque.offer(e);
     if (!result) {
@@ -216,8 +216,11 @@ public LlapDaemon(Configuration daemonConf, int numExecutors, long executorMemor
 
     this.shuffleHandlerConf = new Configuration(daemonConf);
     this.shuffleHandlerConf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, shufflePort);
+    // The shuffle handler also serves the output that the queries write to the memory dir.
+    String shuffleMemoryDir = HiveConf.getVar(daemonConf, ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR);
     this.shuffleHandlerConf.set(ShuffleHandler.SHUFFLE_HANDLER_LOCAL_DIRS,
-        StringUtils.arrayToString(localDirs));
+        StringUtils.arrayToString(localDirs) +
+        (shuffleMemoryDir.isEmpty() ? "" : "," + shuffleMemoryDir));
     this.shuffleHandlerConf.setBoolean(ShuffleHandler.SHUFFLE_DIR_WATCHER_ENABLED,
         HiveConf.getBoolVar(daemonConf, ConfVars.LLAP_DAEMON_SHUFFLE_DIR_WATCHER_ENABLED));
 
@@ -14,6 +14,7 @@
 
 package org.apache.hadoop.hive.llap.daemon.impl;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.concurrent.Executors;
@@ -46,6 +47,7 @@
 import org.slf4j.Marker;
 import org.slf4j.MDC;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
@@ -71,6 +73,12 @@ public class QueryTracker extends AbstractService {
   private final ConcurrentHashMap<QueryIdentifier, QueryInfo> queryInfoMap = new ConcurrentHashMap<>();
 
   private final String[] localDirsBase;
+  // A memory-backed dir, followed by localDirsBase, for the queries that start while the memory
+  // dir has at least memoryDirMinFree bytes of free space; null if disabled. The memory dir is just
+  // one more dir to Tez, which rotates the output files over the dirs with room for them, so it
+  // only gets about 1/(localDirsBase.length + 1) of the output of such a query.
+  private final String[] memoryDirBase;
+  private final long memoryDirMinFree;
   private final FileSystem localFs;
   private final String clusterId;
   private final long defaultDeleteDelaySeconds;
@@ -107,8 +115,20 @@ public QueryTracker(Configuration conf, String[] localDirsBase, String clusterId
     super("QueryTracker");
     this.localDirsBase = localDirsBase;
     this.clusterId = clusterId;
+    String memoryDir = HiveConf.getVar(conf, ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR);
+    if (memoryDir.isEmpty()) {
+      this.memoryDirBase = null;
+    } else {
+      this.memoryDirBase = new String[localDirsBase.length + 1];
+      this.memoryDirBase[0] = memoryDir;
+      System.arraycopy(localDirsBase, 0, this.memoryDirBase, 1, localDirsBase.length);
+    }
+    this.memoryDirMinFree = HiveConf.getSizeVar(conf, ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE);
     try {
       localFs = FileSystem.getLocal(conf);
+      if (memoryDirBase != null) {
+        localFs.mkdirs(new Path(memoryDirBase[0]));
+      }
     } catch (IOException e) {
       throw new RuntimeException("Failed to setup local filesystem instance", e);
     }
@@ -128,8 +148,28 @@ public QueryTracker(Configuration conf, String[] localDirsBase, String clusterId
       routeBasedLoggingEnabled = false;
     }
     LOG.info(
-        "QueryTracker setup with numCleanerThreads={}, defaultCleanupDelay(s)={}, routeBasedLogging={}",
-        numCleanerThreads, defaultDeleteDelaySeconds, routeBasedLoggingEnabled);
+        "QueryTracker setup with numCleanerThreads={}, defaultCleanupDelay(s)={}, routeBasedLogging={}, memoryDir={}",
+        numCleanerThreads, defaultDeleteDelaySeconds, routeBasedLoggingEnabled, memoryDir);
+  }
+
+  /**
+   * Picks the base dirs for the output of a new query: the memory dir along with the work dirs,
+   * if the memory dir has enough free space, or only the work dirs otherwise. The memory dir is not
+   * preferred over the work dirs; Tez's LocalDirAllocator spreads the output over all of them. The
+   * choice is made once per query, so that all the fragments of the query in this daemon (and the
+   * shuffle handler) agree on where the output can be.
+   */
+  @VisibleForTesting
+  String[] chooseLocalDirsBase() {
+    if (memoryDirBase != null) {
+      long freeSpace = new File(memoryDirBase[0]).getUsableSpace();
+      if (freeSpace >= memoryDirMinFree) {
+        return memoryDirBase;
+      }
+      LOG.info("Not using the memory dir {} for a new query; free space is {}",
+          memoryDirBase[0], freeSpace);
+    }
+    return localDirsBase;
   }
 
   /**
@@ -168,7 +208,7 @@ QueryFragmentInfo registerFragment(QueryIdentifier queryIdentifier, String appId
         queryInfo =
             new QueryInfo(queryIdentifier, appIdString, dagIdString, dagName, hiveQueryIdString,
                 dagIdentifier, user,
-                getSourceCompletionMap(queryIdentifier), localDirsBase, localFs,
+                getSourceCompletionMap(queryIdentifier), chooseLocalDirsBase(), localFs,
                 tokenInfo.userName, tokenInfo.appId, amNodeId, vertex.getTokenIdentifier(), appToken,
                 vertex.getIsExternalSubmission());
         QueryInfo old = queryInfoMap.putIfAbsent(queryIdentifier, queryInfo);
@@ -44,12 +44,20 @@
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.llap.counters.FragmentCountersMap;
 import org.apache.hadoop.hive.llap.daemon.FinishableStateUpdateHandler;
 import org.apache.hadoop.hive.llap.daemon.SchedulerFragmentCompletingListener;
+import org.apache.hadoop.hive.llap.daemon.impl.comparator.ExecutorUsageTracker;
+import org.apache.hadoop.hive.llap.daemon.impl.comparator.FairShareComparator;
 import org.apache.hadoop.hive.llap.daemon.impl.comparator.LlapQueueComparatorBase;
 import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.FragmentRuntimeInfo;
 import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.SignableVertexSpec;
+import org.apache.hadoop.hive.llap.io.api.LlapIo;
+import org.apache.hadoop.hive.llap.io.api.LlapProxy;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoPrefetcher;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorMetrics;
 import org.apache.hadoop.hive.llap.tezplugins.helpers.MonotonicClock;
 import org.apache.hadoop.service.AbstractService;
@@ -95,6 +103,7 @@ public class TaskExecutorService extends AbstractService
   private static final String WAIT_QUEUE_SCHEDULER_THREAD_NAME_FORMAT = "Wait-Queue-Scheduler-%d";
   private static final long PREEMPTION_KILL_GRACE_MS = 500; // 500ms
   private static final int PREEMPTION_KILL_GRACE_SLEEP_MS = 50; // 50ms
+  private static final long USAGE_REFRESH_INTERVAL_MS = 1000;
 
 
   private final AtomicBoolean isShutdown = new AtomicBoolean(false);
@@ -115,6 +124,9 @@ public class TaskExecutorService extends AbstractService
   private final AtomicInteger numSlotsAvailable;
   private final int maxParallelExecutors;
   private final Clock clock;
+  // Executor time used by queries and pools; only set for the fair share scheduler.
+  private final ExecutorUsageTracker usageTracker;
+  private long nextUsageRefreshMs = 0;
 
   // Tracks running fragments, and completing fragments.
   // Completing since we have a race in the AM being notified and the task actually
@@ -138,6 +150,14 @@ public class TaskExecutorService extends AbstractService
   public TaskExecutorService(int numExecutors, int waitQueueSize,
       String waitQueueComparatorClassName, boolean enablePreemption,
       ClassLoader classLoader, final LlapDaemonExecutorMetrics metrics, Clock clock) {
+    this(numExecutors, waitQueueSize, waitQueueComparatorClassName, enablePreemption,
+        classLoader, metrics, clock, null);
+  }
+
+  public TaskExecutorService(int numExecutors, int waitQueueSize,
+      String waitQueueComparatorClassName, boolean enablePreemption,
+      ClassLoader classLoader, final LlapDaemonExecutorMetrics metrics, Clock clock,
+      Configuration conf) {
     super(TaskExecutorService.class.getSimpleName());
     LOG.info("TaskExecutorService is being setup with parameters: "
         + "numExecutors=" + numExecutors
@@ -146,7 +166,9 @@ public TaskExecutorService(int numExecutors, int waitQueueSize,
         + ", enablePreemption=" + enablePreemption);
 
     final LlapQueueComparatorBase waitQueueComparator = createComparator(
-        waitQueueComparatorClassName);
+        waitQueueComparatorClassName, conf);
+    this.usageTracker = (waitQueueComparator instanceof FairShareComparator)
+        ? ((FairShareComparator) waitQueueComparator).getUsageTracker() : null;
     this.maxParallelExecutors = numExecutors;
     this.waitQueue = new EvictingPriorityBlockingQueue<>(waitQueueComparator, waitQueueSize);
     this.clock = clock == null ? new MonotonicClock() : clock;
@@ -156,7 +178,7 @@ public TaskExecutorService(int numExecutors, int waitQueueSize,
         new ExecutorThreadFactory(classLoader));
     this.executorService = MoreExecutors.listeningDecorator(threadPoolExecutor);
     this.preemptionQueue = new PriorityBlockingQueue<>(numExecutors,
-        new PreemptionQueueComparator());
+        new PreemptionQueueComparator(usageTracker));
     this.enablePreemption = enablePreemption;
     this.numSlotsAvailable = new AtomicInteger(numExecutors);
     this.metrics = metrics;
@@ -179,7 +201,7 @@ public TaskExecutorService(int numExecutors, int waitQueueSize,
   }
 
   private LlapQueueComparatorBase createComparator(
-      String waitQueueComparatorClassName) {
+      String waitQueueComparatorClassName, Configuration conf) {
     final LlapQueueComparatorBase waitQueueComparator;
     try {
       Class<? extends LlapQueueComparatorBase> waitQueueComparatorClazz =
@@ -187,6 +209,9 @@ private LlapQueueComparatorBase createComparator(
       Constructor<? extends LlapQueueComparatorBase> ctor =
           waitQueueComparatorClazz.getConstructor(null);
       waitQueueComparator = ctor.newInstance(null);
+      if (conf != null && waitQueueComparator instanceof Configurable) {
+        ((Configurable) waitQueueComparator).setConf(conf);
+      }
     } catch (ClassNotFoundException e) {
       throw new RuntimeException(
           "Failed to load wait queue comparator, class=" + waitQueueComparatorClassName, e);
@@ -335,6 +360,7 @@ public void run() {
             nextSanityCheck = null;
           }
           synchronized (lock) {
+            refreshUsageUnderLock();
             // Since schedule() can be called from multiple threads, we peek the wait queue, try
             // scheduling the task and then remove the task if scheduling is successful. This
             // will make sure the task's place in the wait queue is held until it gets scheduled.
@@ -410,6 +436,27 @@ public void run() {
       }
     }
 
+    /**
+     * Refreshes the executor usage used by the fair share scheduler, and reorders the queues.
+     * Both queues are only modified under the epic lock, so they are consistent with it.
+     */
+    private void refreshUsageUnderLock() {
+      if (usageTracker == null) return;
+      long now = clock.getTime();
+      if (now < nextUsageRefreshMs) return;
+      nextUsageRefreshMs = now + USAGE_REFRESH_INTERVAL_MS;
+      if (!usageTracker.refresh(now)) return;
+      waitQueue.reorder();
+      List<TaskWrapper> preemptable = new ArrayList<>(preemptionQueue);
+      preemptionQueue.clear();
+      for (TaskWrapper task : preemptable) {
+        // Completing tasks are removed from the queue without the lock; don't re-add them.
+        if (task.isInPreemptionQueue()) {
+          preemptionQueue.offer(task);
+        }
+      }
+    }
+
     private void waitOnLock() throws InterruptedException {
       if (isShutdown.get()) return;
       nextSanityCheck = System.nanoTime() + SANITY_CHECK_TIMEOUT_MS * 1000000L;
@@ -468,6 +515,7 @@ public SubmissionState schedule(TaskRunnerCallable task) {
       if (evictedTask == null || !evictedTask.equals(taskWrapper)) {
         knownTasks.put(taskWrapper.getRequestId(), taskWrapper);
         taskWrapper.setIsInWaitQueue(true);
+        taskWrapper.setQueueStartTime(clock.getTime());
         task.setWmCountersQueued();
         if (LOG.isDebugEnabled()) {
           LOG.debug("{} added to wait queue. Current wait queue size={}", task.getRequestId(),
@@ -540,6 +588,13 @@ public SubmissionState schedule(TaskRunnerCallable task) {
         metrics.incrTotalEvictedFromWaitQueue();
       }
     }
+    if (numSlotsAvailable.get() <= 0) {
+      // The task has to wait for an executor; read ahead for it meanwhile.
+      LlapIoPrefetcher prefetcher = getIoPrefetcher();
+      if (prefetcher != null) {
+        task.prefetch(prefetcher);
+      }
+    }
     synchronized (lock) {
       lock.notifyAll();
     }
@@ -550,6 +605,12 @@ public SubmissionState schedule(TaskRunnerCallable task) {
     return result;
   }
 
+  private static LlapIoPrefetcher getIoPrefetcher() {
+    // LLAP IO is initialized after the executor service.
+    LlapIo<?> io = LlapProxy.getIo();
+    return io instanceof LlapIoImpl ? ((LlapIoImpl) io).getPrefetcher() : null;
+  }
+
   @Override
   public boolean updateFragment(String fragmentId, boolean isGuaranteed) {
     synchronized (lock) {
@@ -684,6 +745,10 @@ void tryScheduleUnderLock(final TaskWrapper taskWrapper) throws RejectedExecutio
     ListenableFuture<TaskRunner2Result> future = executorService.submit(task);
     runningFragmentCount.incrementAndGet();
     taskWrapper.setIsInWaitQueue(false);
+    if (metrics != null && taskWrapper.getQueueStartTime() > 0) {
+      metrics.addMetricsQueueWaitTime(
+          task.getQueryId(), clock.getTime() - taskWrapper.getQueueStartTime());
+    }
 
     FutureCallback<TaskRunner2Result> wrappedCallback = createInternalCompletionListener(
       taskWrapper);
@@ -927,6 +992,7 @@ public void onSuccess(TaskRunner2Result result) {
             taskWrapper.getRequestId());
       }
       updateFallOffStats(taskWrapper.getRequestId());
+      updateExecutorUsage();
       knownTasks.remove(taskWrapper.getRequestId());
       taskWrapper.setIsInPreemptableQueue(false);
       taskWrapper.maybeUnregisterForFinishedStateNotifications();
@@ -942,6 +1008,7 @@ public void onFailure(Throwable t) {
             taskWrapper.getRequestId());
       }
       updateFallOffStats(taskWrapper.getRequestId());
+      updateExecutorUsage();
       knownTasks.remove(taskWrapper.getRequestId());
       taskWrapper.setIsInPreemptableQueue(false);
       taskWrapper.maybeUnregisterForFinishedStateNotifications();
@@ -979,6 +1046,15 @@ private void updatePreemptionListAndNotify(EndReason reason) {
       }
     }
 
+    private void updateExecutorUsage() {
+      if (usageTracker == null) return;
+      TaskRunnerCallable trc = taskWrapper.getTaskRunnerCallable();
+      long startTime = trc.getStartTime();
+      if (startTime == 0) return; // The task has never started.
+      usageTracker.addExecutorTime(trc.getQueryId(), trc.getVertexSpec().getUser(),
+          System.currentTimeMillis() - startTime, clock.getTime());
+    }
+
     private void updateFallOffStats(
         String requestId) {
       long now = clock.getTime();
@@ -1054,6 +1130,15 @@ private void shutdownExecutor(ExecutorService executorService) {
 
   @VisibleForTesting
   public static class PreemptionQueueComparator implements Comparator<TaskWrapper> {
+    private final ExecutorUsageTracker usageTracker;
+
+    public PreemptionQueueComparator() {
+      this(null);
+    }
+
+    public PreemptionQueueComparator(ExecutorUsageTracker usageTracker) {
+      this.usageTracker = usageTracker;
+    }
 
     @Override
     public int compare(TaskWrapper t1, TaskWrapper t2) {
@@ -1071,6 +1156,14 @@ public int compare(TaskWrapper t1, TaskWrapper t2) {
       v2 = o2.canFinishForPriority();
       if (v1 != v2) return v1 ? 1 : -1;
 
+      // With fair sharing, the queries that have used more executor time are preempted first.
+      if (usageTracker != null && !o1.getQueryId().equals(o2.getQueryId())) {
+        int result = Double.compare(
+            usageTracker.getUsage(o2.getQueryId(), o2.getVertexSpec().getUser()),
+            usageTracker.getUsage(o1.getQueryId(), o1.getVertexSpec().getUser()));
+        if (result != 0) return result;
+      }
+
       // Otherwise, heuristics.
       if (fri1.getNumSelfAndUpstreamTasks() > fri2.getNumSelfAndUpstreamTasks()) {
         return 1;
@@ -1088,6 +1181,7 @@ public static class TaskWrapper implements FinishableStateUpdateHandler {
     private final AtomicBoolean inPreemptionQueue = new AtomicBoolean(false);
     private final AtomicBoolean registeredForNotifications = new AtomicBoolean(false);
     private final TaskExecutorService taskExecutorService;
+    private volatile long queueStartTime = 0;
 
     public TaskWrapper(TaskRunnerCallable taskRunnerCallable, TaskExecutorService taskExecutorService) {
       this.taskRunnerCallable = taskRunnerCallable;
@@ -1152,6 +1246,14 @@ public void setIsInWaitQueue(boolean value) {
       this.inWaitQueue.set(value);
     }
 
+    public long getQueueStartTime() {
+      return queueStartTime;
+    }
+
+    public void setQueueStartTime(long value) {
+      this.queueStartTime = value;
+    }
+
     public void setIsInPreemptableQueue(boolean value) {
       this.inPreemptionQueue.set(value);
     }
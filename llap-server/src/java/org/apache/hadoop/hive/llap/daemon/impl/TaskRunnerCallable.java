@@ -37,6 +37,7 @@
 import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.IOSpecProto;
 import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.SignableVertexSpec;
 import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.SubmitWorkRequestProto;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoPrefetcher;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorMetrics;
 import org.apache.hadoop.hive.llap.protocol.LlapTaskUmbilicalProtocol;
 import org.apache.hadoop.hive.llap.tez.Converters;
@@ -61,6 +62,7 @@
 import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.hadoop.shim.HadoopShim;
 import org.apache.tez.runtime.api.ExecutionContext;
+import org.apache.tez.runtime.api.events.InputDataInformationEvent;
 import org.apache.tez.runtime.api.impl.TaskSpec;
 import org.apache.tez.runtime.api.impl.TezEvent;
 import org.apache.tez.runtime.common.objectregistry.ObjectRegistryImpl;
@@ -82,6 +84,7 @@
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -132,6 +135,7 @@ public class TaskRunnerCallable extends CallableWithNdc<TaskRunner2Result> {
   private boolean isGuaranteed;
   private WmFragmentCounters wmCounters;
   private final AMNodeInfo amNodeInfo;
+  private volatile Future<?> prefetchFuture;
 
   @VisibleForTesting
   public TaskRunnerCallable(SubmitWorkRequestProto request, QueryFragmentInfo fragmentInfo,
@@ -340,6 +344,32 @@ private String constructThreadNameSuffix(TezTaskAttemptID taskAttemptId) {
     return sb.toString();
   }
 
+  /**
+   * Starts reading the metadata for the split of this fragment into the LLAP IO cache, while the
+   * fragment waits for an executor. The prefetch is cancelled if the fragment is killed.
+   */
+  public void prefetch(LlapIoPrefetcher prefetcher) {
+    if (initialEvent == null || !(initialEvent.getEvent() instanceof InputDataInformationEvent)) {
+      return;
+    }
+    // A separate UGI, so that the prefetch can close its file systems when done.
+    UserGroupInformation prefetchUgi = UserGroupInformation.createRemoteUser(vertex.getUser());
+    prefetchUgi.addCredentials(credentials);
+    prefetchFuture = prefetcher.prefetch(
+        (InputDataInformationEvent) initialEvent.getEvent(), prefetchUgi);
+    if (killInvoked.get()) {
+      cancelPrefetch();
+    }
+  }
+
+  private void cancelPrefetch() {
+    Future<?> future = prefetchFuture;
+    if (future != null) {
+      future.cancel(true);
+      prefetchFuture = null;
+    }
+  }
+
   /**
    * Attempt to kill a running task. If the task has not started running, it will not start.
    * If it's already running, a kill request will be sent to it.
@@ -349,6 +379,7 @@ private String constructThreadNameSuffix(TezTaskAttemptID taskAttemptId) {
   public void killTask() {
     if (!isCompleted.get()) {
       if (!killInvoked.getAndSet(true)) {
+        cancelPrefetch();
         synchronized (this) {
           TezTaskAttemptID ta = taskSpec.getTaskAttemptID();
           LOG.info("Kill task requested for id={}, taskRunnerSetup={}", ta, taskRunner != null);
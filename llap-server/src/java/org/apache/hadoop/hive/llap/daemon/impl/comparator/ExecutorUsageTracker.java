@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.daemon.impl.comparator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tracks the executor time recently used by the queries, and by the pools (users) that run them,
+ * for the fair sharing of the executors. The usage decays exponentially with the given half-life.
+ *
+ * The usage seen by the comparators is a snapshot that only changes on refresh, so that the
+ * order of the elements in the priority queues stays consistent; the queues that use it must be
+ * reordered every time it's refreshed.
+ */
+public class ExecutorUsageTracker {
+  /** The usage below which the query or the pool is forgotten. */
+  private static final double MIN_USAGE_MS = 1.0;
+
+  private static final class Usage {
+    double value;
+    long lastUpdateMs;
+  }
+
+  private final long halfLifeMs;
+  private final Map<String, Usage> queries = new HashMap<>(), pools = new HashMap<>();
+  private volatile Map<String, Double> querySnapshot = Collections.emptyMap(),
+      poolSnapshot = Collections.emptyMap();
+
+  public ExecutorUsageTracker(long halfLifeMs) {
+    this.halfLifeMs = Math.max(1, halfLifeMs);
+  }
+
+  /**
+   * Records the executor time used by a fragment.
+   * @param queryId The query of the fragment.
+   * @param pool The pool (user) of the fragment.
+   * @param executorTimeMs The time the fragment has spent on an executor.
+   * @param nowMs The current time, from the same clock as used for refresh.
+   */
+  public synchronized void addExecutorTime(
+      String queryId, String pool, long executorTimeMs, long nowMs) {
+    if (executorTimeMs <= 0) return;
+    add(queries, queryId, executorTimeMs, nowMs);
+    if (pool != null) {
+      add(pools, pool, executorTimeMs, nowMs);
+    }
+  }
+
+  private void add(Map<String, Usage> usages, String key, long timeMs, long nowMs) {
+    Usage usage = usages.get(key);
+    if (usage == null) {
+      usage = new Usage();
+      usage.lastUpdateMs = nowMs;
+      usages.put(key, usage);
+    }
+    decay(usage, nowMs);
+    usage.value += timeMs;
+  }
+
+  private void decay(Usage usage, long nowMs) {
+    long elapsedMs = nowMs - usage.lastUpdateMs;
+    if (elapsedMs <= 0) return;
+    usage.value *= Math.pow(0.5, (double) elapsedMs / halfLifeMs);
+    usage.lastUpdateMs = nowMs;
+  }
+
+  /**
+   * Updates the usage snapshot used by the comparators.
+   * @return Whether the snapshot has changed, i.e. whether the queues need to be reordered.
+   */
+  public synchronized boolean refresh(long nowMs) {
+    if (queries.isEmpty() && pools.isEmpty() && querySnapshot.isEmpty()) return false;
+    querySnapshot = snapshot(queries, nowMs);
+    poolSnapshot = snapshot(pools, nowMs);
+    return true;
+  }
+
+  private Map<String, Double> snapshot(Map<String, Usage> usages, long nowMs) {
+    Map<String, Double> result = new HashMap<>(usages.size());
+    Iterator<Map.Entry<String, Usage>> iter = usages.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<String, Usage> e = iter.next();
+      Usage usage = e.getValue();
+      decay(usage, nowMs);
+      if (usage.value < MIN_USAGE_MS) {
+        iter.remove();
+      } else {
+        result.put(e.getKey(), usage.value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The usage of the query and its pool as of the last refresh, in milliseconds of
+   *         executor time. Each pool gets an equal share of the executors, and each query gets
+   *         an equal share of its pool.
+   */
+  public double getUsage(String queryId, String pool) {
+    Double queryUsage = querySnapshot.get(queryId);
+    Double poolUsage = pool == null ? null : poolSnapshot.get(pool);
+    return (queryUsage == null ? 0 : queryUsage) + (poolUsage == null ? 0 : poolUsage);
+  }
+}
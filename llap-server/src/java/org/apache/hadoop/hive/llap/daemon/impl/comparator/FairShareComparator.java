@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.daemon.impl.comparator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.daemon.impl.TaskRunnerCallable;
+import org.apache.hadoop.hive.llap.daemon.rpc.LlapDaemonProtocolProtos.FragmentRuntimeInfo;
+
+// if map tasks and reduce tasks are in finishable state then priority is given to the task
+// whose query and pool (user) have used the least executor time recently. The usage of a task
+// is discounted by the time it has been waiting (scaled by the aging factor) so that the tasks
+// of the busy queries are not starved. The usage is tracked by the TaskExecutorService.
+public class FairShareComparator extends LlapQueueComparatorBase implements Configurable {
+  private Configuration conf;
+  private ExecutorUsageTracker usageTracker;
+  private float agingFactor;
+
+  public FairShareComparator() {
+    this(HiveConf.getTimeVar(new Configuration(false),
+        ConfVars.LLAP_DAEMON_FAIR_SHARE_USAGE_HALF_LIFE, TimeUnit.MILLISECONDS),
+        ConfVars.LLAP_DAEMON_FAIR_SHARE_AGING_FACTOR.defaultFloatVal);
+  }
+
+  public FairShareComparator(long halfLifeMs, float agingFactor) {
+    this.usageTracker = new ExecutorUsageTracker(halfLifeMs);
+    this.agingFactor = agingFactor;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.usageTracker = new ExecutorUsageTracker(HiveConf.getTimeVar(
+        conf, ConfVars.LLAP_DAEMON_FAIR_SHARE_USAGE_HALF_LIFE, TimeUnit.MILLISECONDS));
+    this.agingFactor = HiveConf.getFloatVar(conf, ConfVars.LLAP_DAEMON_FAIR_SHARE_AGING_FACTOR);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  public ExecutorUsageTracker getUsageTracker() {
+    return usageTracker;
+  }
+
+  @Override
+  public int compareInternal(TaskRunnerCallable o1, TaskRunnerCallable o2) {
+    FragmentRuntimeInfo fri1 = o1.getFragmentRuntimeInfo();
+    FragmentRuntimeInfo fri2 = o2.getFragmentRuntimeInfo();
+
+    if (o1.getQueryId().equals(o2.getQueryId())) {
+      // Within dag priority - lower values indicate higher priority.
+      int result = Integer.compare(fri1.getWithinDagPriority(), fri2.getWithinDagPriority());
+      if (result != 0) return result;
+      return Long.compare(fri1.getCurrentAttemptStartTime(), fri2.getCurrentAttemptStartTime());
+    }
+
+    // usage - agingFactor * (now - attemptStartTime); "now" is the same for both tasks, so it
+    // can be left out, and the order only changes when the usage snapshot is refreshed.
+    double priority1 = usageTracker.getUsage(o1.getQueryId(), o1.getVertexSpec().getUser())
+        + agingFactor * fri1.getCurrentAttemptStartTime();
+    double priority2 = usageTracker.getUsage(o2.getQueryId(), o2.getVertexSpec().getUser())
+        + agingFactor * fri2.getCurrentAttemptStartTime();
+    int result = Double.compare(priority1, priority2);
+    if (result != 0) return result;
+    result = Long.compare(fri1.getDagStartTime(), fri2.getDagStartTime());
+    if (result != 0) return result;
+    return Long.compare(fri1.getCurrentAttemptStartTime(), fri2.getCurrentAttemptStartTime());
+  }
+}
@@ -105,6 +105,7 @@ public void serviceInit(Configuration conf) {
       this.http.addServlet("status", "/status", LlapStatusServlet.class);
       this.http.addServlet("peers", "/peers", LlapPeerRegistryServlet.class);
       this.http.addServlet("iomem", "/iomem", LlapIoMemoryServlet.class);
+      this.http.addServlet("ioattribution", "/ioattribution", LlapIoAttributionServlet.class);
       this.http.addServlet("system", "/system", SystemConfigurationServlet.class);
     } catch (IOException e) {
       LOG.warn("LLAP web service failed to come up", e);
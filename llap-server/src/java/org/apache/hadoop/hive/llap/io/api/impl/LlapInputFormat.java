@@ -32,6 +32,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.hadoop.hive.llap.io.decode.ColumnVectorProducer;
 import org.apache.hadoop.hive.ql.exec.ColumnInfo;
 import org.apache.hadoop.hive.ql.exec.Operator;
@@ -75,11 +76,14 @@ public class LlapInputFormat implements InputFormat<NullWritable, VectorizedRowB
   private final String hostName;
 
   private final Configuration daemonConf;
+  private final LlapIoAttribution attribution;
 
   @SuppressWarnings({ "rawtypes", "unchecked" })
   LlapInputFormat(InputFormat sourceInputFormat, Deserializer sourceSerDe,
-      ColumnVectorProducer cvp, ExecutorService executor, Configuration daemonConf) {
+      ColumnVectorProducer cvp, ExecutorService executor, Configuration daemonConf,
+      LlapIoAttribution attribution) {
     this.executor = executor;
+    this.attribution = attribution;
     this.cvp = cvp;
     this.daemonConf = daemonConf;
     this.sourceInputFormat = sourceInputFormat;
@@ -106,7 +110,7 @@ public RecordReader<NullWritable, VectorizedRowBatch> getRecordReader(
       List<Integer> tableIncludedCols = ColumnProjectionUtils.isReadAllColumns(job)
           ? null : ColumnProjectionUtils.getReadColumnIDs(job);
       LlapRecordReader rr = LlapRecordReader.create(job, fileSplit, tableIncludedCols, hostName,
-          cvp, executor, sourceInputFormat, sourceSerDe, reporter, daemonConf);
+          cvp, executor, sourceInputFormat, sourceSerDe, reporter, daemonConf, attribution);
       if (rr == null) {
         // Reader-specific incompatibility like SMB or schema evolution.
         return sourceInputFormat.getRecordReader(split, job, reporter);
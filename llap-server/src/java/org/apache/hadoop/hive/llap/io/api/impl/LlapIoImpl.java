@@ -44,23 +44,29 @@
 import org.apache.hadoop.hive.llap.cache.BuddyAllocator;
 import org.apache.hadoop.hive.llap.cache.BufferUsageManager;
 import org.apache.hadoop.hive.llap.cache.CacheContentsTracker;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.cache.EvictionDispatcher;
 import org.apache.hadoop.hive.llap.cache.LlapDataBuffer;
 import org.apache.hadoop.hive.llap.cache.LlapOomDebugDump;
+import org.apache.hadoop.hive.llap.cache.LowLevelBufferedCachePolicy;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheAdmissionFilter;
 import org.apache.hadoop.hive.llap.cache.LowLevelCacheImpl;
 import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
 import org.apache.hadoop.hive.llap.cache.LowLevelCachePolicy;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheSnapshot;
 import org.apache.hadoop.hive.llap.cache.LowLevelFifoCachePolicy;
 import org.apache.hadoop.hive.llap.cache.LowLevelLrfuCachePolicy;
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl;
 import org.apache.hadoop.hive.llap.cache.SimpleAllocator;
 import org.apache.hadoop.hive.llap.cache.SimpleBufferManager;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.hadoop.hive.llap.io.api.LlapIo;
 import org.apache.hadoop.hive.llap.io.decode.ColumnVectorProducer;
 import org.apache.hadoop.hive.llap.io.decode.GenericColumnVectorProducer;
 import org.apache.hadoop.hive.llap.io.decode.OrcColumnVectorProducer;
+import org.apache.hadoop.hive.llap.io.decode.ParquetColumnVectorProducer;
 import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonIOMetrics;
@@ -69,6 +75,8 @@
 import org.apache.hadoop.hive.ql.io.LlapCacheOnlyInputFormatInterface;
 import org.apache.hadoop.hive.ql.io.orc.encoded.IoTrace;
 import org.apache.hadoop.hive.ql.io.orc.OrcInputFormat;
+import org.apache.hadoop.hive.ql.io.parquet.MapredParquetInputFormat;
+import org.apache.hadoop.hive.ql.io.parquet.VectorizedParquetInputFormat;
 import org.apache.hadoop.hive.serde2.Deserializer;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.InputFormat;
@@ -90,7 +98,7 @@ public class LlapIoImpl implements LlapIo<VectorizedRowBatch> {
   private static final String MODE_CACHE = "cache";
 
   // TODO: later, we may have a map
-  private final ColumnVectorProducer orcCvp, genericCvp;
+  private final ColumnVectorProducer orcCvp, genericCvp, parquetCvp;
   private final ExecutorService executor;
   private final LlapDaemonCacheMetrics cacheMetrics;
   private final LlapDaemonIOMetrics ioMetrics;
@@ -101,6 +109,11 @@ public class LlapIoImpl implements LlapIo<VectorizedRowBatch> {
   private final LowLevelCache dataCache;
   private final BufferUsageManager bufferManager;
   private final Configuration daemonConf;
+  private LowLevelCacheImpl persistentCache;
+  private LowLevelCacheSnapshot cacheSnapshot;
+  private long cacheSnapshotMaxSize;
+  private LlapIoPrefetcher prefetcher;
+  private final LlapIoAttribution attribution;
 
   private LlapIoImpl(Configuration conf) throws IOException {
     this.daemonConf = conf;
@@ -126,11 +139,15 @@ private LlapIoImpl(Configuration conf) throws IOException {
       }
     }
     this.ioMetrics = LlapDaemonIOMetrics.create(displayName, sessionId, Ints.toArray(intervalList));
+    this.attribution = HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_TRACK_ATTRIBUTION)
+        ? new LlapIoAttribution(HiveConf.getIntVar(conf, ConfVars.LLAP_IO_ATTRIBUTION_MAX_ENTRIES))
+        : null;
 
     LOG.info("Started llap daemon metrics with displayName: {} sessionId: {}", displayName,
         sessionId);
 
     MetadataCache metadataCache = null;
+    DecodedColumnCache decodedCache = null;
     SerDeLowLevelCacheImpl serdeCache = null; // TODO: extract interface when needed
     BufferUsageManager bufferManagerOrc = null, bufferManagerGeneric = null;
     boolean isEncodeEnabled = HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_ENCODE_ENABLED);
@@ -141,6 +158,9 @@ private LlapIoImpl(Configuration conf) throws IOException {
       int minAllocSize = (int)HiveConf.getSizeVar(conf, ConfVars.LLAP_ALLOCATOR_MIN_ALLOC);
       LowLevelCachePolicy cachePolicy = useLrfu ? new LowLevelLrfuCachePolicy(
           minAllocSize, totalMemorySize, conf) : new LowLevelFifoCachePolicy();
+      if (HiveConf.getBoolVar(conf, ConfVars.LLAP_CACHE_POLICY_BUFFERED)) {
+        cachePolicy = new LowLevelBufferedCachePolicy(cachePolicy);
+      }
       boolean trackUsage = HiveConf.getBoolVar(conf, HiveConf.ConfVars.LLAP_TRACK_CACHE_USAGE);
       if (trackUsage) {
         cachePolicy = new CacheContentsTracker(cachePolicy);
@@ -172,6 +192,36 @@ private LlapIoImpl(Configuration conf) throws IOException {
       cachePolicy.setEvictionListener(e);
       cachePolicy.setParentDebugDumper(e);
 
+      if (HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_CACHE_PERSISTENT_ENABLED)) {
+        // Warm the cache up with the contents saved when the daemon was last stopped.
+        cacheSnapshot = new LowLevelCacheSnapshot(
+            HiveConf.getVar(conf, ConfVars.LLAP_IO_CACHE_PERSISTENT_PATH));
+        persistentCache = cacheImpl;
+        cacheSnapshotMaxSize = totalMemorySize;
+        try {
+          cacheSnapshot.load(cacheImpl);
+        } catch (IOException ex) {
+          LOG.warn("Failed to load the cache snapshot; starting with an empty cache", ex);
+        }
+      }
+      if (HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_CACHE_ADMISSION_ENABLED)) {
+        // Set up after loading the snapshot, so that the saved data keeps its priority.
+        LowLevelCacheAdmissionFilter admissionFilter = new LowLevelCacheAdmissionFilter(
+            totalMemorySize / minAllocSize,
+            HiveConf.getIntVar(conf, ConfVars.LLAP_IO_CACHE_ADMISSION_MIN_FREQUENCY));
+        cacheImpl.setAdmissionFilter(admissionFilter);
+        if (serdeCache != null) {
+          serdeCache.setAdmissionFilter(admissionFilter);
+        }
+      }
+      long decodedCacheSize = HiveConf.getSizeVar(conf, ConfVars.LLAP_IO_DECODED_CACHE_SIZE);
+      if (decodedCacheSize > 0) {
+        decodedCache = new DecodedColumnCache(decodedCacheSize, conf, LlapDaemonCacheMetrics.create(
+            "LlapDaemonDecodedCacheMetrics-" + MetricsUtils.getHostName(), sessionId));
+      }
+      if (HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_PREFETCH_ENABLED)) {
+        prefetcher = new LlapIoPrefetcher(metadataCache, memManager, conf);
+      }
       cacheImpl.startThreads(); // Start the cache threads.
       bufferManager = bufferManagerOrc = cacheImpl; // Cache also serves as buffer manager.
       bufferManagerGeneric = serdeCache;
@@ -191,9 +241,13 @@ private LlapIoImpl(Configuration conf) throws IOException {
     FixedSizedObjectPool<IoTrace> tracePool = IoTrace.createTracePool(conf);
     // TODO: this should depends on input format and be in a map, or something.
     this.orcCvp = new OrcColumnVectorProducer(
-        metadataCache, dataCache, bufferManagerOrc, conf, cacheMetrics, ioMetrics, tracePool);
+        metadataCache, dataCache, bufferManagerOrc, conf, cacheMetrics, ioMetrics, tracePool,
+        decodedCache);
     this.genericCvp = isEncodeEnabled ? new GenericColumnVectorProducer(
         serdeCache, bufferManagerGeneric, conf, cacheMetrics, ioMetrics, tracePool) : null;
+    this.parquetCvp = HiveConf.getBoolVar(conf, ConfVars.LLAP_IO_PARQUET_ENABLED)
+        ? new ParquetColumnVectorProducer(fileMetadataCache,
+            new GenericDataCache(dataCache, bufferManager), conf, cacheMetrics, ioMetrics) : null;
     LOG.info("LLAP IO initialized");
 
     registerMXBeans();
@@ -211,17 +265,45 @@ public String getMemoryInfo() {
     return sb.toString();
   }
 
+  /**
+   * @return The IO stats for the recent queries and tables; null if disabled.
+   */
+  public LlapIoAttribution getAttribution() {
+    return attribution;
+  }
+
+  /**
+   * @return The prefetcher for the splits of the queued fragments; null if disabled.
+   */
+  public LlapIoPrefetcher getPrefetcher() {
+    return prefetcher;
+  }
+
   @Override
   public InputFormat<NullWritable, VectorizedRowBatch> getInputFormat(
       InputFormat<?, ?> sourceInputFormat, Deserializer sourceSerDe) {
     ColumnVectorProducer cvp = genericCvp;
     if (sourceInputFormat instanceof OrcInputFormat) {
       cvp = orcCvp; // Special-case for ORC.
+    } else if (sourceSerDe == null
+        && sourceInputFormat instanceof LlapCacheOnlyInputFormatInterface) {
+      // Cache-only formats are read thru IO elevator only if they have a producer of their own.
+      cvp = isParquetInputFormat(sourceInputFormat) ? parquetCvp : null;
+      if (cvp == null) {
+        LOG.info("Not using LLAP IO elevator for " + sourceInputFormat.getClass());
+        return null;
+      }
     } else if (cvp == null) {
       LOG.warn("LLAP encode is disabled; cannot use for " + sourceInputFormat.getClass());
       return null;
     }
-    return new LlapInputFormat(sourceInputFormat, sourceSerDe, cvp, executor, daemonConf);
+    return new LlapInputFormat(
+        sourceInputFormat, sourceSerDe, cvp, executor, daemonConf, attribution);
+  }
+
+  private static boolean isParquetInputFormat(InputFormat<?, ?> sourceInputFormat) {
+    return sourceInputFormat instanceof MapredParquetInputFormat
+        || sourceInputFormat instanceof VectorizedParquetInputFormat;
   }
 
   @Override
@@ -232,6 +314,16 @@ public void close() {
       buddyAllocatorMXBean = null;
     }
     executor.shutdownNow();
+    if (prefetcher != null) {
+      prefetcher.close();
+    }
+    if (cacheSnapshot != null) {
+      try {
+        cacheSnapshot.save(persistentCache, cacheSnapshotMaxSize);
+      } catch (IOException ex) {
+        LOG.warn("Failed to save the cache snapshot", ex);
+      }
+    }
   }
 
 
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.api.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.LlapUtil;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
+import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
+import org.apache.hadoop.hive.llap.io.metadata.MetadataCache.LlapBufferOrBuffers;
+import org.apache.hadoop.hive.ql.io.HdfsUtils;
+import org.apache.hadoop.hive.ql.io.HiveInputFormat.HiveInputSplit;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile.ReaderOptions;
+import org.apache.hadoop.hive.ql.io.orc.OrcSplit;
+import org.apache.hadoop.hive.ql.io.orc.encoded.EncodedOrcFile;
+import org.apache.hadoop.hive.ql.io.orc.encoded.OrcBatchKey;
+import org.apache.hadoop.hive.ql.io.orc.encoded.Reader;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.split.TezGroupedSplit;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.orc.StripeInformation;
+import org.apache.tez.mapreduce.hadoop.MRInputHelpers;
+import org.apache.tez.mapreduce.protos.MRRuntimeProtos.MRSplitProto;
+import org.apache.tez.runtime.api.events.InputDataInformationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+
+/**
+ * Reads the ORC file footers and stripe footers for the splits of the fragments that are waiting
+ * for an executor into the metadata cache, so that the readers of these fragments find them
+ * there. The prefetch runs on a single low priority thread, with a bounded queue; it never
+ * evicts anything from the cache, and stops as soon as its future is cancelled.
+ */
+public class LlapIoPrefetcher {
+  private static final Logger LOG = LoggerFactory.getLogger(LlapIoPrefetcher.class);
+
+  private final MetadataCache metadataCache;
+  private final LowLevelCacheMemoryManager memoryManager;
+  private final Configuration daemonConf;
+  private final ThreadPoolExecutor executor;
+  private final int maxStripes;
+  private final boolean allowSynthetic, checkDefaultFs, useFileIdPath, trackUsage;
+
+  public LlapIoPrefetcher(MetadataCache metadataCache, LowLevelCacheMemoryManager memoryManager,
+      Configuration daemonConf) {
+    this.metadataCache = metadataCache;
+    this.memoryManager = memoryManager;
+    this.daemonConf = daemonConf;
+    this.maxStripes = HiveConf.getIntVar(daemonConf, ConfVars.LLAP_IO_PREFETCH_MAX_STRIPES);
+    this.allowSynthetic = HiveConf.getBoolVar(daemonConf, ConfVars.LLAP_CACHE_ALLOW_SYNTHETIC_FILEID);
+    this.checkDefaultFs = HiveConf.getBoolVar(daemonConf, ConfVars.LLAP_CACHE_DEFAULT_FS_FILE_ID);
+    this.useFileIdPath = HiveConf.getBoolVar(daemonConf, ConfVars.LLAP_IO_USE_FILEID_PATH);
+    this.trackUsage = HiveConf.getBoolVar(daemonConf, ConfVars.LLAP_TRACK_CACHE_USAGE);
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("IO-Prefetch-Thread-%d")
+        .setDaemon(true).setPriority(Thread.MIN_PRIORITY).build();
+    this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(
+            HiveConf.getIntVar(daemonConf, ConfVars.LLAP_IO_PREFETCH_MAX_PENDING)),
+        threadFactory);
+  }
+
+  /**
+   * Queues the prefetch for the ORC splits of a fragment.
+   * @param initialEvent The event with the split of the fragment, as sent by the AM.
+   * @param ugi The user to read the files as; its file systems are closed after the prefetch.
+   * @return The future to cancel the prefetch with; null if the prefetch queue is full.
+   */
+  public Future<?> prefetch(
+      final InputDataInformationEvent initialEvent, final UserGroupInformation ugi) {
+    return submit(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws Exception {
+        // Deserialize the split here, rather than on the thread that schedules the fragment.
+        prefetchSplits(extractOrcSplits(initialEvent, daemonConf));
+        return null;
+      }
+    }, ugi);
+  }
+
+  @VisibleForTesting
+  Future<?> prefetch(final List<OrcSplit> splits, final UserGroupInformation ugi) {
+    return submit(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws Exception {
+        prefetchSplits(splits);
+        return null;
+      }
+    }, ugi);
+  }
+
+  private Future<?> submit(
+      final PrivilegedExceptionAction<Void> action, final UserGroupInformation ugi) {
+    try {
+      return executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ugi.doAs(action);
+          } catch (Exception e) {
+            // The reader will get the error again, if it's not transient.
+            LOG.info("Failed to prefetch the splits of {}: {}", ugi, e.getMessage());
+          } finally {
+            try {
+              FileSystem.closeAllForUGI(ugi);
+            } catch (IOException e) {
+              LOG.debug("Failed to close the file systems for {}", ugi, e);
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return null;
+    }
+  }
+
+  private void prefetchSplits(List<OrcSplit> splits) throws IOException {
+    for (OrcSplit split : splits) {
+      if (Thread.currentThread().isInterrupted() || !prefetchSplit(split)) return;
+    }
+  }
+
+  /**
+   * @return false if the cache has no room for more metadata, or the prefetch was cancelled.
+   */
+  private boolean prefetchSplit(OrcSplit split) throws IOException {
+    Path path = split.getPath();
+    FileSystem fs = path.getFileSystem(daemonConf);
+    Object fileKey = split.getFileKey();
+    if (fileKey == null) {
+      fileKey = HdfsUtils.getFileId(fs, path, allowSynthetic, checkDefaultFs);
+    }
+    if (fileKey == null) return true; // Cannot be cached.
+    String cacheTag = trackUsage ? LlapUtil.getDbAndTableNameForMetrics(path, true) : null;
+    if (fileKey instanceof Long && useFileIdPath) {
+      path = HdfsUtils.getFileIdPath(fs, path, (long) fileKey);
+    }
+
+    // Same as what OrcEncodedDataReader puts into the cache; see getFileFooterFromCacheOrDisk.
+    ReaderOptions opts = OrcFile.readerOptions(daemonConf).filesystem(fs);
+    if (split.getOrcTail() != null) {
+      opts.orcTail(split.getOrcTail());
+    }
+    Reader orcReader = EncodedOrcFile.createReader(path, opts);
+    LlapBufferOrBuffers buffers = metadataCache.getFileMetadata(fileKey);
+    if (buffers == null) {
+      ByteBuffer tail = orcReader.getSerializedFileFooter();
+      if (!hasRoom(tail.remaining())) return false;
+      buffers = metadataCache.putFileMetadata(fileKey, tail, cacheTag);
+    }
+    metadataCache.decRefBuffer(buffers);
+
+    // Same as what OrcEncodedDataReader puts into the cache; see getStripeFooterFromCacheOrDisk.
+    long offset = split.getStart(), maxOffset = offset + split.getLength();
+    OrcBatchKey stripeKey = new OrcBatchKey(fileKey, -1, 0);
+    List<StripeInformation> stripes = orcReader.getStripes();
+    FSDataInputStream in = null;
+    try {
+      int stripeCount = 0;
+      for (int stripeIx = 0; stripeIx < stripes.size() && stripeCount < maxStripes; ++stripeIx) {
+        StripeInformation si = stripes.get(stripeIx);
+        if (si.getOffset() < offset || si.getOffset() >= maxOffset) continue;
+        ++stripeCount;
+        if (Thread.currentThread().isInterrupted()) return false;
+        stripeKey.stripeIx = stripeIx;
+        buffers = metadataCache.getStripeTail(stripeKey);
+        if (buffers == null) {
+          if (!hasRoom(si.getFooterLength())) return false;
+          if (in == null) {
+            in = fs.open(path);
+          }
+          byte[] footer = new byte[(int) si.getFooterLength()];
+          in.readFully(si.getOffset() + si.getIndexLength() + si.getDataLength(), footer);
+          buffers = metadataCache.putStripeTail(stripeKey, ByteBuffer.wrap(footer), cacheTag);
+        }
+        metadataCache.decRefBuffer(buffers);
+      }
+    } finally {
+      if (in != null) {
+        in.close();
+      }
+    }
+    return true;
+  }
+
+  private boolean hasRoom(long size) {
+    return memoryManager == null || memoryManager.getAvailableMemory() >= size;
+  }
+
+  /**
+   * Unwraps the ORC splits from the payload of the event; it's serialized in the same way as the
+   * splits that HiveSplitGenerator sends to MRInputLegacy.
+   */
+  @VisibleForTesting
+  static List<OrcSplit> extractOrcSplits(InputDataInformationEvent event, Configuration conf)
+      throws IOException {
+    List<OrcSplit> result = new ArrayList<>();
+    ByteBuffer payload = event.getUserPayload();
+    if (payload == null) return result;
+    MRSplitProto splitProto = MRSplitProto.parseFrom(ByteString.copyFrom(payload.duplicate()));
+    InputSplit split = MRInputHelpers.createOldFormatSplitFromUserPayload(
+        splitProto, new SerializationFactory(conf));
+    addOrcSplits(split, result);
+    return result;
+  }
+
+  private static void addOrcSplits(InputSplit split, List<OrcSplit> result) {
+    if (split instanceof TezGroupedSplit) {
+      for (InputSplit groupedSplit : ((TezGroupedSplit) split).getGroupedSplits()) {
+        addOrcSplits(groupedSplit, result);
+      }
+    } else if (split instanceof HiveInputSplit) {
+      addOrcSplits(((HiveInputSplit) split).getInputSplit(), result);
+    } else if (split instanceof OrcSplit) {
+      result.add((OrcSplit) split);
+    }
+  }
+
+  public void close() {
+    executor.shutdownNow();
+  }
+}
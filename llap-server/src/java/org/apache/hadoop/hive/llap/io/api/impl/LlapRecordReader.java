@@ -33,6 +33,7 @@
 import org.apache.hadoop.hive.llap.ConsumerFeedback;
 import org.apache.hadoop.hive.llap.counters.FragmentCountersMap;
 import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.daemon.impl.StatsRecordingThreadPool;
 import org.apache.hadoop.hive.llap.io.decode.ColumnVectorProducer;
@@ -113,11 +114,12 @@
   public static LlapRecordReader create(JobConf job, FileSplit split,
       List<Integer> tableIncludedCols, String hostName, ColumnVectorProducer cvp,
       ExecutorService executor, InputFormat<?, ?> sourceInputFormat, Deserializer sourceSerDe,
-      Reporter reporter, Configuration daemonConf) throws IOException, HiveException {
+      Reporter reporter, Configuration daemonConf, LlapIoAttribution attribution)
+          throws IOException, HiveException {
     MapWork mapWork = findMapWork(job);
     if (mapWork == null) return null; // No compatible MapWork.
     LlapRecordReader rr = new LlapRecordReader(mapWork, job, split, tableIncludedCols, hostName,
-        cvp, executor, sourceInputFormat, sourceSerDe, reporter, daemonConf);
+        cvp, executor, sourceInputFormat, sourceSerDe, reporter, daemonConf, attribution);
     if (!rr.checkOrcSchemaEvolution()) {
       rr.close();
       return null;
@@ -128,7 +130,8 @@ public static LlapRecordReader create(JobConf job, FileSplit split,
   private LlapRecordReader(MapWork mapWork, JobConf job, FileSplit split,
       List<Integer> tableIncludedCols, String hostName, ColumnVectorProducer cvp,
       ExecutorService executor, InputFormat<?, ?> sourceInputFormat, Deserializer sourceSerDe,
-      Reporter reporter, Configuration daemonConf) throws IOException, HiveException {
+      Reporter reporter, Configuration daemonConf, LlapIoAttribution attribution)
+          throws IOException, HiveException {
     this.executor = executor;
     this.jobConf = job;
     this.split = split;
@@ -147,7 +150,7 @@ private LlapRecordReader(MapWork mapWork, JobConf job, FileSplit split,
     } else {
       LOG.warn("Not using tez counters as fragment id string is null");
     }
-    this.counters = new QueryFragmentCounters(job, taskCounters);
+    this.counters = new QueryFragmentCounters(job, taskCounters, attribution, queryId);
     this.counters.setDesc(QueryFragmentCounters.Desc.MACHINE, hostName);
 
     VectorizedRowBatchCtx ctx = mapWork.getVectorizedRowBatchCtx();
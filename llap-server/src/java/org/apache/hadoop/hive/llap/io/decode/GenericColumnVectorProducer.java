@@ -27,6 +27,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.llap.cache.BufferUsageManager;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheHints;
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
@@ -99,7 +100,8 @@ public ReadPipeline createReadPipeline(Consumer<ColumnVectorBatch> consumer, Fil
     // TODO: add tracing to serde reader
     SerDeEncodedDataReader reader = new SerDeEncodedDataReader(cache, bufferManager, conf,
         split, includes.getPhysicalColumnIds(), edc, job, reporter, sourceInputFormat,
-        sourceSerDe, counters, fm.getSchema(), parts);
+        sourceSerDe, counters, fm.getSchema(), parts,
+        LowLevelCacheHints.getPriority(job, parts, split.getPath()));
     edc.init(reader, reader, new IoTrace(0, false));
     return edc;
   }
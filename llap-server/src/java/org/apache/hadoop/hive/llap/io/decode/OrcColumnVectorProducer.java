@@ -28,7 +28,10 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.llap.cache.BufferUsageManager;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheHints;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
@@ -62,11 +65,12 @@ public class OrcColumnVectorProducer implements ColumnVectorProducer {
   // TODO: if using in multiple places, e.g. SerDe cache, pass this in.
   // TODO: should this rather use a threadlocal for NUMA affinity?
   private final FixedSizedObjectPool<IoTrace> tracePool;
+  private final DecodedColumnCache decodedCache;
 
   public OrcColumnVectorProducer(MetadataCache metadataCache,
       LowLevelCache lowLevelCache, BufferUsageManager bufferManager,
       Configuration conf, LlapDaemonCacheMetrics cacheMetrics, LlapDaemonIOMetrics ioMetrics,
-      FixedSizedObjectPool<IoTrace> tracePool) {
+      FixedSizedObjectPool<IoTrace> tracePool, DecodedColumnCache decodedCache) {
     LlapIoImpl.LOG.info("Initializing ORC column vector producer");
 
     this.metadataCache = metadataCache;
@@ -77,6 +81,7 @@ public OrcColumnVectorProducer(MetadataCache metadataCache,
     this.cacheMetrics = cacheMetrics;
     this.ioMetrics = ioMetrics;
     this.tracePool = tracePool;
+    this.decodedCache = decodedCache;
   }
 
   public Configuration getConf() {
@@ -88,12 +93,17 @@ public ReadPipeline createReadPipeline(
       Consumer<ColumnVectorBatch> consumer, FileSplit split, Includes includes,
       SearchArgument sarg, QueryFragmentCounters counters, SchemaEvolutionFactory sef,
       InputFormat<?, ?> unused0, Deserializer unused1, Reporter reporter, JobConf job,
-      Map<Path, PartitionDesc> unused2) throws IOException {
+      Map<Path, PartitionDesc> parts) throws IOException {
     cacheMetrics.incrCacheReadRequests();
     OrcEncodedDataConsumer edc = new OrcEncodedDataConsumer(
         consumer, includes, _skipCorrupt, counters, ioMetrics);
+    Priority cachePriority = LowLevelCacheHints.getPriority(job, parts, split.getPath());
+    if (decodedCache != null && cachePriority != Priority.LOW) {
+      edc.setDecodedCache(decodedCache);
+    }
     OrcEncodedDataReader reader = new OrcEncodedDataReader(lowLevelCache, bufferManager,
-        metadataCache, conf, job, split, includes, sarg, edc, counters, sef, tracePool);
+        metadataCache, conf, job, split, includes, sarg, edc, counters, sef, tracePool,
+        cachePriority);
     edc.init(reader, reader, reader.getTrace());
     return edc;
   }
@@ -23,6 +23,7 @@
 
 import org.apache.hadoop.hive.common.io.encoded.EncodedColumnBatch;
 import org.apache.hadoop.hive.llap.ConsumerFeedback;
+import org.apache.hadoop.hive.llap.cache.DecodedColumnCache;
 import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
@@ -52,6 +53,7 @@
 import org.apache.hadoop.hive.ql.io.orc.encoded.Reader.OrcEncodedColumnBatch;
 import org.apache.hadoop.hive.ql.io.orc.RecordReaderImpl;
 import org.apache.orc.TypeDescription;
+import org.apache.orc.TypeDescription.Category;
 import org.apache.orc.impl.SchemaEvolution;
 import org.apache.orc.impl.TreeReaderFactory;
 import org.apache.orc.impl.TreeReaderFactory.StructTreeReader;
@@ -73,6 +75,8 @@
   private IoTrace trace;
   private final Includes includes;
   private TypeDescription[] batchSchemas;
+  private DecodedColumnCache decodedCache;
+  private String decodedColumns;
 
   public OrcEncodedDataConsumer(
       Consumer<ColumnVectorBatch> consumer, Includes includes, boolean skipCorrupt,
@@ -91,6 +95,10 @@ public void setFileMetadata(ConsumerFileMetadata f) {
     codec = WriterImpl.createCodec(fileMetadata.getCompressionKind());
   }
 
+  public void setDecodedCache(DecodedColumnCache decodedCache) {
+    this.decodedCache = decodedCache;
+  }
+
   public void setStripeMetadata(ConsumerStripeMetadata m) {
     assert stripes != null;
     int newIx = m.getStripeIx();
@@ -109,6 +117,16 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
 
     boolean sameStripe = currentStripeIndex == previousStripeIndex;
 
+    DecodedColumnCache.Key decodedKey = getDecodedCacheKey(batch.getBatchKey());
+    if (decodedKey != null && consumeDecodedData(decodedKey, downstreamConsumer)) {
+      // Note that the column readers are not positioned for this row group; they will be
+      // repositioned for the next one, as they are when the row groups are skipped.
+      counters.incrTimeCounter(LlapIOCounters.DECODE_TIME_NS, startTime);
+      return;
+    }
+    DecodedColumnCache.EntryBuilder decodedData =
+        decodedKey == null ? null : decodedCache.createEntryBuilder();
+
     try {
       ConsumerStripeMetadata stripeMetadata = stripes.get(currentStripeIndex);
       // Get non null row count from root column, to get max vector batches
@@ -188,9 +206,18 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
           ColumnVector cv = cvb.cols[idx];
           cv.reset();
           cv.ensureSize(batchSize, false);
+          long columnStartTime = counters.startColumnDecodeTimer();
           reader.nextVector(cv, null, batchSize);
+          if (columnStartTime != 0) {
+            Category category = batchSchemas[idx].getCategory();
+            ioMetrics.addColumnDecodeTime(
+                category, counters.recordColumnDecodeTime(category, columnStartTime));
+          }
         }
 
+        if (decodedData != null && !decodedData.add(cvb.cols, batchSize)) {
+          decodedData = null; // The row group cannot be cached.
+        }
         // we are done reading a batch, send it to consumer for processing
         downstreamConsumer.consumeData(cvb);
         counters.incrCounter(LlapIOCounters.ROWS_EMITTED, batchSize);
@@ -199,12 +226,57 @@ protected void decodeBatch(OrcEncodedColumnBatch batch,
       counters.incrTimeCounter(LlapIOCounters.DECODE_TIME_NS, startTime);
       counters.incrCounter(LlapIOCounters.NUM_VECTOR_BATCHES, maxBatchesRG);
       counters.incrCounter(LlapIOCounters.NUM_DECODED_BATCHES);
+      if (decodedData != null) {
+        decodedCache.put(decodedKey, decodedData);
+      }
     } catch (IOException e) {
       // Caller will return the batch.
       downstreamConsumer.setError(e);
     }
   }
 
+  private DecodedColumnCache.Key getDecodedCacheKey(OrcBatchKey batchKey) {
+    if (decodedCache == null || batchKey.fileKey == null) return null;
+    if (decodedColumns == null) {
+      if (batchSchemas == null) {
+        batchSchemas = includes.getBatchReaderTypes(fileMetadata.getSchema());
+      }
+      decodedColumns = includes.getPhysicalColumnIds() + Arrays.toString(batchSchemas)
+          + (evolution == null ? "" : evolution.getReaderSchema().toString());
+    }
+    return new DecodedColumnCache.Key(
+        batchKey.fileKey, batchKey.stripeIx, batchKey.rgIx, decodedColumns);
+  }
+
+  private boolean consumeDecodedData(DecodedColumnCache.Key key,
+      Consumer<ColumnVectorBatch> downstreamConsumer) throws InterruptedException {
+    DecodedColumnCache.Entry entry = decodedCache.get(key);
+    if (entry == null) return false;
+    try {
+      for (int i = 0; i < entry.getBatchCount(); ++i) {
+        ColumnVector[] cached = entry.getBatch(i);
+        int batchSize = entry.getBatchSize(i);
+        ColumnVectorBatch cvb = cvbPool.take();
+        cvb.size = batchSize;
+        for (int idx = 0; idx < cached.length; ++idx) {
+          if (cvb.cols[idx] == null) {
+            cvb.cols[idx] = createColumn(batchSchemas[idx], VectorizedRowBatch.DEFAULT_SIZE);
+          }
+          ColumnVector cv = cvb.cols[idx];
+          cv.reset();
+          cv.ensureSize(batchSize, false);
+          DecodedColumnCache.copyFromCache(cached[idx], cv, batchSize);
+        }
+        downstreamConsumer.consumeData(cvb);
+        counters.incrCounter(LlapIOCounters.ROWS_EMITTED, batchSize);
+      }
+      counters.incrCounter(LlapIOCounters.NUM_VECTOR_BATCHES, entry.getBatchCount());
+    } finally {
+      decodedCache.release(entry);
+    }
+    return true;
+  }
+
   private void createColumnReaders(OrcEncodedColumnBatch batch,
       ConsumerStripeMetadata stripeMetadata, TypeDescription fileSchema) throws IOException {
     TreeReaderFactory.Context context = new TreeReaderFactory.ReaderContext()
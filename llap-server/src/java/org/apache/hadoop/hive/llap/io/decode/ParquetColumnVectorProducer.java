@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.decode;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.io.DataCache;
+import org.apache.hadoop.hive.common.io.FileMetadataCache;
+import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
+import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonIOMetrics;
+import org.apache.hadoop.hive.ql.io.orc.OrcInputFormat;
+import org.apache.hadoop.hive.ql.io.orc.encoded.Consumer;
+import org.apache.hadoop.hive.ql.io.parquet.vector.VectorizedParquetRecordReader;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.serde2.Deserializer;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.orc.TypeDescription;
+
+public class ParquetColumnVectorProducer implements ColumnVectorProducer {
+  private final FileMetadataCache metadataCache;
+  private final DataCache dataCache;
+  private final Configuration conf;
+  private final LlapDaemonCacheMetrics cacheMetrics;
+  private final LlapDaemonIOMetrics ioMetrics;
+
+  public ParquetColumnVectorProducer(FileMetadataCache metadataCache, DataCache dataCache,
+      Configuration conf, LlapDaemonCacheMetrics cacheMetrics, LlapDaemonIOMetrics ioMetrics) {
+    LlapIoImpl.LOG.info("Initializing Parquet column vector producer");
+    this.metadataCache = metadataCache;
+    this.dataCache = dataCache;
+    this.conf = conf;
+    this.cacheMetrics = cacheMetrics;
+    this.ioMetrics = ioMetrics;
+  }
+
+  @Override
+  public ReadPipeline createReadPipeline(Consumer<ColumnVectorBatch> consumer, FileSplit split,
+      Includes includes, SearchArgument sarg, QueryFragmentCounters counters,
+      SchemaEvolutionFactory sef, InputFormat<?, ?> sourceInputFormat, Deserializer sourceSerDe,
+      Reporter reporter, JobConf job, Map<Path, PartitionDesc> parts) throws IOException {
+    cacheMetrics.incrCacheReadRequests();
+    // The reader is created here, on the fragment thread, because it needs the plan of the
+    // fragment; the footer is read thru the metadata cache, and the column chunks are read
+    // thru the data cache on the IO thread.
+    VectorizedParquetRecordReader reader;
+    try {
+      reader = new VectorizedParquetRecordReader(split, job, metadataCache, dataCache, conf);
+    } catch (RuntimeException e) {
+      throw new IOException(e);
+    }
+    TypeDescription schema = OrcInputFormat.getDesiredRowTypeDescr(job, false, Integer.MAX_VALUE);
+    if (schema == null) {
+      schema = TypeDescription.createStruct();
+    }
+    return new ParquetReadPipeline(split, reader, consumer, includes.getPhysicalColumnIds(),
+        schema, sef, counters, ioMetrics);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.decode;
+
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hive.common.Pool;
+import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
+import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
+import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
+import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
+import org.apache.hadoop.hive.llap.io.encoded.TezCounterSource;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonIOMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.orc.encoded.Consumer;
+import org.apache.hadoop.hive.ql.io.parquet.vector.VectorizedParquetRecordReader;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hive.common.util.FixedSizedObjectPool;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.impl.SchemaEvolution;
+import org.apache.tez.common.CallableWithNdc;
+import org.apache.tez.common.counters.TezCounters;
+
+/**
+ * Read pipeline for Parquet files. Runs the vectorized Parquet reader on an IO thread, so that
+ * the column chunks are read (thru the LLAP cache) and decoded into column vectors ahead of
+ * the operator pipeline, and passes the included columns downstream as CVBs.
+ */
+public class ParquetReadPipeline extends CallableWithNdc<Void>
+    implements ReadPipeline, TezCounterSource {
+  // Note that the pool is per reader - within a reader, CVBs have the same schema.
+  private static final int CVB_POOL_SIZE = 128;
+
+  private final FileSplit split;
+  private final VectorizedParquetRecordReader reader;
+  private final Consumer<ColumnVectorBatch> consumer;
+  private final List<Integer> physicalColumnIds;
+  private final TypeDescription schema;
+  private final ColumnVectorProducer.SchemaEvolutionFactory sef;
+  private final QueryFragmentCounters counters;
+  private final LlapDaemonIOMetrics ioMetrics;
+  private final UserGroupInformation ugi;
+  private final FixedSizedObjectPool<ColumnVectorBatch> cvbPool;
+  private volatile boolean isStopped = false;
+
+  public ParquetReadPipeline(FileSplit split, VectorizedParquetRecordReader reader,
+      Consumer<ColumnVectorBatch> consumer, List<Integer> physicalColumnIds,
+      TypeDescription schema, ColumnVectorProducer.SchemaEvolutionFactory sef,
+      QueryFragmentCounters counters, LlapDaemonIOMetrics ioMetrics) throws IOException {
+    this.split = split;
+    this.reader = reader;
+    this.consumer = consumer;
+    this.physicalColumnIds = physicalColumnIds;
+    this.schema = schema;
+    this.sef = sef;
+    this.counters = counters;
+    this.ioMetrics = ioMetrics;
+    this.ugi = UserGroupInformation.getCurrentUser();
+    final int colCount = physicalColumnIds.size();
+    this.cvbPool = new FixedSizedObjectPool<ColumnVectorBatch>(CVB_POOL_SIZE,
+        new Pool.PoolObjectHelper<ColumnVectorBatch>() {
+          @Override
+          public ColumnVectorBatch create() {
+            return new ColumnVectorBatch(colCount);
+          }
+          @Override
+          public void resetBeforeOffer(ColumnVectorBatch t) {
+            // Don't reset anything, we are reusing column vectors.
+          }
+        });
+  }
+
+  @Override
+  public Callable<Void> getReadCallable() {
+    return this;
+  }
+
+  @Override
+  public SchemaEvolution getSchemaEvolution() {
+    // The Parquet reader does its own type conversion; the reader schema is used as is.
+    return sef.createSchemaEvolution(schema);
+  }
+
+  @Override
+  protected Void callInternal() throws IOException, InterruptedException {
+    return ugi.doAs(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws Exception {
+        return performDataRead();
+      }
+    });
+  }
+
+  protected Void performDataRead() throws IOException, InterruptedException {
+    long startTime = counters.startTimeCounter();
+    LlapIoImpl.LOG.info("Processing Parquet data for {}", split.getPath());
+    try {
+      VectorizedRowBatch vrb = reader.createValue();
+      VectorizedRowBatch spare = null;
+      while (!isStopped) {
+        long decodeStart = System.currentTimeMillis();
+        if (!reader.next(NullWritable.get(), vrb)) break;
+        ColumnVectorBatch cvb = cvbPool.take();
+        for (int ix = 0; ix < physicalColumnIds.size(); ++ix) {
+          int colIx = physicalColumnIds.get(ix);
+          if (cvb.cols[ix] == null) {
+            // A new CVB; give the reader a fresh vector of the same kind to decode into.
+            if (spare == null || spare.cols[colIx] == null) {
+              spare = reader.createValue();
+            }
+            cvb.cols[ix] = spare.cols[colIx];
+            spare.cols[colIx] = null;
+          }
+          cvb.swapColumnVector(ix, vrb.cols, colIx);
+        }
+        cvb.size = vrb.size;
+        ioMetrics.addDecodeBatchTime(System.currentTimeMillis() - decodeStart);
+        counters.incrCounter(LlapIOCounters.ROWS_EMITTED, vrb.size);
+        counters.incrCounter(LlapIOCounters.NUM_VECTOR_BATCHES);
+        consumer.consumeData(cvb);
+      }
+      if (isStopped) {
+        LlapIoImpl.LOG.info("Parquet data reader is stopping");
+        return null;
+      }
+    } catch (Throwable e) {
+      LlapIoImpl.LOG.error("Exception while processing", e);
+      consumer.setError(e);
+      throw e;
+    } finally {
+      counters.incrTimeCounter(LlapIOCounters.TOTAL_IO_TIME_NS, startTime);
+      try {
+        reader.close();
+      } catch (IOException ex) {
+        LlapIoImpl.LOG.error("Failed to close the Parquet reader", ex);
+      }
+    }
+    consumer.setDone();
+    return null;
+  }
+
+  @Override
+  public void returnData(ColumnVectorBatch data) {
+    cvbPool.offer(data);
+  }
+
+  @Override
+  public void stop() {
+    LlapIoImpl.LOG.debug("Parquet data reader is being stopped");
+    isStopped = true;
+  }
+
+  @Override
+  public void pause() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void unpause() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public TezCounters getTezCounters() {
+    return counters.getTezCounters();
+  }
+}
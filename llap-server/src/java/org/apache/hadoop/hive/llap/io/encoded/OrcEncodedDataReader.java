@@ -25,6 +25,7 @@
 import java.util.List;
 
 import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.orc.CompressionCodec;
 import org.apache.orc.OrcProto.BloomFilterIndex;
 import org.apache.orc.OrcProto.FileTail;
@@ -168,6 +169,7 @@ public Pool<OrcEncodedColumnBatch> createEncodedColumnBatchPool() {
   private CompressionCodec codec;
   private Object fileKey;
   private final String cacheTag;
+  private final Priority cachePriority;
   private FileSystem fs;
 
   /**
@@ -186,9 +188,10 @@ public Pool<OrcEncodedColumnBatch> createEncodedColumnBatchPool() {
   public OrcEncodedDataReader(LowLevelCache lowLevelCache, BufferUsageManager bufferManager,
       MetadataCache metadataCache, Configuration daemonConf, Configuration jobConf,
       FileSplit split, Includes includes, SearchArgument sarg, OrcEncodedDataConsumer consumer,
-      QueryFragmentCounters counters, SchemaEvolutionFactory sef, Pool<IoTrace> tracePool)
-          throws IOException {
+      QueryFragmentCounters counters, SchemaEvolutionFactory sef, Pool<IoTrace> tracePool,
+      Priority cachePriority) throws IOException {
     this.lowLevelCache = lowLevelCache;
+    this.cachePriority = cachePriority;
     this.metadataCache = metadataCache;
     this.bufferManager = bufferManager;
     this.daemonConf = daemonConf;
@@ -257,12 +260,17 @@ public void unpause() {
 
   @Override
   protected Void callInternal() throws IOException, InterruptedException {
-    return ugi.doAs(new PrivilegedExceptionAction<Void>() {
-      @Override
-      public Void run() throws Exception {
-        return performDataRead();
-      }
-    });
+    LlapIoAttribution.setCurrentCounters(counters);
+    try {
+      return ugi.doAs(new PrivilegedExceptionAction<Void>() {
+        @Override
+        public Void run() throws Exception {
+          return performDataRead();
+        }
+      });
+    } finally {
+      LlapIoAttribution.setCurrentCounters(null);
+    }
   }
 
   protected Void performDataRead() throws IOException, InterruptedException {
@@ -912,7 +920,7 @@ public long[] putFileData(Object fileKey, DiskRange[] ranges,
         MemoryBuffer[] data, long baseOffset, String tag) {
       if (data != null) {
         return lowLevelCache.putFileData(
-            fileKey, ranges, data, baseOffset, Priority.NORMAL, counters, tag);
+            fileKey, ranges, data, baseOffset, cachePriority, counters, tag);
       } else if (metadataCache != null) {
         metadataCache.putIncompleteCbs(fileKey, ranges, baseOffset);
       }
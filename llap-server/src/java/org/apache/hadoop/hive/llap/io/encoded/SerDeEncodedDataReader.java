@@ -53,6 +53,7 @@
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl.LlapSerDeDataBuffer;
 import org.apache.hadoop.hive.llap.cache.SerDeLowLevelCacheImpl.StripeData;
 import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
 import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.io.api.impl.LlapIoImpl;
 import org.apache.hadoop.hive.llap.io.decode.GenericColumnVectorProducer.SerDeStripeMetadata;
@@ -148,6 +149,7 @@ public DiskRangeList createCacheChunk(MemoryBuffer buffer, long offset, long end
 
   private final Object fileKey;
   private final String cacheTag;
+  private final Priority cachePriority;
   private final FileSystem fs;
 
   private volatile boolean isStopped = false;
@@ -176,9 +178,10 @@ public SerDeEncodedDataReader(SerDeLowLevelCacheImpl cache,
       BufferUsageManager bufferManager, Configuration daemonConf, FileSplit split,
       List<Integer> columnIds, OrcEncodedDataConsumer consumer, JobConf jobConf, Reporter reporter,
       InputFormat<?, ?> sourceInputFormat, Deserializer sourceSerDe,
-      QueryFragmentCounters counters, TypeDescription schema, Map<Path, PartitionDesc> parts)
-          throws IOException {
+      QueryFragmentCounters counters, TypeDescription schema, Map<Path, PartitionDesc> parts,
+      Priority cachePriority) throws IOException {
     this.cache = cache;
+    this.cachePriority = cachePriority;
     this.bufferManager = bufferManager;
     this.bufferFactory = new BufferObjectFactory() {
       @Override
@@ -257,12 +260,17 @@ public void unpause() {
   // TODO: move to a base class?
   @Override
   protected Void callInternal() throws IOException, InterruptedException {
-    return ugi.doAs(new PrivilegedExceptionAction<Void>() {
-      @Override
-      public Void run() throws Exception {
-        return performDataRead();
-      }
-    });
+    LlapIoAttribution.setCurrentCounters(counters);
+    try {
+      return ugi.doAs(new PrivilegedExceptionAction<Void>() {
+        @Override
+        public Void run() throws Exception {
+          return performDataRead();
+        }
+      });
+    } finally {
+      LlapIoAttribution.setCurrentCounters(null);
+    }
   }
 
   /** A row-based (Writable) reader that may also be able to report file offsets. */
@@ -667,6 +675,8 @@ protected Void performDataRead() throws IOException, InterruptedException {
       try {
         long startTime = counters.startTimeCounter();
         LlapIoImpl.LOG.info("Processing data for {}", split.getPath());
+        counters.setDesc(QueryFragmentCounters.Desc.TABLE,
+            LlapUtil.getDbAndTableNameForMetrics(split.getPath(), false));
         if (processStop()) {
           recordReaderTime(startTime);
           return null;
@@ -739,7 +749,7 @@ public void cacheFileData(StripeData sd) {
       }
       FileData fd = new FileData(fileKey, encodings.length);
       fd.addStripe(sd);
-      cache.putFileData(fd, Priority.NORMAL, counters, cacheTag);
+      cache.putFileData(fd, cachePriority, counters, cacheTag);
     } else {
       lockAllBuffers(sd);
     }
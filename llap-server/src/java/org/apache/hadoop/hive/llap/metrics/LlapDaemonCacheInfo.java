@@ -36,7 +36,9 @@ public enum LlapDaemonCacheInfo implements MetricsInfo {
   CacheHitRatio("Ratio of disk ranges cached vs requested"),
   CacheReadRequests("Number of disk range requests to cache"),
   CacheAllocatedArena("Number of arenas allocated"),
-  CacheNumLockedBuffers("Number of locked buffers in cache");
+  CacheNumLockedBuffers("Number of locked buffers in cache"),
+  CacheEvictionMissBytes("Disk ranges that are not cached because they were evicted in bytes"),
+  CacheAllocatorWaitTime("Time spent waiting for the cache evictions to allocate in ns");
 
   private final String desc;
 
@@ -18,10 +18,12 @@
 package org.apache.hadoop.hive.llap.metrics;
 
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheAllocatedArena;
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheAllocatorWaitTime;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityRemaining;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityRemainingPercentage;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityTotal;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheCapacityUsed;
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheEvictionMissBytes;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheHitBytes;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheHitRatio;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheInfo.CacheMetrics;
@@ -66,6 +68,10 @@ public class LlapDaemonCacheMetrics implements MetricsSource {
   MutableCounterLong cacheAllocatedArena;
   @Metric
   MutableCounterLong cacheNumLockedBuffers;
+  @Metric
+  MutableCounterLong cacheEvictionMissBytes;
+  @Metric
+  MutableCounterLong cacheAllocatorWaitTime;
 
   private LlapDaemonCacheMetrics(String name, String sessionId) {
     this.name = name;
@@ -111,6 +117,14 @@ public void decrCacheNumLockedBuffers() {
     cacheNumLockedBuffers.incr(-1);
   }
 
+  public void incrCacheEvictionMissBytes(long delta) {
+    cacheEvictionMissBytes.incr(delta);
+  }
+
+  public void incrCacheAllocatorWaitTime(long delta) {
+    cacheAllocatorWaitTime.incr(delta);
+  }
+
   public String getName() {
     return name;
   }
@@ -125,6 +139,11 @@ public long getCacheHitBytes() {
     return cacheHitBytes.value();
   }
 
+  @VisibleForTesting
+  public long getCacheEvictionMissBytes() {
+    return cacheEvictionMissBytes.value();
+  }
+
   @Override
   public void getMetrics(MetricsCollector collector, boolean b) {
     MetricsRecordBuilder rb = collector.addRecord(CacheMetrics)
@@ -150,6 +169,8 @@ private void getCacheStats(MetricsRecordBuilder rb) {
         .addCounter(CacheHitBytes, cacheHitBytes.value())
         .addCounter(CacheAllocatedArena, cacheAllocatedArena.value())
         .addCounter(CacheNumLockedBuffers, cacheNumLockedBuffers.value())
+        .addCounter(CacheEvictionMissBytes, cacheEvictionMissBytes.value())
+        .addCounter(CacheAllocatorWaitTime, cacheAllocatorWaitTime.value())
         .addGauge(CacheHitRatio, cacheHitRatio);
   }
 
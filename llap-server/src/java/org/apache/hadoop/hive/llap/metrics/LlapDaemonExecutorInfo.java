@@ -60,6 +60,8 @@ public enum LlapDaemonExecutorInfo implements MetricsInfo {
   ExecutorFallOffKilledTimeLost("Total time lost in an executor completing after informing the AM - killed fragments"),
   ExecutorFallOffKilledMaxTimeLost("Max value of time lost in an executor completing after informing the AM - killed fragments"),
   ExecutorFallOffNumCompletedFragments("Number of completed fragments w.r.t falloff values"),
+  ExecutorPercentileQueueWaitTime("Percentile time spent by fragments in the wait queue"),
+  ExecutorQueryQueueWaitTime("Percentile time spent in the wait queue by the fragments of a query"),
   ;
 
   private final String desc;
@@ -29,6 +29,8 @@
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorNumExecutorsAvailable;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorNumPreemptableRequests;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorNumQueuedRequests;
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorPercentileQueueWaitTime;
+import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorQueryQueueWaitTime;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorThreadCPUTime;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorNumExecutorsPerInstance;
 import static org.apache.hadoop.hive.llap.metrics.LlapDaemonExecutorInfo.ExecutorThreadUserTime;
@@ -136,6 +138,11 @@ public class LlapDaemonExecutorMetrics implements MetricsSource {
   final MutableQuantiles[] percentileTimeToKill;
   @Metric
   final MutableQuantiles[] percentileTimeLost;
+  @Metric
+  final MutableQuantiles[] percentileQueueWaitTime;
+  // Per-query wait queue time, using the first interval; removed when the query completes.
+  private final int queryQueueWaitTimeInterval;
+  private final Map<String, MutableQuantiles> queryQueueWaitTime = new ConcurrentHashMap<>();
 
   @Metric
   MutableCounterLong fallOffNumCompletedFragments;
@@ -171,6 +178,8 @@ private LlapDaemonExecutorMetrics(String displayName, JvmMetrics jm, String sess
     final int len = intervals == null ? 0 : intervals.length;
     this.percentileTimeToKill = new MutableQuantiles[len];
     this.percentileTimeLost = new MutableQuantiles[len];
+    this.percentileQueueWaitTime = new MutableQuantiles[len];
+    this.queryQueueWaitTimeInterval = len == 0 ? 0 : intervals[0];
     for (int i=0; i<len; i++) {
       int interval = intervals[i];
       percentileTimeToKill[i] = registry.newQuantiles(
@@ -181,6 +190,9 @@ private LlapDaemonExecutorMetrics(String displayName, JvmMetrics jm, String sess
           LlapDaemonExecutorInfo.ExecutorMaxPreemptionTimeLost.name() + "_" + interval + "s",
           LlapDaemonExecutorInfo.ExecutorMaxPreemptionTimeLost.description(),
           "ops", "latency", interval);
+      percentileQueueWaitTime[i] = registry.newQuantiles(
+          ExecutorPercentileQueueWaitTime.name() + "_" + interval + "s",
+          ExecutorPercentileQueueWaitTime.description(), "ops", "latency", interval);
     }
 
     this.executorNames = Maps.newHashMap();
@@ -272,6 +284,33 @@ public void addMetricsPreemptionTimeToKill(long value) {
     }
   }
 
+  public void addMetricsQueueWaitTime(String queryId, long value) {
+    for (MutableQuantiles q : percentileQueueWaitTime) {
+      q.add(value);
+    }
+    if (queryQueueWaitTimeInterval == 0) return;
+    MutableQuantiles q = queryQueueWaitTime.get(queryId);
+    if (q == null) {
+      // Not registered; reported by getExecutorStats while the query is running.
+      q = new MutableQuantiles(ExecutorQueryQueueWaitTime.name() + "_" + queryId,
+          ExecutorQueryQueueWaitTime.description(), "ops", "latency",
+          queryQueueWaitTimeInterval);
+      MutableQuantiles old = queryQueueWaitTime.putIfAbsent(queryId, q);
+      if (old != null) {
+        q.stop();
+        q = old;
+      }
+    }
+    q.add(value);
+  }
+
+  public void removeQueryMetrics(String queryId) {
+    MutableQuantiles q = queryQueueWaitTime.remove(queryId);
+    if (q != null) {
+      q.stop();
+    }
+  }
+
   public void addMetricsFallOffSuccessTimeLost(long timeLost) {
     fallOffNumCompletedFragments.incr();
     fallOffSuccessTimeLost.incr(timeLost);
@@ -363,6 +402,14 @@ private void getExecutorStats(MetricsRecordBuilder rb) {
     for (MutableQuantiles q : percentileTimeLost) {
       q.snapshot(rb, true);
     }
+
+    for (MutableQuantiles q : percentileQueueWaitTime) {
+      q.snapshot(rb, true);
+    }
+
+    for (MutableQuantiles q : queryQueueWaitTime.values()) {
+      q.snapshot(rb, true);
+    }
   }
 
   private void updateThreadMetrics(MetricsRecordBuilder rb) {
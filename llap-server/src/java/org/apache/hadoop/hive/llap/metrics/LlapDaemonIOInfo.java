@@ -28,7 +28,8 @@
 public enum LlapDaemonIOInfo implements MetricsInfo {
   IOMetrics("Llap daemon I/O elevator metrics"),
   PercentileDecodingTime("Percentile decoding time for encoded column batch"),
-  MaxDecodingTime("Max time for decoding an encoded column batch");
+  MaxDecodingTime("Max time for decoding an encoded column batch"),
+  ColumnDecodingTime("Total time for decoding the columns of a type in ns");
 
   private final String desc;
 
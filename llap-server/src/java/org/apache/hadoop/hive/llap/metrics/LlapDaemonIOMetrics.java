@@ -28,10 +28,13 @@
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.Interns;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.orc.TypeDescription.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +54,7 @@ public class LlapDaemonIOMetrics implements MetricsSource {
   final MutableQuantiles[] decodingTimes;
   @Metric
   MutableGaugeLong maxDecodingTime;
+  final MutableCounterLong[] columnDecodingTimes;
 
   private LlapDaemonIOMetrics(String displayName, String sessionId, int[] intervals) {
     this.name = displayName;
@@ -68,6 +72,12 @@ private LlapDaemonIOMetrics(String displayName, String sessionId, int[] interval
           LlapDaemonIOInfo.PercentileDecodingTime.description(),
           "ops", "latency", interval);
     }
+    this.columnDecodingTimes = new MutableCounterLong[Category.values().length];
+    for (Category category : Category.values()) {
+      columnDecodingTimes[category.ordinal()] = registry.newCounter(Interns.info(
+          LlapDaemonIOInfo.ColumnDecodingTime.name() + "_" + category.name(),
+          LlapDaemonIOInfo.ColumnDecodingTime.description()), 0L);
+    }
   }
 
   public static LlapDaemonIOMetrics create(String displayName, String sessionId, int[] intervals) {
@@ -99,6 +109,10 @@ public void addDecodeBatchTime(long latency) {
     }
   }
 
+  public void addColumnDecodeTime(Category category, long timeNs) {
+    columnDecodingTimes[category.ordinal()].incr(timeNs);
+  }
+
   private void getIoStats(MetricsRecordBuilder rb) {
     rb.addGauge(MaxDecodingTime, maxDecodingTime.value());
     rateOfDecoding.snapshot(rb, true);
@@ -106,6 +120,9 @@ private void getIoStats(MetricsRecordBuilder rb) {
     for (MutableQuantiles q : decodingTimes) {
       q.snapshot(rb, true);
     }
+    for (MutableCounterLong c : columnDecodingTimes) {
+      c.snapshot(rb, true);
+    }
   }
 
 }
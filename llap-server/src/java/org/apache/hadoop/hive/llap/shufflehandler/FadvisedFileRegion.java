@@ -44,6 +44,7 @@ public class FadvisedFileRegion extends DefaultFileRegion {
   private final boolean shuffleTransferToAllowed;
   private final FileChannel fileChannel;
   private final boolean canEvictAfterTransfer;
+  private final boolean closeFileOnRelease;
   
   private ReadaheadRequest readaheadRequest;
 
@@ -51,7 +52,21 @@ public FadvisedFileRegion(RandomAccessFile file, long position, long count,
       boolean manageOsCache, int readaheadLength, ReadaheadPool readaheadPool,
       String identifier, int shuffleBufferSize, 
       boolean shuffleTransferToAllowed, boolean canEvictAfterTransfer) throws IOException {
-    super(file.getChannel(), position, count);
+    this(file, position, count, manageOsCache, readaheadLength, readaheadPool, identifier,
+        shuffleBufferSize, shuffleTransferToAllowed, canEvictAfterTransfer, true);
+  }
+
+  /**
+   * @param closeFileOnRelease Whether to close the file when the region is released; false
+   *                           when several regions of the same file are sent, except for
+   *                           the last one.
+   */
+  public FadvisedFileRegion(RandomAccessFile file, long position, long count,
+      boolean manageOsCache, int readaheadLength, ReadaheadPool readaheadPool,
+      String identifier, int shuffleBufferSize,
+      boolean shuffleTransferToAllowed, boolean canEvictAfterTransfer,
+      boolean closeFileOnRelease) throws IOException {
+    super(file.getChannel(), position, count, closeFileOnRelease);
     this.manageOsCache = manageOsCache;
     this.readaheadLength = readaheadLength;
     this.readaheadPool = readaheadPool;
@@ -64,6 +79,7 @@ public FadvisedFileRegion(RandomAccessFile file, long position, long count,
     this.shuffleTransferToAllowed = shuffleTransferToAllowed;
     // To indicate whether the pages should be thrown away or not.
     this.canEvictAfterTransfer = canEvictAfterTransfer;
+    this.closeFileOnRelease = closeFileOnRelease;
   }
 
   @Override
@@ -141,8 +157,11 @@ long customShuffleTransfer(WritableByteChannel target, long position)
   public void releaseExternalResources() {
     if (readaheadRequest != null) {
       readaheadRequest.cancel();
+      readaheadRequest = null;
+    }
+    if (closeFileOnRelease) {
+      super.releaseExternalResources();
     }
-    super.releaseExternalResources();
   }
   
   /**
@@ -18,9 +18,8 @@
 package org.apache.hadoop.hive.llap.shufflehandler;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,22 +29,37 @@
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Caches the index files of the map outputs. The cache is bounded by the total size of the
+ * index records; each index file is read once even if it's requested by many fetchers at the
+ * same time, and the lookups of the files that are already cached do not block each other.
+ */
 class IndexCache {
 
   private final Configuration conf;
-  private final int totalMemoryAllowed;
-  private AtomicInteger totalMemoryUsed = new AtomicInteger();
+  private final long totalMemoryAllowed;
   private static final Logger LOG = LoggerFactory.getLogger(IndexCache.class);
 
-  private final ConcurrentHashMap<String,IndexInformation> cache =
-      new ConcurrentHashMap<String,IndexInformation>();
-
-  private final LinkedBlockingQueue<String> queue =
-      new LinkedBlockingQueue<String>();
+  private final Cache<String, TezSpillRecord> cache;
 
   public IndexCache(Configuration conf) {
     this.conf = conf;
-    totalMemoryAllowed = 10 * 1024 * 1024;
+    totalMemoryAllowed = conf.getLong(ShuffleHandler.SHUFFLE_INDEX_CACHE_SIZE_MB,
+        ShuffleHandler.DEFAULT_SHUFFLE_INDEX_CACHE_SIZE_MB) * 1024 * 1024;
+    cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(16)
+        .maximumWeight(totalMemoryAllowed)
+        .weigher(new Weigher<String, TezSpillRecord>() {
+          @Override
+          public int weigh(String mapId, TezSpillRecord spillRecord) {
+            return spillRecord.size() * Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
+          }
+        }).build();
     LOG.info("IndexCache created with max memory = " + totalMemoryAllowed);
   }
 
@@ -63,137 +77,58 @@ public IndexCache(Configuration conf) {
   public TezIndexRecord getIndexInformation(String mapId, int reduce,
                                          Path fileName, String expectedIndexOwner)
       throws IOException {
+    return getSpillRecord(mapId, reduce, fileName, expectedIndexOwner).getIndex(reduce);
+  }
 
-    IndexInformation info = cache.get(mapId);
-
-    if (info == null) {
-      info = readIndexFileToCache(fileName, mapId, expectedIndexOwner);
+  /**
+   * This method gets the index information for all the partitions of the given mapId.
+   * It reads the index file into cache if it is not already present.
+   * @param mapId
+   * @param lastReduce The last partition that will be read from the index
+   * @param fileName The file to read the index information from if it is not
+   *                 already present in the cache
+   * @param expectedIndexOwner The expected owner of the index file
+   * @return The index records of all the partitions
+   * @throws IOException
+   */
+  public TezSpillRecord getSpillRecord(final String mapId, int lastReduce,
+      final Path fileName, final String expectedIndexOwner) throws IOException {
+    TezSpillRecord spillRecord = cache.getIfPresent(mapId);
+    if (spillRecord != null) {
+      LOG.debug("IndexCache HIT: MapId " + mapId + " found");
     } else {
-      synchronized(info) {
-        while (isUnderConstruction(info)) {
-          try {
-            info.wait();
-          } catch (InterruptedException e) {
-            throw new IOException("Interrupted waiting for construction", e);
+      try {
+        spillRecord = cache.get(mapId, new Callable<TezSpillRecord>() {
+          @Override
+          public TezSpillRecord call() throws Exception {
+            LOG.debug("IndexCache MISS: MapId " + mapId + " not found");
+            return new TezSpillRecord(fileName, conf, expectedIndexOwner);
           }
-        }
+        });
+      } catch (ExecutionException e) {
+        throw new IOException("Error Reading IndexFile", e.getCause());
       }
-      LOG.debug("IndexCache HIT: MapId " + mapId + " found");
     }
 
-    if (info.mapSpillRecord.size() == 0 ||
-        info.mapSpillRecord.size() <= reduce) {
+    if (spillRecord.size() == 0 || spillRecord.size() <= lastReduce) {
       throw new IOException("Invalid request " +
-          " Map Id = " + mapId + " Reducer = " + reduce +
-          " Index Info Length = " + info.mapSpillRecord.size());
-    }
-    return info.mapSpillRecord.getIndex(reduce);
-  }
-
-  private boolean isUnderConstruction(IndexInformation info) {
-    synchronized(info) {
-      return (null == info.mapSpillRecord);
+          " Map Id = " + mapId + " Reducer = " + lastReduce +
+          " Index Info Length = " + spillRecord.size());
     }
-  }
-
-  private IndexInformation readIndexFileToCache(Path indexFileName,
-                                                String mapId,
-                                                String expectedIndexOwner)
-      throws IOException {
-    IndexInformation info;
-    IndexInformation newInd = new IndexInformation();
-    if ((info = cache.putIfAbsent(mapId, newInd)) != null) {
-      synchronized(info) {
-        while (isUnderConstruction(info)) {
-          try {
-            info.wait();
-          } catch (InterruptedException e) {
-            throw new IOException("Interrupted waiting for construction", e);
-          }
-        }
-      }
-      LOG.debug("IndexCache HIT: MapId " + mapId + " found");
-      return info;
-    }
-    LOG.debug("IndexCache MISS: MapId " + mapId + " not found") ;
-    TezSpillRecord tmp = null;
-    try {
-      tmp = new TezSpillRecord(indexFileName, conf, expectedIndexOwner);
-    } catch (Throwable e) {
-      tmp = new TezSpillRecord(0);
-      cache.remove(mapId);
-      throw new IOException("Error Reading IndexFile", e);
-    } finally {
-      synchronized (newInd) {
-        newInd.mapSpillRecord = tmp;
-        newInd.notifyAll();
-      }
-    }
-    queue.add(mapId);
-
-    if (totalMemoryUsed.addAndGet(newInd.getSize()) > totalMemoryAllowed) {
-      freeIndexInformation();
-    }
-    return newInd;
+    return spillRecord;
   }
 
   /**
-   * This method removes the map from the cache if index information for this
-   * map is loaded(size>0), index information entry in cache will not be 
-   * removed if it is in the loading phrase(size=0), this prevents corruption  
-   * of totalMemoryUsed. It should be called when a map output on this tracker 
-   * is discarded.
+   * This method removes the map from the cache. It should be called when a map output on
+   * this tracker is discarded.
    * @param mapId The taskID of this map.
    */
   public void removeMap(String mapId) {
-    IndexInformation info = cache.get(mapId);
-    if (info == null || ((info != null) && isUnderConstruction(info))) {
-      return;
-    }
-    info = cache.remove(mapId);
-    if (info != null) {
-      totalMemoryUsed.addAndGet(-info.getSize());
-      if (!queue.remove(mapId)) {
-        LOG.warn("Map ID" + mapId + " not found in queue!!");
-      }
-    } else {
-      LOG.info("Map ID " + mapId + " not found in cache");
-    }
+    cache.invalidate(mapId);
   }
 
-  /**
-   * This method checks if cache and totolMemoryUsed is consistent.
-   * It is only used for unit test.
-   * @return True if cache and totolMemoryUsed is consistent
-   */
-  boolean checkTotalMemoryUsed() {
-    int totalSize = 0;
-    for (IndexInformation info : cache.values()) {
-      totalSize += info.getSize();
-    }
-    return totalSize == totalMemoryUsed.get();
-  }
-
-  /**
-   * Bring memory usage below totalMemoryAllowed.
-   */
-  private synchronized void freeIndexInformation() {
-    while (totalMemoryUsed.get() > totalMemoryAllowed) {
-      String s = queue.remove();
-      IndexInformation info = cache.remove(s);
-      if (info != null) {
-        totalMemoryUsed.addAndGet(-info.getSize());
-      }
-    }
-  }
-
-  private static class IndexInformation {
-    TezSpillRecord mapSpillRecord;
-
-    int getSize() {
-      return mapSpillRecord == null
-          ? 0
-          : mapSpillRecord.size() * Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
-    }
+  @VisibleForTesting
+  long size() {
+    return cache.size();
   }
 }
@@ -81,6 +81,7 @@
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -189,6 +190,9 @@ public class ShuffleHandler implements AttemptRegistrationListener {
   public static final int DEFAULT_SHUFFLE_MAPOUTPUT_META_INFO_CACHE_SIZE =
       10000;
 
+  public static final String SHUFFLE_INDEX_CACHE_SIZE_MB = "llap.shuffle.indexcache.mb";
+  public static final long DEFAULT_SHUFFLE_INDEX_CACHE_SIZE_MB = 10;
+
   public static final String CONNECTION_CLOSE = "close";
 
   public static final String SUFFLE_SSL_FILE_BUFFER_SIZE_KEY =
@@ -603,7 +607,6 @@ public ChannelPipeline getPipeline() throws Exception {
   class Shuffle extends SimpleChannelUpstreamHandler {
 
     private final Configuration conf;
-    // TODO Change the indexCache to be a guava loading cache, rather than a custom implementation.
     private final IndexCache indexCache;
     private int port;
 
@@ -673,6 +676,26 @@ private List<String> splitMaps(List<String> mapq) {
       return ret;
     }
 
+    /**
+     * Parses the reduce parameter, which is either a single partition, or a range of partitions
+     * (e.g. 3-7) that a fetcher requests from every map output in one request.
+     */
+    private Range splitReduces(List<String> reduceq) {
+      if (null == reduceq || reduceq.size() != 1) {
+        return null;
+      }
+      String[] reduce = reduceq.get(0).split("-");
+      int first = Integer.parseInt(reduce[0]);
+      int last = first;
+      if (reduce.length > 1) {
+        last = Integer.parseInt(reduce[1]);
+      }
+      if (reduce.length > 2 || first < 0 || last < first) {
+        throw new NumberFormatException("Invalid reduce range " + reduceq.get(0));
+      }
+      return new Range(first, last);
+    }
+
     @Override
     public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent evt) 
         throws Exception {
@@ -735,11 +758,11 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
         sendError(ctx, "Too many job/reduce parameters", BAD_REQUEST);
         return;
       }
-      int reduceId;
+      Range reduceRange;
       String jobId;
       int dagId;
       try {
-        reduceId = Integer.parseInt(reduceQ.get(0));
+        reduceRange = splitReduces(reduceQ);
         jobId = jobQ.get(0);
         dagId = Integer.parseInt(dagIdQ.get(0));
       } catch (NumberFormatException e) {
@@ -778,7 +801,7 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
       String user = userRsrc.get(jobId);
 
       try {
-        populateHeaders(mapIds, jobId, dagId, user, reduceId,
+        populateHeaders(mapIds, jobId, dagId, user, reduceRange,
             response, keepAliveParam, mapOutputInfoMap);
       } catch(IOException e) {
         ch.write(response);
@@ -796,11 +819,11 @@ public void messageReceived(ChannelHandlerContext ctx, MessageEvent evt)
           // This will be hit if there's a large number of mapIds in a single request
           // (Determined by the cache size further up), in which case we go to disk again.
           if (info == null) {
-            info = getMapOutputInfo(jobId, dagId, mapId, reduceId, user);
+            info = getMapOutputInfo(jobId, dagId, mapId, reduceRange, user);
           }
           lastMap =
               sendMapOutput(ctx, ch, user, mapId,
-                reduceId, info);
+                reduceRange, info);
           if (null == lastMap) {
             sendError(ctx, NOT_FOUND);
             return;
@@ -842,7 +865,7 @@ private String getErrorMessage(Throwable t) {
 
 
     protected MapOutputInfo getMapOutputInfo(String jobId, int dagId, String mapId,
-                                             int reduce, String user) throws IOException {
+                                             Range reduceRange, String user) throws IOException {
       AttemptPathInfo pathInfo;
       try {
         AttemptPathIdentifier identifier = new AttemptPathIdentifier(jobId, dagId, user, mapId);
@@ -859,8 +882,8 @@ protected MapOutputInfo getMapOutputInfo(String jobId, int dagId, String mapId,
         }
       }
 
-      TezIndexRecord info =
-          indexCache.getIndexInformation(mapId, reduce, pathInfo.indexPath, user);
+      TezSpillRecord spillRecord = indexCache.getSpillRecord(
+          mapId, reduceRange.getLast(), pathInfo.indexPath, user);
 
       if (LOG.isDebugEnabled()) {
         LOG.debug("jobId=" + jobId + ", mapId=" + mapId + ",dataFile=" + pathInfo.dataPath +
@@ -868,12 +891,12 @@ protected MapOutputInfo getMapOutputInfo(String jobId, int dagId, String mapId,
       }
 
       // TODO Get rid of MapOutputInfo if possible
-      MapOutputInfo outputInfo = new MapOutputInfo(pathInfo.dataPath, info);
+      MapOutputInfo outputInfo = new MapOutputInfo(pathInfo.dataPath, spillRecord);
       return outputInfo;
     }
 
     protected void populateHeaders(List<String> mapIds, String jobId, int dagId,
-        String user, int reduce, HttpResponse response,
+        String user, Range reduceRange, HttpResponse response,
         boolean keepAliveParam, Map<String, MapOutputInfo> mapOutputInfoMap)
         throws IOException {
       // Reads the index file for each requested mapId, and figures out the overall
@@ -881,19 +904,22 @@ protected void populateHeaders(List<String> mapIds, String jobId, int dagId,
 
       long contentLength = 0;
       for (String mapId : mapIds) {
-        MapOutputInfo outputInfo = getMapOutputInfo(jobId, dagId, mapId, reduce, user);
+        MapOutputInfo outputInfo = getMapOutputInfo(jobId, dagId, mapId, reduceRange, user);
         // mapOutputInfoMap is used to share the lookups with the caller
         if (mapOutputInfoMap.size() < mapOutputMetaInfoCacheSize) {
           mapOutputInfoMap.put(mapId, outputInfo);
         }
-        ShuffleHeader header =
-            new ShuffleHeader(mapId, outputInfo.indexRecord.getPartLength(),
-                outputInfo.indexRecord.getRawLength(), reduce);
-        DataOutputBuffer dob = new DataOutputBuffer();
-        header.write(dob);
-
-        contentLength += outputInfo.indexRecord.getPartLength();
-        contentLength += dob.getLength();
+        for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
+          TezIndexRecord indexRecord = outputInfo.spillRecord.getIndex(reduce);
+          ShuffleHeader header =
+              new ShuffleHeader(mapId, indexRecord.getPartLength(),
+                  indexRecord.getRawLength(), reduce);
+          DataOutputBuffer dob = new DataOutputBuffer();
+          header.write(dob);
+
+          contentLength += indexRecord.getPartLength();
+          contentLength += dob.getLength();
+        }
       }
 
       // Now set the response headers.
@@ -917,11 +943,11 @@ protected void setResponseHeaders(HttpResponse response,
 
     class MapOutputInfo {
       final Path mapOutputFileName; // 100-200 byte string. Maybe replace with a local-dir-id, and construct on the fly.
-      final TezIndexRecord indexRecord; // 3 longs + reference overheads.
+      final TezSpillRecord spillRecord; // Shared with the index cache.
 
-      MapOutputInfo(Path mapOutputFileName, TezIndexRecord indexRecord) {
+      MapOutputInfo(Path mapOutputFileName, TezSpillRecord spillRecord) {
         this.mapOutputFileName = mapOutputFileName;
-        this.indexRecord = indexRecord;
+        this.spillRecord = spillRecord;
       }
     }
 
@@ -966,15 +992,15 @@ protected void verifyRequest(String appid, ChannelHandlerContext ctx,
       }
     }
 
+    /**
+     * Sends the requested partitions of one map output. All the partitions are written to the
+     * channel at once, each after its header; without SSL, the partitions are sent from the
+     * file with zero-copy transfers, sharing the file, which is closed after the last one.
+     * @return The future of the last write, or null if the map output was not found.
+     */
     protected ChannelFuture sendMapOutput(ChannelHandlerContext ctx, Channel ch,
-        String user, String mapId, int reduce, MapOutputInfo mapOutputInfo)
+        String user, String mapId, Range reduceRange, MapOutputInfo mapOutputInfo)
         throws IOException {
-      final TezIndexRecord info = mapOutputInfo.indexRecord;
-      final ShuffleHeader header =
-        new ShuffleHeader(mapId, info.getPartLength(), info.getRawLength(), reduce);
-      final DataOutputBuffer dob = new DataOutputBuffer();
-      header.write(dob);
-      ch.write(wrappedBuffer(dob.getData(), 0, dob.getLength()));
       final File spillfile =
           new File(mapOutputInfo.mapOutputFileName.toString());
       RandomAccessFile spill;
@@ -984,35 +1010,50 @@ protected ChannelFuture sendMapOutput(ChannelHandlerContext ctx, Channel ch,
         LOG.info(spillfile + " not found");
         return null;
       }
-      ChannelFuture writeFuture;
-      if (ch.getPipeline().get(SslHandler.class) == null) {
-        boolean canEvictAfterTransfer = true;
-        if (!shouldAlwaysEvictOsCache) {
-          canEvictAfterTransfer = (reduce > 0); // e.g broadcast data
-        }
-        final FadvisedFileRegion partition = new FadvisedFileRegion(spill,
-            info.getStartOffset(), info.getPartLength(), manageOsCache, readaheadLength,
-            readaheadPool, spillfile.getAbsolutePath(), 
-            shuffleBufferSize, shuffleTransferToAllowed, canEvictAfterTransfer);
-        writeFuture = ch.write(partition);
-        writeFuture.addListener(new ChannelFutureListener() {
-            // TODO error handling; distinguish IO/connection failures,
-            //      attribute to appropriate spill output
-          @Override
-          public void operationComplete(ChannelFuture future) {
-            if (future.isSuccess()) {
-              partition.transferSuccessful();
+      boolean isZeroCopy = ch.getPipeline().get(SslHandler.class) == null;
+      ChannelFuture writeFuture = null;
+      for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
+        final TezIndexRecord info = mapOutputInfo.spillRecord.getIndex(reduce);
+        final ShuffleHeader header =
+          new ShuffleHeader(mapId, info.getPartLength(), info.getRawLength(), reduce);
+        final DataOutputBuffer dob = new DataOutputBuffer();
+        header.write(dob);
+        ch.write(wrappedBuffer(dob.getData(), 0, dob.getLength()));
+        if (isZeroCopy) {
+          boolean canEvictAfterTransfer = true;
+          if (!shouldAlwaysEvictOsCache) {
+            canEvictAfterTransfer = (reduce > 0); // e.g broadcast data
+          }
+          final boolean isLast = (reduce == reduceRange.getLast());
+          final FadvisedFileRegion partition = new FadvisedFileRegion(spill,
+              info.getStartOffset(), info.getPartLength(), manageOsCache, readaheadLength,
+              readaheadPool, spillfile.getAbsolutePath(),
+              shuffleBufferSize, shuffleTransferToAllowed, canEvictAfterTransfer, isLast);
+          writeFuture = ch.write(partition);
+          writeFuture.addListener(new ChannelFutureListener() {
+              // TODO error handling; distinguish IO/connection failures,
+              //      attribute to appropriate spill output
+            @Override
+            public void operationComplete(ChannelFuture future) {
+              if (future.isSuccess()) {
+                partition.transferSuccessful();
+              }
+              // The writes complete in order, so the file is closed after all the partitions.
+              partition.releaseExternalResources();
             }
-            partition.releaseExternalResources();
+          });
+        } else {
+          if (reduce != reduceRange.getFirst()) {
+            // The chunked file closes the file when it's done; use a new one for each partition.
+            spill = SecureIOUtils.openForRandomRead(spillfile, "r", user, null);
           }
-        });
-      } else {
-        // HTTPS cannot be done with zero copy.
-        final FadvisedChunkedFile chunk = new FadvisedChunkedFile(spill,
-            info.getStartOffset(), info.getPartLength(), sslFileBufferSize,
-            manageOsCache, readaheadLength, readaheadPool,
-            spillfile.getAbsolutePath());
-        writeFuture = ch.write(chunk);
+          // HTTPS cannot be done with zero copy.
+          final FadvisedChunkedFile chunk = new FadvisedChunkedFile(spill,
+              info.getStartOffset(), info.getPartLength(), sslFileBufferSize,
+              manageOsCache, readaheadLength, readaheadPool,
+              spillfile.getAbsolutePath());
+          writeFuture = ch.write(chunk);
+        }
       }
       return writeFuture;
     }
@@ -1087,6 +1128,30 @@ private static String getBaseLocation(String jobIdString, int dagId, String user
     return baseStr;
   }
 
+  /** A range of reduce partitions requested by a fetcher. */
+  static class Range {
+    private final int first;
+    private final int last;
+
+    Range(int first, int last) {
+      this.first = first;
+      this.last = last;
+    }
+
+    int getFirst() {
+      return first;
+    }
+
+    int getLast() {
+      return last;
+    }
+
+    @Override
+    public String toString() {
+      return "range: " + first + "-" + last;
+    }
+  }
+
   static class AttemptPathInfo {
     // TODO Change this over to just store local dir indices, instead of the entire path. Far more efficient.
     private final Path indexPath;
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ListColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.junit.Test;
+
+public class TestDecodedColumnCache {
+  private static final int ROWS = 1024;
+
+  private static DecodedColumnCache createCache(long maxSize) {
+    return new DecodedColumnCache(
+        maxSize, new Configuration(), LlapDaemonCacheMetrics.create("test", "1"));
+  }
+
+  private static LongColumnVector createLongs(int size) {
+    LongColumnVector lcv = new LongColumnVector(size);
+    for (int i = 0; i < size; ++i) {
+      lcv.vector[i] = i * 3;
+    }
+    lcv.noNulls = false;
+    lcv.isNull[5] = true;
+    return lcv;
+  }
+
+  private static DecodedColumnCache.Key key(int rgIx) {
+    return new DecodedColumnCache.Key(1L, 0, rgIx, "[1]");
+  }
+
+  private static void put(DecodedColumnCache cache, int rgIx) {
+    DecodedColumnCache.EntryBuilder builder = cache.createEntryBuilder();
+    assertTrue(builder.add(new ColumnVector[] { createLongs(ROWS) }, ROWS));
+    cache.put(key(rgIx), builder);
+  }
+
+  @Test
+  public void testCopyLongs() {
+    LongColumnVector src = createLongs(ROWS);
+    ColumnVector cached = DecodedColumnCache.copyForCache(src, ROWS);
+    src.vector[0] = -1; // The copy does not depend on the source.
+    LongColumnVector dest = new LongColumnVector(ROWS);
+    DecodedColumnCache.copyFromCache(cached, dest, ROWS);
+    assertFalse(dest.noNulls);
+    assertTrue(dest.isNull[5]);
+    assertFalse(dest.isNull[6]);
+    assertEquals(0, dest.vector[0]);
+    assertEquals(3 * (ROWS - 1), dest.vector[ROWS - 1]);
+  }
+
+  @Test
+  public void testCopyBytes() {
+    BytesColumnVector src = new BytesColumnVector(3);
+    src.initBuffer();
+    src.setVal(0, "foo".getBytes(StandardCharsets.UTF_8));
+    src.noNulls = false;
+    src.isNull[1] = true;
+    src.setVal(2, "barbaz".getBytes(StandardCharsets.UTF_8));
+    ColumnVector cached = DecodedColumnCache.copyForCache(src, 3);
+    BytesColumnVector dest = new BytesColumnVector(3);
+    DecodedColumnCache.copyFromCache(cached, dest, 3);
+    assertEquals("foo", dest.toString(0));
+    assertTrue(dest.isNull[1]);
+    assertEquals("barbaz", dest.toString(2));
+
+    LongColumnVector repeating = new LongColumnVector(ROWS);
+    repeating.fill(7);
+    LongColumnVector repeatingDest = new LongColumnVector(ROWS);
+    DecodedColumnCache.copyFromCache(
+        DecodedColumnCache.copyForCache(repeating, ROWS), repeatingDest, ROWS);
+    assertTrue(repeatingDest.isRepeating);
+    assertEquals(7, repeatingDest.vector[0]);
+
+    ListColumnVector list = new ListColumnVector(3, new LongColumnVector(3));
+    assertNull(DecodedColumnCache.copyForCache(list, 3));
+  }
+
+  @Test
+  public void testEvictionWithinBudget() {
+    long maxSize = 256 * 1024;
+    DecodedColumnCache cache = createCache(maxSize);
+    put(cache, 0);
+    // The locked entry cannot be evicted.
+    DecodedColumnCache.Entry locked = cache.get(key(0));
+    assertNotNull(locked);
+    int entrySize = (int) locked.getMemoryUsage();
+    int count = (int) (maxSize / entrySize) * 2;
+    for (int i = 1; i < count; ++i) {
+      put(cache, i);
+    }
+    assertTrue(cache.size() <= maxSize / entrySize);
+    assertSame(locked, cache.get(key(0)));
+    cache.release(locked);
+    cache.release(locked);
+    assertNull(cache.get(key(1)));
+    DecodedColumnCache.Entry last = cache.get(key(count - 1));
+    assertNotNull(last);
+    assertEquals(1, last.getBatchCount());
+    assertEquals(ROWS, last.getBatchSize(0));
+    cache.release(last);
+  }
+
+  @Test
+  public void testTooLargeEntry() {
+    DecodedColumnCache cache = createCache(8 * 1024);
+    DecodedColumnCache.EntryBuilder builder = cache.createEntryBuilder();
+    assertFalse(builder.add(new ColumnVector[] { createLongs(ROWS) }, ROWS));
+  }
+}
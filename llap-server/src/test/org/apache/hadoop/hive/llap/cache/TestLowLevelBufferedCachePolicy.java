@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.junit.Test;
+
+public class TestLowLevelBufferedCachePolicy {
+
+  private static class EvictionTracker implements EvictionListener {
+    private final List<LlapCacheableBuffer> evicted =
+        Collections.synchronizedList(new ArrayList<LlapCacheableBuffer>());
+
+    @Override
+    public void notifyEvicted(LlapCacheableBuffer buffer) {
+      evicted.add(buffer);
+    }
+  }
+
+  private static LowLevelBufferedCachePolicy createPolicy(int size, EvictionTracker et) {
+    Configuration conf = new Configuration();
+    conf.setFloat(HiveConf.ConfVars.LLAP_LRFU_LAMBDA.varname, 0.01f);
+    LowLevelBufferedCachePolicy policy = new LowLevelBufferedCachePolicy(
+        new LowLevelLrfuCachePolicy(1, size, conf), 4);
+    policy.setEvictionListener(et);
+    return policy;
+  }
+
+  private static LlapDataBuffer cache(LowLevelCachePolicy policy) {
+    LlapDataBuffer buffer = LowLevelCacheImpl.allocateFake();
+    buffer.incRef();
+    policy.cache(buffer, Priority.NORMAL);
+    buffer.decRef();
+    policy.notifyUnlock(buffer);
+    return buffer;
+  }
+
+  @Test
+  public void testUnlocksAppliedBeforeEviction() {
+    EvictionTracker et = new EvictionTracker();
+    LowLevelBufferedCachePolicy policy = createPolicy(8, et);
+    List<LlapDataBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      buffers.add(cache(policy));
+    }
+    assertEquals(4, policy.getPendingCount());
+
+    // The pending buffers are evictable.
+    assertEquals(4, policy.evictSomeBlocks(4));
+    assertEquals(0, policy.getPendingCount());
+    assertEquals(4, et.evicted.size());
+    assertTrue(et.evicted.containsAll(buffers));
+  }
+
+  @Test
+  public void testDrainOnThreshold() {
+    EvictionTracker et = new EvictionTracker();
+    LowLevelBufferedCachePolicy policy = createPolicy(1024, et);
+    for (int i = 0; i < LowLevelBufferedCachePolicy.DRAIN_THRESHOLD - 1; ++i) {
+      cache(policy);
+    }
+    assertEquals(LowLevelBufferedCachePolicy.DRAIN_THRESHOLD - 1, policy.getPendingCount());
+    cache(policy);
+    assertEquals(0, policy.getPendingCount());
+  }
+
+  @Test
+  public void testConcurrentLockUnlock() throws Exception {
+    final int bufferCount = 256, threadCount = 8, opsPerThread = 10000;
+    EvictionTracker et = new EvictionTracker();
+    final LowLevelBufferedCachePolicy policy = createPolicy(bufferCount, et);
+    final List<LlapDataBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < bufferCount; ++i) {
+      buffers.add(cache(policy));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Void>> results = new ArrayList<>();
+      for (int t = 0; t < threadCount; ++t) {
+        final int seed = t;
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            Random rdm = new Random(seed);
+            for (int i = 0; i < opsPerThread; ++i) {
+              LlapDataBuffer buffer = buffers.get(rdm.nextInt(bufferCount));
+              if (buffer.incRef() == 1) {
+                policy.notifyLock(buffer);
+              }
+              if (buffer.decRef() == 0) {
+                policy.notifyUnlock(buffer);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Every buffer is still tracked by the policy, and can be evicted.
+    assertEquals(bufferCount, policy.evictSomeBlocks(bufferCount));
+    assertEquals(bufferCount, et.evicted.size());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.junit.Test;
+
+public class TestLowLevelCacheAdmissionFilter {
+
+  @Test
+  public void testAdmitAfterMinFrequency() {
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(1024, 2);
+    assertEquals(Priority.LOW, filter.admit(1L, 0, Priority.NORMAL));
+    assertEquals(Priority.LOW, filter.admit(1L, 100, Priority.NORMAL));
+    assertEquals(Priority.NORMAL, filter.admit(1L, 0, Priority.NORMAL));
+    // Hinted priorities are not filtered.
+    assertEquals(Priority.HIGH, filter.admit(2L, 0, Priority.HIGH));
+    assertEquals(Priority.LOW, filter.admit(3L, 0, Priority.LOW));
+  }
+
+  @Test
+  public void testScanIsNotAdmitted() {
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(4096, 2);
+    // Hot data is read repeatedly; a large scan reads each block once.
+    for (int i = 0; i < 4; ++i) {
+      filter.admit("hot", 0, Priority.NORMAL);
+    }
+    int admitted = 0;
+    for (int i = 0; i < 1000; ++i) {
+      if (filter.admit("scan", i * 1000L, Priority.NORMAL) == Priority.NORMAL) {
+        ++admitted;
+      }
+    }
+    assertTrue("Admitted " + admitted + " scan blocks", admitted < 50);
+    assertEquals(Priority.NORMAL, filter.admit("hot", 0, Priority.NORMAL));
+  }
+
+  @Test
+  public void testAging() {
+    LowLevelCacheAdmissionFilter filter = new LowLevelCacheAdmissionFilter(1024, 8);
+    for (int i = 0; i < 8; ++i) {
+      filter.record("old", 0);
+    }
+    // The counts are halved as other data is read, so that "old" is eventually forgotten.
+    for (int i = 0; i < 1024 * 8 * 4; ++i) {
+      filter.record("new", i);
+    }
+    assertTrue(filter.record("old", 0) < 8);
+  }
+
+  @Test
+  public void testHints() {
+    Path tablePath = new Path("/warehouse/dim"), otherPath = new Path("/warehouse/fact");
+    Properties props = new Properties();
+    props.setProperty(LowLevelCacheHints.TABLE_PROPERTY, "pin");
+    PartitionDesc pinned = new PartitionDesc();
+    pinned.setTableDesc(new TableDesc(null, null, props));
+    Map<Path, PartitionDesc> parts = new LinkedHashMap<>();
+    parts.put(tablePath, pinned);
+    parts.put(otherPath, new PartitionDesc());
+
+    Configuration conf = new Configuration();
+    assertEquals(Priority.HIGH,
+        LowLevelCacheHints.getPriority(conf, parts, new Path(tablePath, "000000_0")));
+    assertEquals(Priority.NORMAL,
+        LowLevelCacheHints.getPriority(conf, parts, new Path(otherPath, "000000_0")));
+    assertEquals(Priority.NORMAL,
+        LowLevelCacheHints.getPriority(conf, null, new Path(otherPath, "000000_0")));
+
+    // The query hint overrides the table property.
+    conf.set(HiveConf.ConfVars.LLAP_IO_CACHE_HINT.varname, "none");
+    assertEquals(Priority.LOW,
+        LowLevelCacheHints.getPriority(conf, parts, new Path(tablePath, "000000_0")));
+    conf.set(HiveConf.ConfVars.LLAP_IO_CACHE_HINT.varname, "normal");
+    assertEquals(Priority.NORMAL,
+        LowLevelCacheHints.getPriority(conf, parts, new Path(tablePath, "000000_0")));
+  }
+}
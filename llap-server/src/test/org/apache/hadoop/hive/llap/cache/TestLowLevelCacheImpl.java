@@ -33,12 +33,17 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.common.io.DiskRange;
 import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.DataCache.BooleanRef;
 import org.apache.hadoop.hive.common.io.DataCache.DiskRangeListFactory;
 import org.apache.hadoop.hive.common.io.DiskRangeList.CreateHelper;
 import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
 import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution;
+import org.apache.hadoop.hive.llap.counters.LlapIoAttribution.Stat;
+import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
 import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
 import org.apache.hadoop.hive.ql.io.orc.encoded.CacheChunk;
 import org.junit.Test;
@@ -335,6 +340,42 @@ public void testCacheMetrics() {
     assertEquals(1300, metrics.getCacheHitBytes());
   }
 
+  @Test
+  public void testAttribution() {
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("test", "1");
+    LowLevelCacheImpl cache = new LowLevelCacheImpl(metrics,
+        new DummyCachePolicy(), new DummyAllocator(), true, -1); // no cleanup thread
+    LlapIoAttribution attribution = new LlapIoAttribution(10);
+    QueryFragmentCounters counters =
+        new QueryFragmentCounters(new Configuration(), null, attribution, "query1");
+    counters.setDesc(QueryFragmentCounters.Desc.TABLE, "db.table");
+    long fn = 1;
+    MemoryBuffer[] fakes = new MemoryBuffer[] { fb(), fb() };
+    cache.putFileData(fn, new DiskRange[] { dr(0, 100), dr(100, 300) },
+        fakes, 0, Priority.NORMAL, null, null);
+    evict(cache, fakes[1]);
+    long evictionMissBytes = metrics.getCacheEvictionMissBytes();
+    CreateHelper list = new CreateHelper();
+    list.addOrMerge(0, 400, true, false);
+    cache.getFileData(fn, list.get(), 0, testFactory, counters, new BooleanRef());
+    assertEquals(200, metrics.getCacheEvictionMissBytes() - evictionMissBytes);
+
+    LlapIoAttribution.setCurrentCounters(counters);
+    LlapIoAttribution.recordAllocatorWait(5);
+    LlapIoAttribution.setCurrentCounters(null);
+    LlapIoAttribution.recordAllocatorWait(7); // Not attributed to anything.
+
+    for (LlapIoAttribution.Usage usage : new LlapIoAttribution.Usage[] {
+        attribution.getQueryUsage("query1"), attribution.getTableUsage("db.table") }) {
+      assertEquals(100, usage.get(Stat.CACHE_HIT_BYTES));
+      assertEquals(300, usage.get(Stat.CACHE_MISS_BYTES));
+      // Only the evicted buffer counts; the rest of the range has never been cached.
+      assertEquals(200, usage.get(Stat.CACHE_EVICTION_MISS_BYTES));
+      assertEquals(5, usage.get(Stat.ALLOCATOR_WAIT_NS));
+    }
+    assertEquals(0, attribution.getQueryUsage("query2").get(Stat.CACHE_HIT_BYTES));
+  }
+
   @Test
   public void testMTTWithCleanup() {
     final LowLevelCacheImpl cache = new LowLevelCacheImpl(LlapDaemonCacheMetrics.create(
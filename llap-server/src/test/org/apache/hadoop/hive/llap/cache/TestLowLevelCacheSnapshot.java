@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.io.Allocator.BufferObjectFactory;
+import org.apache.hadoop.hive.common.io.DataCache.DiskRangeListFactory;
+import org.apache.hadoop.hive.common.io.DiskRange;
+import org.apache.hadoop.hive.common.io.DiskRangeList;
+import org.apache.hadoop.hive.common.io.encoded.MemoryBuffer;
+import org.apache.hadoop.hive.llap.cache.LowLevelCache.Priority;
+import org.apache.hadoop.hive.llap.cache.TestBuddyAllocator.DummyMemoryManager;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.io.SyntheticFileId;
+import org.apache.hadoop.hive.ql.io.orc.encoded.CacheChunk;
+import org.junit.Test;
+
+public class TestLowLevelCacheSnapshot {
+  private static final DiskRangeListFactory testFactory = new DiskRangeListFactory() {
+    public DiskRangeList createCacheChunk(MemoryBuffer buffer, long offset, long end) {
+      return new CacheChunk(buffer, offset, end);
+    }
+  };
+
+  private static LowLevelCacheImpl createCache() {
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("test", "1");
+    BuddyAllocator allocator = new BuddyAllocator(false, false, 8, 1024, 1, 4096, 0, null,
+        new DummyMemoryManager(), metrics, null);
+    return new LowLevelCacheImpl(metrics, new LowLevelFifoCachePolicy(), allocator, true, -1);
+  }
+
+  private static void put(LowLevelCacheImpl cache, Object fileKey, long offset, int cachedLength,
+      int dataLength, byte value) {
+    MemoryBuffer[] buffers = new MemoryBuffer[1];
+    cache.getAllocator().allocateMultiple(buffers, dataLength, new BufferObjectFactory() {
+      @Override
+      public MemoryBuffer create() {
+        return new LlapDataBuffer();
+      }
+    });
+    ByteBuffer dest = buffers[0].getByteBufferRaw();
+    int startPos = dest.position();
+    for (int i = 0; i < dataLength; ++i) {
+      dest.put(value);
+    }
+    dest.limit(dest.position());
+    dest.position(startPos);
+    cache.putFileData(fileKey, new DiskRange[] { new DiskRange(offset, offset + cachedLength) },
+        buffers, 0, Priority.NORMAL, null, "default.t");
+    cache.decRefBuffer(buffers[0]);
+  }
+
+  private static void verifyCached(LowLevelCacheImpl cache, Object fileKey, long offset,
+      int cachedLength, int dataLength, byte value) {
+    DiskRangeList result = cache.getFileData(fileKey,
+        new DiskRangeList(offset, offset + cachedLength), 0, testFactory, null, null);
+    assertTrue(result instanceof CacheChunk);
+    LlapDataBuffer buffer = (LlapDataBuffer) ((CacheChunk) result).getBuffer();
+    assertEquals("default.t", buffer.getTag());
+    ByteBuffer data = buffer.getByteBufferDup();
+    assertEquals(dataLength, data.remaining());
+    while (data.hasRemaining()) {
+      assertEquals(value, data.get());
+    }
+    cache.decRefBuffer(buffer);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    File dir = Files.createTempDirectory("llap-cache-snapshot").toFile();
+    SyntheticFileId syntheticKey = new SyntheticFileId(new Path("/tmp/t/000000_0"), 1000, 1);
+    LowLevelCacheImpl cache = createCache();
+    put(cache, 1L, 0, 50, 100, (byte) 1);
+    put(cache, 1L, 50, 100, 100, (byte) 2);
+    put(cache, syntheticKey, 10, 200, 200, (byte) 3);
+    put(cache, "unsupported", 0, 100, 100, (byte) 4);
+
+    LowLevelCacheSnapshot snapshot = new LowLevelCacheSnapshot(dir.getPath());
+    assertEquals(400, snapshot.save(cache, 4096));
+
+    LowLevelCacheImpl newCache = createCache();
+    assertEquals(400, snapshot.load(newCache));
+    verifyCached(newCache, 1L, 0, 50, 100, (byte) 1);
+    verifyCached(newCache, 1L, 50, 100, 100, (byte) 2);
+    verifyCached(newCache, new SyntheticFileId(new Path("/tmp/t/000000_0"), 1000, 1),
+        10, 200, 200, (byte) 3);
+    assertFalse(newCache.getFiles().containsKey("unsupported"));
+
+    // The snapshot is only loaded once.
+    assertEquals(0, dir.list().length);
+    assertEquals(0, snapshot.load(createCache()));
+  }
+
+  @Test
+  public void testMaxSize() throws Exception {
+    File dir = Files.createTempDirectory("llap-cache-snapshot").toFile();
+    LowLevelCacheImpl cache = createCache();
+    for (int i = 0; i < 4; ++i) {
+      put(cache, 1L, i * 100, 100, 100, (byte) i);
+    }
+    LowLevelCacheSnapshot snapshot = new LowLevelCacheSnapshot(dir.getPath());
+    assertEquals(200, snapshot.save(cache, 150));
+    assertEquals(200, snapshot.load(createCache()));
+  }
+}
@@ -205,6 +205,30 @@ public void testDeadlockResolution() {
     unlock(lrfu, locked);
   }
 
+  @Test
+  public void testLowPriorityEvictedFirst() {
+    int heapSize = 4;
+    EvictionTracker et = new EvictionTracker();
+    Configuration conf = new Configuration();
+    LowLevelLrfuCachePolicy lrfu = new LowLevelLrfuCachePolicy(1, heapSize, conf);
+    LowLevelCacheMemoryManager mm = new LowLevelCacheMemoryManager(heapSize + 1, lrfu,
+        LlapDaemonCacheMetrics.create("test", "1"));
+    lrfu.setEvictionListener(et);
+    for (int i = 0; i < heapSize; ++i) {
+      assertTrue(cache(mm, lrfu, et, LowLevelCacheImpl.allocateFake()));
+    }
+    // The low priority buffer does not displace anything from the full heap.
+    LlapDataBuffer low = LowLevelCacheImpl.allocateFake();
+    assertTrue(mm.reserveMemory(1, false));
+    low.incRef();
+    lrfu.cache(low, Priority.LOW);
+    low.decRef();
+    lrfu.notifyUnlock(low);
+    assertTrue(et.evicted.isEmpty());
+    assertTrue(mm.reserveMemory(1, false));
+    assertSame(low, getOneEvictedBuffer(et));
+  }
+
   // Buffers in test are fakes not linked to cache; notify cache policy explicitly.
   public boolean cache(LowLevelCacheMemoryManager mm,
       LowLevelLrfuCachePolicy lrfu, EvictionTracker et, LlapDataBuffer buffer) {
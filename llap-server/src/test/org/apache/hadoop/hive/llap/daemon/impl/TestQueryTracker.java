@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.daemon.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.tez.common.TezRuntimeFrameworkConfigs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestQueryTracker {
+  private File testDir;
+  private String[] localDirs;
+
+  @Before
+  public void setUp() {
+    testDir = new File(System.getProperty("test.build.data", "/tmp"),
+        TestQueryTracker.class.getSimpleName() + "-" + System.nanoTime());
+    localDirs = new String[] { new File(testDir, "local").getAbsolutePath() };
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(testDir);
+  }
+
+  @Test(timeout = 10000)
+  public void testMemoryDirSelection() {
+    String memoryDir = new File(testDir, "memory").getAbsolutePath();
+    HiveConf conf = new HiveConf();
+    assertArrayEquals(localDirs, new QueryTracker(conf, localDirs, "test").chooseLocalDirsBase());
+
+    conf.setVar(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR, memoryDir);
+    conf.set(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE.varname, "1");
+    QueryTracker queryTracker = new QueryTracker(conf, localDirs, "test");
+    assertTrue(new File(memoryDir).isDirectory());
+    // The memory dir is one more dir next to the work dirs.
+    assertArrayEquals(new String[] { memoryDir, localDirs[0] },
+        queryTracker.chooseLocalDirsBase());
+
+    // Not enough space for a new query; falls back to the work dirs.
+    conf.set(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE.varname,
+        Long.toString(Long.MAX_VALUE));
+    assertArrayEquals(localDirs, new QueryTracker(conf, localDirs, "test").chooseLocalDirsBase());
+  }
+
+  @Test(timeout = 10000)
+  public void testSmallOutputsInMemoryDir() throws Exception {
+    String memoryDir = new File(testDir, "memory").getAbsolutePath();
+    HiveConf conf = new HiveConf();
+    conf.setVar(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR, memoryDir);
+    conf.set(ConfVars.LLAP_DAEMON_SHUFFLE_MEMORY_DIR_MIN_FREE.varname, "1");
+    String[] dirs = new QueryTracker(conf, localDirs, "test").chooseLocalDirsBase();
+
+    // Allocate the output files the way Tez does for the dirs of a fragment.
+    Configuration taskConf = new Configuration(false);
+    taskConf.setStrings(TezRuntimeFrameworkConfigs.LOCAL_DIRS, dirs);
+    LocalDirAllocator allocator = new LocalDirAllocator(TezRuntimeFrameworkConfigs.LOCAL_DIRS);
+    int numOutputs = 10;
+    int inMemory = 0;
+    for (int i = 0; i < numOutputs; i++) {
+      Path path = allocator.getLocalPathForWrite("output/file.out." + i, 1024, taskConf);
+      File file = new File(path.toUri().getPath());
+      file.getParentFile().mkdirs();
+      assertTrue(file.createNewFile());
+      if (file.getPath().startsWith(memoryDir + File.separator)) {
+        inMemory++;
+      }
+    }
+    // With one work dir, the small outputs alternate between the memory dir and the work dir.
+    assertEquals(numOutputs / 2, inMemory);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.daemon.impl.comparator;
+
+import static org.apache.hadoop.hive.llap.daemon.impl.TaskExecutorTestHelpers.createSubmitWorkRequestProto;
+import static org.apache.hadoop.hive.llap.daemon.impl.TaskExecutorTestHelpers.createTaskWrapper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hive.llap.daemon.impl.ContainerRunnerImpl;
+import org.apache.hadoop.hive.llap.daemon.impl.EvictingPriorityBlockingQueue;
+import org.apache.hadoop.hive.llap.daemon.impl.TaskExecutorService.TaskWrapper;
+import org.junit.Test;
+
+public class TestFairShareComparator {
+  private static final long HALF_LIFE_MS = 60000;
+
+  private static String queryId(String dagName) {
+    // See TaskExecutorTestHelpers.createSubmitWorkRequestProto.
+    return ContainerRunnerImpl.constructUniqueQueryId(dagName, 1);
+  }
+
+  @Test(timeout = 60000)
+  public void testUsageOrdersQueries() throws InterruptedException {
+    FairShareComparator comparator = new FairShareComparator(HALF_LIFE_MS, 0f);
+    TaskWrapper r1 = createTaskWrapper(createSubmitWorkRequestProto(1, 2, 100, 100, "q1"), true, 100000);
+    TaskWrapper r2 = createTaskWrapper(createSubmitWorkRequestProto(2, 2, 200, 200, "q2"), true, 100000);
+    TaskWrapper r3 = createTaskWrapper(createSubmitWorkRequestProto(3, 2, 100, 100, "q1"), false, 100000);
+    EvictingPriorityBlockingQueue<TaskWrapper> queue = new EvictingPriorityBlockingQueue<>(
+        comparator, 4);
+    assertNull(queue.offer(r1, 0));
+    assertNull(queue.offer(r2, 0));
+    assertNull(queue.offer(r3, 0));
+    assertEquals(r1, queue.peek());
+
+    // q1 has used the executors, so q2 goes first once the usage is refreshed.
+    ExecutorUsageTracker tracker = comparator.getUsageTracker();
+    tracker.addExecutorTime(queryId("q1"), "user1", 10000, 0);
+    assertEquals(r1, queue.peek());
+    assertTrue(tracker.refresh(0));
+    queue.reorder();
+    assertEquals(r2, queue.take());
+    assertEquals(r1, queue.take());
+    // Finishable tasks still go before the non-finishable ones.
+    assertEquals(r3, queue.take());
+  }
+
+  @Test(timeout = 60000)
+  public void testAging() {
+    FairShareComparator comparator = new FairShareComparator(HALF_LIFE_MS, 1f);
+    ExecutorUsageTracker tracker = comparator.getUsageTracker();
+    tracker.addExecutorTime(queryId("q1"), null, 1000, 0);
+    tracker.refresh(0);
+    // The task of the busy query has waited longer than its query's usage.
+    TaskWrapper r1 = createTaskWrapper(createSubmitWorkRequestProto(1, 2, 0, 0, "q1"), true, 100000);
+    TaskWrapper r2 = createTaskWrapper(createSubmitWorkRequestProto(2, 2, 5000, 5000, "q2"), true, 100000);
+    assertTrue(comparator.compare(r1, r2) < 0);
+    // ... but not here.
+    r2 = createTaskWrapper(createSubmitWorkRequestProto(2, 2, 500, 500, "q2"), true, 100000);
+    assertTrue(comparator.compare(r2, r1) < 0);
+  }
+
+  @Test
+  public void testUsageTracker() {
+    ExecutorUsageTracker tracker = new ExecutorUsageTracker(HALF_LIFE_MS);
+    assertFalse(tracker.refresh(0));
+    tracker.addExecutorTime("q1", "user1", 1000, 0);
+    // The usage is only visible after a refresh.
+    assertEquals(0, tracker.getUsage("q1", "user1"), 0.001);
+    assertTrue(tracker.refresh(0));
+    assertEquals(2000, tracker.getUsage("q1", "user1"), 0.001);
+    // A new query of the same user gets the usage of the pool.
+    assertEquals(1000, tracker.getUsage("q2", "user1"), 0.001);
+    assertEquals(0, tracker.getUsage("q3", "user2"), 0.001);
+
+    assertTrue(tracker.refresh(HALF_LIFE_MS));
+    assertEquals(1000, tracker.getUsage("q1", "user1"), 0.001);
+    // The usage decays, and is eventually forgotten.
+    assertTrue(tracker.refresh(HALF_LIFE_MS * 20));
+    assertEquals(0, tracker.getUsage("q1", "user1"), 0.001);
+    assertFalse(tracker.refresh(HALF_LIFE_MS * 21));
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.llap.io.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
+import org.apache.hadoop.hive.llap.cache.BuddyAllocator;
+import org.apache.hadoop.hive.llap.cache.LowLevelCacheMemoryManager;
+import org.apache.hadoop.hive.llap.cache.LowLevelFifoCachePolicy;
+import org.apache.hadoop.hive.llap.io.metadata.MetadataCache;
+import org.apache.hadoop.hive.llap.io.metadata.MetadataCache.LlapBufferOrBuffers;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonCacheMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.AcidInputFormat;
+import org.apache.hadoop.hive.ql.io.HdfsUtils;
+import org.apache.hadoop.hive.ql.io.HiveInputFormat;
+import org.apache.hadoop.hive.ql.io.HiveInputFormat.HiveInputSplit;
+import org.apache.hadoop.hive.ql.io.orc.OrcInputFormat;
+import org.apache.hadoop.hive.ql.io.orc.OrcSplit;
+import org.apache.hadoop.hive.ql.io.orc.encoded.OrcBatchKey;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.split.TezGroupedSplit;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.orc.OrcFile;
+import org.apache.orc.Reader;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.Writer;
+import org.apache.tez.mapreduce.hadoop.MRInputHelpers;
+import org.apache.tez.runtime.api.events.InputDataInformationEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLlapIoPrefetcher {
+  private HiveConf conf;
+  private File testDir;
+  private Path orcPath;
+  private LowLevelCacheMemoryManager memoryManager;
+  private MetadataCache metadataCache;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HiveConf();
+    conf.setBoolVar(ConfVars.LLAP_CACHE_ALLOW_SYNTHETIC_FILEID, true);
+    conf.setIntVar(ConfVars.LLAP_IO_PREFETCH_MAX_STRIPES, 2);
+    testDir = new File(System.getProperty("test.build.data", "/tmp"),
+        TestLlapIoPrefetcher.class.getSimpleName() + "-" + System.nanoTime());
+    orcPath = new Path(new File(testDir, "data.orc").getAbsolutePath());
+    writeOrcFile();
+
+    LlapDaemonCacheMetrics metrics = LlapDaemonCacheMetrics.create("", "");
+    memoryManager = new LowLevelCacheMemoryManager(
+        1024 * 1024, new LowLevelFifoCachePolicy(), metrics);
+    BuddyAllocator allocator = new BuddyAllocator(
+        false, false, 8, 64 * 1024, 1, 1024 * 1024, 0, null, memoryManager, metrics, null);
+    metadataCache = new MetadataCache(
+        allocator, memoryManager, new LowLevelFifoCachePolicy(), true, metrics);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(testDir);
+  }
+
+  private void writeOrcFile() throws Exception {
+    TypeDescription schema = TypeDescription.fromString("struct<x:bigint>");
+    Writer writer = OrcFile.createWriter(orcPath, OrcFile.writerOptions(conf)
+        .setSchema(schema).stripeSize(1024).bufferSize(1024).rowIndexStride(1000));
+    VectorizedRowBatch batch = schema.createRowBatch();
+    LongColumnVector x = (LongColumnVector) batch.cols[0];
+    for (int i = 0; i < 50000; ++i) {
+      x.vector[batch.size++] = i * 7919L;
+      if (batch.size == batch.getMaxSize()) {
+        writer.addRowBatch(batch);
+        batch.reset();
+      }
+      if (i % 5000 == 0) {
+        // Flush a stripe now and then.
+        writer.writeIntermediateFooter();
+      }
+    }
+    writer.addRowBatch(batch);
+    writer.close();
+  }
+
+  private OrcSplit createSplit(long offset, long length) throws Exception {
+    return new OrcSplit(orcPath, null, offset, length, new String[0], null, true, false,
+        Collections.<AcidInputFormat.DeltaMetaData>emptyList(), length, length,
+        new Path(testDir.getAbsolutePath()));
+  }
+
+  @Test(timeout = 60000)
+  public void testPrefetch() throws Exception {
+    Reader reader = OrcFile.createReader(orcPath, OrcFile.readerOptions(conf));
+    assertTrue("Expected multiple stripes", reader.getStripes().size() > 3);
+    FileSystem fs = orcPath.getFileSystem(conf);
+    Object fileKey = HdfsUtils.getFileId(fs, orcPath, true, false);
+
+    LlapIoPrefetcher prefetcher = new LlapIoPrefetcher(metadataCache, memoryManager, conf);
+    try {
+      // The split covers the stripes starting from the second one.
+      long offset = reader.getStripes().get(1).getOffset();
+      OrcSplit split = createSplit(offset, fs.getFileStatus(orcPath).getLen() - offset);
+      prefetcher.prefetch(Collections.singletonList(split),
+          UserGroupInformation.getCurrentUser()).get();
+    } finally {
+      prefetcher.close();
+    }
+    assertCached(metadataCache.getFileMetadata(fileKey));
+    assertNull(metadataCache.getStripeTail(new OrcBatchKey(fileKey, 0, 0)));
+    assertCached(metadataCache.getStripeTail(new OrcBatchKey(fileKey, 1, 0)));
+    assertCached(metadataCache.getStripeTail(new OrcBatchKey(fileKey, 2, 0)));
+    // Only up to max.stripes footers per split.
+    assertNull(metadataCache.getStripeTail(new OrcBatchKey(fileKey, 3, 0)));
+  }
+
+  @Test(timeout = 60000)
+  public void testNoEviction() throws Exception {
+    memoryManager.reserveMemory(memoryManager.getAvailableMemory());
+    LlapIoPrefetcher prefetcher = new LlapIoPrefetcher(metadataCache, memoryManager, conf);
+    try {
+      OrcSplit split = createSplit(0, orcPath.getFileSystem(conf).getFileStatus(orcPath).getLen());
+      prefetcher.prefetch(Collections.singletonList(split),
+          UserGroupInformation.getCurrentUser()).get();
+    } finally {
+      prefetcher.close();
+    }
+    FileSystem fs = orcPath.getFileSystem(conf);
+    assertNull(metadataCache.getFileMetadata(HdfsUtils.getFileId(fs, orcPath, true, false)));
+  }
+
+  @Test
+  public void testExtractSplits() throws Exception {
+    OrcSplit split = createSplit(3, 100);
+    InputSplit grouped = new TezGroupedSplit(Collections.<InputSplit>singletonList(
+        new HiveInputSplit(split, OrcInputFormat.class.getName())),
+        HiveInputFormat.class.getName(), new String[0], null, 100);
+    InputDataInformationEvent event = InputDataInformationEvent.createWithSerializedPayload(
+        0, MRInputHelpers.createSplitProto(grouped).toByteString().asReadOnlyByteBuffer());
+    List<OrcSplit> splits = LlapIoPrefetcher.extractOrcSplits(event, conf);
+    assertEquals(1, splits.size());
+    assertEquals(orcPath, splits.get(0).getPath());
+    assertEquals(3, splits.get(0).getStart());
+    assertEquals(100, splits.get(0).getLength());
+  }
+
+  private void assertCached(LlapBufferOrBuffers buffers) {
+    assertNotNull(buffers);
+    metadataCache.decRefBuffer(buffers);
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.io.decode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.llap.counters.LlapIOCounters;
+import org.apache.hadoop.hive.llap.counters.QueryFragmentCounters;
+import org.apache.hadoop.hive.llap.io.api.impl.ColumnVectorBatch;
+import org.apache.hadoop.hive.llap.metrics.LlapDaemonIOMetrics;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.orc.encoded.Consumer;
+import org.apache.hadoop.hive.ql.io.parquet.vector.VectorizedParquetRecordReader;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.tez.common.counters.TezCounters;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestParquetReadPipeline {
+
+  private static class CollectingConsumer implements Consumer<ColumnVectorBatch> {
+    private final List<ColumnVectorBatch> batches = new ArrayList<>();
+    private final List<Long> firstValues = new ArrayList<>();
+    private boolean isDone;
+    private Throwable error;
+    private ParquetReadPipeline pipeline;
+
+    @Override
+    public void consumeData(ColumnVectorBatch data) {
+      batches.add(data);
+      firstValues.add(((LongColumnVector) data.cols[0]).vector[0]);
+      // Like LlapRecordReader, return the batch once it is used.
+      pipeline.returnData(data);
+    }
+
+    @Override
+    public void setDone() {
+      isDone = true;
+    }
+
+    @Override
+    public void setError(Throwable t) {
+      error = t;
+    }
+  }
+
+  private static VectorizedRowBatch createBatch() {
+    VectorizedRowBatch vrb = new VectorizedRowBatch(3);
+    for (int i = 0; i < vrb.cols.length; ++i) {
+      vrb.cols[i] = new LongColumnVector();
+    }
+    return vrb;
+  }
+
+  private static VectorizedParquetRecordReader createReader(final int batchCount)
+      throws IOException {
+    VectorizedParquetRecordReader reader = mock(VectorizedParquetRecordReader.class);
+    when(reader.createValue()).thenAnswer(new Answer<VectorizedRowBatch>() {
+      @Override
+      public VectorizedRowBatch answer(InvocationOnMock invocation) {
+        return createBatch();
+      }
+    });
+    when(reader.next(any(NullWritable.class), any(VectorizedRowBatch.class))).thenAnswer(
+        new Answer<Boolean>() {
+      private int batchIx = 0;
+
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        if (batchIx == batchCount) return false;
+        VectorizedRowBatch vrb = (VectorizedRowBatch) invocation.getArguments()[1];
+        vrb.reset();
+        for (ColumnVector cv : vrb.cols) {
+          ((LongColumnVector) cv).vector[0] = batchIx;
+        }
+        vrb.size = 10;
+        ++batchIx;
+        return true;
+      }
+    });
+    return reader;
+  }
+
+  private static ParquetReadPipeline createPipeline(VectorizedParquetRecordReader reader,
+      CollectingConsumer consumer, QueryFragmentCounters counters) throws IOException {
+    ParquetReadPipeline pipeline = new ParquetReadPipeline(
+        new FileSplit(new Path("/tmp/test.parquet"), 0, 100, new String[0]), reader, consumer,
+        Arrays.asList(2, 0), null, null, counters, mock(LlapDaemonIOMetrics.class));
+    consumer.pipeline = pipeline;
+    return pipeline;
+  }
+
+  @Test
+  public void testReadsIncludedColumns() throws Exception {
+    VectorizedParquetRecordReader reader = createReader(3);
+    CollectingConsumer consumer = new CollectingConsumer();
+    TezCounters tezCounters = new TezCounters();
+    ParquetReadPipeline pipeline = createPipeline(
+        reader, consumer, new QueryFragmentCounters(new Configuration(), tezCounters));
+
+    pipeline.getReadCallable().call();
+
+    assertTrue(consumer.isDone);
+    assertNull(consumer.error);
+    assertEquals(Arrays.asList(0L, 1L, 2L), consumer.firstValues);
+    for (ColumnVectorBatch cvb : consumer.batches) {
+      assertEquals(2, cvb.cols.length);
+      assertNotSame(cvb.cols[0], cvb.cols[1]);
+      assertEquals(10, cvb.size);
+    }
+    // The returned batch and its vectors are reused.
+    assertSame(consumer.batches.get(0), consumer.batches.get(2));
+    assertEquals(30, tezCounters.findCounter(LlapIOCounters.ROWS_EMITTED).getValue());
+    assertEquals(3, tezCounters.findCounter(LlapIOCounters.NUM_VECTOR_BATCHES).getValue());
+    verify(reader).close();
+  }
+
+  @Test
+  public void testError() throws Exception {
+    VectorizedParquetRecordReader reader = createReader(3);
+    IOException error = new IOException("read failed");
+    doThrow(error).when(reader).next(any(NullWritable.class), any(VectorizedRowBatch.class));
+    CollectingConsumer consumer = new CollectingConsumer();
+    ParquetReadPipeline pipeline = createPipeline(
+        reader, consumer, new QueryFragmentCounters(new Configuration(), null));
+
+    try {
+      pipeline.getReadCallable().call();
+    } catch (IOException e) {
+      // expected
+    }
+    assertSame(error, consumer.error);
+    assertFalse(consumer.isDone);
+    verify(reader).close();
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.shufflehandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIndexCache {
+  private static final int PARTITIONS = 1000;
+
+  private Configuration conf;
+  private File testDir;
+  private String user;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    conf.setLong(ShuffleHandler.SHUFFLE_INDEX_CACHE_SIZE_MB, 1);
+    testDir = new File(System.getProperty("test.build.data", "/tmp"),
+        TestIndexCache.class.getSimpleName() + "-" + System.nanoTime());
+    assertTrue(testDir.mkdirs());
+    user = UserGroupInformation.getCurrentUser().getShortUserName();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(testDir);
+  }
+
+  private Path writeIndexFile(String mapId) throws IOException {
+    TezSpillRecord spillRecord = new TezSpillRecord(PARTITIONS);
+    for (int i = 0; i < PARTITIONS; ++i) {
+      spillRecord.putIndex(new TezIndexRecord(i * 100L, 90, 100), i);
+    }
+    Path path = new Path(new File(testDir, mapId + ".index").getAbsolutePath());
+    spillRecord.writeToFile(path, conf);
+    return path;
+  }
+
+  @Test(timeout = 60000)
+  public void testLookups() throws Exception {
+    IndexCache cache = new IndexCache(conf);
+    Path path = writeIndexFile("map_0");
+    TezSpillRecord spillRecord = cache.getSpillRecord("map_0", PARTITIONS - 1, path, user);
+    assertEquals(PARTITIONS, spillRecord.size());
+    assertEquals(500 * 100L, cache.getIndexInformation("map_0", 500, path, user).getStartOffset());
+    // The cached record is reused, even if the file is gone.
+    assertTrue(new File(path.toUri().getPath()).delete());
+    assertSame(spillRecord, cache.getSpillRecord("map_0", 0, path, user));
+
+    try {
+      cache.getSpillRecord("map_0", PARTITIONS, path, user);
+      fail("Expected an exception for an invalid partition");
+    } catch (IOException e) {
+      // Expected.
+    }
+    cache.removeMap("map_0");
+    assertEquals(0, cache.size());
+    try {
+      cache.getSpillRecord("map_0", 0, path, user);
+      fail("Expected an exception for a missing file");
+    } catch (IOException e) {
+      // Expected; and the failure is not cached.
+      assertEquals(0, cache.size());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSizeBound() throws Exception {
+    IndexCache cache = new IndexCache(conf);
+    // Each index is ~24Kb; 100 of them don't fit into 1Mb.
+    for (int i = 0; i < 100; ++i) {
+      String mapId = "map_" + i;
+      cache.getSpillRecord(mapId, 0, writeIndexFile(mapId), user);
+    }
+    assertTrue("Cache size " + cache.size(), cache.size() < 50);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentLookups() throws Exception {
+    final IndexCache cache = new IndexCache(conf);
+    final Path path = writeIndexFile("map_0");
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<TezSpillRecord>> results = new ArrayList<>();
+      for (int i = 0; i < 8; ++i) {
+        results.add(executor.submit(new Callable<TezSpillRecord>() {
+          @Override
+          public TezSpillRecord call() throws Exception {
+            return cache.getSpillRecord("map_0", 0, path, user);
+          }
+        }));
+      }
+      // The index file is only read once.
+      TezSpillRecord first = results.get(0).get();
+      for (Future<TezSpillRecord> result : results) {
+        assertSame(first, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.llap.shufflehandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.Token;
+import org.apache.tez.common.security.JobTokenIdentifier;
+import org.apache.tez.common.security.JobTokenSecretManager;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestShuffleHandler {
+  private static final String APP_ID = "application_1_0001";
+  private static final String JOB_ID = "job_1_0001";
+  private static final int DAG_ID = 1;
+  private static final int PARTITIONS = 5;
+  private static final String[] MAP_IDS = {
+      "attempt_1_0001_1_00_000000_0", "attempt_1_0001_1_00_000001_0" };
+
+  // The handler can only be started once in a JVM.
+  private static File baseDir;
+  private static File outputDir;
+  private static String user;
+  private static int port;
+  private static JobTokenSecretManager clientSecretManager;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    baseDir = new File(System.getProperty("test.build.data", "/tmp"),
+        TestShuffleHandler.class.getSimpleName() + "-" + System.nanoTime());
+    user = UserGroupInformation.getCurrentUser().getShortUserName();
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    conf.set(ShuffleHandler.SHUFFLE_HANDLER_LOCAL_DIRS, baseDir.getAbsolutePath());
+    conf.setBoolean(ShuffleHandler.SHUFFLE_MANAGE_OS_CACHE, false);
+
+    outputDir = new File(baseDir,
+        "usercache/" + user + "/appcache/" + APP_ID + "/" + DAG_ID + "/output");
+    for (String mapId : MAP_IDS) {
+      writeMapOutput(new File(outputDir, mapId), mapId, conf);
+    }
+
+    ShuffleHandler.initializeAndStart(conf);
+    port = ShuffleHandler.get().getPort();
+    JobTokenSecretManager secretManager = new JobTokenSecretManager();
+    Token<JobTokenIdentifier> token =
+        new Token<>(new JobTokenIdentifier(new Text(JOB_ID)), secretManager);
+    ShuffleHandler.get().registerDag(APP_ID, DAG_ID, token, user, new String[0]);
+    clientSecretManager = new JobTokenSecretManager(
+        JobTokenSecretManager.createSecretKey(token.getPassword()));
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    ShuffleHandler.shutdown();
+    FileUtil.fullyDelete(baseDir);
+  }
+
+  /*
+   * Each partition has a different length, so a header or a partition out of place shows up.
+   */
+  private static byte[] partitionData(String mapId, int reduce) {
+    byte[] data = new byte[100 + 10 * reduce];
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = (byte) (mapId.hashCode() + reduce * 31 + i);
+    }
+    return data;
+  }
+
+  private static void writeMapOutput(File dir, String mapId, Configuration conf)
+      throws IOException {
+    assertTrue(dir.mkdirs());
+    TezSpillRecord spillRecord = new TezSpillRecord(PARTITIONS);
+    long offset = 0;
+    try (FileOutputStream out = new FileOutputStream(new File(dir, "file.out"))) {
+      for (int i = 0; i < PARTITIONS; ++i) {
+        byte[] data = partitionData(mapId, i);
+        out.write(data);
+        spillRecord.putIndex(new TezIndexRecord(offset, data.length, data.length), i);
+        offset += data.length;
+      }
+    }
+    spillRecord.writeToFile(new Path(new File(dir, "file.out.index").getAbsolutePath()), conf);
+  }
+
+  private static HttpURLConnection fetch(String maps, String reduce) throws IOException {
+    URL url = new URL("http://localhost:" + port + "/mapOutput?job=" + JOB_ID + "&dag=" + DAG_ID
+        + "&reduce=" + reduce + "&map=" + maps + "&keepAlive=true");
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    connection.setRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+    connection.setRequestProperty(SecureShuffleUtils.HTTP_HEADER_URL_HASH,
+        SecureShuffleUtils.hashFromString(SecureShuffleUtils.buildMsgFrom(url),
+            clientSecretManager));
+    return connection;
+  }
+
+  /*
+   * Reads the header and the data of each partition of the range, and checks them.
+   */
+  private static void verifyPartitions(DataInputStream in, String mapId, int first, int last)
+      throws IOException {
+    for (int reduce = first; reduce <= last; ++reduce) {
+      ShuffleHeader header = new ShuffleHeader();
+      header.readFields(in);
+      byte[] expected = partitionData(mapId, reduce);
+      assertEquals(mapId, header.getMapId());
+      assertEquals(reduce, header.getPartition());
+      assertEquals(expected.length, header.getCompressedLength());
+      assertEquals(expected.length, header.getUncompressedLength());
+      byte[] data = new byte[expected.length];
+      in.readFully(data);
+      assertArrayEquals(expected, data);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testFetchPartitionRange() throws Exception {
+    HttpURLConnection connection = fetch(MAP_IDS[0] + "," + MAP_IDS[1], "1-3");
+    assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+    byte[] body;
+    try (InputStream in = connection.getInputStream()) {
+      body = IOUtils.toByteArray(in);
+    }
+    // The content length of the headers is what the map outputs write.
+    assertEquals(body.length, connection.getContentLengthLong());
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+    for (String mapId : MAP_IDS) {
+      verifyPartitions(in, mapId, 1, 3);
+    }
+    assertEquals(-1, in.read());
+  }
+
+  @Test(timeout = 60000)
+  public void testFetchSinglePartition() throws Exception {
+    HttpURLConnection connection = fetch(MAP_IDS[1], "4");
+    assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+    byte[] body;
+    try (InputStream in = connection.getInputStream()) {
+      body = IOUtils.toByteArray(in);
+    }
+    assertEquals(body.length, connection.getContentLengthLong());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+    verifyPartitions(in, MAP_IDS[1], 4, 4);
+    assertEquals(-1, in.read());
+  }
+
+  @Test(timeout = 60000)
+  public void testMalformedPartitionRange() throws Exception {
+    for (String reduce : new String[] { "5-3", "1-2-3", "-1", "a-b" }) {
+      HttpURLConnection connection = fetch(MAP_IDS[0], reduce);
+      assertEquals("reduce=" + reduce, HttpURLConnection.HTTP_BAD_REQUEST,
+          connection.getResponseCode());
+    }
+  }
+
+  private static ShuffleHandler.Shuffle.MapOutputInfo newMapOutputInfo(
+      ShuffleHandler.Shuffle shuffle, String mapId) throws IOException {
+    File dir = new File(outputDir, mapId);
+    TezSpillRecord spillRecord = new TezSpillRecord(
+        new Path(new File(dir, "file.out.index").getAbsolutePath()), new Configuration(), user);
+    return shuffle.new MapOutputInfo(
+        new Path(new File(dir, "file.out").getAbsolutePath()), spillRecord);
+  }
+
+  /*
+   * A channel that keeps what is written to it, and the listeners of the writes.
+   */
+  private static Channel newChannel(boolean isSsl, final List<Object> written,
+      final List<ChannelFutureListener> listeners) {
+    Channel ch = mock(Channel.class);
+    ChannelPipeline pipeline = mock(ChannelPipeline.class);
+    when(ch.getPipeline()).thenReturn(pipeline);
+    when(pipeline.get(SslHandler.class)).thenReturn(isSsl ? mock(SslHandler.class) : null);
+    when(ch.write(any())).thenAnswer(new Answer<ChannelFuture>() {
+      @Override
+      public ChannelFuture answer(InvocationOnMock invocation) {
+        written.add(invocation.getArguments()[0]);
+        ChannelFuture future = mock(ChannelFuture.class);
+        doAnswer(new Answer<Void>() {
+          @Override
+          public Void answer(InvocationOnMock invocation) {
+            listeners.add((ChannelFutureListener) invocation.getArguments()[0]);
+            return null;
+          }
+        }).when(future).addListener(any(ChannelFutureListener.class));
+        return future;
+      }
+    });
+    return ch;
+  }
+
+  @Test(timeout = 60000)
+  public void testSendPartitionRangeZeroCopy() throws Exception {
+    ShuffleHandler.Shuffle shuffle = ShuffleHandler.get().getShuffle(null);
+    String mapId = MAP_IDS[0];
+    List<Object> written = new ArrayList<>();
+    List<ChannelFutureListener> listeners = new ArrayList<>();
+    Channel ch = newChannel(false, written, listeners);
+    shuffle.sendMapOutput(null, ch, user, mapId, new ShuffleHandler.Range(1, 3),
+        newMapOutputInfo(shuffle, mapId));
+
+    // A header and a region of the one spill file for each partition.
+    assertEquals(6, written.size());
+    assertEquals(3, listeners.size());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel target = Channels.newChannel(out);
+    List<FadvisedFileRegion> regions = new ArrayList<>();
+    for (int i = 0; i < written.size(); i += 2) {
+      ChannelBuffer header = (ChannelBuffer) written.get(i);
+      header.readBytes(out, header.readableBytes());
+      FadvisedFileRegion region = (FadvisedFileRegion) written.get(i + 1);
+      assertEquals(region.getCount(), region.transferTo(target, 0));
+      regions.add(region);
+    }
+    verifyPartitions(new DataInputStream(new ByteArrayInputStream(out.toByteArray())),
+        mapId, 1, 3);
+
+    // Releasing the regions before the last one leaves the shared file open.
+    ChannelFuture done = mock(ChannelFuture.class);
+    when(done.isSuccess()).thenReturn(true);
+    listeners.get(0).operationComplete(done);
+    listeners.get(1).operationComplete(done);
+    FadvisedFileRegion last = regions.get(2);
+    assertEquals(last.getCount(),
+        last.transferTo(Channels.newChannel(new ByteArrayOutputStream()), 0));
+    listeners.get(2).operationComplete(done);
+    try {
+      last.transferTo(Channels.newChannel(new ByteArrayOutputStream()), 0);
+      fail("The file should be closed with the last region");
+    } catch (ClosedChannelException e) {
+      // Expected.
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSendPartitionRangeChunked() throws Exception {
+    ShuffleHandler.Shuffle shuffle = ShuffleHandler.get().getShuffle(null);
+    String mapId = MAP_IDS[1];
+    List<Object> written = new ArrayList<>();
+    List<ChannelFutureListener> listeners = new ArrayList<>();
+    Channel ch = newChannel(true, written, listeners);
+    shuffle.sendMapOutput(null, ch, user, mapId, new ShuffleHandler.Range(1, 3),
+        newMapOutputInfo(shuffle, mapId));
+
+    // A header and a chunked file for each partition. Each chunked file closes its file when it
+    // is done, so the next one must read from its own.
+    assertEquals(6, written.size());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < written.size(); i += 2) {
+      ChannelBuffer header = (ChannelBuffer) written.get(i);
+      header.readBytes(out, header.readableBytes());
+      FadvisedChunkedFile chunk = (FadvisedChunkedFile) written.get(i + 1);
+      while (chunk.hasNextChunk()) {
+        ChannelBuffer buffer = (ChannelBuffer) chunk.nextChunk();
+        buffer.readBytes(out, buffer.readableBytes());
+      }
+      chunk.close();
+    }
+    verifyPartitions(new DataInputStream(new ByteArrayInputStream(out.toByteArray())),
+        mapId, 1, 3);
+  }
+}
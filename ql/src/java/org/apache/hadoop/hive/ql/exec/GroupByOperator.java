@@ -36,7 +36,9 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.llap.LlapDaemonInfo;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.ql.exec.persistence.GroupBySpillContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.HiveUtils;
 import org.apache.hadoop.hive.ql.parse.OpParseContext;
 import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
@@ -113,6 +115,12 @@ public class GroupByOperator extends Operator<GroupByDesc> implements IConfigure
   // Used by hash-based GroupBy: Mode = HASH, PARTIALS
   private transient HashMap<KeyWrapper, AggregationBuffer[]> hashAggregations;
 
+  // Used instead of flushing part of the hash table when hash aggregation spills to disk.
+  private transient GroupBySpillContainer spillContainer;
+  private transient int[] spillPartitionEntryCounts;
+  private transient List<ObjectInspector> spillRowObjectInspectors;
+  private transient Object[] spillRowCache;
+
   private transient boolean firstRow;
   private transient boolean hashAggr;
   private transient long numRowsInput;
@@ -120,6 +128,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements IConfigure
   private transient int groupbyMapAggrInterval;
   private transient long numRowsCompareHashAggr;
   private transient float minReductionHashAggr;
+  // Used instead of numRowsCompareHashAggr/minReductionHashAggr when hash aggregation is adaptive
+  private transient HashAggrModeController hashAggrModeController;
 
   private transient int outputKeyLength;
 
@@ -392,6 +402,10 @@ protected void initializeOp(Configuration hconf) throws HiveException {
       numRowsCompareHashAggr = groupbyMapAggrInterval;
       minReductionHashAggr = HiveConf.getFloatVar(hconf,
           HiveConf.ConfVars.HIVEMAPAGGRHASHMINREDUCTION);
+      hashAggrModeController = HashAggrModeController.create(hconf);
+      if (hashAggrModeController != null) {
+        hashAggrModeController.publishCounters(statsMap, hconf);
+      }
     }
 
     List<String> fieldNames = new ArrayList<String>(conf.getOutputColumnNames());
@@ -412,6 +426,7 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     // is not known, estimate that based on the number of entries
     if (hashAggr) {
       computeMaxEntriesHashAggr();
+      setupSpill(hconf, objectInspectors);
     }
     memoryMXBean = ManagementFactory.getMemoryMXBean();
     maxMemory = isTez ? getConf().getMaxMemoryAvailable() : memoryMXBean.getHeapMemoryUsage().getMax();
@@ -419,6 +434,46 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     LOG.info("isTez: {} isLlap: {} numExecutors: {} maxMemory: {}", isTez, isLlap, numExecutors, maxMemory);
   }
 
+  /**
+   * Sets up spilling hash partitions to disk if it is enabled and all the aggregations produce
+   * partial results that can be merged again.
+   */
+  private void setupSpill(Configuration hconf, ObjectInspector[] objectInspectors) {
+    if (!HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_ENABLED) ||
+        conf.getMode() != GroupByDesc.Mode.HASH) {
+      return;
+    }
+    List<AggregationDesc> aggrs = conf.getAggregators();
+    for (AggregationDesc aggr : aggrs) {
+      if (aggr.getDistinct() ||
+          (aggr.getMode() != GenericUDAFEvaluator.Mode.PARTIAL1 &&
+           aggr.getMode() != GenericUDAFEvaluator.Mode.PARTIAL2)) {
+        return;
+      }
+    }
+
+    TypeInfo[] keyTypeInfos = new TypeInfo[keyFields.length];
+    spillRowObjectInspectors = new ArrayList<ObjectInspector>(keyFields.length + aggrs.size());
+    for (int i = 0; i < keyFields.length; i++) {
+      keyTypeInfos[i] = TypeInfoUtils.getTypeInfoFromObjectInspector(currentKeyObjectInspectors[i]);
+      spillRowObjectInspectors.add(currentKeyObjectInspectors[i]);
+    }
+    TypeInfo[] partialTypeInfos = new TypeInfo[aggrs.size()];
+    for (int i = 0; i < partialTypeInfos.length; i++) {
+      ObjectInspector partialObjectInspector = objectInspectors[outputKeyLength + i];
+      partialTypeInfos[i] = TypeInfoUtils.getTypeInfoFromObjectInspector(partialObjectInspector);
+      spillRowObjectInspectors.add(partialObjectInspector);
+    }
+    spillRowCache = new Object[spillRowObjectInspectors.size()];
+
+    spillContainer = new GroupBySpillContainer(
+        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_PARTITIONS),
+        HiveUtils.getLocalDirList(hconf), keyTypeInfos, partialTypeInfos);
+    spillPartitionEntryCounts = new int[spillContainer.getNumPartitions()];
+    LOG.info("Hash aggregation spills to disk using {} partitions",
+        spillContainer.getNumPartitions());
+  }
+
   /**
    * Estimate the number of entries in map-side hash table. The user can specify
    * the total amount of memory to be used by the map-side hash. By default, all
@@ -735,8 +790,10 @@ private void processKey(Object row,
   public void process(Object row, int tag) throws HiveException {
     firstRow = false;
     ObjectInspector rowInspector = inputObjInspectors[tag];
-    // Total number of input rows is needed for hash aggregation only
-    if (hashAggr) {
+    if (hashAggrModeController != null) {
+      checkHashAggrMode();
+    } else if (hashAggr) {
+      // Total number of input rows is needed for hash aggregation only
       numRowsInput++;
       // if hash aggregation is not behaving properly, disable it
       if (numRowsInput == numRowsCompareHashAggr) {
@@ -796,6 +853,35 @@ public void process(Object row, int tag) throws HiveException {
     }
   }
 
+  /**
+   * Switches between hash aggregation and streaming the rows through as decided by
+   * hashAggrModeController, and counts the row in the current mode.
+   */
+  private void checkHashAggrMode() throws HiveException {
+    if (hashAggr) {
+      if (hashAggrModeController.shouldSwitchToPassThrough()) {
+        flushHashTable(true);
+        hashAggr = false;
+      }
+    } else if (hashAggrModeController.shouldSwitchToHash()) {
+      // Forward the group being streamed before going back to the hash table.
+      if (currentKeys != null) {
+        forward(currentKeys.getKeyArray(), aggregations);
+        currentKeys = null;
+      }
+      hashAggregations = new HashMap<KeyWrapper, AggregationBuffer[]>(256);
+      if (spillContainer != null) {
+        Arrays.fill(spillPartitionEntryCounts, 0);
+      }
+      hashAggr = true;
+    }
+    if (hashAggr) {
+      hashAggrModeController.addHashRows(1);
+    } else {
+      hashAggrModeController.addPassThroughRows(1);
+    }
+  }
+
   private void processHashAggr(Object row, ObjectInspector rowInspector,
       KeyWrapper newKeys) throws HiveException {
     // Prepare aggs for updating
@@ -810,6 +896,12 @@ private void processHashAggr(Object row, ObjectInspector rowInspector,
       hashAggregations.put(newKeyProber, aggs);
       newEntryForHashAggr = true;
       numRowsHashTbl++; // new entry in the hash table
+      if (hashAggrModeController != null) {
+        hashAggrModeController.addHashEntries(1);
+      }
+      if (spillContainer != null) {
+        spillPartitionEntryCounts[spillContainer.getPartition(newKeyProber.hashCode())]++;
+      }
     }
 
     // Update the aggs
@@ -822,7 +914,11 @@ private void processHashAggr(Object row, ObjectInspector rowInspector,
     // Based on user-specified parameters, check if the hash table needs to be
     // flushed.
     if ( shouldBeFlushed(newKeys)) {
-      flushHashTable(false);
+      if (spillContainer != null) {
+        spillHashTable();
+      } else {
+        flushHashTable(false);
+      }
     }
   }
 
@@ -991,6 +1087,9 @@ private void flushHashTable(boolean complete) throws HiveException {
     // changed in the future
 
     if (complete) {
+      if (spillContainer != null) {
+        flushSpilledHashTable();
+      }
       Iterator<Map.Entry<KeyWrapper, AggregationBuffer[]>> iter = hashAggregations
           .entrySet().iterator();
       while (iter.hasNext()) {
@@ -1026,6 +1125,84 @@ private void flushHashTable(boolean complete) throws HiveException {
     }
   }
 
+  /**
+   * Spill the hash partition with the most entries in memory to disk.  This is used instead of
+   * flushing part of the hash table when hash aggregation spills.
+   */
+  private void spillHashTable() throws HiveException {
+    countAfterReport = 0;
+
+    int partition = 0;
+    for (int i = 1; i < spillPartitionEntryCounts.length; i++) {
+      if (spillPartitionEntryCounts[i] > spillPartitionEntryCounts[partition]) {
+        partition = i;
+      }
+    }
+
+    int oldSize = hashAggregations.size();
+    Iterator<Map.Entry<KeyWrapper, AggregationBuffer[]>> iter = hashAggregations
+        .entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<KeyWrapper, AggregationBuffer[]> m = iter.next();
+      if (spillContainer.getPartition(m.getKey().hashCode()) == partition) {
+        spillEntry(partition, m.getKey().getKeyArray(), m.getValue());
+        iter.remove();
+      }
+    }
+    spillPartitionEntryCounts[partition] = 0;
+    if (LOG.isInfoEnabled()) {
+      LOG.info("Hash Tbl spill: partition " + partition + " #hash table = " + oldSize +
+          " new size = " + hashAggregations.size() +
+          " #spilled rows = " + spillContainer.getSpillRowCount());
+    }
+  }
+
+  private void spillEntry(int partition, Object[] keys, AggregationBuffer[] aggs)
+      throws HiveException {
+    System.arraycopy(keys, 0, spillRowCache, 0, keys.length);
+    for (int i = 0; i < aggs.length; i++) {
+      spillRowCache[keys.length + i] = aggregationEvaluators[i].evaluate(aggs[i]);
+    }
+    spillContainer.spillRow(partition, spillRowCache, spillRowObjectInspectors);
+  }
+
+  /**
+   * Move the hash table entries of the spilled partitions to disk too, and forward the merged
+   * rows of the spilled partitions.  Afterwards, only entries of partitions that never spilled
+   * are left in the hash table.
+   */
+  private void flushSpilledHashTable() throws HiveException {
+    if (!spillContainer.hasSpilled()) {
+      return;
+    }
+    Iterator<Map.Entry<KeyWrapper, AggregationBuffer[]>> iter = hashAggregations
+        .entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<KeyWrapper, AggregationBuffer[]> m = iter.next();
+      int partition = spillContainer.getPartition(m.getKey().hashCode());
+      if (spillContainer.isSpilled(partition)) {
+        spillEntry(partition, m.getKey().getKeyArray(), m.getValue());
+        iter.remove();
+      }
+    }
+    Arrays.fill(spillPartitionEntryCounts, 0);
+
+    spillContainer.mergeSpilledPartitions(aggregationEvaluators,
+        Math.max(numEntriesHashTable, NUMROWSESTIMATESIZE),
+        new GroupBySpillContainer.MergedRowReceiver() {
+          @Override
+          public void receive(Object[] keys, Object[] partials) throws HiveException {
+            forwardPartials(keys, partials);
+          }
+        });
+
+    // Back to the original mode for the entries still in the hash table.
+    for (int i = 0; i < aggregationEvaluators.length; i++) {
+      aggregationEvaluators[i].init(conf.getAggregators().get(i).getMode(),
+          aggregationParameterObjectInspectors[i]);
+    }
+  }
+
   transient Object[] forwardCache;
 
   /**
@@ -1050,6 +1227,24 @@ private void forward(Object[] keys, AggregationBuffer[] aggs) throws HiveExcepti
     forward(forwardCache, outputObjInspector);
   }
 
+  /**
+   * Forward a record of keys and partial aggregation results merged from spilled rows.
+   */
+  private void forwardPartials(Object[] keys, Object[] partials) throws HiveException {
+    if (forwardCache == null) {
+      forwardCache = new Object[outputKeyLength + partials.length];
+    }
+
+    for (int i = 0; i < outputKeyLength; i++) {
+      forwardCache[i] = keys[i];
+    }
+    for (int i = 0; i < partials.length; i++) {
+      forwardCache[outputKeyLength + i] = partials[i];
+    }
+
+    forward(forwardCache, outputObjInspector);
+  }
+
   /**
    * Forward all aggregations to children. It is only used by DemuxOperator.
    * @throws HiveException
@@ -1061,6 +1256,9 @@ public void flush() throws HiveException{
         if (LOG.isInfoEnabled()) {
           LOG.info("Begin Hash Table flush: size = " + hashAggregations.size());
         }
+        if (spillContainer != null) {
+          flushSpilledHashTable();
+        }
         Iterator iter = hashAggregations.entrySet().iterator();
         while (iter.hasNext()) {
           Map.Entry<KeyWrapper, AggregationBuffer[]> m = (Map.Entry) iter
@@ -1113,6 +1311,10 @@ public void closeOp(boolean abort) throws HiveException {
       }
     }
     hashAggregations = null;
+    if (spillContainer != null) {
+      spillContainer.clear();
+      spillContainer = null;
+    }
     super.closeOp(abort);
   }
 
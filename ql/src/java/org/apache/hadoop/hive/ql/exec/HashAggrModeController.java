@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.io.LongWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether map-side GROUP BY aggregates in a hash table or streams the rows through
+ * without hashing.  Used by GroupByOperator and VectorGroupByOperator when
+ * hive.map.aggr.hash.adaptive.enabled is set.
+ *
+ * While hashing, the ratio of new hash table entries to input rows is sampled every
+ * checkInterval rows.  When it is above minReduction, the hash table is not paying off and the
+ * operator should switch to pass-through.  After passThroughRows rows it should try hashing
+ * again, since the key distribution may have changed.  Each retry that does not pay off doubles
+ * the number of pass-through rows, up to MAX_PASSTHROUGH_BACKOFF times the initial value.
+ */
+public class HashAggrModeController {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HashAggrModeController.class.getName());
+
+  private static final int MAX_PASSTHROUGH_BACKOFF = 64;
+
+  /**
+   * Counters published per vertex through the operator stats.
+   */
+  public static enum Counter {
+    HASH_AGGR_ROWS,
+    HASH_AGGR_PASSTHROUGH_ROWS,
+    HASH_AGGR_SWITCHES_TO_PASSTHROUGH,
+    HASH_AGGR_SWITCHES_TO_HASH
+  }
+
+  private final long checkInterval;
+  private final float minReduction;
+  private final long initialPassThroughRows;
+
+  private boolean isHashMode = true;
+  private long windowRows;
+  private long windowNewEntries;
+  private long passThroughRows;
+  private long currentPassThroughRows;
+
+  private final LongWritable hashRowCounter = new LongWritable();
+  private final LongWritable passThroughRowCounter = new LongWritable();
+  private final LongWritable switchesToPassThroughCounter = new LongWritable();
+  private final LongWritable switchesToHashCounter = new LongWritable();
+
+  public HashAggrModeController(long checkInterval, float minReduction,
+      long passThroughRows) {
+    this.checkInterval = Math.max(1, checkInterval);
+    this.minReduction = minReduction;
+    this.initialPassThroughRows = Math.max(1, passThroughRows);
+    this.currentPassThroughRows = initialPassThroughRows;
+  }
+
+  /**
+   * @return a controller configured from hconf, or null if adaptive hash aggregation is off
+   */
+  public static HashAggrModeController create(Configuration hconf) {
+    if (hconf == null ||
+        !HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_ADAPTIVE_ENABLED)) {
+      return null;
+    }
+    return new HashAggrModeController(
+        HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL),
+        HiveConf.getFloatVar(hconf, HiveConf.ConfVars.HIVEMAPAGGRHASHMINREDUCTION),
+        HiveConf.getLongVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_ADAPTIVE_PASSTHROUGH_ROWS));
+  }
+
+  /**
+   * Adds the counters to the stats of an operator.
+   */
+  public void publishCounters(Map<String, LongWritable> statsMap, Configuration hconf) {
+    String context = hconf == null ? "" : hconf.get(Operator.CONTEXT_NAME_KEY, "");
+    if (context != null && !context.isEmpty()) {
+      context = "_" + context.replace(" ", "_");
+    }
+    statsMap.put(Counter.HASH_AGGR_ROWS + context, hashRowCounter);
+    statsMap.put(Counter.HASH_AGGR_PASSTHROUGH_ROWS + context, passThroughRowCounter);
+    statsMap.put(Counter.HASH_AGGR_SWITCHES_TO_PASSTHROUGH + context, switchesToPassThroughCounter);
+    statsMap.put(Counter.HASH_AGGR_SWITCHES_TO_HASH + context, switchesToHashCounter);
+  }
+
+  public boolean isHashMode() {
+    return isHashMode;
+  }
+
+  /**
+   * Records input rows aggregated in the hash table.
+   */
+  public void addHashRows(long rows) {
+    windowRows += rows;
+    hashRowCounter.set(hashRowCounter.get() + rows);
+  }
+
+  /**
+   * Records entries added to the hash table.
+   */
+  public void addHashEntries(long entries) {
+    windowNewEntries += entries;
+  }
+
+  /**
+   * Records input rows streamed through without hashing.
+   */
+  public void addPassThroughRows(long rows) {
+    passThroughRows += rows;
+    passThroughRowCounter.set(passThroughRowCounter.get() + rows);
+  }
+
+  /**
+   * Checks the reduction ratio once checkInterval rows have been hashed since the last check.
+   *
+   * @return true if the operator should flush its hash table and stream the rows through
+   */
+  public boolean shouldSwitchToPassThrough() {
+    if (!isHashMode || windowRows < checkInterval) {
+      return false;
+    }
+    boolean switchMode = windowNewEntries > windowRows * minReduction;
+    if (switchMode) {
+      LOG.info("Hash aggregation does not pay off: {} new entries for {} rows, minReduction = {}."
+          + " Streaming the next {} rows through", windowNewEntries, windowRows, minReduction,
+          currentPassThroughRows);
+      isHashMode = false;
+      passThroughRows = 0;
+      switchesToPassThroughCounter.set(switchesToPassThroughCounter.get() + 1);
+    } else {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Hash aggregation pays off: {} new entries for {} rows, minReduction = {}",
+            windowNewEntries, windowRows, minReduction);
+      }
+      // Hashing paid off, so the next time it does not start from the initial back off.
+      currentPassThroughRows = initialPassThroughRows;
+    }
+    windowRows = 0;
+    windowNewEntries = 0;
+    return switchMode;
+  }
+
+  /**
+   * @return true if the operator should start hash aggregation again
+   */
+  public boolean shouldSwitchToHash() {
+    if (isHashMode || passThroughRows < currentPassThroughRows) {
+      return false;
+    }
+    LOG.info("Trying hash aggregation again after streaming {} rows through", passThroughRows);
+    isHashMode = true;
+    windowRows = 0;
+    windowNewEntries = 0;
+    currentPassThroughRows =
+        Math.min(currentPassThroughRows * 2, initialPassThroughRows * MAX_PASSTHROUGH_BACKOFF);
+    switchesToHashCounter.set(switchesToHashCounter.get() + 1);
+    return true;
+  }
+
+  public long getHashRows() {
+    return hashRowCounter.get();
+  }
+
+  public long getPassThroughRows() {
+    return passThroughRowCounter.get();
+  }
+
+  public long getSwitchesToPassThrough() {
+    return switchesToPassThroughCounter.get();
+  }
+
+  public long getSwitchesToHash() {
+    return switchesToHashCounter.get();
+  }
+}
@@ -25,14 +25,18 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.common.ObjectPair;
+import org.apache.hadoop.hive.common.ValidTxnWriteIdList;
+import org.apache.hadoop.hive.common.ValidWriteIdList;
 import org.apache.hadoop.hive.conf.Constants;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.conf.HiveConf.ConfVars;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.llap.io.api.LlapProxy;
 import org.apache.hadoop.hive.ql.HashTableLoaderFactory;
 import org.apache.hadoop.hive.ql.exec.mr.ExecMapperContext;
 import org.apache.hadoop.hive.ql.exec.persistence.BytesBytesMultiHashMap;
@@ -52,6 +56,7 @@
 import org.apache.hadoop.hive.ql.exec.spark.SparkUtilities;
 import org.apache.hadoop.hive.ql.exec.tez.LlapObjectCache;
 import org.apache.hadoop.hive.ql.exec.tez.LlapObjectSubCache;
+import org.apache.hadoop.hive.ql.exec.tez.LlapSharedHashTableRegistry;
 import org.apache.hadoop.hive.ql.io.HiveKey;
 import org.apache.hadoop.hive.ql.log.PerfLogger;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -89,6 +94,10 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
 
   private transient String cacheKey;
   private transient ObjectCache cache;
+  private transient String sharedHashTableKey;
+  // The acquisition of the shared hash tables, released when the operator closes.
+  private transient Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>
+      sharedHashTableFuture;
 
   protected HashTableLoader loader;
 
@@ -177,6 +186,9 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     hybridMapJoinLeftover = false;
     firstSmallTable = null;
 
+    sharedHashTableKey = null;
+    sharedHashTableFuture = null;
+
     generateMapMetaData();
 
     isTestingNoHashTableLoad = HiveConf.getBoolVar(hconf,
@@ -201,9 +213,17 @@ protected void initializeOp(Configuration hconf) throws HiveException {
         LOG.debug("This is not bucket map join, so cache");
       }
 
-      Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> future =
-          cache.retrieveAsync(
-              cacheKey, () ->loadHashTable(mapContext, mrContext));
+      Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> future;
+      sharedHashTableKey = getSharedHashTableKey(hconf);
+      if (sharedHashTableKey != null) {
+        // LLAP only: another query may have built the same hash table.
+        future = LlapSharedHashTableRegistry.getInstance(hconf).acquireAsync(
+            sharedHashTableKey, () -> loadHashTable(mapContext, mrContext));
+        sharedHashTableFuture = future;
+      } else {
+        future = cache.retrieveAsync(
+            cacheKey, () ->loadHashTable(mapContext, mrContext));
+      }
       asyncInitOperations.add(future);
     } else if (!isInputFileChangeSensitive(mapContext)) {
       loadHashTable(mapContext, mrContext);
@@ -252,6 +272,50 @@ protected void completeInitializationOp(Object[] os) throws HiveException {
     }
   }
 
+  /**
+   * Returns the key of the hash tables in the LLAP shared hash table registry, or null when
+   * they can't be shared. They can be when every small table side reads a transactional table
+   * (at the write id snapshot of the query) through deterministic filters and selects only,
+   * as described by the compiler in the MapJoinDesc.
+   */
+  protected String getSharedHashTableKey(Configuration hconf) {
+    if (!LlapProxy.isDaemon() ||
+        !HiveConf.getBoolVar(hconf, ConfVars.LLAP_MAPJOIN_SHARED_HASHTABLE_ENABLED)) {
+      return null;
+    }
+    String txnString = hconf.get(ValidTxnWriteIdList.VALID_TABLES_WRITEIDS_KEY);
+    if (txnString == null) {
+      return null;
+    }
+    ValidTxnWriteIdList validTxnWriteIdList = new ValidTxnWriteIdList(txnString);
+
+    StringBuilder sb = new StringBuilder(getSharedHashTableLayout(hconf));
+    for (byte pos = 0; pos < order.length; pos++) {
+      if (pos == posBigTable) {
+        continue;
+      }
+      String tableName = conf.getParentToSharedTable().get((int) pos);
+      String source = conf.getParentToSharedSource().get((int) pos);
+      if (tableName == null || source == null) {
+        return null;
+      }
+      ValidWriteIdList validWriteIdList = validTxnWriteIdList.getTableValidWriteIdList(tableName);
+      if (validWriteIdList == null) {
+        return null;
+      }
+      sb.append('\n').append(pos).append(' ').append(source).append(' ').append(validWriteIdList);
+    }
+    return DigestUtils.sha256Hex(sb.toString());
+  }
+
+  /**
+   * Describes how the hash tables are built, as part of the shared hash table key.
+   */
+  protected String getSharedHashTableLayout(Configuration hconf) {
+    return loader.getClass().getName() + " " +
+        HiveConf.getBoolVar(hconf, ConfVars.HIVEMAPJOINUSEOPTIMIZEDTABLE);
+  }
+
   @VisibleForTesting
   public void setTestMapJoinTableContainer(int posSmallTable,
       MapJoinTableContainer testMapJoinTableContainer,
@@ -639,6 +703,13 @@ public void closeOp(boolean abort) throws HiveException {
       clearAllTableContainers();
     }
 
+    if (sharedHashTableFuture != null) {
+      // Also when the initialization failed or was aborted before the hash tables were used.
+      LlapSharedHashTableRegistry.getInstance(hconf).release(
+          sharedHashTableKey, sharedHashTableFuture);
+      sharedHashTableFuture = null;
+    }
+
     this.loader = null;
     super.closeOp(abort);
   }
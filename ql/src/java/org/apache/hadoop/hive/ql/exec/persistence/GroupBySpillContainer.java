@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.vector.rowbytescontainer.VectorRowBytesContainer;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.lazy.ByteArrayRef;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryFactory;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryStruct;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryUtils;
+import org.apache.hadoop.hive.serde2.lazybinary.objectinspector.LazyBinaryStructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hive.common.util.HashCodeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hash partitioned spill files for map-side GROUP BY hash aggregation.
+ *
+ * When the aggregation hash table is full, the GROUP BY operator moves all the entries of one
+ * hash partition here instead of forwarding partial aggregates early.  A spilled row holds all
+ * the keys followed by the partial aggregation results in LazyBinary format, so rows written by
+ * the row mode operator (with LazyBinarySerDe) and by the vectorized operator (with
+ * LazyBinarySerializeWrite) read back the same way.
+ *
+ * At close, the spilled rows of each partition are read back one partition at a time and merged
+ * into one row per key with the aggregation evaluators in PARTIAL2 mode.
+ */
+public class GroupBySpillContainer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GroupBySpillContainer.class);
+
+  /**
+   * Receives the merged rows of the spilled partitions.
+   */
+  public interface MergedRowReceiver {
+    /**
+     * @param keys the keys of the row as standard writable objects
+     * @param partials the partial aggregation results
+     */
+    void receive(Object[] keys, Object[] partials) throws HiveException;
+  }
+
+  private final int numPartitions;
+  private final int partitionMask;
+  private final String spillLocalDirs;
+  private final int keyCount;
+  private final int aggregationCount;
+
+  private final VectorRowBytesContainer[] partitionContainers;
+  private final boolean[] partitionSpilled;
+  private long spillRowCount;
+
+  private final LazyBinaryStructObjectInspector spillRowObjectInspector;
+  private final List<? extends StructField> spillRowFields;
+
+  private final ObjectInspector[] partialObjectInspectors;
+
+  private transient LazyBinaryStruct spillRow;
+  private transient ByteArrayRef spillRowBytes;
+
+  /**
+   * @param numPartitions the number of hash partitions; rounded up to a power of 2
+   * @param spillLocalDirs the local directories for the spill files
+   * @param keyTypeInfos the types of all the keys (including a grouping set id)
+   * @param partialTypeInfos the types of the partial aggregation results
+   */
+  public GroupBySpillContainer(int numPartitions, String spillLocalDirs,
+      TypeInfo[] keyTypeInfos, TypeInfo[] partialTypeInfos) {
+    this.numPartitions = (Integer.bitCount(numPartitions) == 1)
+        ? numPartitions : Integer.highestOneBit(Math.max(numPartitions, 1)) << 1;
+    partitionMask = this.numPartitions - 1;
+    this.spillLocalDirs = spillLocalDirs;
+    keyCount = keyTypeInfos.length;
+    aggregationCount = partialTypeInfos.length;
+
+    partitionContainers = new VectorRowBytesContainer[this.numPartitions];
+    partitionSpilled = new boolean[this.numPartitions];
+    partialObjectInspectors = new ObjectInspector[aggregationCount];
+
+    List<String> fieldNames = new ArrayList<String>(keyCount + aggregationCount);
+    List<TypeInfo> fieldTypeInfos = new ArrayList<TypeInfo>(keyCount + aggregationCount);
+    for (int i = 0; i < keyCount; i++) {
+      fieldNames.add("_col" + fieldNames.size());
+      fieldTypeInfos.add(keyTypeInfos[i]);
+    }
+    for (int i = 0; i < aggregationCount; i++) {
+      fieldNames.add("_col" + fieldNames.size());
+      fieldTypeInfos.add(partialTypeInfos[i]);
+    }
+    spillRowObjectInspector = (LazyBinaryStructObjectInspector)
+        LazyBinaryUtils.getLazyBinaryObjectInspectorFromTypeInfo(
+            TypeInfoFactory.getStructTypeInfo(fieldNames, fieldTypeInfos));
+    spillRowFields = spillRowObjectInspector.getAllStructFieldRefs();
+  }
+
+  public int getNumPartitions() {
+    return numPartitions;
+  }
+
+  /**
+   * @return the partition of a key given the hash code of the key.
+   */
+  public int getPartition(int hashCode) {
+    return HashCodeUtil.calculateIntHashCode(hashCode) & partitionMask;
+  }
+
+  public boolean isSpilled(int partition) {
+    return partitionSpilled[partition];
+  }
+
+  public boolean hasSpilled() {
+    return spillRowCount > 0;
+  }
+
+  public long getSpillRowCount() {
+    return spillRowCount;
+  }
+
+  private VectorRowBytesContainer getPartitionContainer(int partition) {
+    VectorRowBytesContainer container = partitionContainers[partition];
+    if (container == null) {
+      container = new VectorRowBytesContainer(spillLocalDirs);
+      partitionContainers[partition] = container;
+      partitionSpilled[partition] = true;
+    }
+    return container;
+  }
+
+  /**
+   * Spill a row of keys and partial aggregation results held as objects.
+   *
+   * @param row the keys followed by the partial aggregation results
+   * @param rowObjectInspectors the object inspectors of the row fields
+   */
+  public void spillRow(int partition, Object[] row, List<ObjectInspector> rowObjectInspectors)
+      throws HiveException {
+    VectorRowBytesContainer container = getPartitionContainer(partition);
+    Output output = container.getOuputForRowBytes();
+    try {
+      LazyBinarySerDe.serializeStruct(output, row, rowObjectInspectors);
+      container.finishRow();
+    } catch (SerDeException | IOException e) {
+      throw new HiveException(e);
+    }
+    spillRowCount++;
+  }
+
+  /**
+   * Start a spilled row the caller serializes itself (e.g. with a VectorSerializeRow of
+   * LazyBinarySerializeWrite).  Must be followed by {@link #finishSpillRow(int)}.
+   */
+  public Output startSpillRow(int partition) {
+    return getPartitionContainer(partition).getOuputForRowBytes();
+  }
+
+  public void finishSpillRow(int partition) throws HiveException {
+    try {
+      partitionContainers[partition].finishRow();
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+    spillRowCount++;
+  }
+
+  /**
+   * @return the object inspector of the merged partial results of an aggregation, set by
+   *     {@link #mergeSpilledPartitions}.
+   */
+  public ObjectInspector getPartialObjectInspector(int aggregation) {
+    return partialObjectInspectors[aggregation];
+  }
+
+  /**
+   * Read back the spilled partitions one at a time and merge their rows into one row per key.
+   *
+   * The evaluators are initialized in PARTIAL2 mode for the spilled partial results; callers
+   * that keep aggregating afterwards must initialize them again in their original mode.
+   *
+   * @param evaluators the aggregation evaluators
+   * @param maxEntries the number of keys merged in memory before the merged rows of a
+   *     partition are forwarded early
+   * @param receiver receives the merged rows
+   */
+  public void mergeSpilledPartitions(GenericUDAFEvaluator[] evaluators, long maxEntries,
+      MergedRowReceiver receiver) throws HiveException {
+    if (!hasSpilled()) {
+      return;
+    }
+    for (int i = 0; i < aggregationCount; i++) {
+      partialObjectInspectors[i] =
+          evaluators[i].init(GenericUDAFEvaluator.Mode.PARTIAL2, new ObjectInspector[] {
+          spillRowFields.get(keyCount + i).getFieldObjectInspector() });
+    }
+    if (spillRow == null) {
+      spillRow = (LazyBinaryStruct) LazyBinaryFactory.createLazyBinaryObject(
+          spillRowObjectInspector);
+      spillRowBytes = new ByteArrayRef();
+    }
+
+    Map<List<Object>, AggregationBuffer[]> mergeAggregations =
+        new HashMap<List<Object>, AggregationBuffer[]>();
+    Object[] partials = new Object[aggregationCount];
+    long mergedRowCount = 0;
+    int earlyForwards = 0;
+    for (int partition = 0; partition < numPartitions; partition++) {
+      VectorRowBytesContainer container = partitionContainers[partition];
+      if (container == null) {
+        continue;
+      }
+      try {
+        container.prepareForReading();
+        while (container.readNext()) {
+          spillRowBytes.setData(container.currentBytes());
+          spillRow.init(spillRowBytes, container.currentOffset(), container.currentLength());
+
+          List<Object> keys = new ArrayList<Object>(keyCount);
+          for (int i = 0; i < keyCount; i++) {
+            StructField field = spillRowFields.get(i);
+            keys.add(ObjectInspectorUtils.copyToStandardObject(
+                spillRowObjectInspector.getStructFieldData(spillRow, field),
+                field.getFieldObjectInspector(), ObjectInspectorCopyOption.WRITABLE));
+          }
+          AggregationBuffer[] aggs = mergeAggregations.get(keys);
+          if (aggs == null) {
+            if (mergeAggregations.size() >= maxEntries) {
+              forwardMerged(mergeAggregations, evaluators, partials, receiver);
+              earlyForwards++;
+            }
+            aggs = new AggregationBuffer[aggregationCount];
+            for (int i = 0; i < aggregationCount; i++) {
+              aggs[i] = evaluators[i].getNewAggregationBuffer();
+            }
+            mergeAggregations.put(keys, aggs);
+          }
+          for (int i = 0; i < aggregationCount; i++) {
+            evaluators[i].merge(aggs[i], spillRowObjectInspector.getStructFieldData(
+                spillRow, spillRowFields.get(keyCount + i)));
+          }
+          mergedRowCount++;
+        }
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+      forwardMerged(mergeAggregations, evaluators, partials, receiver);
+      container.clear();
+      partitionContainers[partition] = null;
+      partitionSpilled[partition] = false;
+    }
+
+    LOG.info("Merged {} spilled rows, forwarded early {} times", mergedRowCount, earlyForwards);
+    spillRowCount = 0;
+  }
+
+  private void forwardMerged(Map<List<Object>, AggregationBuffer[]> mergeAggregations,
+      GenericUDAFEvaluator[] evaluators, Object[] partials, MergedRowReceiver receiver)
+      throws HiveException {
+    for (Map.Entry<List<Object>, AggregationBuffer[]> entry : mergeAggregations.entrySet()) {
+      AggregationBuffer[] aggs = entry.getValue();
+      for (int i = 0; i < aggregationCount; i++) {
+        partials[i] = evaluators[i].evaluate(aggs[i]);
+      }
+      receiver.receive(entry.getKey().toArray(), partials);
+    }
+    mergeAggregations.clear();
+  }
+
+  /**
+   * Remove all the spill files.
+   */
+  public void clear() {
+    for (int partition = 0; partition < numPartitions; partition++) {
+      if (partitionContainers[partition] != null) {
+        partitionContainers[partition].clear();
+        partitionContainers[partition] = null;
+      }
+      partitionSpilled[partition] = false;
+    }
+    spillRowCount = 0;
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * LlapSharedHashTableRegistry. The map join hash tables of an LLAP daemon that are shared by
+ * the fragments of all queries, keyed by MapJoinOperator#getSharedHashTableKey.
+ *
+ * Hash tables are reference counted while in use. Unused ones are kept for later queries up
+ * to a maximum total estimated size, and dropped in least recently used order beyond it.
+ */
+public class LlapSharedHashTableRegistry {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(LlapSharedHashTableRegistry.class.getName());
+
+  private static ExecutorService staticPool = Executors.newCachedThreadPool();
+
+  private static volatile LlapSharedHashTableRegistry instance;
+
+  private static class Entry {
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables;
+    private long estimatedMemorySize;
+    private int refCount;
+  }
+
+  private final long maxIdleSize;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  // The entries that are not in use, least recently released first.
+  private final LinkedHashMap<String, Entry> idleEntries = new LinkedHashMap<String, Entry>();
+  private long idleSize;
+
+  @VisibleForTesting
+  LlapSharedHashTableRegistry(long maxIdleSize) {
+    this.maxIdleSize = maxIdleSize;
+  }
+
+  public static LlapSharedHashTableRegistry getInstance(Configuration conf) {
+    if (instance == null) {
+      synchronized (LlapSharedHashTableRegistry.class) {
+        if (instance == null) {
+          long maxIdleSize = HiveConf.getSizeVar(conf,
+              HiveConf.ConfVars.LLAP_MAPJOIN_SHARED_HASHTABLE_MAX_IDLE_SIZE);
+          LOG.info("Creating the shared hash table registry with max idle size " + maxIdleSize);
+          instance = new LlapSharedHashTableRegistry(maxIdleSize);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the hash tables for the key, loading them with fn if no other fragment has, and
+   * holds a reference to them until release is called. Hash tables that spilled are returned
+   * without being shared or referenced.
+   */
+  public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> acquire(String key,
+      Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> fn)
+      throws HiveException {
+    Entry entry;
+    lock.lock();
+    try {
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        entries.put(key, entry);
+      }
+      if (entry.refCount++ == 0 && entry.tables != null) {
+        idleEntries.remove(key);
+        idleSize -= entry.estimatedMemorySize;
+      }
+      if (entry.tables != null) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Found shared hash table " + key + " with " + entry.refCount + " references");
+        }
+        return entry.tables;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    entry.loadLock.lock();
+    try {
+      lock.lock();
+      try {
+        if (entry.tables != null) {
+          return entry.tables;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables;
+      try {
+        tables = fn.call();
+      } catch (Exception e) {
+        unreference(key, entry);
+        throw new HiveException(e);
+      }
+
+      long estimatedMemorySize = 0;
+      for (MapJoinTableContainer container : tables.getLeft()) {
+        if (container != null) {
+          if (container.hasSpill()) {
+            LOG.info("Not sharing the hash table " + key + " because it has spilled");
+            unreference(key, entry);
+            return tables;
+          }
+          estimatedMemorySize += container.getEstimatedMemorySize();
+        }
+      }
+
+      lock.lock();
+      try {
+        if (LOG.isInfoEnabled()) {
+          LOG.info("Sharing new hash table " + key + " of estimated size " + estimatedMemorySize);
+        }
+        entry.tables = tables;
+        entry.estimatedMemorySize = estimatedMemorySize;
+      } finally {
+        lock.unlock();
+      }
+      return tables;
+    } finally {
+      entry.loadLock.unlock();
+    }
+  }
+
+  /**
+   * Calls acquire in the background. The reference it holds must be released with
+   * release(key, future), which also covers a fragment that gives up before the hash tables
+   * are acquired.
+   */
+  public Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> acquireAsync(
+      final String key,
+      final Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> fn) {
+    FutureTask<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> task =
+        new FutureTask<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>(
+            new Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>() {
+      @Override
+      public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> call() throws Exception {
+        return acquire(key, fn);
+      }
+    }) {
+      @Override
+      protected void set(Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables) {
+        super.set(tables);
+        if (isCancelled()) {
+          // Cancelled while acquiring; nobody gets the hash tables to release them.
+          releaseIfShared(key, tables);
+        }
+      }
+    };
+    staticPool.execute(task);
+    return task;
+  }
+
+  /**
+   * Releases the reference obtained with acquireAsync, however far it got. An acquisition that
+   * is still running is cancelled, and releases its reference when it completes.
+   */
+  public void release(String key,
+      Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> future) {
+    if (future.cancel(false)) {
+      return;
+    }
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables;
+    try {
+      tables = future.get();
+    } catch (InterruptedException e) {
+      // Not expected, the future is done.
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException | CancellationException e) {
+      // The acquisition failed or was cancelled, and holds no reference.
+      return;
+    }
+    releaseIfShared(key, tables);
+  }
+
+  /**
+   * Releases a reference if the hash tables are the shared ones for the key; hash tables that
+   * spilled were returned by acquire without a reference.
+   */
+  private void releaseIfShared(String key,
+      Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.tables == tables) {
+        release(key);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Releases a reference obtained with acquire. The hash tables are kept while the idle ones
+   * fit in the maximum idle size.
+   */
+  public void release(String key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      if (entry == null || entry.refCount == 0) {
+        LOG.warn("Releasing unreferenced shared hash table " + key);
+        return;
+      }
+      if (--entry.refCount > 0) {
+        return;
+      }
+      if (entry.tables == null) {
+        entries.remove(key);
+        return;
+      }
+      idleEntries.put(key, entry);
+      idleSize += entry.estimatedMemorySize;
+
+      Iterator<Map.Entry<String, Entry>> iterator = idleEntries.entrySet().iterator();
+      while (idleSize > maxIdleSize && iterator.hasNext()) {
+        Map.Entry<String, Entry> eldest = iterator.next();
+        if (LOG.isInfoEnabled()) {
+          LOG.info("Dropping idle shared hash table " + eldest.getKey() + " of estimated size " +
+              eldest.getValue().estimatedMemorySize);
+        }
+        iterator.remove();
+        entries.remove(eldest.getKey());
+        idleSize -= eldest.getValue().estimatedMemorySize;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void unreference(String key, Entry entry) {
+    lock.lock();
+    try {
+      if (--entry.refCount == 0 && entry.tables == null && entries.get(key) == entry) {
+        entries.remove(key);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int getRefCount(String key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      return (entry == null) ? 0 : entry.refCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  boolean contains(String key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      return (entry != null && entry.tables != null);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  long getIdleSize() {
+    lock.lock();
+    try {
+      return idleSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hive.ql.exec.vector;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.ref.SoftReference;
@@ -35,25 +36,42 @@
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.HashAggrModeController;
 import org.apache.hadoop.hive.ql.exec.IConfigureJobConf;
 import org.apache.hadoop.hive.ql.exec.KeyWrapper;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.persistence.GroupBySpillContainer;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.ConstantVectorExpression;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriterFactory;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorAggregateExpression;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastBytesHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastHashTable;
+import org.apache.hadoop.hive.ql.exec.vector.groupby.VectorGroupByFastLongHashTable;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.HiveUtils;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.GroupByDesc;
 import org.apache.hadoop.hive.ql.plan.OperatorDesc;
 import org.apache.hadoop.hive.ql.plan.VectorDesc;
 import org.apache.hadoop.hive.ql.plan.VectorGroupByDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.ByteStream.Output;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableDeserializeRead;
+import org.apache.hadoop.hive.serde2.binarysortable.fast.BinarySortableSerializeWrite;
+import org.apache.hadoop.hive.serde2.lazybinary.fast.LazyBinarySerializeWrite;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
 import org.apache.hadoop.io.DataOutputBuffer;
@@ -289,17 +307,17 @@ private class ProcessingModeHashAggregate extends ProcessingModeBase {
     /**
      * Total per hashtable entry fixed memory (does not depend on key/agg values).
      */
-    private long fixedHashEntrySize;
+    protected long fixedHashEntrySize;
 
     /**
      * Average per hashtable entry variable size memory (depends on key/agg value).
      */
-    private int avgVariableSize;
+    protected int avgVariableSize;
 
     /**
      * Number of entries added to the hashtable since the last check if it should flush.
      */
-    private int numEntriesSinceCheck;
+    protected int numEntriesSinceCheck;
 
     /**
      * Sum of batch size processed (ie. rows).
@@ -349,6 +367,34 @@ private class ProcessingModeHashAggregate extends ProcessingModeBase {
      */
     private long numRowsCompareHashAggr;
 
+    /**
+     * Hash partitions spilled to disk instead of flushing part of the hash table, or null when
+     * hash aggregation does not spill.
+     */
+    private GroupBySpillContainer spillContainer;
+
+    /**
+     * Number of hash table entries of each spill partition.
+     */
+    private int[] spillPartitionEntryCounts;
+
+    /**
+     * Spilled entries are written into this batch to serialize them.
+     */
+    private VectorizedRowBatch spillBatch;
+    private VectorSerializeRow<LazyBinarySerializeWrite> spillVectorSerializeRow;
+
+    /**
+     * The largest number of entries that were in the hash table when a partition spilled.
+     */
+    private int maxEntriesBeforeSpill;
+
+    /**
+     * Row mode evaluators used to merge the spilled partial aggregation results.
+     */
+    private GenericUDAFEvaluator[] spillMergeEvaluators;
+    private VectorAssignRow spillMergeAssignRow;
+
     @Override
     public void initialize(Configuration hconf) throws HiveException {
       // hconf is null in unit testing
@@ -381,9 +427,79 @@ public void initialize(Configuration hconf) throws HiveException {
 
       mapKeysAggregationBuffers = new HashMap<KeyWrapper, VectorAggregationBufferRow>();
       computeMemoryLimits();
+      if (hconf != null &&
+          HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_ENABLED) &&
+          isSpillSupported()) {
+        setupSpill(hconf);
+      }
       LOG.debug("using hash aggregation processing mode");
     }
 
+    /**
+     * Spilled rows are the output rows serialized with LazyBinary and merged again with the row
+     * mode evaluators, so all the keys must be output and the partial results must be the ones
+     * of the row mode evaluators.
+     */
+    private boolean isSpillSupported() throws HiveException {
+      if (keyExpressions.length == 0 || outputKeyLength != keyExpressions.length) {
+        return false;
+      }
+      for (DataTypePhysicalVariation variation : outputDataTypePhysicalVariations) {
+        if (variation != null && variation != DataTypePhysicalVariation.NONE) {
+          return false;
+        }
+      }
+      List<AggregationDesc> aggrs = conf.getAggregators();
+      for (int i = 0; i < aggrs.size(); i++) {
+        AggregationDesc aggr = aggrs.get(i);
+        if (aggr.getDistinct() || aggr.getMode() != GenericUDAFEvaluator.Mode.PARTIAL1) {
+          return false;
+        }
+        List<ExprNodeDesc> parameters = aggr.getParameters();
+        ObjectInspector[] parameterObjectInspectors = new ObjectInspector[parameters.size()];
+        for (int j = 0; j < parameterObjectInspectors.length; j++) {
+          parameterObjectInspectors[j] =
+              TypeInfoUtils.getStandardWritableObjectInspectorFromTypeInfo(
+                  parameters.get(j).getTypeInfo());
+        }
+        ObjectInspector partialObjectInspector =
+            aggr.getGenericUDAFEvaluator().init(aggr.getMode(), parameterObjectInspectors);
+        if (!TypeInfoUtils.getTypeInfoFromObjectInspector(partialObjectInspector).equals(
+            outputTypeInfos[outputKeyLength + i])) {
+          // E.g. the vectorized AVG partial result has an extra field.
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void setupSpill(Configuration hconf) throws HiveException {
+      final int keyCount = keyExpressions.length;
+      TypeInfo[] keyTypeInfos = Arrays.copyOfRange(outputTypeInfos, 0, keyCount);
+      TypeInfo[] partialTypeInfos =
+          Arrays.copyOfRange(outputTypeInfos, keyCount, outputTypeInfos.length);
+      spillContainer = new GroupBySpillContainer(
+          HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_PARTITIONS),
+          HiveUtils.getLocalDirList(hconf), keyTypeInfos, partialTypeInfos);
+      spillPartitionEntryCounts = new int[spillContainer.getNumPartitions()];
+
+      spillBatch = vrbCtx.createVectorizedRowBatch();
+      spillVectorSerializeRow =
+          new VectorSerializeRow<LazyBinarySerializeWrite>(
+              new LazyBinarySerializeWrite(outputTypeInfos.length));
+      spillVectorSerializeRow.init(outputTypeInfos);
+
+      spillMergeEvaluators = new GenericUDAFEvaluator[aggregators.length];
+      for (int i = 0; i < aggregators.length; i++) {
+        spillMergeEvaluators[i] = conf.getAggregators().get(i).getGenericUDAFEvaluator();
+      }
+      spillMergeAssignRow = new VectorAssignRow();
+      spillMergeAssignRow.init((StructObjectInspector) outputObjInspector);
+
+      LOG.info("Hash aggregation spills to disk using {} partitions",
+          spillContainer.getNumPartitions());
+    }
+
     @Override
     public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
         boolean[] currentGroupingSetsOverrideIsNulls) throws HiveException {
@@ -396,17 +512,13 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
         }
       }
 
-      // First we traverse the batch to evaluate and prepare the KeyWrappers
-      // After this the KeyWrappers are properly set and hash code is computed
-      if (!groupingSetsPresent) {
-        keyWrappersBatch.evaluateBatch(batch);
-      } else {
-        keyWrappersBatch.evaluateBatchGroupingSets(batch, currentGroupingSetsOverrideIsNulls);
+      // Locate the aggregation buffer set for each key
+      int preLookupEntriesCount = numEntriesHashTable;
+      lookupBatchAggregationBufferSets(batch, currentGroupingSetsOverrideIsNulls);
+      if (hashAggrModeController != null) {
+        hashAggrModeController.addHashEntries(numEntriesHashTable - preLookupEntriesCount);
       }
 
-      // Next we locate the aggregation buffer set for each key
-      prepareBatchAggregationBufferSets(batch);
-
       // Finally, evaluate the aggregators
       processAggregators(batch);
 
@@ -414,7 +526,11 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
       // We keep flushing until the memory is under threshold
       int preFlushEntriesCount = numEntriesHashTable;
       while (shouldFlush(batch)) {
-        flush(false);
+        if (spillContainer != null) {
+          spill();
+        } else {
+          flush(false);
+        }
 
         if(gcCanary.get() == null) {
           gcCanaryFlushes++;
@@ -442,7 +558,9 @@ public void doProcessBatch(VectorizedRowBatch batch, boolean isFirstGroupingSet,
       lastModeCheckRowCount += batch.size;
 
       // Check if we should turn into streaming mode
-      checkHashModeEfficiency();
+      if (hashAggrModeController == null) {
+        checkHashModeEfficiency();
+      }
     }
 
     @Override
@@ -463,7 +581,28 @@ public void close(boolean aborted) throws HiveException {
         VectorAggregationBufferRow groupAggregators = allocateAggregationBuffer();
         writeSingleRow(kw, groupAggregators);
       }
+      if (spillContainer != null) {
+        spillContainer.clear();
+      }
+    }
+
+    /**
+     * Locates the aggregation buffer sets to use for each key in the current batch.
+     * The key expressions must have been evaluated on the current batch first.
+     */
+    protected void lookupBatchAggregationBufferSets(VectorizedRowBatch batch,
+        boolean[] currentGroupingSetsOverrideIsNulls) throws HiveException {
+
+      // First we traverse the batch to evaluate and prepare the KeyWrappers
+      // After this the KeyWrappers are properly set and hash code is computed
+      if (!groupingSetsPresent) {
+        keyWrappersBatch.evaluateBatch(batch);
+      } else {
+        keyWrappersBatch.evaluateBatchGroupingSets(batch, currentGroupingSetsOverrideIsNulls);
+      }
 
+      // Next we locate the aggregation buffer set for each key
+      prepareBatchAggregationBufferSets(batch);
     }
 
     /**
@@ -498,6 +637,9 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
           mapKeysAggregationBuffers.put(kw.copyKey(), aggregationBuffer);
           numEntriesHashTable++;
           numEntriesSinceCheck++;
+          if (spillContainer != null) {
+            spillPartitionEntryCounts[spillContainer.getPartition(kw.hashCode())]++;
+          }
         }
         aggregationBatchInfo.mapAggregationBufferSet(aggregationBuffer, i);
       }
@@ -507,11 +649,8 @@ private void prepareBatchAggregationBufferSets(VectorizedRowBatch batch) throws
      * Computes the memory limits for hash table flush (spill).
      */
     private void computeMemoryLimits() {
-      JavaDataModel model = JavaDataModel.get();
-
       fixedHashEntrySize =
-          model.hashMapEntry() +
-          keyWrappersBatch.getKeysFixedSize() +
+          getKeysFixedSize() +
           aggregationBatchInfo.getAggregatorsFixedSize();
 
       MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
@@ -530,18 +669,29 @@ private void computeMemoryLimits() {
             maxMemory/1024/1024,
             memoryThreshold,
             fixedHashEntrySize,
-            keyWrappersBatch.getKeysFixedSize(),
+            getKeysFixedSize(),
             aggregationBatchInfo.getAggregatorsFixedSize()));
       }
     }
 
+    /**
+     * Returns the fixed memory size of the key part of a hash table entry.
+     */
+    protected long getKeysFixedSize() {
+      return JavaDataModel.get().hashMapEntry() + keyWrappersBatch.getKeysFixedSize();
+    }
+
     /**
      * Flushes the entries in the hash table by emiting output (forward).
      * When parameter 'all' is true all the entries are flushed.
      * @param all
      * @throws HiveException
      */
-    private void flush(boolean all) throws HiveException {
+    protected void flush(boolean all) throws HiveException {
+
+      if (all && spillContainer != null) {
+        flushSpilled();
+      }
 
       int entriesToFlush = all ? numEntriesHashTable :
         (int)(numEntriesHashTable * this.percentEntriesToFlush);
@@ -578,6 +728,10 @@ private void flush(boolean all) throws HiveException {
       if (all) {
         mapKeysAggregationBuffers.clear();
         numEntriesHashTable = 0;
+        if (spillContainer != null) {
+          // The hash table can be used again after switching back from streaming mode.
+          Arrays.fill(spillPartitionEntryCounts, 0);
+        }
       }
 
       if (all && LOG.isDebugEnabled()) {
@@ -585,6 +739,122 @@ private void flush(boolean all) throws HiveException {
       }
     }
 
+    /**
+     * Spills the hash partition with the most entries to disk.  Used instead of flushing part of
+     * the hash table when hash aggregation spills.
+     */
+    private void spill() throws HiveException {
+      int partition = 0;
+      for (int i = 1; i < spillPartitionEntryCounts.length; i++) {
+        if (spillPartitionEntryCounts[i] > spillPartitionEntryCounts[partition]) {
+          partition = i;
+        }
+      }
+      maxEntriesBeforeSpill = Math.max(maxEntriesBeforeSpill, numEntriesHashTable);
+
+      Iterator<Map.Entry<KeyWrapper, VectorAggregationBufferRow>> iter =
+          mapKeysAggregationBuffers.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<KeyWrapper, VectorAggregationBufferRow> pair = iter.next();
+        if (spillContainer.getPartition(pair.getKey().hashCode()) == partition) {
+          writeSpillRow((VectorHashKeyWrapper) pair.getKey(), pair.getValue(), partition);
+          iter.remove();
+          --numEntriesHashTable;
+        }
+      }
+      serializeSpillBatch(partition);
+      spillPartitionEntryCounts[partition] = 0;
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Spill partition %d entries:%d spilled rows:%d",
+            partition, numEntriesHashTable, spillContainer.getSpillRowCount()));
+      }
+    }
+
+    private void writeSpillRow(VectorHashKeyWrapper kw, VectorAggregationBufferRow agg,
+        int partition) throws HiveException {
+      final int batchIndex = spillBatch.size;
+      for (int i = 0; i < keyExpressions.length; ++i) {
+        keyWrappersBatch.assignRowColumn(spillBatch, batchIndex, i, kw);
+      }
+      int colNum = keyExpressions.length;
+      for (int i = 0; i < aggregators.length; ++i) {
+        aggregators[i].assignRowColumn(spillBatch, batchIndex, colNum++,
+            agg.getAggregationBuffer(i));
+      }
+      ++spillBatch.size;
+      if (spillBatch.size == VectorizedRowBatch.DEFAULT_SIZE) {
+        serializeSpillBatch(partition);
+      }
+    }
+
+    private void serializeSpillBatch(int partition) throws HiveException {
+      for (int batchIndex = 0; batchIndex < spillBatch.size; batchIndex++) {
+        Output output = spillContainer.startSpillRow(partition);
+        spillVectorSerializeRow.setOutputAppend(output);
+        try {
+          spillVectorSerializeRow.serializeWrite(spillBatch, batchIndex);
+        } catch (IOException e) {
+          throw new HiveException(e);
+        }
+        spillContainer.finishSpillRow(partition);
+      }
+      spillBatch.reset();
+    }
+
+    /**
+     * Spills the hash table entries of the spilled partitions too, and emits the merged rows of
+     * the spilled partitions.  Afterwards, only entries of partitions that never spilled are left
+     * in the hash table.
+     */
+    private void flushSpilled() throws HiveException {
+      if (!spillContainer.hasSpilled()) {
+        return;
+      }
+      for (int partition = 0; partition < spillPartitionEntryCounts.length; partition++) {
+        if (!spillContainer.isSpilled(partition)) {
+          continue;
+        }
+        Iterator<Map.Entry<KeyWrapper, VectorAggregationBufferRow>> iter =
+            mapKeysAggregationBuffers.entrySet().iterator();
+        while (iter.hasNext()) {
+          Map.Entry<KeyWrapper, VectorAggregationBufferRow> pair = iter.next();
+          if (spillContainer.getPartition(pair.getKey().hashCode()) == partition) {
+            writeSpillRow((VectorHashKeyWrapper) pair.getKey(), pair.getValue(), partition);
+            iter.remove();
+            --numEntriesHashTable;
+          }
+        }
+        serializeSpillBatch(partition);
+      }
+      Arrays.fill(spillPartitionEntryCounts, 0);
+
+      spillContainer.mergeSpilledPartitions(spillMergeEvaluators,
+          Math.max(maxEntriesBeforeSpill, VectorizedRowBatch.DEFAULT_SIZE),
+          new GroupBySpillContainer.MergedRowReceiver() {
+            @Override
+            public void receive(Object[] keys, Object[] partials) throws HiveException {
+              final int batchIndex = outputBatch.size;
+              for (int i = 0; i < outputKeyLength; i++) {
+                spillMergeAssignRow.assignRowColumn(outputBatch, batchIndex, i, keys[i]);
+              }
+              for (int i = 0; i < partials.length; i++) {
+                // The row mode evaluators may leave fields of a STRUCT partial result out, so
+                // go through their object inspector.
+                spillMergeAssignRow.assignRowColumn(
+                    outputBatch, batchIndex, outputKeyLength + i,
+                    ObjectInspectorUtils.copyToStandardObject(partials[i],
+                        spillContainer.getPartialObjectInspector(i),
+                        ObjectInspectorCopyOption.WRITABLE));
+              }
+              ++outputBatch.size;
+              if (outputBatch.size == VectorizedRowBatch.DEFAULT_SIZE) {
+                flushOutput();
+              }
+            }
+          });
+    }
+
     /**
      * Returns true if the memory threshold for the hash table was reached.
      */
@@ -616,7 +886,7 @@ private boolean shouldFlush(VectorizedRowBatch batch) {
      * that caused the check threshold to be reached.
      */
     private void updateAvgVariableSize(VectorizedRowBatch batch) {
-      int keyVariableSize = keyWrappersBatch.getVariableSize(batch.size);
+      int keyVariableSize = getKeysVariableSize(batch);
       int aggVariableSize = aggregationBatchInfo.getVariableSize(batch.size);
 
       // This assumes the distribution of variable size keys/aggregates in the input
@@ -625,6 +895,13 @@ private void updateAvgVariableSize(VectorizedRowBatch batch) {
           (sumBatchSize + batch.size));
     }
 
+    /**
+     * Returns the variable memory size of the keys of the current batch.
+     */
+    protected int getKeysVariableSize(VectorizedRowBatch batch) {
+      return keyWrappersBatch.getVariableSize(batch.size);
+    }
+
     /**
      * Checks if the HT reduces the number of entries by at least minReductionHashAggr factor
      * @throws HiveException
@@ -645,6 +922,342 @@ private void checkHashModeEfficiency() throws HiveException {
     }
   }
 
+  /**
+   * Base class of the native hash aggregation modes.  The keys are looked up directly from the
+   * key column vectors in a specialized open addressing hash table (see
+   * VectorGroupByFastHashTable) instead of a HashMap of VectorHashKeyWrapper objects.
+   *
+   * These modes are only used without grouping sets.  Since the hash tables do not delete, a
+   * flush always emits all the entries.
+   */
+  private abstract class ProcessingModeFastHashAggregate extends ProcessingModeHashAggregate {
+
+    /**
+     * Sum of the key bytes looked up in the current batch.
+     */
+    protected int batchKeysVariableSize;
+
+    protected abstract VectorGroupByFastHashTable getFastHashTable();
+
+    /**
+     * Assigns the key of a hash table entry into the output batch row.
+     */
+    protected abstract void assignRowKey(int entry, int batchIndex) throws HiveException;
+
+    /**
+     * Returns the aggregation buffers of a hash table entry, allocating them for a new entry.
+     */
+    protected VectorAggregationBufferRow getOrAllocateAggregationBufferRow(int entry)
+        throws HiveException {
+      final VectorGroupByFastHashTable hashTable = getFastHashTable();
+      VectorAggregationBufferRow aggregationBuffer = hashTable.getAggregationBufferRow(entry);
+      if (aggregationBuffer == null) {
+        aggregationBuffer = allocateAggregationBuffer();
+        hashTable.setAggregationBufferRow(entry, aggregationBuffer);
+        numEntriesHashTable++;
+        numEntriesSinceCheck++;
+      }
+      return aggregationBuffer;
+    }
+
+    protected void mapRepeatedAggregationBufferRow(int entry, int size) throws HiveException {
+      VectorAggregationBufferRow aggregationBuffer = getOrAllocateAggregationBufferRow(entry);
+      for (int i = 0; i < size; i++) {
+        aggregationBatchInfo.mapAggregationBufferSet(aggregationBuffer, i);
+      }
+    }
+
+    @Override
+    protected long getKeysFixedSize() {
+      return getFastHashTable().getEntryFixedSize();
+    }
+
+    @Override
+    protected int getKeysVariableSize(VectorizedRowBatch batch) {
+      return batchKeysVariableSize;
+    }
+
+    @Override
+    protected void flush(boolean all) throws HiveException {
+      final VectorGroupByFastHashTable hashTable = getFastHashTable();
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format(
+            "Flush %s entries:%d fixed:%d variable:%d (used:%dMb max:%dMb) %s",
+            all ? "(all)" : "",
+            numEntriesHashTable, fixedHashEntrySize, avgVariableSize,
+            numEntriesHashTable * (fixedHashEntrySize + avgVariableSize)/1024/1024,
+            maxHashTblMemory/1024/1024,
+            hashTable.getMetricsString()));
+      }
+
+      final int count = hashTable.size();
+      for (int entry = 0; entry < count; entry++) {
+        final int batchIndex = outputBatch.size;
+        assignRowKey(entry, batchIndex);
+        writeAggregatesRow(hashTable.getAggregationBufferRow(entry), batchIndex);
+      }
+      hashTable.clear();
+      numEntriesHashTable = 0;
+    }
+  }
+
+  /**
+   * Native hash aggregation with a single key stored in a LongColumnVector.
+   */
+  private class ProcessingModeHashAggregateLongKey extends ProcessingModeFastHashAggregate {
+
+    private VectorGroupByFastLongHashTable hashTable;
+    private int keyColumnNum;
+
+    @Override
+    public void initialize(Configuration hconf) throws HiveException {
+      hashTable = new VectorGroupByFastLongHashTable();
+      keyColumnNum = keyExpressions[0].getOutputColumnNum();
+      super.initialize(hconf);
+      LOG.info("using native long key hash aggregation processing mode");
+    }
+
+    @Override
+    protected VectorGroupByFastHashTable getFastHashTable() {
+      return hashTable;
+    }
+
+    @Override
+    protected void lookupBatchAggregationBufferSets(VectorizedRowBatch batch,
+        boolean[] currentGroupingSetsOverrideIsNulls) throws HiveException {
+      aggregationBatchInfo.startBatch();
+
+      final int size = batch.size;
+      if (size == 0) {
+        return;
+      }
+
+      LongColumnVector keyColVector = (LongColumnVector) batch.cols[keyColumnNum];
+      final long[] vector = keyColVector.vector;
+      final boolean noNulls = keyColVector.noNulls;
+      final boolean[] isNull = keyColVector.isNull;
+
+      if (keyColVector.isRepeating) {
+        final int entry = (noNulls || !isNull[0]) ?
+            hashTable.findOrAddEntry(vector[0]) : hashTable.findOrAddNullEntry();
+        mapRepeatedAggregationBufferRow(entry, size);
+        return;
+      }
+
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int i = 0; i < size; i++) {
+        final int batchIndex = (selectedInUse ? selected[i] : i);
+        final int entry = (noNulls || !isNull[batchIndex]) ?
+            hashTable.findOrAddEntry(vector[batchIndex]) : hashTable.findOrAddNullEntry();
+        aggregationBatchInfo.mapAggregationBufferSet(getOrAllocateAggregationBufferRow(entry), i);
+      }
+    }
+
+    @Override
+    protected void assignRowKey(int entry, int batchIndex) {
+      LongColumnVector outputColVector = (LongColumnVector) outputBatch.cols[0];
+      if (hashTable.isNullEntry(entry)) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      outputColVector.vector[batchIndex] = hashTable.getKey(entry);
+    }
+  }
+
+  /**
+   * Native hash aggregation with a single key stored in a BytesColumnVector.
+   */
+  private class ProcessingModeHashAggregateBytesKey extends ProcessingModeFastHashAggregate {
+
+    private VectorGroupByFastBytesHashTable hashTable;
+    private int keyColumnNum;
+    private WriteBuffers.ByteSegmentRef keyRef;
+
+    @Override
+    public void initialize(Configuration hconf) throws HiveException {
+      hashTable = new VectorGroupByFastBytesHashTable();
+      keyColumnNum = keyExpressions[0].getOutputColumnNum();
+      keyRef = new WriteBuffers.ByteSegmentRef();
+      super.initialize(hconf);
+      LOG.info("using native bytes key hash aggregation processing mode");
+    }
+
+    @Override
+    protected VectorGroupByFastHashTable getFastHashTable() {
+      return hashTable;
+    }
+
+    @Override
+    protected void lookupBatchAggregationBufferSets(VectorizedRowBatch batch,
+        boolean[] currentGroupingSetsOverrideIsNulls) throws HiveException {
+      aggregationBatchInfo.startBatch();
+      batchKeysVariableSize = 0;
+
+      final int size = batch.size;
+      if (size == 0) {
+        return;
+      }
+
+      BytesColumnVector keyColVector = (BytesColumnVector) batch.cols[keyColumnNum];
+      final byte[][] vector = keyColVector.vector;
+      final int[] start = keyColVector.start;
+      final int[] length = keyColVector.length;
+      final boolean noNulls = keyColVector.noNulls;
+      final boolean[] isNull = keyColVector.isNull;
+
+      if (keyColVector.isRepeating) {
+        final int entry;
+        if (noNulls || !isNull[0]) {
+          entry = hashTable.findOrAddEntry(vector[0], start[0], length[0]);
+          batchKeysVariableSize = length[0] * size;
+        } else {
+          entry = hashTable.findOrAddNullEntry();
+        }
+        mapRepeatedAggregationBufferRow(entry, size);
+        return;
+      }
+
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int i = 0; i < size; i++) {
+        final int batchIndex = (selectedInUse ? selected[i] : i);
+        final int entry;
+        if (noNulls || !isNull[batchIndex]) {
+          entry = hashTable.findOrAddEntry(
+              vector[batchIndex], start[batchIndex], length[batchIndex]);
+          batchKeysVariableSize += length[batchIndex];
+        } else {
+          entry = hashTable.findOrAddNullEntry();
+        }
+        aggregationBatchInfo.mapAggregationBufferSet(getOrAllocateAggregationBufferRow(entry), i);
+      }
+    }
+
+    @Override
+    protected void assignRowKey(int entry, int batchIndex) {
+      BytesColumnVector outputColVector = (BytesColumnVector) outputBatch.cols[0];
+      if (hashTable.isNullEntry(entry)) {
+        outputColVector.noNulls = false;
+        outputColVector.isNull[batchIndex] = true;
+        return;
+      }
+      outputColVector.isNull[batchIndex] = false;
+      hashTable.getKey(entry, keyRef);
+      outputColVector.setVal(
+          batchIndex, keyRef.getBytes(), (int) keyRef.getOffset(), keyRef.getLength());
+    }
+  }
+
+  /**
+   * Native hash aggregation with multiple keys (or a single key of another column vector type).
+   * The keys are serialized with BinarySortableSerializeWrite into one byte key.
+   */
+  private class ProcessingModeHashAggregateMultiKey extends ProcessingModeFastHashAggregate {
+
+    private VectorGroupByFastBytesHashTable hashTable;
+    private int[] keyColumnNums;
+    private VectorSerializeRow<BinarySortableSerializeWrite> keyVectorSerializeWrite;
+    private Output currentKeyOutput;
+    private VectorDeserializeRow<BinarySortableDeserializeRead> keyVectorDeserializeRow;
+    private WriteBuffers.ByteSegmentRef keyRef;
+
+    @Override
+    public void initialize(Configuration hconf) throws HiveException {
+      hashTable = new VectorGroupByFastBytesHashTable();
+
+      final int keyCount = keyExpressions.length;
+      TypeInfo[] keyTypeInfos = new TypeInfo[keyCount];
+      keyColumnNums = new int[keyCount];
+      for (int i = 0; i < keyCount; i++) {
+        keyTypeInfos[i] = keyExpressions[i].getOutputTypeInfo();
+        keyColumnNums[i] = keyExpressions[i].getOutputColumnNum();
+      }
+      keyVectorSerializeWrite =
+          new VectorSerializeRow<BinarySortableSerializeWrite>(
+              new BinarySortableSerializeWrite(keyCount));
+      keyVectorSerializeWrite.init(keyTypeInfos, keyColumnNums);
+      currentKeyOutput = new Output();
+
+      // The keys are the first columns of the output batch.
+      keyVectorDeserializeRow =
+          new VectorDeserializeRow<BinarySortableDeserializeRead>(
+              new BinarySortableDeserializeRead(keyTypeInfos, /* useExternalBuffer */ false));
+      keyVectorDeserializeRow.init(0);
+      keyRef = new WriteBuffers.ByteSegmentRef();
+
+      super.initialize(hconf);
+      LOG.info("using native multi-key hash aggregation processing mode");
+    }
+
+    @Override
+    protected VectorGroupByFastHashTable getFastHashTable() {
+      return hashTable;
+    }
+
+    private int findOrAddEntry(VectorizedRowBatch batch, int batchIndex) throws HiveException {
+      keyVectorSerializeWrite.setOutput(currentKeyOutput);
+      try {
+        keyVectorSerializeWrite.serializeWrite(batch, batchIndex);
+      } catch (IOException e) {
+        throw new HiveException(e);
+      }
+      final int keyLength = currentKeyOutput.getLength();
+      batchKeysVariableSize += keyLength;
+      return hashTable.findOrAddEntry(currentKeyOutput.getData(), 0, keyLength);
+    }
+
+    @Override
+    protected void lookupBatchAggregationBufferSets(VectorizedRowBatch batch,
+        boolean[] currentGroupingSetsOverrideIsNulls) throws HiveException {
+      aggregationBatchInfo.startBatch();
+      batchKeysVariableSize = 0;
+
+      final int size = batch.size;
+      if (size == 0) {
+        return;
+      }
+
+      boolean allKeyInputColumnsRepeating = true;
+      for (int keyColumnNum : keyColumnNums) {
+        if (!batch.cols[keyColumnNum].isRepeating) {
+          allKeyInputColumnsRepeating = false;
+          break;
+        }
+      }
+      if (allKeyInputColumnsRepeating) {
+        mapRepeatedAggregationBufferRow(findOrAddEntry(batch, 0), size);
+        batchKeysVariableSize *= size;
+        return;
+      }
+
+      final boolean selectedInUse = batch.selectedInUse;
+      final int[] selected = batch.selected;
+      for (int i = 0; i < size; i++) {
+        final int batchIndex = (selectedInUse ? selected[i] : i);
+        final int entry = findOrAddEntry(batch, batchIndex);
+        aggregationBatchInfo.mapAggregationBufferSet(getOrAllocateAggregationBufferRow(entry), i);
+      }
+    }
+
+    @Override
+    protected void assignRowKey(int entry, int batchIndex) throws HiveException {
+      hashTable.getKey(entry, keyRef);
+      keyVectorDeserializeRow.setBytes(
+          keyRef.getBytes(), (int) keyRef.getOffset(), keyRef.getLength());
+      try {
+        keyVectorDeserializeRow.deserialize(outputBatch, batchIndex);
+      } catch (IOException e) {
+        throw new HiveException(
+            "Failed to deserialize the group key " +
+            keyVectorDeserializeRow.getDetailedReadPositionString(), e);
+      }
+    }
+  }
+
   /**
    * Streaming processing mode on ALREADY GROUPED data. Each input VectorizedRowBatch may
    * have a mix of different keys.  Intermediate values are flushed each time key changes.
@@ -872,6 +1485,14 @@ public void close(boolean aborted) throws HiveException {
    */
   private transient IProcessingMode processingMode;
 
+  /**
+   * Decides between hash aggregation and streaming mode when hash aggregation is adaptive.
+   * The hash aggregation mode is kept in hashAggregateMode while streaming so it can be
+   * used again.
+   */
+  private transient HashAggrModeController hashAggrModeController;
+  private transient ProcessingModeHashAggregate hashAggregateMode;
+
   private static final long serialVersionUID = 1L;
 
   public VectorGroupByOperator(CompilationOpContext ctx, OperatorDesc conf,
@@ -1060,7 +1681,12 @@ protected void initializeOp(Configuration hconf) throws HiveException {
       processingMode = this.new ProcessingModeGlobalAggregate();
       break;
     case HASH:
-      processingMode = this.new ProcessingModeHashAggregate();
+      hashAggregateMode = createHashAggregateProcessingMode(hconf);
+      processingMode = hashAggregateMode;
+      hashAggrModeController = HashAggrModeController.create(hconf);
+      if (hashAggrModeController != null) {
+        hashAggrModeController.publishCounters(statsMap, hconf);
+      }
       break;
     case MERGE_PARTIAL:
       Preconditions.checkState(!groupingSetsPresent);
@@ -1076,6 +1702,45 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     processingMode.initialize(hconf);
   }
 
+  /**
+   * Chooses between the general hash aggregation mode and the native ones that look up
+   * keys directly from the key column vectors.
+   */
+  private ProcessingModeHashAggregate createHashAggregateProcessingMode(Configuration hconf)
+      throws HiveException {
+
+    // hconf is null in unit testing
+    if (hconf == null ||
+        !HiveConf.getBoolVar(hconf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED) ||
+        HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_ENABLED) ||
+        groupingSetsPresent ||
+        keyExpressions.length == 0 ||
+        outputKeyLength != keyExpressions.length) {
+      return this.new ProcessingModeHashAggregate();
+    }
+
+    if (keyExpressions.length == 1) {
+      switch (keyExpressions[0].getOutputColumnVectorType()) {
+      case LONG:
+      case DECIMAL_64:
+        return this.new ProcessingModeHashAggregateLongKey();
+      case BYTES:
+        return this.new ProcessingModeHashAggregateBytesKey();
+      default:
+        break;
+      }
+    }
+
+    for (VectorExpression keyExpression : keyExpressions) {
+      if (keyExpression.getOutputTypeInfo().getCategory() != Category.PRIMITIVE ||
+          keyExpression.getOutputDataTypePhysicalVariation() != DataTypePhysicalVariation.NONE) {
+        return this.new ProcessingModeHashAggregate();
+      }
+    }
+    return this.new ProcessingModeHashAggregateMultiKey();
+  }
+
   /**
    * changes the processing mode to streaming
    * This is done at the request of the hash agg mode, if the number of keys
@@ -1088,6 +1753,30 @@ private void changeToStreamingMode() throws HiveException {
     LOG.trace("switched to streaming mode");
   }
 
+  /**
+   * Switches between the hash aggregation and streaming modes as decided by
+   * hashAggrModeController.  Done between batches so all grouping sets of a batch are processed
+   * in the same mode.
+   */
+  private void checkHashAggrMode(VectorizedRowBatch batch) throws HiveException {
+    long rows = groupingSetsPresent ? (long) batch.size * groupingSets.length : batch.size;
+    if (hashAggrModeController.isHashMode()) {
+      hashAggrModeController.addHashRows(rows);
+      if (hashAggrModeController.shouldSwitchToPassThrough()) {
+        hashAggregateMode.flush(true);
+        changeToStreamingMode();
+      }
+    } else {
+      hashAggrModeController.addPassThroughRows(rows);
+      if (hashAggrModeController.shouldSwitchToHash()) {
+        // Forwards the group being streamed.
+        processingMode.close(false);
+        processingMode = hashAggregateMode;
+        LOG.trace("switched to hash aggregation mode");
+      }
+    }
+  }
+
   @Override
   public void setNextVectorBatchGroupStatus(boolean isLastGroupBatch) throws HiveException {
     processingMode.setNextVectorBatchGroupStatus(isLastGroupBatch);
@@ -1116,6 +1805,9 @@ public void process(Object row, int tag) throws HiveException {
     VectorizedRowBatch batch = (VectorizedRowBatch) row;
     if (batch.size > 0) {
       processingMode.processBatch(batch);
+      if (hashAggrModeController != null) {
+        checkHashAggrMode(batch);
+      }
     }
   }
 
@@ -1129,13 +1821,26 @@ public void process(Object row, int tag) throws HiveException {
   private void writeSingleRow(VectorHashKeyWrapper kw, VectorAggregationBufferRow agg)
       throws HiveException {
 
-    int colNum = 0;
     final int batchIndex = outputBatch.size;
 
     // Output keys and aggregates into the output batch.
     for (int i = 0; i < outputKeyLength; ++i) {
-      keyWrappersBatch.assignRowColumn(outputBatch, batchIndex, colNum++, kw);
+      keyWrappersBatch.assignRowColumn(outputBatch, batchIndex, i, kw);
     }
+    writeAggregatesRow(agg, batchIndex);
+  }
+
+  /**
+   * Completes an output row whose keys were already assigned at batchIndex with the row
+   * aggregation buffers values
+   * @param agg
+   * @param batchIndex
+   * @throws HiveException
+   */
+  private void writeAggregatesRow(VectorAggregationBufferRow agg, int batchIndex)
+      throws HiveException {
+
+    int colNum = outputKeyLength;   // Start after group keys.
     for (int i = 0; i < aggregators.length; ++i) {
       aggregators[i].assignRowColumn(outputBatch, batchIndex, colNum++,
           agg.getAggregationBuffer(i));
@@ -1177,6 +1882,10 @@ private void flushOutput() throws HiveException {
   @Override
   public void closeOp(boolean aborted) throws HiveException {
     processingMode.close(aborted);
+    if (hashAggrModeController != null && processingMode != hashAggregateMode) {
+      // Already flushed when switching to streaming mode, only releases its resources.
+      hashAggregateMode.close(aborted);
+    }
     if (!aborted && outputBatch.size > 0) {
       flushOutput();
     }
@@ -55,6 +55,7 @@
 import org.apache.hadoop.hive.ql.exec.vector.expressions.*;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.gen.*;
 import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFAdaptor;
+import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFNativeExpression;
 import org.apache.hadoop.hive.ql.exec.vector.udf.VectorUDFArgDesc;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
@@ -151,6 +152,9 @@ public static HiveVectorIfStmtMode getHiveConfValue(HiveConf hiveConf) {
   //when set to true use the overflow checked vector expressions
   private boolean useCheckedVectorExpressions;
 
+  // When set to true compile supported FILTER and SELECT expression trees into one fused loop.
+  private boolean isExpressionCodegenEnabled;
+
   private boolean reuseScratchColumns =
       HiveConf.ConfVars.HIVE_VECTORIZATION_TESTING_REUSE_SCRATCH_COLUMNS.defaultBoolVal;
 
@@ -162,6 +166,8 @@ private void setHiveConfVars(HiveConf hiveConf) {
     this.ocm.setReuseColumns(reuseScratchColumns);
     useCheckedVectorExpressions =
         HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVE_VECTORIZATION_USE_CHECKED_EXPRESSIONS);
+    isExpressionCodegenEnabled =
+        HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVE_VECTORIZATION_EXPRESSION_CODEGEN_ENABLED);
   }
 
   private void copyHiveConfVars(VectorizationContext vContextEnvironment) {
@@ -169,6 +175,7 @@ private void copyHiveConfVars(VectorizationContext vContextEnvironment) {
     hiveVectorIfStmtMode = vContextEnvironment.hiveVectorIfStmtMode;
     this.reuseScratchColumns = vContextEnvironment.reuseScratchColumns;
     this.ocm.setReuseColumns(reuseScratchColumns);
+    this.isExpressionCodegenEnabled = vContextEnvironment.isExpressionCodegenEnabled;
   }
 
   // Convenient constructor for initial batch creation takes
@@ -741,6 +748,21 @@ public VectorExpression getVectorExpression(ExprNodeDesc exprDesc) throws HiveEx
     return getVectorExpression(exprDesc, VectorExpressionDescriptor.Mode.PROJECTION);
   }
 
+  /**
+   * Returns a FusedVectorExpression that evaluates exprDesc in one generated loop when
+   * hive.vectorized.expression.codegen.enabled is set and the expression is supported.
+   * Otherwise returns vectorExpr, the regular vector expression of exprDesc.
+   */
+  public VectorExpression getFusedVectorExpression(ExprNodeDesc exprDesc,
+      VectorExpression vectorExpr, VectorExpressionDescriptor.Mode mode) throws HiveException {
+    if (!isExpressionCodegenEnabled || useCheckedVectorExpressions) {
+      return vectorExpr;
+    }
+    VectorExpression fusedExpr = FusedVectorExpressionCompiler.compile(exprDesc, vectorExpr, this,
+        mode == VectorExpressionDescriptor.Mode.FILTER);
+    return (fusedExpr != null ? fusedExpr : vectorExpr);
+  }
+
   /**
    * Returns a vector expression for a given expression
    * description.
@@ -787,6 +809,11 @@ public VectorExpression getVectorExpression(ExprNodeDesc exprDesc, VectorExpress
           exprDesc.getChildren(), exprDesc.getTypeInfo());
       ve = getGenericUdfVectorExpression(expr.getGenericUDF(),
           childExpressions, mode, exprDesc.getTypeInfo());
+      if (ve == null && expr.getGenericUDF() instanceof VectorizedUDF) {
+
+        // The UDF evaluates batches itself, so there is no need for the VectorUDFAdaptor.
+        ve = getVectorizedUDFExpression(expr, mode);
+      }
       if (ve == null) {
         // Ok, no vectorized class available.  No problem -- try to use the VectorUDFAdaptor
         // when configured.
@@ -3275,6 +3302,87 @@ private VectorExpression getCustomUDFExpression(ExprNodeGenericFuncDesc expr, Ve
     }
   }
 
+  /*
+   * Return vector expression for a custom UDF that implements VectorizedUDF.
+   */
+  private VectorExpression getVectorizedUDFExpression(ExprNodeGenericFuncDesc expr,
+      VectorExpressionDescriptor.Mode mode) throws HiveException {
+
+    TypeInfo resultTypeInfo = expr.getTypeInfo();
+    boolean isFilter = false;    // Assume.
+    if (mode == VectorExpressionDescriptor.Mode.FILTER) {
+
+      // Is output type a BOOLEAN?
+      if (resultTypeInfo.getCategory() == Category.PRIMITIVE &&
+          ((PrimitiveTypeInfo) resultTypeInfo).getPrimitiveCategory() == PrimitiveCategory.BOOLEAN) {
+        isFilter = true;
+      } else {
+        return null;
+      }
+    }
+
+    List<ExprNodeDesc> childExprList = expr.getChildren();
+    final int childrenCount = childExprList.size();
+
+    // The UDF takes column vectors, so the constant arguments become repeating scratch columns.
+    int[] argumentColumnNums = new int[childrenCount];
+    List<VectorExpression> vectorExprs = new ArrayList<VectorExpression>();
+
+    TypeInfo[] inputTypeInfos = new TypeInfo[childrenCount];
+    DataTypePhysicalVariation[] inputDataTypePhysicalVariations = new DataTypePhysicalVariation[childrenCount];
+
+    for (int i = 0; i < childrenCount; i++) {
+      ExprNodeDesc child = childExprList.get(i);
+      inputTypeInfos[i] = child.getTypeInfo();
+      inputDataTypePhysicalVariations[i] = DataTypePhysicalVariation.NONE;
+
+      if (child instanceof ExprNodeColumnDesc) {
+        argumentColumnNums[i] = getInputColumnIndex(((ExprNodeColumnDesc) child).getColumn());
+      } else if (child instanceof ExprNodeGenericFuncDesc ||
+          child instanceof ExprNodeConstantDesc ||
+          child instanceof ExprNodeDynamicValueDesc) {
+        VectorExpression e = getVectorExpression(child, VectorExpressionDescriptor.Mode.PROJECTION);
+        vectorExprs.add(e);
+        argumentColumnNums[i] = e.getOutputColumnNum();
+      } else {
+        throw new HiveException("Unable to vectorize custom UDF. Encountered unsupported expr desc : "
+            + child);
+      }
+    }
+
+    final int outputColumnNum = ocm.allocateOutputColumn(resultTypeInfo);
+
+    VectorExpression ve = new VectorUDFNativeExpression(expr, argumentColumnNums, outputColumnNum);
+
+    if (vectorExprs.size() != 0) {
+      ve.setChildExpressions(vectorExprs.toArray(new VectorExpression[0]));
+    }
+
+    ve.setInputTypeInfos(inputTypeInfos);
+    ve.setInputDataTypePhysicalVariations(inputDataTypePhysicalVariations);
+
+    ve.setOutputTypeInfo(resultTypeInfo);
+    ve.setOutputDataTypePhysicalVariation(DataTypePhysicalVariation.NONE);
+
+    // Free output columns if inputs have non-leaf expression trees.
+    for (VectorExpression e : vectorExprs) {
+      ocm.freeOutputColumn(e.getOutputColumnNum());
+    }
+
+    if (isFilter) {
+      SelectColumnIsTrue filterVectorExpr = new SelectColumnIsTrue(outputColumnNum);
+
+      filterVectorExpr.setChildExpressions(new VectorExpression[] {ve});
+
+      filterVectorExpr.setInputTypeInfos(ve.getOutputTypeInfo());
+      filterVectorExpr.setInputDataTypePhysicalVariations(ve.getOutputDataTypePhysicalVariation());
+
+      return filterVectorExpr;
+    } else {
+      return ve;
+    }
+  }
+
   public static boolean isStringFamily(String resultType) {
     return resultType.equalsIgnoreCase("string") || charVarcharTypePattern.matcher(resultType).matches() ||
            resultType.equalsIgnoreCase("string_family");
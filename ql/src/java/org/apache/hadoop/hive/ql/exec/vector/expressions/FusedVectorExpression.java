@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A vector expression that evaluates a whole expression tree in one loop over the batch, with
+ * a class generated by FusedVectorExpressionCompiler.
+ *
+ * Only the generated source is serialized with the plan; the class is compiled when the
+ * expression is first evaluated in the task.  The regular (interpreted) vector expression tree
+ * is kept and evaluated instead if the compilation fails.
+ */
+public class FusedVectorExpression extends VectorExpression {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger LOG = LoggerFactory.getLogger(FusedVectorExpression.class);
+
+  /**
+   * The interface implemented by the generated class.
+   */
+  public interface Evaluator {
+    void evaluate(VectorizedRowBatch batch);
+  }
+
+  private static final String[] DEFAULT_IMPORTS = new String[] {
+      "org.apache.hadoop.hive.ql.exec.vector.*" };
+
+  // Tasks of the same query (and of repeated queries in LLAP) share the compiled classes.
+  private static final Cache<String, Class<?>> compiledClasses =
+      CacheBuilder.newBuilder().maximumSize(1024).build();
+
+  private String classBody;
+  private VectorExpression interpretedExpression;
+
+  private transient Evaluator evaluator;
+  private transient boolean isCompileFailed;
+
+  public FusedVectorExpression() {
+    super();
+  }
+
+  public FusedVectorExpression(String classBody, VectorExpression interpretedExpression) {
+    super(interpretedExpression.getOutputColumnNum());
+    this.classBody = classBody;
+    this.interpretedExpression = interpretedExpression;
+    inputTypeInfos = interpretedExpression.getInputTypeInfos();
+    inputDataTypePhysicalVariations = interpretedExpression.getInputDataTypePhysicalVariations();
+    outputTypeInfo = interpretedExpression.getOutputTypeInfo();
+    outputDataTypePhysicalVariation = interpretedExpression.getOutputDataTypePhysicalVariation();
+  }
+
+  public String getClassBody() {
+    return classBody;
+  }
+
+  public VectorExpression getInterpretedExpression() {
+    return interpretedExpression;
+  }
+
+  /**
+   * Compiles the generated class body, or finds it already compiled, and instantiates it.
+   */
+  public static Evaluator newEvaluator(final String classBody) throws HiveException {
+    try {
+      Class<?> evaluatorClass = compiledClasses.get(classBody, new Callable<Class<?>>() {
+        @Override
+        public Class<?> call() throws Exception {
+          ClassBodyEvaluator classBodyEvaluator = new ClassBodyEvaluator();
+          classBodyEvaluator.setParentClassLoader(FusedVectorExpression.class.getClassLoader());
+          classBodyEvaluator.setDefaultImports(DEFAULT_IMPORTS);
+          classBodyEvaluator.setImplementedInterfaces(new Class[] { Evaluator.class });
+          classBodyEvaluator.cook(classBody);
+          return classBodyEvaluator.getClazz();
+        }
+      });
+      return (Evaluator) evaluatorClass.newInstance();
+    } catch (ExecutionException e) {
+      throw new HiveException("Failed to compile fused vector expression", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new HiveException("Failed to instantiate fused vector expression", e);
+    }
+  }
+
+  @Override
+  public void transientInit() throws HiveException {
+    super.transientInit();
+    VectorExpression.doTransientInit(interpretedExpression);
+  }
+
+  @Override
+  public void init(Configuration conf) {
+    super.init(conf);
+    interpretedExpression.init(conf);
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    if (evaluator == null && !isCompileFailed) {
+      try {
+        evaluator = newEvaluator(classBody);
+      } catch (HiveException e) {
+        LOG.warn("Using the interpreted vector expression " + interpretedExpression, e);
+        isCompileFailed = true;
+      }
+    }
+    if (evaluator != null) {
+      evaluator.evaluate(batch);
+    } else {
+      interpretedExpression.evaluate(batch);
+    }
+  }
+
+  @Override
+  public String vectorExpressionParameters() {
+    return interpretedExpression.toString();
+  }
+
+  @Override
+  public VectorExpressionDescriptor.Descriptor getDescriptor() {
+    return (new VectorExpressionDescriptor.Builder()).build();
+  }
+}
@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPPlus;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates the Java source of a FusedVectorExpression: one loop over the batch that computes
+ * an expression tree row by row in local variables, instead of one loop per tree node that
+ * writes a scratch column.
+ *
+ * Supported are int family, float, double and boolean columns and constants, + - * /,
+ * comparisons, AND, OR, NOT and IS [NOT] NULL.  NULL handling is the same as the regular vector
+ * expressions: arithmetic and comparisons are NULL when an argument is NULL, division by zero is
+ * NULL, and AND/OR follow the three valued logic.  Integer arithmetic is unchecked, as it is
+ * unless hive.vectorized.use.checked.expressions is set.
+ */
+public final class FusedVectorExpressionCompiler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FusedVectorExpressionCompiler.class);
+
+  private enum Kind {
+    LONG("long"),
+    DOUBLE("double"),
+    BOOLEAN("boolean");
+
+    final String javaType;
+
+    Kind(String javaType) {
+      this.javaType = javaType;
+    }
+  }
+
+  /**
+   * A value of the generated row code: local variables with the value and its NULL flag.
+   */
+  private static final class Value {
+    final Kind kind;
+    final String value;
+    final String isNull;
+
+    Value(Kind kind, String value, String isNull) {
+      this.kind = kind;
+      this.value = value;
+      this.isNull = isNull;
+    }
+  }
+
+  private final VectorizationContext vContext;
+
+  // Code run once per batch, before the rows.
+  private final StringBuilder batchCode = new StringBuilder();
+
+  // Code run for row i.
+  private final StringBuilder rowCode = new StringBuilder();
+
+  private final Map<Integer, Value> columnValues = new HashMap<Integer, Value>();
+  private final List<String> isRepeatingFlags = new ArrayList<String>();
+  private int nextVariable;
+
+  private FusedVectorExpressionCompiler(VectorizationContext vContext) {
+    this.vContext = vContext;
+  }
+
+  /**
+   * Returns a fused expression equivalent to interpretedExpression, or null when exprDesc has
+   * an unsupported node or is too simple to gain from fusion.
+   *
+   * @param exprDesc the expression
+   * @param interpretedExpression the regular vector expression of exprDesc
+   * @param vContext the context that vectorized exprDesc, for the column numbers
+   * @param isFilter whether the expression is a filter, that keeps the rows where it is true
+   */
+  public static FusedVectorExpression compile(ExprNodeDesc exprDesc,
+      VectorExpression interpretedExpression, VectorizationContext vContext, boolean isFilter)
+          throws HiveException {
+    if (!hasNestedFunction(exprDesc)) {
+      return null;
+    }
+    FusedVectorExpressionCompiler compiler = new FusedVectorExpressionCompiler(vContext);
+    Value result = compiler.generate(exprDesc);
+    if (result == null || (isFilter && result.kind != Kind.BOOLEAN)) {
+      return null;
+    }
+    String classBody = isFilter ?
+        compiler.generateFilter(result) :
+        compiler.generateProjection(result, interpretedExpression.getOutputColumnNum());
+
+    // Compile now, so a problem in the generated code shows up during planning.
+    try {
+      FusedVectorExpression.newEvaluator(classBody);
+    } catch (HiveException e) {
+      LOG.warn("Failed to compile fused vector expression for " + exprDesc.getExprString(), e);
+      return null;
+    }
+    return new FusedVectorExpression(classBody, interpretedExpression);
+  }
+
+  private static boolean hasNestedFunction(ExprNodeDesc exprDesc) {
+    if (!(exprDesc instanceof ExprNodeGenericFuncDesc)) {
+      return false;
+    }
+    for (ExprNodeDesc child : exprDesc.getChildren()) {
+      if (child instanceof ExprNodeGenericFuncDesc) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Kind getKind(TypeInfo typeInfo) {
+    if (!(typeInfo instanceof PrimitiveTypeInfo)) {
+      return null;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return Kind.LONG;
+    case FLOAT:
+    case DOUBLE:
+      return Kind.DOUBLE;
+    case BOOLEAN:
+      return Kind.BOOLEAN;
+    default:
+      return null;
+    }
+  }
+
+  private String newVariable() {
+    return "v" + (nextVariable++);
+  }
+
+  private Value generate(ExprNodeDesc exprDesc) throws HiveException {
+    if (exprDesc instanceof ExprNodeColumnDesc) {
+      return generateColumn((ExprNodeColumnDesc) exprDesc);
+    } else if (exprDesc instanceof ExprNodeConstantDesc) {
+      return generateConstant((ExprNodeConstantDesc) exprDesc);
+    } else if (exprDesc instanceof ExprNodeGenericFuncDesc) {
+      return generateFunction((ExprNodeGenericFuncDesc) exprDesc);
+    }
+    return null;
+  }
+
+  private Value generateColumn(ExprNodeColumnDesc columnDesc) throws HiveException {
+    Kind kind = getKind(columnDesc.getTypeInfo());
+    if (kind == null) {
+      return null;
+    }
+    int columnNum = vContext.getInputColumnIndex(columnDesc.getColumn());
+    Value value = columnValues.get(columnNum);
+    if (value != null) {
+      return value;
+    }
+    String cv = "cv" + columnNum;
+    String vectorClass = (kind == Kind.DOUBLE ? "DoubleColumnVector" : "LongColumnVector");
+    batchCode.append("    final ").append(vectorClass).append(" ").append(cv).append(" = (")
+        .append(vectorClass).append(") batch.cols[").append(columnNum).append("];\n");
+    batchCode.append("    final ").append(kind == Kind.DOUBLE ? "double" : "long")
+        .append("[] ").append(cv).append("Vector = ").append(cv).append(".vector;\n");
+    batchCode.append("    final boolean[] ").append(cv).append("IsNull = ").append(cv)
+        .append(".isNull;\n");
+    batchCode.append("    final boolean ").append(cv).append("NoNulls = ").append(cv)
+        .append(".noNulls;\n");
+    batchCode.append("    final boolean ").append(cv).append("IsRepeating = ").append(cv)
+        .append(".isRepeating;\n");
+    isRepeatingFlags.add(cv + "IsRepeating");
+
+    String v = newVariable();
+    rowCode.append("      final int ").append(cv).append("Row = ").append(cv)
+        .append("IsRepeating ? 0 : i;\n");
+    rowCode.append("      final boolean ").append(v).append("IsNull = !").append(cv)
+        .append("NoNulls && ").append(cv).append("IsNull[").append(cv).append("Row];\n");
+    rowCode.append("      final ").append(kind.javaType).append(" ").append(v).append(" = ")
+        .append(cv).append("Vector[").append(cv).append("Row]")
+        .append(kind == Kind.BOOLEAN ? " != 0" : "").append(";\n");
+    value = new Value(kind, v, v + "IsNull");
+    columnValues.put(columnNum, value);
+    return value;
+  }
+
+  private Value generateConstant(ExprNodeConstantDesc constantDesc) {
+    Object constant = constantDesc.getValue();
+    Kind kind = getKind(constantDesc.getTypeInfo());
+    if (kind == null || constant == null) {
+      return null;
+    }
+    String literal;
+    if (kind == Kind.LONG && constant instanceof Number) {
+      literal = ((Number) constant).longValue() + "L";
+    } else if (kind == Kind.DOUBLE && constant instanceof Number) {
+      literal = "Double.longBitsToDouble(0x" +
+          Long.toHexString(Double.doubleToLongBits(((Number) constant).doubleValue())) + "L)";
+    } else if (kind == Kind.BOOLEAN && constant instanceof Boolean) {
+      literal = constant.toString();
+    } else {
+      return null;
+    }
+    String v = newVariable();
+    batchCode.append("    final ").append(kind.javaType).append(" ").append(v).append(" = ")
+        .append(literal).append(";\n");
+    return new Value(kind, v, "false");
+  }
+
+  private Value generateFunction(ExprNodeGenericFuncDesc funcDesc) throws HiveException {
+    GenericUDF udf = funcDesc.getGenericUDF();
+    List<ExprNodeDesc> childDescs = funcDesc.getChildren();
+    Value[] children = new Value[childDescs.size()];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = generate(childDescs.get(i));
+      if (children[i] == null) {
+        return null;
+      }
+    }
+    Kind resultKind = getKind(funcDesc.getTypeInfo());
+    if (resultKind == null) {
+      return null;
+    }
+
+    if (udf instanceof GenericUDFOPPlus) {
+      return generateArithmetic(resultKind, "+", children);
+    } else if (udf instanceof GenericUDFOPMinus) {
+      return generateArithmetic(resultKind, "-", children);
+    } else if (udf instanceof GenericUDFOPMultiply) {
+      return generateArithmetic(resultKind, "*", children);
+    } else if (udf instanceof GenericUDFOPDivide) {
+      return generateDivide(resultKind, children);
+    } else if (udf instanceof GenericUDFOPEqual) {
+      return generateComparison("==", children);
+    } else if (udf instanceof GenericUDFOPNotEqual) {
+      return generateComparison("!=", children);
+    } else if (udf instanceof GenericUDFOPLessThan) {
+      return generateComparison("<", children);
+    } else if (udf instanceof GenericUDFOPEqualOrLessThan) {
+      return generateComparison("<=", children);
+    } else if (udf instanceof GenericUDFOPGreaterThan) {
+      return generateComparison(">", children);
+    } else if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+      return generateComparison(">=", children);
+    } else if (udf instanceof GenericUDFOPAnd) {
+      return generateAndOr(true, children);
+    } else if (udf instanceof GenericUDFOPOr) {
+      return generateAndOr(false, children);
+    } else if (udf instanceof GenericUDFOPNot) {
+      return generateNot(children);
+    } else if (udf instanceof GenericUDFOPNull) {
+      return generateIsNull(true, children);
+    } else if (udf instanceof GenericUDFOPNotNull) {
+      return generateIsNull(false, children);
+    }
+    return null;
+  }
+
+  private static boolean isNumeric(Value value) {
+    return value.kind == Kind.LONG || value.kind == Kind.DOUBLE;
+  }
+
+  private Value generateArithmetic(Kind resultKind, String operator, Value[] children) {
+    if (children.length != 2 || !isNumeric(children[0]) || !isNumeric(children[1]) ||
+        resultKind == Kind.BOOLEAN) {
+      return null;
+    }
+    if (resultKind == Kind.LONG &&
+        (children[0].kind != Kind.LONG || children[1].kind != Kind.LONG)) {
+      return null;
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append("IsNull = ")
+        .append(children[0].isNull).append(" || ").append(children[1].isNull).append(";\n");
+    rowCode.append("      final ").append(resultKind.javaType).append(" ").append(v)
+        .append(" = ").append(resultKind == Kind.DOUBLE ? "(double) " : "")
+        .append(children[0].value).append(" ").append(operator).append(" ")
+        .append(children[1].value).append(";\n");
+    return new Value(resultKind, v, v + "IsNull");
+  }
+
+  private Value generateDivide(Kind resultKind, Value[] children) {
+    if (children.length != 2 || !isNumeric(children[0]) || !isNumeric(children[1]) ||
+        resultKind != Kind.DOUBLE) {
+      return null;
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append("IsNull = ")
+        .append(children[0].isNull).append(" || ").append(children[1].isNull).append(" || ")
+        .append(children[1].value).append(" == 0;\n");
+    rowCode.append("      final double ").append(v).append(" = ").append(v)
+        .append("IsNull ? 0.0 : (double) ").append(children[0].value).append(" / ")
+        .append(children[1].value).append(";\n");
+    return new Value(Kind.DOUBLE, v, v + "IsNull");
+  }
+
+  private Value generateComparison(String operator, Value[] children) {
+    if (children.length != 2 || !isNumeric(children[0]) || !isNumeric(children[1])) {
+      return null;
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append("IsNull = ")
+        .append(children[0].isNull).append(" || ").append(children[1].isNull).append(";\n");
+    rowCode.append("      final boolean ").append(v).append(" = ").append(children[0].value)
+        .append(" ").append(operator).append(" ").append(children[1].value).append(";\n");
+    return new Value(Kind.BOOLEAN, v, v + "IsNull");
+  }
+
+  /*
+   * AND is false when any argument is false, else NULL when any argument is NULL.
+   * OR is true when any argument is true, else NULL when any argument is NULL.
+   */
+  private Value generateAndOr(boolean isAnd, Value[] children) {
+    if (children.length < 2) {
+      return null;
+    }
+    StringBuilder decided = new StringBuilder();
+    StringBuilder anyNull = new StringBuilder();
+    for (int i = 0; i < children.length; i++) {
+      if (children[i].kind != Kind.BOOLEAN) {
+        return null;
+      }
+      if (i > 0) {
+        decided.append(" || ");
+        anyNull.append(" || ");
+      }
+      decided.append("(!").append(children[i].isNull).append(" && ")
+          .append(isAnd ? "!" : "").append(children[i].value).append(")");
+      anyNull.append(children[i].isNull);
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append("Decided = ").append(decided)
+        .append(";\n");
+    rowCode.append("      final boolean ").append(v).append("IsNull = !").append(v)
+        .append("Decided && (").append(anyNull).append(");\n");
+    rowCode.append("      final boolean ").append(v).append(" = ").append(isAnd ? "!" : "")
+        .append(v).append("Decided;\n");
+    return new Value(Kind.BOOLEAN, v, v + "IsNull");
+  }
+
+  private Value generateNot(Value[] children) {
+    if (children.length != 1 || children[0].kind != Kind.BOOLEAN) {
+      return null;
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append(" = !").append(children[0].value)
+        .append(";\n");
+    return new Value(Kind.BOOLEAN, v, children[0].isNull);
+  }
+
+  private Value generateIsNull(boolean isNull, Value[] children) {
+    if (children.length != 1) {
+      return null;
+    }
+    String v = newVariable();
+    rowCode.append("      final boolean ").append(v).append(" = ").append(isNull ? "" : "!")
+        .append(children[0].isNull).append(";\n");
+    return new Value(Kind.BOOLEAN, v, "false");
+  }
+
+  private String getAllRepeating() {
+    if (isRepeatingFlags.isEmpty()) {
+      return "true";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < isRepeatingFlags.size(); i++) {
+      if (i > 0) {
+        sb.append(" && ");
+      }
+      sb.append(isRepeatingFlags.get(i));
+    }
+    return sb.toString();
+  }
+
+  private String generateFilter(Value result) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("  public void evaluate(VectorizedRowBatch batch) {\n");
+    sb.append("    final int n = batch.size;\n");
+    sb.append("    if (n == 0) {\n");
+    sb.append("      return;\n");
+    sb.append("    }\n");
+    sb.append("    final int[] sel = batch.selected;\n");
+    sb.append("    final boolean selectedInUse = batch.selectedInUse;\n");
+    sb.append(batchCode);
+    sb.append("    if (").append(getAllRepeating()).append(") {\n");
+    sb.append("      final int i = 0;\n");
+    sb.append(rowCode);
+    sb.append("      if (").append(result.isNull).append(" || !").append(result.value)
+        .append(") {\n");
+    sb.append("        batch.size = 0;\n");
+    sb.append("      }\n");
+    sb.append("      return;\n");
+    sb.append("    }\n");
+    sb.append("    int newSize = 0;\n");
+    sb.append("    for (int j = 0; j < n; j++) {\n");
+    sb.append("      final int i = selectedInUse ? sel[j] : j;\n");
+    sb.append(rowCode);
+    sb.append("      if (!").append(result.isNull).append(" && ").append(result.value)
+        .append(") {\n");
+    sb.append("        sel[newSize++] = i;\n");
+    sb.append("      }\n");
+    sb.append("    }\n");
+    sb.append("    if (newSize < n) {\n");
+    sb.append("      batch.size = newSize;\n");
+    sb.append("      batch.selectedInUse = true;\n");
+    sb.append("    }\n");
+    sb.append("  }\n");
+    return sb.toString();
+  }
+
+  private String generateProjection(Value result, int outputColumnNum) {
+    String vectorClass = (result.kind == Kind.DOUBLE ? "DoubleColumnVector" : "LongColumnVector");
+    String outputValue = (result.kind == Kind.BOOLEAN ?
+        "(" + result.value + " ? 1 : 0)" : result.value);
+    StringBuilder sb = new StringBuilder();
+    sb.append("  public void evaluate(VectorizedRowBatch batch) {\n");
+    sb.append("    final int n = batch.size;\n");
+    sb.append("    if (n == 0) {\n");
+    sb.append("      return;\n");
+    sb.append("    }\n");
+    sb.append("    final int[] sel = batch.selected;\n");
+    sb.append("    final boolean selectedInUse = batch.selectedInUse;\n");
+    sb.append(batchCode);
+    sb.append("    final ").append(vectorClass).append(" outputColVector = (").append(vectorClass)
+        .append(") batch.cols[").append(outputColumnNum).append("];\n");
+    sb.append("    final ").append(result.kind == Kind.DOUBLE ? "double" : "long")
+        .append("[] outputVector = outputColVector.vector;\n");
+    sb.append("    final boolean[] outputIsNull = outputColVector.isNull;\n");
+    sb.append("    if (").append(getAllRepeating()).append(") {\n");
+    sb.append("      final int i = 0;\n");
+    sb.append(rowCode);
+    sb.append("      outputColVector.isRepeating = true;\n");
+    sb.append("      outputColVector.noNulls = !").append(result.isNull).append(";\n");
+    sb.append("      outputIsNull[0] = ").append(result.isNull).append(";\n");
+    sb.append("      outputVector[0] = ").append(outputValue).append(";\n");
+    sb.append("      return;\n");
+    sb.append("    }\n");
+    sb.append("    outputColVector.isRepeating = false;\n");
+    sb.append("    boolean noNulls = true;\n");
+    sb.append("    for (int j = 0; j < n; j++) {\n");
+    sb.append("      final int i = selectedInUse ? sel[j] : j;\n");
+    sb.append(rowCode);
+    sb.append("      outputIsNull[i] = ").append(result.isNull).append(";\n");
+    sb.append("      outputVector[i] = ").append(outputValue).append(";\n");
+    sb.append("      if (").append(result.isNull).append(") {\n");
+    sb.append("        noNulls = false;\n");
+    sb.append("      }\n");
+    sb.append("    }\n");
+    sb.append("    outputColVector.noNulls = noNulls;\n");
+    sb.append("  }\n");
+    return sb.toString();
+  }
+}
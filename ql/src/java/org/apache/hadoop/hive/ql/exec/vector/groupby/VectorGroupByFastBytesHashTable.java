@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/**
+ * Native vector GROUP BY hash table for variable length byte keys.
+ *
+ * Used both for a single key stored in a BytesColumnVector and for multiple keys serialized
+ * into one byte array.  The key bytes are appended to WriteBuffers slabs; each entry keeps the
+ * offset, length and hash code of its key.
+ */
+public class VectorGroupByFastBytesHashTable extends VectorGroupByFastHashTable {
+
+  private static final int DEFAULT_WRITE_BUFFERS_SIZE = 1024 * 1024;
+
+  private final WriteBuffers writeBuffers;
+
+  private long[] entryKeyOffsets;
+  private int[] entryKeyLengths;
+  private int[] entryHashCodes;
+
+  private long keyBytesSize;
+
+  public VectorGroupByFastBytesHashTable() {
+    super();
+    writeBuffers = new WriteBuffers(DEFAULT_WRITE_BUFFERS_SIZE, Long.MAX_VALUE);
+    allocateEntries(initialCapacity);
+  }
+
+  public VectorGroupByFastBytesHashTable(int initialCapacity, float loadFactor,
+      int writeBuffersSize) {
+    super(initialCapacity, loadFactor);
+    writeBuffers = new WriteBuffers(writeBuffersSize, Long.MAX_VALUE);
+    allocateEntries(this.initialCapacity);
+  }
+
+  private void allocateEntries(int capacity) {
+    entryKeyOffsets = new long[capacity];
+    entryKeyLengths = new int[capacity];
+    entryHashCodes = new int[capacity];
+  }
+
+  /**
+   * Find the entry of a key, adding a new entry (and copying the key bytes) if the key is not
+   * present.
+   *
+   * @return the entry number.  A new entry has no aggregation buffers yet.
+   */
+  public int findOrAddEntry(byte[] keyBytes, int keyStart, int keyLength) {
+    if (resizeThreshold <= entryCount) {
+      expandAndRehash();
+    }
+
+    final int hashCode = HashCodeUtil.murmurHash(keyBytes, keyStart, keyLength);
+    int slot = hashCode & logicalHashBucketMask;
+    long probeSlot = slot;
+    int i = 0;
+    while (true) {
+      final int slotEntry = slotEntries[slot];
+      if (slotEntry == 0) {
+        break;
+      }
+      final int entry = slotEntry - 1;
+      if (entryHashCodes[entry] == hashCode &&
+          writeBuffers.isEqual(
+              keyBytes, keyStart, keyLength, entryKeyOffsets[entry], entryKeyLengths[entry])) {
+        return entry;
+      }
+      ++metricPutConflict;
+      // Some other key (collision) - keep probing.
+      probeSlot += (++i);
+      slot = (int) (probeSlot & logicalHashBucketMask);
+    }
+    if (largestNumberOfSteps < i) {
+      largestNumberOfSteps = i;
+    }
+
+    final int entry = addEntry();
+    entryKeyOffsets[entry] = writeBuffers.getWritePoint();
+    entryKeyLengths[entry] = keyLength;
+    entryHashCodes[entry] = hashCode;
+    writeBuffers.write(keyBytes, keyStart, keyLength);
+    keyBytesSize += keyLength;
+    slotEntries[slot] = entry + 1;
+    return entry;
+  }
+
+  /**
+   * Point a byte segment reference at the key bytes of an entry.  The key is copied only in the
+   * rare case it spans two write buffers.
+   */
+  public void getKey(int entry, WriteBuffers.ByteSegmentRef keyRef) {
+    keyRef.reset(entryKeyOffsets[entry], entryKeyLengths[entry]);
+    writeBuffers.populateValue(keyRef);
+  }
+
+  /**
+   * @return the total number of key bytes stored.
+   */
+  public long getKeyBytesSize() {
+    return keyBytesSize;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    writeBuffers.clear();
+    keyBytesSize = 0;
+  }
+
+  @Override
+  protected void growEntries(int newCapacity) {
+    entryKeyOffsets = Arrays.copyOf(entryKeyOffsets, newCapacity);
+    entryKeyLengths = Arrays.copyOf(entryKeyLengths, newCapacity);
+    entryHashCodes = Arrays.copyOf(entryHashCodes, newCapacity);
+  }
+
+  @Override
+  protected int getEntryHashCode(int entry) {
+    return entryHashCodes[entry];
+  }
+
+  @Override
+  protected long getEntryKeyFixedSize() {
+    JavaDataModel model = JavaDataModel.get();
+    return model.primitive2() + 2 * model.primitive1();
+  }
+}
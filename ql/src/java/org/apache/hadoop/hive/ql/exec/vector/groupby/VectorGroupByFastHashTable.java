@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorAggregationBufferRow;
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the open addressing hash tables used by the native vector GROUP BY hash
+ * aggregation modes.
+ *
+ * Unlike the HashMap of VectorHashKeyWrapper objects used by the general hash aggregation
+ * mode, the keys are kept in primitive arrays (or in WriteBuffers byte slabs for variable
+ * length keys) and the slots only reference a dense entry number.  Entries are numbered in
+ * insertion order and own one VectorAggregationBufferRow each.
+ *
+ * The NULL key is not hashed.  It gets its own entry that is tracked separately.
+ *
+ * There is no delete -- the whole table is cleared when the operator flushes.
+ */
+public abstract class VectorGroupByFastHashTable {
+  public static final Logger LOG = LoggerFactory.getLogger(VectorGroupByFastHashTable.class);
+
+  // 2^30 (we cannot use Integer.MAX_VALUE which is 2^31-1).
+  public static final int HIGHEST_INT_POWER_OF_2 = 1073741824;
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+  private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+  protected final int initialCapacity;
+  protected final float loadFactor;
+
+  protected int logicalHashBucketCount;
+  protected int logicalHashBucketMask;
+  protected int resizeThreshold;
+
+  /*
+   * The slots hold (entry number + 1) so that zero means empty.
+   */
+  protected int[] slotEntries;
+
+  protected int entryCount;
+  protected int nullEntry;
+
+  protected VectorAggregationBufferRow[] entryAggregationBuffers;
+
+  protected int metricPutConflict;
+  protected int largestNumberOfSteps;
+  protected int metricExpands;
+
+  public VectorGroupByFastHashTable() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+  }
+
+  public VectorGroupByFastHashTable(int initialCapacity, float loadFactor) {
+    initialCapacity = (Integer.bitCount(initialCapacity) == 1)
+        ? initialCapacity : Integer.highestOneBit(initialCapacity) << 1;
+    if (initialCapacity <= 0 || initialCapacity > HIGHEST_INT_POWER_OF_2) {
+      throw new AssertionError("Invalid capacity " + initialCapacity);
+    }
+    this.initialCapacity = initialCapacity;
+    this.loadFactor = loadFactor;
+    allocateSlots(initialCapacity);
+    entryAggregationBuffers = new VectorAggregationBufferRow[initialCapacity];
+    nullEntry = -1;
+  }
+
+  private void allocateSlots(int capacity) {
+    logicalHashBucketCount = capacity;
+    logicalHashBucketMask = capacity - 1;
+    resizeThreshold = (int) (capacity * loadFactor);
+    slotEntries = new int[capacity];
+  }
+
+  /**
+   * @return the number of entries (i.e. distinct keys including NULL) in the table.
+   */
+  public int size() {
+    return entryCount;
+  }
+
+  public boolean isNullEntry(int entry) {
+    return entry == nullEntry;
+  }
+
+  /**
+   * @return the aggregation buffers of an entry, or null if the entry was just added and has not
+   *     been assigned its buffers yet.
+   */
+  public VectorAggregationBufferRow getAggregationBufferRow(int entry) {
+    return entryAggregationBuffers[entry];
+  }
+
+  public void setAggregationBufferRow(int entry, VectorAggregationBufferRow aggregationBufferRow) {
+    entryAggregationBuffers[entry] = aggregationBufferRow;
+  }
+
+  /**
+   * Find or add the entry for the NULL key.
+   */
+  public int findOrAddNullEntry() {
+    if (nullEntry == -1) {
+      nullEntry = addEntry();
+    }
+    return nullEntry;
+  }
+
+  /**
+   * Allocate the next entry number, growing the entry arrays when needed.
+   */
+  protected int addEntry() {
+    if (entryCount == entryAggregationBuffers.length) {
+      final int newCapacity = entryCount * 2;
+      entryAggregationBuffers = Arrays.copyOf(entryAggregationBuffers, newCapacity);
+      growEntries(newCapacity);
+    }
+    return entryCount++;
+  }
+
+  protected void expandAndRehash() {
+    if (logicalHashBucketCount >= HIGHEST_INT_POWER_OF_2) {
+      throw new RuntimeException(
+          "Vector GROUP BY " + getClass().getSimpleName() + " cannot grow any more. " +
+          "Current logical size is " + logicalHashBucketCount);
+    }
+    final int newLogicalHashBucketCount = logicalHashBucketCount * 2;
+    final int newLogicalHashBucketMask = newLogicalHashBucketCount - 1;
+    int[] newSlotEntries = new int[newLogicalHashBucketCount];
+    int newLargestNumberOfSteps = 0;
+
+    for (int entry = 0; entry < entryCount; entry++) {
+      if (entry == nullEntry) {
+        continue;
+      }
+      int newSlot = getEntryHashCode(entry) & newLogicalHashBucketMask;
+      long newProbeSlot = newSlot;
+      int i = 0;
+      while (newSlotEntries[newSlot] != 0) {
+        // Some other key (collision) - keep probing.
+        newProbeSlot += (++i);
+        newSlot = (int) (newProbeSlot & newLogicalHashBucketMask);
+      }
+      if (newLargestNumberOfSteps < i) {
+        newLargestNumberOfSteps = i;
+      }
+      newSlotEntries[newSlot] = entry + 1;
+    }
+
+    slotEntries = newSlotEntries;
+    logicalHashBucketCount = newLogicalHashBucketCount;
+    logicalHashBucketMask = newLogicalHashBucketMask;
+    resizeThreshold = (int) (newLogicalHashBucketCount * loadFactor);
+    largestNumberOfSteps = newLargestNumberOfSteps;
+    metricExpands++;
+  }
+
+  /**
+   * Remove all entries.  Shrinks the table back to the initial capacity so a flush really
+   * releases the memory.
+   */
+  public void clear() {
+    if (logicalHashBucketCount == initialCapacity) {
+      Arrays.fill(slotEntries, 0);
+    } else {
+      allocateSlots(initialCapacity);
+    }
+    if (entryAggregationBuffers.length == initialCapacity) {
+      Arrays.fill(entryAggregationBuffers, null);
+    } else {
+      entryAggregationBuffers = new VectorAggregationBufferRow[initialCapacity];
+      growEntries(initialCapacity);
+    }
+    entryCount = 0;
+    nullEntry = -1;
+    metricPutConflict = 0;
+    largestNumberOfSteps = 0;
+  }
+
+  /**
+   * Estimated fixed memory size per entry including the share of the slot array.
+   */
+  public long getEntryFixedSize() {
+    JavaDataModel model = JavaDataModel.get();
+    return (long) (model.primitive1() / loadFactor) + model.ref() + getEntryKeyFixedSize();
+  }
+
+  public String getMetricsString() {
+    return "entryCount " + entryCount +
+        " logicalHashBucketCount " + logicalHashBucketCount +
+        " metricPutConflict " + metricPutConflict +
+        " largestNumberOfSteps " + largestNumberOfSteps +
+        " metricExpands " + metricExpands;
+  }
+
+  /**
+   * Resize the key arrays of the entries.
+   */
+  protected abstract void growEntries(int newCapacity);
+
+  /**
+   * @return the stored hash code of a (non-NULL) entry key used when rehashing.
+   */
+  protected abstract int getEntryHashCode(int entry);
+
+  /**
+   * @return the estimated fixed size of the key information kept per entry.
+   */
+  protected abstract long getEntryKeyFixedSize();
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+import org.apache.hive.common.util.HashCodeUtil;
+
+/**
+ * Native vector GROUP BY hash table for a single key stored in a LongColumnVector.
+ */
+public class VectorGroupByFastLongHashTable extends VectorGroupByFastHashTable {
+
+  private long[] entryKeys;
+
+  public VectorGroupByFastLongHashTable() {
+    super();
+    entryKeys = new long[initialCapacity];
+  }
+
+  public VectorGroupByFastLongHashTable(int initialCapacity, float loadFactor) {
+    super(initialCapacity, loadFactor);
+    entryKeys = new long[this.initialCapacity];
+  }
+
+  /**
+   * Find the entry of a key, adding a new entry if the key is not present.
+   *
+   * @return the entry number.  A new entry has no aggregation buffers yet.
+   */
+  public int findOrAddEntry(long key) {
+    if (resizeThreshold <= entryCount) {
+      expandAndRehash();
+    }
+
+    final int hashCode = HashCodeUtil.calculateLongHashCode(key);
+    int slot = hashCode & logicalHashBucketMask;
+    long probeSlot = slot;
+    int i = 0;
+    while (true) {
+      final int slotEntry = slotEntries[slot];
+      if (slotEntry == 0) {
+        break;
+      }
+      if (entryKeys[slotEntry - 1] == key) {
+        return slotEntry - 1;
+      }
+      ++metricPutConflict;
+      // Some other key (collision) - keep probing.
+      probeSlot += (++i);
+      slot = (int) (probeSlot & logicalHashBucketMask);
+    }
+    if (largestNumberOfSteps < i) {
+      largestNumberOfSteps = i;
+    }
+
+    final int entry = addEntry();
+    entryKeys[entry] = key;
+    slotEntries[slot] = entry + 1;
+    return entry;
+  }
+
+  public long getKey(int entry) {
+    return entryKeys[entry];
+  }
+
+  @Override
+  protected void growEntries(int newCapacity) {
+    entryKeys = Arrays.copyOf(entryKeys, newCapacity);
+  }
+
+  @Override
+  protected int getEntryHashCode(int entry) {
+    return HashCodeUtil.calculateLongHashCode(entryKeys[entry]);
+  }
+
+  @Override
+  protected long getEntryKeyFixedSize() {
+    return JavaDataModel.get().primitive2();
+  }
+}
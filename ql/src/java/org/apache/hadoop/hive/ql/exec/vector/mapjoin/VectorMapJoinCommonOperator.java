@@ -182,6 +182,9 @@ protected void initLoggingPrefix(String className) {
   protected transient boolean useOverflowRepeatedThreshold;
   protected transient int overflowRepeatedThreshold;
 
+  // The bloom filter pass rate above which the single long key operators stop probing it.
+  protected transient float bloomFilterMaxPassRate;
+
   // A helper object that efficiently copies the big table columns that are for the big table
   // portion of the join output.
   protected transient VectorCopyRow bigTableRetainedVectorCopy;
@@ -386,6 +389,19 @@ protected HashTableLoader getHashTableLoader(Configuration hconf) {
     return hashTableLoader;
   }
 
+  /**
+   * The vectorized hash tables also depend on their kind and key type.
+   */
+  @Override
+  protected String getSharedHashTableLayout(Configuration hconf) {
+    return super.getSharedHashTableLayout(hconf) + " " +
+        vectorDesc.getHashTableImplementationType() + " " +
+        vectorDesc.getHashTableKind() + " " +
+        vectorDesc.getHashTableKeyType() + " " +
+        vectorDesc.getMinMaxEnabled() + " " +
+        vectorDesc.getBloomFilterEnabled();
+  }
+
   @Override
   protected void initializeOp(Configuration hconf) throws HiveException {
     super.initializeOp(hconf);
@@ -400,6 +416,8 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     overflowRepeatedThreshold = HiveConf.getIntVar(hconf,
         HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_OVERFLOW_REPEATED_THRESHOLD);
     useOverflowRepeatedThreshold = (overflowRepeatedThreshold >= 0);
+    bloomFilterMaxPassRate = HiveConf.getFloatVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_MAX_PASS_RATE);
 
 
     /*
@@ -75,6 +75,9 @@ protected String getLoggingPrefix() {
   private transient long min;
   private transient long max;
 
+  // Optional bloom filter pre-filtering of the keys before the hash table lookups.
+  private transient VectorMapJoinLongBloomFilterProbe bloomFilterProbe;
+
   // The column number for this one column join specialization.
   private transient int singleJoinColumn;
 
@@ -135,6 +138,11 @@ public void process(Object row, int tag) throws HiveException {
           min = hashMap.min();
           max = hashMap.max();
         }
+        bloomFilterProbe = null;
+        if (hashMap.useBloomFilter()) {
+          bloomFilterProbe = new VectorMapJoinLongBloomFilterProbe(
+              hashMap.bloomFilter(), bloomFilterMaxPassRate);
+        }
 
         needHashTableSetup = false;
       }
@@ -150,7 +158,7 @@ public void process(Object row, int tag) throws HiveException {
         ve.evaluate(batch);
       }
 
-      final int inputLogicalSize = batch.size;
+      int inputLogicalSize = batch.size;
 
       if (inputLogicalSize == 0) {
         if (LOG.isDebugEnabled()) {
@@ -174,6 +182,18 @@ public void process(Object row, int tag) throws HiveException {
       LongColumnVector joinColVector = (LongColumnVector) batch.cols[singleJoinColumn];
       long[] vector = joinColVector.vector;
 
+      if (bloomFilterProbe != null) {
+
+        // Drop the rows whose key is not in the small table before looking them up.
+        inputLogicalSize = bloomFilterProbe.filter(batch, joinColVector);
+        if (inputLogicalSize == 0) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(CLASS_NAME + " batch #" + batchCounter + " empty after bloom filter");
+          }
+          return;
+        }
+      }
+
       /*
        * Single-Column Long check for repeating.
        */
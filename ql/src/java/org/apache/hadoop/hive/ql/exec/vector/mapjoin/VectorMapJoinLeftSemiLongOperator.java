@@ -76,6 +76,9 @@ protected String getLoggingPrefix() {
   private transient long min;
   private transient long max;
 
+  // Optional bloom filter pre-filtering of the keys before the hash table lookups.
+  private transient VectorMapJoinLongBloomFilterProbe bloomFilterProbe;
+
   // The column number for this one column join specialization.
   private transient int singleJoinColumn;
 
@@ -136,6 +139,11 @@ public void process(Object row, int tag) throws HiveException {
           min = hashSet.min();
           max = hashSet.max();
         }
+        bloomFilterProbe = null;
+        if (hashSet.useBloomFilter()) {
+          bloomFilterProbe = new VectorMapJoinLongBloomFilterProbe(
+              hashSet.bloomFilter(), bloomFilterMaxPassRate);
+        }
 
         needHashTableSetup = false;
       }
@@ -152,7 +160,7 @@ public void process(Object row, int tag) throws HiveException {
         ve.evaluate(batch);
       }
 
-      final int inputLogicalSize = batch.size;
+      int inputLogicalSize = batch.size;
 
       if (inputLogicalSize == 0) {
         if (LOG.isDebugEnabled()) {
@@ -176,6 +184,18 @@ public void process(Object row, int tag) throws HiveException {
       LongColumnVector joinColVector = (LongColumnVector) batch.cols[singleJoinColumn];
       long[] vector = joinColVector.vector;
 
+      if (bloomFilterProbe != null) {
+
+        // Drop the rows whose key is not in the small table before looking them up.
+        inputLogicalSize = bloomFilterProbe.filter(batch, joinColVector);
+        if (inputLogicalSize == 0) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug(CLASS_NAME + " batch #" + batchCounter + " empty after bloom filter");
+          }
+          return;
+        }
+      }
+
       /*
        * Single-Column Long check for repeating.
        */
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBlockedBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Removes the big table rows whose single long key is not in the small table bloom filter from
+ * the selected rows of a batch, ahead of the hash table lookups of an inner, inner big-only or
+ * left semi join.  Those joins drop non-matching rows (and NULL keys) anyway.
+ *
+ * When most rows pass the bloom filter the probe is extra work, so after a sample of batches
+ * whose pass rate is above the maximum, probing is switched off for a number of batches and then
+ * sampled again.
+ */
+public class VectorMapJoinLongBloomFilterProbe {
+
+  private static final String CLASS_NAME = VectorMapJoinLongBloomFilterProbe.class.getName();
+  private static final Logger LOG = LoggerFactory.getLogger(CLASS_NAME);
+
+  static final int SAMPLE_BATCH_COUNT = 64;
+  static final int SKIP_BATCH_COUNT = 1024;
+
+  private final VectorMapJoinBlockedBloomFilter bloomFilter;
+  private final float maxPassRate;
+
+  private boolean isProbing;
+  private int batchesLeft;
+  private long sampleProbedRows;
+  private long samplePassedRows;
+
+  public VectorMapJoinLongBloomFilterProbe(VectorMapJoinBlockedBloomFilter bloomFilter,
+      float maxPassRate) {
+    this.bloomFilter = bloomFilter;
+    this.maxPassRate = maxPassRate;
+    isProbing = true;
+    batchesLeft = SAMPLE_BATCH_COUNT;
+  }
+
+  public boolean isProbing() {
+    return isProbing;
+  }
+
+  /**
+   * Filters the selected rows of a non-empty batch by the bloom filter.
+   * @return the new batch size
+   */
+  public int filter(VectorizedRowBatch batch, LongColumnVector joinColVector) {
+    final int inputLogicalSize = batch.size;
+    if (!isProbing) {
+      if (--batchesLeft == 0) {
+        isProbing = true;
+        batchesLeft = SAMPLE_BATCH_COUNT;
+      }
+      return inputLogicalSize;
+    }
+
+    final long[] vector = joinColVector.vector;
+    final boolean[] isNull = joinColVector.isNull;
+    final boolean noNulls = joinColVector.noNulls;
+    int newSize = 0;
+    if (joinColVector.isRepeating) {
+      if ((noNulls || !isNull[0]) && bloomFilter.mightContain(vector[0])) {
+        newSize = inputLogicalSize;
+      }
+    } else {
+      final int[] selected = batch.selected;
+      if (batch.selectedInUse) {
+        for (int logical = 0; logical < inputLogicalSize; logical++) {
+          final int batchIndex = selected[logical];
+          if ((noNulls || !isNull[batchIndex]) && bloomFilter.mightContain(vector[batchIndex])) {
+            selected[newSize++] = batchIndex;
+          }
+        }
+      } else {
+        for (int batchIndex = 0; batchIndex < inputLogicalSize; batchIndex++) {
+          if ((noNulls || !isNull[batchIndex]) && bloomFilter.mightContain(vector[batchIndex])) {
+            selected[newSize++] = batchIndex;
+          }
+        }
+        if (newSize < inputLogicalSize) {
+          batch.selectedInUse = true;
+        }
+      }
+    }
+    batch.size = newSize;
+
+    sampleProbedRows += inputLogicalSize;
+    samplePassedRows += newSize;
+    if (--batchesLeft == 0) {
+      if (samplePassedRows > maxPassRate * sampleProbedRows) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(CLASS_NAME + " " + samplePassedRows + " of " + sampleProbedRows +
+              " rows passed, skipping the bloom filter for " + SKIP_BATCH_COUNT + " batches");
+        }
+        isProbing = false;
+        batchesLeft = SKIP_BATCH_COUNT;
+      } else {
+        batchesLeft = SAMPLE_BATCH_COUNT;
+      }
+      sampleProbedRows = 0;
+      samplePassedRows = 0;
+    }
+    return newSize;
+  }
+}
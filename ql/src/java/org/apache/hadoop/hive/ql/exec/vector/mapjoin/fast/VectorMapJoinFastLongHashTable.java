@@ -24,6 +24,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hive.ql.exec.JoinUtil;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBlockedBloomFilter;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMap;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashMap;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashTable;
@@ -72,6 +73,33 @@ public long max() {
     return max;
   }
 
+  private VectorMapJoinBlockedBloomFilter bloomFilter;
+
+  @Override
+  public boolean useBloomFilter() {
+    return (bloomFilter != null);
+  }
+
+  @Override
+  public VectorMapJoinBlockedBloomFilter bloomFilter() {
+    return bloomFilter;
+  }
+
+  /*
+   * Builds the bloom filter of the keys.  Called once all the rows have been put.
+   */
+  public void buildBloomFilter(int bitsPerKey) {
+    VectorMapJoinBlockedBloomFilter newBloomFilter =
+        new VectorMapJoinBlockedBloomFilter(keysAssigned, bitsPerKey);
+    for (int slot = 0; slot < logicalHashBucketCount; slot++) {
+      int pairIndex = slot * 2;
+      if (slotPairs[pairIndex] != 0) {
+        newBloomFilter.add(slotPairs[pairIndex + 1]);
+      }
+    }
+    bloomFilter = newBloomFilter;
+  }
+
   @Override
   public void putRow(BytesWritable currentKey, BytesWritable currentValue) throws HiveException, IOException {
     byte[] keyBytes = currentKey.getBytes();
@@ -289,6 +317,7 @@ public long getEstimatedMemorySize() {
     JavaDataModel jdm = JavaDataModel.get();
     long size = super.getEstimatedMemorySize();
     size += slotPairs == null ? 0 : jdm.lengthForLongArrayOfSize(slotPairs.length);
+    size += bloomFilter == null ? 0 : bloomFilter.getEstimatedMemorySize();
     size += (2 * jdm.primitive2());
     size += (2 * jdm.primitive1());
     size += jdm.object();
@@ -186,7 +186,17 @@ public MapJoinKey putRow(Writable currentKey, Writable currentValue)
 
   @Override
   public void seal() {
-    // Do nothing
+    VectorMapJoinDesc vectorDesc = (VectorMapJoinDesc) desc.getVectorDesc();
+    if (vectorDesc.getBloomFilterEnabled() &&
+        vectorMapJoinFastHashTable instanceof VectorMapJoinFastLongHashTable) {
+      int bitsPerKey = HiveConf.getIntVar(hconf,
+          HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_BITS_PER_KEY);
+      VectorMapJoinFastLongHashTable longHashTable =
+          (VectorMapJoinFastLongHashTable) vectorMapJoinFastHashTable;
+      longHashTable.buildBloomFilter(bitsPerKey);
+      LOG.info("Built bloom filter with " + longHashTable.bloomFilter().getBlockCount() +
+          " blocks for " + longHashTable.size() + " keys");
+    }
   }
 
   @Override
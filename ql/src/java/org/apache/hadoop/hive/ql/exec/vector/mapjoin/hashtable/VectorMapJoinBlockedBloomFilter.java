@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable;
+
+import org.apache.hadoop.hive.ql.util.JavaDataModel;
+
+/*
+ * A blocked bloom filter of small table long keys for a vector map join.
+ *
+ * Each key sets one bit in each of the 8 longs of one 512 bit block, so a probe touches a single
+ * cache line and does 8 independent word tests without branches.  The block is chosen by the
+ * upper 32 bits of a 64 bit hash of the key and the bits by the lower 32 bits multiplied by 8 odd
+ * salts (the split block bloom filter of Putze et al. also used by Impala and Parquet).
+ *
+ * The key is hashed here with the murmur3 64 bit finalizer instead of HashCodeUtil, whose
+ * 32 bit hash code only mixes the key down into the lower bits.
+ */
+public class VectorMapJoinBlockedBloomFilter {
+
+  private static final int LONGS_PER_BLOCK = 8;
+  private static final int BITS_PER_BLOCK = LONGS_PER_BLOCK * Long.SIZE;
+
+  // Keeps the bits array under 64MB.
+  private static final int MAX_BLOCK_COUNT = 1 << 20;
+
+  private static final int SALT0 = 0x47b6137b;
+  private static final int SALT1 = 0x44974d91;
+  private static final int SALT2 = 0x8824ad5b;
+  private static final int SALT3 = 0xa2b7289d;
+  private static final int SALT4 = 0x705495c7;
+  private static final int SALT5 = 0x2df1424b;
+  private static final int SALT6 = 0x9efc4947;
+  private static final int SALT7 = 0x5c6bfb31;
+
+  private final long[] bits;
+  private final int blockMask;
+
+  public VectorMapJoinBlockedBloomFilter(long expectedKeyCount, int bitsPerKey) {
+    long blocksNeeded = (Math.max(expectedKeyCount, 1) * bitsPerKey + BITS_PER_BLOCK - 1) /
+        BITS_PER_BLOCK;
+    int blockCount = 1;
+    while (blockCount < blocksNeeded && blockCount < MAX_BLOCK_COUNT) {
+      blockCount <<= 1;
+    }
+    bits = new long[blockCount * LONGS_PER_BLOCK];
+    blockMask = blockCount - 1;
+  }
+
+  private static long hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  public void add(long key) {
+    final long hashCode = hash(key);
+    final int base = ((int) (hashCode >>> 32) & blockMask) * LONGS_PER_BLOCK;
+    final int h = (int) hashCode;
+    bits[base] |= 1L << ((h * SALT0) >>> 26);
+    bits[base + 1] |= 1L << ((h * SALT1) >>> 26);
+    bits[base + 2] |= 1L << ((h * SALT2) >>> 26);
+    bits[base + 3] |= 1L << ((h * SALT3) >>> 26);
+    bits[base + 4] |= 1L << ((h * SALT4) >>> 26);
+    bits[base + 5] |= 1L << ((h * SALT5) >>> 26);
+    bits[base + 6] |= 1L << ((h * SALT6) >>> 26);
+    bits[base + 7] |= 1L << ((h * SALT7) >>> 26);
+  }
+
+  /*
+   * Returns false when the key was not added, and true when it may have been.
+   */
+  public boolean mightContain(long key) {
+    final long hashCode = hash(key);
+    final int base = ((int) (hashCode >>> 32) & blockMask) * LONGS_PER_BLOCK;
+    final int h = (int) hashCode;
+    final long missing =
+        (~bits[base] & (1L << ((h * SALT0) >>> 26))) |
+        (~bits[base + 1] & (1L << ((h * SALT1) >>> 26))) |
+        (~bits[base + 2] & (1L << ((h * SALT2) >>> 26))) |
+        (~bits[base + 3] & (1L << ((h * SALT3) >>> 26))) |
+        (~bits[base + 4] & (1L << ((h * SALT4) >>> 26))) |
+        (~bits[base + 5] & (1L << ((h * SALT5) >>> 26))) |
+        (~bits[base + 6] & (1L << ((h * SALT6) >>> 26))) |
+        (~bits[base + 7] & (1L << ((h * SALT7) >>> 26)));
+    return missing == 0;
+  }
+
+  public int getBlockCount() {
+    return blockMask + 1;
+  }
+
+  public long getEstimatedMemorySize() {
+    JavaDataModel jdm = JavaDataModel.get();
+    return jdm.object() + jdm.primitive1() + jdm.lengthForLongArrayOfSize(bits.length);
+  }
+}
@@ -28,4 +28,10 @@ public interface VectorMapJoinLongHashTable extends VectorMapJoinHashTable {
   long min();
   long max();
 
+  /*
+   * An optional bloom filter of the key hash codes (HashCodeUtil.calculateLongHashCode).
+   */
+  boolean useBloomFilter();
+  VectorMapJoinBlockedBloomFilter bloomFilter();
+
 }
\ No newline at end of file
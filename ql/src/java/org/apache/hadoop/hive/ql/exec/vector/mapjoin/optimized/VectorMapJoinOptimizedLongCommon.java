@@ -22,6 +22,7 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBlockedBloomFilter;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.optimized.VectorMapJoinOptimizedHashTable.SerializedBytes;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
 import org.apache.hadoop.hive.serde2.ByteStream.Output;
@@ -65,6 +66,14 @@ public long max() {
     return max;
   }
 
+  public boolean useBloomFilter() {
+    return false;
+  }
+
+  public VectorMapJoinBlockedBloomFilter bloomFilter() {
+    return null;
+  }
+
   public SerializedBytes serialize(long key) throws IOException {
     keyBinarySortableSerializeWrite.reset();
 
@@ -23,6 +23,7 @@
 import org.apache.hadoop.hive.ql.exec.JoinUtil.JoinResult;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer.ReusableGetAdaptor;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBlockedBloomFilter;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinHashMapResult;
 import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinLongHashMap;
 import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
@@ -54,6 +55,16 @@ public long max() {
     return longCommon.max();
   }
 
+  @Override
+  public boolean useBloomFilter() {
+    return longCommon.useBloomFilter();
+  }
+
+  @Override
+  public VectorMapJoinBlockedBloomFilter bloomFilter() {
+    return longCommon.bloomFilter();
+  }
+
   /*
   @Override
   public void putRow(BytesWritable currentKey, BytesWritable currentValue)
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.ptf;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector.Type;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.plan.VectorPTFDesc.SupportedFunctionType;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+
+/**
+ * This class evaluates double sum(), avg(), min(), max(), first_value(), last_value() and lag()
+ * over a sliding window frame.
+ *
+ * The sum of the frame is maintained by adding the entering unit and subtracting the leaving
+ * one.  For ROWS a unit is one row, so its sum, min and max are the row value.
+ */
+public class VectorPTFEvaluatorDoubleSliding extends VectorPTFEvaluatorSlidingBase {
+
+  private static final long serialVersionUID = 1L;
+  private static final String CLASS_NAME = VectorPTFEvaluatorDoubleSliding.class.getName();
+  private static final Log LOG = LogFactory.getLog(CLASS_NAME);
+
+  private double[] unitSums;
+  private double[] unitMins;
+  private double[] unitMaxs;
+
+  private double frameSum;
+
+  // MIN / MAX of an unbounded frame.
+  private boolean isRunningMinMaxSet;
+  private double runningMinMax;
+
+  // FIRST_VALUE of an unbounded frame.
+  private boolean isFirstValueNull;
+  private double firstValue;
+
+  // The lag() default when the row is not in the partition.
+  private final boolean hasDefaultValue;
+  private final double defaultValue;
+
+  public VectorPTFEvaluatorDoubleSliding(SupportedFunctionType functionType,
+      WindowFrameDef windowFrameDef, VectorExpression inputVecExpr, int outputColumnNum,
+      int orderColumnNum, Type orderColumnVectorType, int lagAmt, Object lagDefaultValue) {
+    super(functionType, windowFrameDef, inputVecExpr, outputColumnNum,
+        orderColumnNum, orderColumnVectorType, lagAmt);
+    hasDefaultValue = (lagDefaultValue != null);
+    defaultValue = (hasDefaultValue ? ((Number) lagDefaultValue).doubleValue() : 0);
+    allocateUnitValues(INITIAL_CAPACITY);
+    resetEvaluator();
+  }
+
+  private void allocateUnitValues(int capacity) {
+    unitSums = new double[capacity];
+    if (isRange) {
+      unitMins = new double[capacity];
+      unitMaxs = new double[capacity];
+    } else {
+      // A ROWS unit is a single value.
+      unitMins = unitSums;
+      unitMaxs = unitSums;
+    }
+  }
+
+  @Override
+  protected void setUnitValue(int slot, ColumnVector inputColVector, int batchIndex) {
+    unitSums[slot] = ((DoubleColumnVector) inputColVector).vector[batchIndex];
+  }
+
+  @Override
+  protected void startUnit(int slot) {
+    unitSums[slot] = 0;
+    unitMins[slot] = Double.POSITIVE_INFINITY;
+    unitMaxs[slot] = Double.NEGATIVE_INFINITY;
+  }
+
+  @Override
+  protected void addBatchToUnit(int slot, ColumnVector inputColVector, int size) {
+    double[] vector = ((DoubleColumnVector) inputColVector).vector;
+    if (inputColVector.isRepeating) {
+      final double value = vector[0];
+      unitSums[slot] += value * size;
+      unitMins[slot] = Math.min(unitMins[slot], value);
+      unitMaxs[slot] = Math.max(unitMaxs[slot], value);
+      return;
+    }
+    final boolean noNulls = inputColVector.noNulls;
+    boolean[] isNull = inputColVector.isNull;
+    double sum = unitSums[slot];
+    double min = unitMins[slot];
+    double max = unitMaxs[slot];
+    for (int i = 0; i < size; i++) {
+      if (noNulls || !isNull[i]) {
+        final double value = vector[i];
+        sum += value;
+        if (value < min) {
+          min = value;
+        }
+        if (value > max) {
+          max = value;
+        }
+      }
+    }
+    unitSums[slot] = sum;
+    unitMins[slot] = min;
+    unitMaxs[slot] = max;
+  }
+
+  @Override
+  protected void enterUnit(int slot) {
+    frameSum += unitSums[slot];
+    if (isStartUnbounded) {
+      switch (functionType) {
+      case MIN:
+        runningMinMax = (isRunningMinMaxSet ?
+            Math.min(runningMinMax, unitMins[slot]) : unitMins[slot]);
+        break;
+      case MAX:
+        runningMinMax = (isRunningMinMaxSet ?
+            Math.max(runningMinMax, unitMaxs[slot]) : unitMaxs[slot]);
+        break;
+      default:
+        break;
+      }
+      isRunningMinMaxSet = true;
+    }
+  }
+
+  @Override
+  protected void leaveUnit(int slot) {
+    frameSum -= unitSums[slot];
+  }
+
+  @Override
+  protected boolean keepsAheadOf(int slot, int enteringSlot) {
+    if (functionType == SupportedFunctionType.MIN) {
+      return unitMins[slot] < unitMins[enteringSlot];
+    } else {
+      return unitMaxs[slot] > unitMaxs[enteringSlot];
+    }
+  }
+
+  @Override
+  protected void growUnitValues(int newCapacity) {
+    unitSums = regrow(unitSums, newCapacity);
+    if (isRange) {
+      unitMins = regrow(unitMins, newCapacity);
+      unitMaxs = regrow(unitMaxs, newCapacity);
+    } else {
+      unitMins = unitSums;
+      unitMaxs = unitSums;
+    }
+  }
+
+  @Override
+  protected void firstUnitEntered(int slot) {
+    isFirstValueNull = isSlotNull(slot);
+    firstValue = unitSums[slot];
+  }
+
+  private double getMinMax() {
+    if (isStartUnbounded) {
+      return runningMinMax;
+    }
+    final int slot = slotOf(getDequeFirstUnit());
+    return (functionType == SupportedFunctionType.MIN ? unitMins[slot] : unitMaxs[slot]);
+  }
+
+  @Override
+  protected void writeRowResult(ColumnVector outputColVector, int batchIndex, long unit) {
+    final long frameEndUnit = unit - endAmt;
+    final boolean isNull;
+    double result = 0;
+    switch (functionType) {
+    case SUM:
+      isNull = (frameNonNullCount == 0);
+      result = frameSum;
+      break;
+    case AVG:
+      isNull = (frameNonNullCount == 0);
+      if (!isNull) {
+        result = frameSum / frameNonNullCount;
+      }
+      break;
+    case MIN:
+    case MAX:
+      isNull = (frameNonNullCount == 0);
+      if (!isNull) {
+        result = getMinMax();
+      }
+      break;
+    case FIRST_VALUE:
+      if (frameEndUnit < 0) {
+        isNull = true;
+      } else if (isStartUnbounded) {
+        isNull = isFirstValueNull;
+        result = firstValue;
+      } else {
+        final long frameStartUnit = getFrameStartUnit();
+        isNull = isUnitNull(frameStartUnit);
+        if (!isNull) {
+          result = unitSums[slotOf(frameStartUnit)];
+        }
+      }
+      break;
+    case LAST_VALUE:
+    case LAG:
+      if (frameEndUnit < 0 && hasDefaultValue) {
+        isNull = false;
+        result = defaultValue;
+      } else {
+        isNull = isUnitNull(frameEndUnit);
+        if (!isNull) {
+          result = unitSums[slotOf(frameEndUnit)];
+        }
+      }
+      break;
+    default:
+      throw new RuntimeException("Unexpected function type " + functionType);
+    }
+    if (isNull) {
+      setNullResult(outputColVector, batchIndex);
+    } else {
+      outputColVector.isNull[batchIndex] = false;
+      ((DoubleColumnVector) outputColVector).vector[batchIndex] = result;
+    }
+  }
+
+  @Override
+  public Type getResultColumnVectorType() {
+    return Type.DOUBLE;
+  }
+
+  @Override
+  public double getDoubleGroupResult() {
+    switch (functionType) {
+    case SUM:
+      return frameSum;
+    case AVG:
+      return frameSum / frameNonNullCount;
+    case MIN:
+    case MAX:
+      return getMinMax();
+    default:
+      throw new RuntimeException("Unexpected function type " + functionType);
+    }
+  }
+
+  @Override
+  protected void resetFrame() {
+    frameSum = 0;
+    isRunningMinMaxSet = false;
+    runningMinMax = 0;
+    isFirstValueNull = true;
+    firstValue = 0;
+  }
+}
@@ -0,0 +1,503 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.ptf;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector.Type;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.PTFInvocationSpec.Order;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.WindowType;
+import org.apache.hadoop.hive.ql.plan.VectorPTFDesc.SupportedFunctionType;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * This is the base class for the evaluators of sliding window frames:
+ *
+ *   ROWS BETWEEN {UNBOUNDED | n} PRECEDING AND {m PRECEDING | CURRENT ROW}
+ *   RANGE BETWEEN n PRECEDING AND CURRENT ROW
+ *   lag(expr, n, default)
+ *
+ * The frame is made of units: a row for ROWS, or a reduce-shuffle group (the peer rows with the
+ * same ORDER BY value) for RANGE.  Each unit enters the frame once and leaves it once, and the
+ * frame aggregation is maintained incrementally as units enter and leave instead of being
+ * recomputed over the frame.  MIN and MAX with a bounded start keep a monotonic deque of the
+ * units that can still become the frame result.
+ *
+ * ROWS frames stream their results, since the frame of a row only has rows before it.  RANGE
+ * frames have one result for the group, available after the last group batch.
+ *
+ * The units still needed are kept in a ring indexed by the unit number within the partition.
+ * Subclasses keep the unit values and the frame aggregation for their type.
+ */
+public abstract class VectorPTFEvaluatorSlidingBase extends VectorPTFEvaluatorBase {
+
+  private static final long serialVersionUID = 1L;
+  private static final String CLASS_NAME = VectorPTFEvaluatorSlidingBase.class.getName();
+  private static final Log LOG = LogFactory.getLog(CLASS_NAME);
+
+  protected static final int INITIAL_CAPACITY = 16;
+
+  protected final SupportedFunctionType functionType;
+
+  // The frame of a row is [row - startAmt, row - endAmt] for ROWS.  For RANGE, the frame of a
+  // group with ORDER BY value v is the groups with values in [v - startAmt, v], or
+  // [v, v + startAmt] for descending order.
+  protected final boolean isRange;
+  protected final boolean isStartUnbounded;
+  protected final int startAmt;
+  protected final int endAmt;
+
+  private final int orderColumnNum;
+  private final boolean isLongOrder;
+  private final boolean isOrderDescending;
+
+  private final boolean isMinMaxDeque;
+
+  /*
+   * The ring holds units [headUnit, nextUnit).  Units [headUnit, enteredUnit) are in the frame
+   * and units [enteredUnit, nextUnit) have not entered it yet.
+   */
+  private int capacity;
+  private long headUnit;
+  private long enteredUnit;
+  private long nextUnit;
+
+  private int[] unitRowCounts;
+  private int[] unitNonNullCounts;
+  private boolean[] unitOrderIsNull;
+  private long[] unitOrderLongs;
+  private double[] unitOrderDoubles;
+
+  protected long frameRowCount;
+  protected long frameNonNullCount;
+
+  // The monotonic deque of unit numbers for MIN and MAX.  The first one has the frame result.
+  private long[] dequeUnits;
+  private int dequeHead;
+  private int dequeSize;
+
+  // For RANGE, whether the next batch starts a new group.
+  private boolean isNewGroup;
+
+  public VectorPTFEvaluatorSlidingBase(SupportedFunctionType functionType,
+      WindowFrameDef windowFrameDef, VectorExpression inputVecExpr, int outputColumnNum,
+      int orderColumnNum, Type orderColumnVectorType, int lagAmt) {
+    super(windowFrameDef, inputVecExpr, outputColumnNum);
+    this.functionType = functionType;
+    if (functionType == SupportedFunctionType.LAG) {
+
+      // The frame is just the row lagAmt rows back.
+      isRange = false;
+      isStartUnbounded = false;
+      startAmt = lagAmt;
+      endAmt = lagAmt;
+    } else {
+      isRange = (windowFrameDef.getWindowType() == WindowType.RANGE);
+      BoundaryDef start = windowFrameDef.getStart();
+      BoundaryDef end = windowFrameDef.getEnd();
+      isStartUnbounded = start.isUnbounded();
+      startAmt = (isStartUnbounded || start.isCurrentRow() ? 0 : start.getAmt());
+      endAmt = (end.isCurrentRow() ? 0 : end.getAmt());
+      Preconditions.checkState(!start.isFollowing() && !end.isFollowing());
+      Preconditions.checkState(!isRange || (!isStartUnbounded && end.isCurrentRow()));
+    }
+    if (isRange) {
+      this.orderColumnNum = orderColumnNum;
+      isLongOrder = (orderColumnVectorType == Type.LONG);
+      try {
+        isOrderDescending =
+            (windowFrameDef.getOrderDef().getExpressions().get(0).getOrder() == Order.DESC);
+      } catch (HiveException e) {
+        throw new RuntimeException(e);
+      }
+    } else {
+      this.orderColumnNum = -1;
+      isLongOrder = false;
+      isOrderDescending = false;
+    }
+    isMinMaxDeque =
+        (functionType == SupportedFunctionType.MIN || functionType == SupportedFunctionType.MAX) &&
+        !isStartUnbounded;
+
+    capacity = INITIAL_CAPACITY;
+    unitRowCounts = new int[capacity];
+    unitNonNullCounts = new int[capacity];
+    if (isRange) {
+      unitOrderIsNull = new boolean[capacity];
+      if (isLongOrder) {
+        unitOrderLongs = new long[capacity];
+      } else {
+        unitOrderDoubles = new double[capacity];
+      }
+    }
+    if (isMinMaxDeque) {
+      dequeUnits = new long[capacity];
+    }
+  }
+
+  @Override
+  public boolean streamsResult() {
+    // ROWS results are ready row by row.  RANGE results are for the whole group.
+    return !isRange;
+  }
+
+  @Override
+  public void evaluateGroupBatch(VectorizedRowBatch batch, boolean isLastGroupBatch) {
+    evaluateInputExpr(batch);
+
+    // We do not filter when PTF is in reducer.
+    Preconditions.checkState(!batch.selectedInUse);
+
+    if (isRange) {
+      evaluateRangeGroupBatch(batch, isLastGroupBatch);
+    } else {
+      evaluateRowsGroupBatch(batch);
+    }
+  }
+
+  private void evaluateRowsGroupBatch(VectorizedRowBatch batch) {
+    final int size = batch.size;
+    final ColumnVector inputColVector = (inputColumnNum == -1 ? null : batch.cols[inputColumnNum]);
+    final ColumnVector outputColVector = batch.cols[outputColumnNum];
+    outputColVector.isRepeating = false;
+    outputColVector.noNulls = true;
+
+    for (int i = 0; i < size; i++) {
+      final long unit = nextUnit;
+
+      // The row that leaves the frame of this row, if any.
+      if (isStartUnbounded) {
+
+        // Units never leave an unbounded frame, so we only keep the last one entered.
+        while (headUnit < enteredUnit - 1) {
+          headUnit++;
+        }
+      } else if (unit - startAmt - 1 >= 0) {
+        leaveFrame();
+      }
+
+      ensureCapacity();
+      final int slot = slotOf(unit);
+      unitRowCounts[slot] = 1;
+      if (inputColVector == null) {
+        unitNonNullCounts[slot] = 1;
+      } else {
+        final int index = (inputColVector.isRepeating ? 0 : i);
+        if (!inputColVector.noNulls && inputColVector.isNull[index]) {
+          unitNonNullCounts[slot] = 0;
+        } else {
+          unitNonNullCounts[slot] = 1;
+          setUnitValue(slot, inputColVector, index);
+        }
+      }
+      nextUnit++;
+
+      // The row that enters the frame of this row, if any.
+      if (unit - endAmt >= 0) {
+        enterFrame();
+      }
+
+      writeRowResult(outputColVector, i, unit);
+    }
+  }
+
+  private void evaluateRangeGroupBatch(VectorizedRowBatch batch, boolean isLastGroupBatch) {
+    if (isNewGroup) {
+      startRangeGroup(batch);
+      isNewGroup = false;
+    }
+
+    // The current group is unit nextUnit until its last batch.
+    final int slot = slotOf(nextUnit);
+    final int size = batch.size;
+    unitRowCounts[slot] += size;
+    if (inputColumnNum == -1) {
+      unitNonNullCounts[slot] += size;
+    } else {
+      final ColumnVector inputColVector = batch.cols[inputColumnNum];
+      final int nonNullCount = getNonNullCount(inputColVector, size);
+      if (nonNullCount > 0) {
+        addBatchToUnit(slot, inputColVector, size);
+        unitNonNullCounts[slot] += nonNullCount;
+      }
+    }
+
+    if (isLastGroupBatch) {
+      nextUnit++;
+      enterFrame();
+      isNewGroup = true;
+    }
+  }
+
+  private static int getNonNullCount(ColumnVector colVector, int size) {
+    if (colVector.isRepeating) {
+      return (colVector.noNulls || !colVector.isNull[0] ? size : 0);
+    }
+    if (colVector.noNulls) {
+      return size;
+    }
+    boolean[] isNull = colVector.isNull;
+    int nonNullCount = 0;
+    for (int i = 0; i < size; i++) {
+      if (!isNull[i]) {
+        nonNullCount++;
+      }
+    }
+    return nonNullCount;
+  }
+
+  private void startRangeGroup(VectorizedRowBatch batch) {
+
+    // The order key is part of the reduce-shuffle group key, so it is the same for all rows.
+    ColumnVector orderColVector = batch.cols[orderColumnNum];
+    final boolean isNull = !orderColVector.noNulls && orderColVector.isNull[0];
+    final long longValue = (isNull || !isLongOrder ? 0 : ((LongColumnVector) orderColVector).vector[0]);
+    final double doubleValue = (isNull || isLongOrder ? 0 : ((DoubleColumnVector) orderColVector).vector[0]);
+
+    // A NULL group is only its own peers and the other groups are out of its range.
+    while (headUnit < enteredUnit) {
+      final int headSlot = slotOf(headUnit);
+      final boolean isOutOfRange;
+      if (isNull || unitOrderIsNull[headSlot]) {
+        isOutOfRange = true;
+      } else if (isLongOrder) {
+        final long distance =
+            isOrderDescending ?
+                unitOrderLongs[headSlot] - longValue : longValue - unitOrderLongs[headSlot];
+        isOutOfRange = (distance > startAmt);
+      } else {
+        final double distance =
+            isOrderDescending ?
+                unitOrderDoubles[headSlot] - doubleValue : doubleValue - unitOrderDoubles[headSlot];
+        isOutOfRange = (distance > startAmt);
+      }
+      if (!isOutOfRange) {
+        break;
+      }
+      leaveFrame();
+    }
+
+    ensureCapacity();
+    final int slot = slotOf(nextUnit);
+    unitRowCounts[slot] = 0;
+    unitNonNullCounts[slot] = 0;
+    unitOrderIsNull[slot] = isNull;
+    if (isLongOrder) {
+      unitOrderLongs[slot] = longValue;
+    } else {
+      unitOrderDoubles[slot] = doubleValue;
+    }
+    startUnit(slot);
+  }
+
+  private void enterFrame() {
+    final long unit = enteredUnit++;
+    final int slot = slotOf(unit);
+    if (unit == 0) {
+      firstUnitEntered(slot);
+    }
+    frameRowCount += unitRowCounts[slot];
+    if (unitNonNullCounts[slot] > 0) {
+      frameNonNullCount += unitNonNullCounts[slot];
+      enterUnit(slot);
+      if (isMinMaxDeque) {
+        while (dequeSize > 0 &&
+            !keepsAheadOf(slotOf(dequeUnits[(dequeHead + dequeSize - 1) % capacity]), slot)) {
+          dequeSize--;
+        }
+        dequeUnits[(dequeHead + dequeSize) % capacity] = unit;
+        dequeSize++;
+      }
+    }
+  }
+
+  private void leaveFrame() {
+    final long unit = headUnit++;
+    final int slot = slotOf(unit);
+    frameRowCount -= unitRowCounts[slot];
+    if (unitNonNullCounts[slot] > 0) {
+      frameNonNullCount -= unitNonNullCounts[slot];
+      leaveUnit(slot);
+      if (isMinMaxDeque && dequeSize > 0 && dequeUnits[dequeHead] == unit) {
+        dequeHead = (dequeHead + 1) % capacity;
+        dequeSize--;
+      }
+    }
+  }
+
+  protected final int slotOf(long unit) {
+    return (int) (unit % capacity);
+  }
+
+  /**
+   * @return whether the unit is null: no non-NULL values, or not in the partition
+   */
+  protected final boolean isUnitNull(long unit) {
+    return unit < 0 || unitNonNullCounts[slotOf(unit)] == 0;
+  }
+
+  protected final boolean isSlotNull(int slot) {
+    return unitNonNullCounts[slot] == 0;
+  }
+
+  /**
+   * @return the first unit in the MIN / MAX deque, or -1 when the frame has no non-NULL values
+   */
+  protected final long getDequeFirstUnit() {
+    return (dequeSize == 0 ? -1 : dequeUnits[dequeHead]);
+  }
+
+  /**
+   * @return the first unit of the frame of a row for ROWS with a bounded start
+   */
+  protected final long getFrameStartUnit() {
+    return headUnit;
+  }
+
+  private void ensureCapacity() {
+    if (nextUnit - headUnit < capacity) {
+      return;
+    }
+    final int newCapacity = capacity * 2;
+    unitRowCounts = regrow(unitRowCounts, newCapacity);
+    unitNonNullCounts = regrow(unitNonNullCounts, newCapacity);
+    if (isRange) {
+      unitOrderIsNull = regrow(unitOrderIsNull, newCapacity);
+      if (isLongOrder) {
+        unitOrderLongs = regrow(unitOrderLongs, newCapacity);
+      } else {
+        unitOrderDoubles = regrow(unitOrderDoubles, newCapacity);
+      }
+    }
+    if (isMinMaxDeque) {
+      long[] newDequeUnits = new long[newCapacity];
+      for (int i = 0; i < dequeSize; i++) {
+        newDequeUnits[i] = dequeUnits[(dequeHead + i) % capacity];
+      }
+      dequeUnits = newDequeUnits;
+      dequeHead = 0;
+    }
+    growUnitValues(newCapacity);
+    capacity = newCapacity;
+  }
+
+  /*
+   * The ring slot of a unit is its number modulo the capacity, so the live units are moved to
+   * their new slots when the ring grows.
+   */
+
+  protected final long[] regrow(long[] values, int newCapacity) {
+    long[] newValues = new long[newCapacity];
+    for (long unit = headUnit; unit < nextUnit; unit++) {
+      newValues[(int) (unit % newCapacity)] = values[slotOf(unit)];
+    }
+    return newValues;
+  }
+
+  protected final double[] regrow(double[] values, int newCapacity) {
+    double[] newValues = new double[newCapacity];
+    for (long unit = headUnit; unit < nextUnit; unit++) {
+      newValues[(int) (unit % newCapacity)] = values[slotOf(unit)];
+    }
+    return newValues;
+  }
+
+  private int[] regrow(int[] values, int newCapacity) {
+    int[] newValues = new int[newCapacity];
+    for (long unit = headUnit; unit < nextUnit; unit++) {
+      newValues[(int) (unit % newCapacity)] = values[slotOf(unit)];
+    }
+    return newValues;
+  }
+
+  private boolean[] regrow(boolean[] values, int newCapacity) {
+    boolean[] newValues = new boolean[newCapacity];
+    for (long unit = headUnit; unit < nextUnit; unit++) {
+      newValues[(int) (unit % newCapacity)] = values[slotOf(unit)];
+    }
+    return newValues;
+  }
+
+  /**
+   * Sets a NULL result for a row.
+   */
+  protected static void setNullResult(ColumnVector outputColVector, int batchIndex) {
+    outputColVector.noNulls = false;
+    outputColVector.isNull[batchIndex] = true;
+  }
+
+  // Stores the non-NULL value of a ROWS unit.
+  protected abstract void setUnitValue(int slot, ColumnVector inputColVector, int batchIndex);
+
+  // Initializes the aggregation of a RANGE unit.
+  protected abstract void startUnit(int slot);
+
+  // Adds the non-NULL values of a batch to the aggregation of a RANGE unit.
+  protected abstract void addBatchToUnit(int slot, ColumnVector inputColVector, int size);
+
+  // Adds a unit with non-NULL values to the frame aggregation.
+  protected abstract void enterUnit(int slot);
+
+  // Removes a unit with non-NULL values from the frame aggregation.
+  protected abstract void leaveUnit(int slot);
+
+  // For MIN / MAX, whether an earlier unit stays ahead of a unit entering the frame in the deque.
+  protected abstract boolean keepsAheadOf(int slot, int enteringSlot);
+
+  // Moves the unit values to a larger ring.
+  protected abstract void growUnitValues(int newCapacity);
+
+  // Writes the ROWS result of a row, whose unit is given.
+  protected abstract void writeRowResult(ColumnVector outputColVector, int batchIndex, long unit);
+
+  // Resets the frame aggregation.
+  protected abstract void resetFrame();
+
+  // Called when the first unit of the partition enters the frame.  Units leave the ring once
+  // they entered an unbounded frame, so this is where FIRST_VALUE keeps it.
+  protected void firstUnitEntered(int slot) {
+  }
+
+  @Override
+  public boolean isGroupResultNull() {
+    return (frameNonNullCount == 0);
+  }
+
+  @Override
+  public void resetEvaluator() {
+    headUnit = 0;
+    enteredUnit = 0;
+    nextUnit = 0;
+    frameRowCount = 0;
+    frameNonNullCount = 0;
+    dequeHead = 0;
+    dequeSize = 0;
+    isNewGroup = true;
+    resetFrame();
+  }
+}
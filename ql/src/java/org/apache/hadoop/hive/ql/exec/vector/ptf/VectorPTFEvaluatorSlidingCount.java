@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.ptf;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector.Type;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.plan.VectorPTFDesc.SupportedFunctionType;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+
+/**
+ * This class evaluates count(column) and count(*) over a sliding window frame.
+ *
+ * The counts of the frame are kept by the base class, so there is no unit value.
+ */
+public class VectorPTFEvaluatorSlidingCount extends VectorPTFEvaluatorSlidingBase {
+
+  private static final long serialVersionUID = 1L;
+  private static final String CLASS_NAME = VectorPTFEvaluatorSlidingCount.class.getName();
+  private static final Log LOG = LogFactory.getLog(CLASS_NAME);
+
+  public VectorPTFEvaluatorSlidingCount(WindowFrameDef windowFrameDef,
+      VectorExpression inputVecExpr, int outputColumnNum, int orderColumnNum,
+      Type orderColumnVectorType) {
+    super(SupportedFunctionType.COUNT, windowFrameDef, inputVecExpr, outputColumnNum,
+        orderColumnNum, orderColumnVectorType, 0);
+    resetEvaluator();
+  }
+
+  private long getCount() {
+    return (inputColumnNum == -1 ? frameRowCount : frameNonNullCount);
+  }
+
+  @Override
+  protected void setUnitValue(int slot, ColumnVector inputColVector, int batchIndex) {
+  }
+
+  @Override
+  protected void startUnit(int slot) {
+  }
+
+  @Override
+  protected void addBatchToUnit(int slot, ColumnVector inputColVector, int size) {
+  }
+
+  @Override
+  protected void enterUnit(int slot) {
+  }
+
+  @Override
+  protected void leaveUnit(int slot) {
+  }
+
+  @Override
+  protected boolean keepsAheadOf(int slot, int enteringSlot) {
+    throw new RuntimeException("Not expected for COUNT");
+  }
+
+  @Override
+  protected void growUnitValues(int newCapacity) {
+  }
+
+  @Override
+  protected void writeRowResult(ColumnVector outputColVector, int batchIndex, long unit) {
+    outputColVector.isNull[batchIndex] = false;
+    ((LongColumnVector) outputColVector).vector[batchIndex] = getCount();
+  }
+
+  @Override
+  public boolean isGroupResultNull() {
+    return false;
+  }
+
+  @Override
+  public Type getResultColumnVectorType() {
+    return Type.LONG;
+  }
+
+  @Override
+  public long getLongGroupResult() {
+    return getCount();
+  }
+
+  @Override
+  protected void resetFrame() {
+  }
+}
@@ -24,6 +24,8 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
 import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
@@ -69,6 +71,12 @@ public class VectorPTFGroupBatches {
   private int currentBufferedBatchCount;
 
   private int spillLimitBufferedBatchCount;
+
+  // The buffered batches are also spilled when their estimated size goes over this limit, so
+  // a large group of wide rows does not run out of memory before the batch count limit.
+  private long spillLimitBufferedBytes;
+  private long currentBufferedBytes;
+
   private boolean didSpillToDisk;
   private String spillLocalDirs;
   private long spillRowCount;
@@ -86,9 +94,11 @@ public VectorPTFGroupBatches(Configuration hconf, int vectorizedPTFMaxMemoryBuff
 
     // Cannot be 0.
     spillLimitBufferedBatchCount = Math.max(1, vectorizedPTFMaxMemoryBufferingBatchCount);
+    spillLimitBufferedBytes =
+        HiveConf.getLongVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BYTES);
+    currentBufferedBytes = 0;
 
     didSpillToDisk = false;
-    spillLocalDirs = null;
     spillRowBytesContainer = null;
     bufferedBatchVectorSerializeRow = null;
     bufferedBatchVectorDeserializeRow = null;
@@ -315,6 +325,7 @@ public void fillGroupResultsAndForward(VectorPTFOperator vecPTFOperator,
         forwardBufferedBatches(vecPTFOperator, i);
       }
       currentBufferedBatchCount = 0;
+      currentBufferedBytes = 0;
     }
 
     fillGroupResults(lastBatch);
@@ -352,41 +363,83 @@ private VectorizedRowBatch newBufferedBatch(VectorizedRowBatch batch) throws Hiv
     return newBatch;
   }
 
-  public void bufferGroupBatch(VectorizedRowBatch batch) throws HiveException {
+  /*
+   * Estimates the memory of the column values of a batch.  The string bytes dominate for wide
+   * rows, the other column types are counted by their fixed width.
+   */
+  private static long estimateColumnBytes(ColumnVector colVector, int size) {
+    if (colVector instanceof BytesColumnVector) {
+      BytesColumnVector bytesColVector = (BytesColumnVector) colVector;
+      long bytes = 12L * size;
+      if (bytesColVector.isRepeating) {
+        return bytes + (long) bytesColVector.length[0] * size;
+      }
+      final int[] length = bytesColVector.length;
+      for (int i = 0; i < size; i++) {
+        bytes += length[i];
+      }
+      return bytes;
+    } else if (colVector instanceof DecimalColumnVector) {
+      return 64L * size;
+    } else {
+      return 16L * size;
+    }
+  }
 
-    try {
-      // When we've buffered the max allowed, spill the oldest one to make space.
-      if (currentBufferedBatchCount >= spillLimitBufferedBatchCount) {
+  private long estimateBatchBytes(VectorizedRowBatch batch, int[] columnMap, int size) {
+    long bytes = 0;
+    for (int i = 0; i < bufferedColumnCount; i++) {
+      bytes += estimateColumnBytes(batch.cols[columnMap == null ? i : columnMap[i]], size);
+    }
+    return bytes;
+  }
 
-        VectorRowBytesContainer rowBytesContainer = getSpillRowBytesContainer();
+  // Spills the oldest in-memory buffered batch to disk to make space.
+  private void spillOldestBufferedBatch() throws HiveException, IOException {
 
-        if (!didSpillToDisk) {
-          // UNDONE: Don't reuse for now.
-          // rowBytesContainer.resetWrite();
-          didSpillToDisk = true;
-          spillRowCount = 0;
-        }
+    VectorRowBytesContainer rowBytesContainer = getSpillRowBytesContainer();
 
-        // Grab the oldest in-memory buffered batch and dump it to disk.
-        VectorizedRowBatch oldestBufferedBatch = bufferedBatches.remove(0);
+    if (!didSpillToDisk) {
+      // UNDONE: Don't reuse for now.
+      // rowBytesContainer.resetWrite();
+      didSpillToDisk = true;
+      spillRowCount = 0;
+    }
 
-        final boolean selectedInUse = oldestBufferedBatch.selectedInUse;
-        int[] selected = oldestBufferedBatch.selected;
-        final int size = oldestBufferedBatch.size;
-        for (int logicalIndex = 0; logicalIndex < size; logicalIndex++) {
-          final int batchIndex = (selectedInUse ? selected[logicalIndex] : logicalIndex);
+    // Grab the oldest in-memory buffered batch and dump it to disk.
+    VectorizedRowBatch oldestBufferedBatch = bufferedBatches.remove(0);
+
+    final boolean selectedInUse = oldestBufferedBatch.selectedInUse;
+    int[] selected = oldestBufferedBatch.selected;
+    final int size = oldestBufferedBatch.size;
+    currentBufferedBytes -= estimateBatchBytes(oldestBufferedBatch, null, size);
+    for (int logicalIndex = 0; logicalIndex < size; logicalIndex++) {
+      final int batchIndex = (selectedInUse ? selected[logicalIndex] : logicalIndex);
+
+      Output output = rowBytesContainer.getOuputForRowBytes();
+      bufferedBatchVectorSerializeRow.setOutputAppend(output);
+      bufferedBatchVectorSerializeRow.serializeWrite(oldestBufferedBatch, batchIndex);
+      rowBytesContainer.finishRow();
+      spillRowCount++;
+    }
 
-          Output output = rowBytesContainer.getOuputForRowBytes();
-          bufferedBatchVectorSerializeRow.setOutputAppend(output);
-          bufferedBatchVectorSerializeRow.serializeWrite(oldestBufferedBatch, batchIndex);
-          rowBytesContainer.finishRow();
-          spillRowCount++;
-        }
+    // Put now available buffered batch at end.
+    oldestBufferedBatch.reset();
+    bufferedBatches.add(oldestBufferedBatch);
+    currentBufferedBatchCount--;
+  }
 
-        // Put now available buffered batch at end.
-        oldestBufferedBatch.reset();
-        bufferedBatches.add(oldestBufferedBatch);
-        currentBufferedBatchCount--;
+  public void bufferGroupBatch(VectorizedRowBatch batch) throws HiveException {
+
+    try {
+      final int size = batch.size;
+      final long batchBytes = estimateBatchBytes(batch, bufferedColumnMap, size);
+
+      // When we've buffered the max allowed, spill the oldest ones to make space.
+      while (currentBufferedBatchCount >= spillLimitBufferedBatchCount ||
+          (currentBufferedBatchCount > 0 &&
+              currentBufferedBytes + batchBytes > spillLimitBufferedBytes)) {
+        spillOldestBufferedBatch();
       }
 
       final int bufferedColumnCount = bufferedColumnMap.length;
@@ -399,15 +452,15 @@ public void bufferGroupBatch(VectorizedRowBatch batch) throws HiveException {
       VectorizedRowBatch bufferedBatch = bufferedBatches.get(currentBufferedBatchCount++);
 
       // Copy critical columns.
-      final int size = batch.size;
       for (int i = 0; i < bufferedColumnCount; i++) {
         VectorizedBatchUtil.copyNonSelectedColumnVector(
             batch, bufferedColumnMap[i], bufferedBatch, i, size);
       }
 
       bufferedBatch.size = size;
+      currentBufferedBytes += batchBytes;
     } catch (IOException e) {
       throw new HiveException(e);
     }
   }
-}
\ No newline at end of file
+}
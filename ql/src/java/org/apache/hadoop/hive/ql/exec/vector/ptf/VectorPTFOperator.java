@@ -413,8 +413,9 @@ public void process(Object row, int tag) throws HiveException {
       groupBatches.fillGroupResultsAndForward(this, batch);
     }
 
-    // If we are only processing a PARTITION BY, reset our evaluators.
-    if (!isPartitionOrderBy) {
+    // If we are only processing a PARTITION BY, reset our evaluators after the partition's last
+    // batch.  The sliding frame evaluators carry their frame over the streamed batches.
+    if (!isPartitionOrderBy && isLastGroupBatch) {
       groupBatches.resetEvaluators();
     }
   }
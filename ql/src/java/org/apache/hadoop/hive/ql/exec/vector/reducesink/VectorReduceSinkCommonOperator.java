@@ -26,8 +26,10 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.PTFTopNHash;
 import org.apache.hadoop.hive.ql.exec.TerminalOperator;
 import org.apache.hadoop.hive.ql.exec.TopNHash;
 import org.apache.hadoop.hive.ql.exec.Utilities;
@@ -35,6 +37,7 @@
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationContextRegion;
 import org.apache.hadoop.hive.ql.exec.vector.VectorizationOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
 import org.apache.hadoop.hive.ql.io.HiveKey;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -127,6 +130,22 @@ public abstract class VectorReduceSinkCommonOperator extends TerminalOperator<Re
   // Picks topN K:V pairs from input.
   protected transient TopNHash reducerHash;
 
+  // Removes rows that cannot be in the topN from a batch before they are serialized, or null.
+  protected transient VectorTopNKeyFilter topNKeyFilter;
+
+  // The selected rows after the topN key filter.  The filtered batch gets this array while we
+  // process it and its own selection back afterwards, since the parent operator forwards the same
+  // batch to its other children.
+  private transient int[] topNSelected;
+  private transient VectorizedRowBatch topNFilteredBatch;
+  private transient int[] topNSavedSelected;
+  private transient int topNSavedSize;
+  private transient boolean topNSavedSelectedInUse;
+
+  // The sort order and NULL order of the key columns.
+  protected transient boolean[] keyColumnSortOrderIsDesc;
+  protected transient boolean[] keyColumnIsNullLast;
+
   // Where to write our key and value pairs.
   private transient OutputCollector out;
 
@@ -193,6 +212,21 @@ private boolean[] getColumnSortOrder(Properties properties, int columnCount) {
     return columnSortOrderIsDesc;
   }
 
+  private boolean[] getColumnIsNullLast(Properties properties, int columnCount,
+      boolean[] columnSortOrder) {
+    String columnNullOrder = properties.getProperty(serdeConstants.SERIALIZATION_NULL_SORT_ORDER);
+    boolean[] columnIsNullLast = new boolean[columnCount];
+    for (int i = 0; i < columnIsNullLast.length; i++) {
+      if (columnNullOrder == null) {
+        // Null first for ascending and null last for descending order by default.
+        columnIsNullLast[i] = columnSortOrder[i];
+      } else {
+        columnIsNullLast[i] = (columnNullOrder.charAt(i) == 'z');
+      }
+    }
+    return columnIsNullLast;
+  }
+
   private byte[] getColumnNullMarker(Properties properties, int columnCount, boolean[] columnSortOrder) {
     String columnNullOrder = properties.getProperty(serdeConstants.SERIALIZATION_NULL_SORT_ORDER);
     byte[] columnNullMarker = new byte[columnCount];
@@ -282,6 +316,9 @@ protected void initializeOp(Configuration hconf) throws HiveException {
           getColumnNullMarker(keyTableDesc.getProperties(), reduceSinkKeyColumnMap.length, columnSortOrder);
       byte[] columnNotNullMarker =
           getColumnNotNullMarker(keyTableDesc.getProperties(), reduceSinkKeyColumnMap.length, columnSortOrder);
+      keyColumnSortOrderIsDesc = columnSortOrder;
+      keyColumnIsNullLast =
+          getColumnIsNullLast(keyTableDesc.getProperties(), reduceSinkKeyColumnMap.length, columnSortOrder);
 
       keyBinarySortableSerializeWrite =
           new BinarySortableSerializeWrite(
@@ -310,8 +347,19 @@ protected void initializeOp(Configuration hconf) throws HiveException {
     float memUsage = conf.getTopNMemoryUsage();
 
     if (limit >= 0 && memUsage > 0) {
-      reducerHash = new TopNHash();
+      reducerHash = conf.isPTFReduceSink() ? new PTFTopNHash() : new TopNHash();
       reducerHash.initialize(limit, memUsage, conf.isMapGroupBy(), this, conf, hconf);
+
+      if (!isEmptyKey && !conf.isPTFReduceSink() &&
+          HiveConf.getBoolVar(hconf,
+              HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_TOPN_FILTER_ENABLED)) {
+        topNKeyFilter =
+            VectorTopNKeyFilter.create(
+                limit, conf.isMapGroupBy(),
+                reduceSinkKeyColumnMap[0], reduceSinkKeyTypeInfos[0],
+                keyColumnSortOrderIsDesc[0], keyColumnIsNullLast[0],
+                /* partitionColumnNums */ null, /* partitionColumnVectorTypes */ null);
+      }
     }
 
     batchCounter = 0;
@@ -339,12 +387,62 @@ public void collect(byte[] key, byte[] value, int hash) throws IOException {
     doCollect(keyWritable, valueWritable);
   }
 
+  /**
+   * Applies the topN key filter, if any, to the batch.  The key expressions must have been
+   * evaluated.
+   *
+   * @return false if no rows are left in the batch
+   */
+  protected boolean filterTopN(VectorizedRowBatch batch) {
+    if (topNKeyFilter == null) {
+      return true;
+    }
+    if (topNSelected == null || topNSelected.length < batch.selected.length) {
+      topNSelected = new int[batch.selected.length];
+    }
+    final int newSize = topNKeyFilter.filter(batch, topNSelected);
+    if (newSize < batch.size) {
+      topNFilteredBatch = batch;
+      topNSavedSelected = batch.selected;
+      topNSavedSize = batch.size;
+      topNSavedSelectedInUse = batch.selectedInUse;
+
+      batch.selected = topNSelected;
+      batch.size = newSize;
+      batch.selectedInUse = true;
+    }
+    return newSize > 0;
+  }
+
+  /**
+   * Gives the batch filtered by {@link #filterTopN} its original selection back.  Must be called
+   * when done with the batch.
+   */
+  protected void restoreTopNFilteredBatch() {
+    if (topNFilteredBatch != null) {
+      topNFilteredBatch.selected = topNSavedSelected;
+      topNFilteredBatch.size = topNSavedSize;
+      topNFilteredBatch.selectedInUse = topNSavedSelectedInUse;
+      topNFilteredBatch = null;
+      topNSavedSelected = null;
+    }
+  }
+
   protected void collect(HiveKey keyWritable, BytesWritable valueWritable)
       throws HiveException, IOException {
+    collect(keyWritable, valueWritable, /* partColsIsNull */ false);
+  }
+
+  /**
+   * @param partColsIsNull whether all the partition columns are NULL.  Only used by the PTF
+   *                       TopN hash to tell NULL partition keys from other keys with the same
+   *                       hash code.
+   */
+  protected void collect(HiveKey keyWritable, BytesWritable valueWritable,
+      boolean partColsIsNull) throws HiveException, IOException {
     if (reducerHash != null) {
-      // NOTE: partColsIsNull is only used for PTF, which isn't supported yet.
       final int firstIndex =
-          reducerHash.tryStoreKey(keyWritable, /* partColsIsNull */ false);
+          reducerHash.tryStoreKey(keyWritable, partColsIsNull);
 
       if (firstIndex == TopNHash.EXCLUDE) {
         return; // Nothing to do.
@@ -392,6 +490,9 @@ protected void closeOp(boolean abort) throws HiveException {
     if (!abort && reducerHash != null) {
       reducerHash.flush();
     }
+    if (topNKeyFilter != null && LOG.isInfoEnabled()) {
+      LOG.info(toString() + ": rows filtered by topN key - " + topNKeyFilter.getFilteredCount());
+    }
     runTimeNumRows = numRows;
     super.closeOp(abort);
     out = null;
@@ -18,11 +18,13 @@
 
 package org.apache.hadoop.hive.ql.exec.vector.reducesink;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
 import org.apache.hadoop.hive.ql.exec.vector.VectorExtractRow;
 import org.apache.hadoop.hive.ql.exec.vector.VectorSerializeRow;
@@ -169,6 +171,50 @@ protected void initializeOp(Configuration hconf) throws HiveException {
       partitionVectorExtractRow.init(reduceSinkPartitionTypeInfos, reduceSinkPartitionColumnMap);
       partitionFieldValues = new Object[reduceSinkPartitionTypeInfos.length];
     }
+
+    if (reducerHash != null && conf.isPTFReduceSink()) {
+      initializePTFTopNKeyFilter(hconf);
+    }
+  }
+
+  /**
+   * The key of the windowing reduce sink is the PARTITION BY columns followed by the ORDER BY
+   * columns.  When that is the case the top N key filter keeps the N best values of the leading
+   * ORDER BY column per partition.
+   */
+  private void initializePTFTopNKeyFilter(Configuration hconf) {
+    if (isEmptyKey || isEmptyPartitions ||
+        !HiveConf.getBoolVar(hconf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_TOPN_FILTER_ENABLED)) {
+      return;
+    }
+    final int partitionKeyCount = reduceSinkPartitionColumnMap.length;
+    if (partitionKeyCount >= reduceSinkKeyColumnMap.length) {
+      return;
+    }
+    int[] leadingKeyColumns = Arrays.copyOf(reduceSinkKeyColumnMap, partitionKeyCount);
+    int[] partitionColumns = reduceSinkPartitionColumnMap.clone();
+    Arrays.sort(leadingKeyColumns);
+    Arrays.sort(partitionColumns);
+    if (!Arrays.equals(leadingKeyColumns, partitionColumns)) {
+      return;
+    }
+    topNKeyFilter =
+        VectorTopNKeyFilter.create(
+            conf.getTopN(), conf.isMapGroupBy(),
+            reduceSinkKeyColumnMap[partitionKeyCount], reduceSinkKeyTypeInfos[partitionKeyCount],
+            keyColumnSortOrderIsDesc[partitionKeyCount], keyColumnIsNullLast[partitionKeyCount],
+            reduceSinkPartitionColumnMap,
+            vectorReduceSinkInfo.getReduceSinkPartitionColumnVectorTypes());
+  }
+
+  private boolean partitionFieldValuesAreNull() {
+    for (Object partitionFieldValue : partitionFieldValues) {
+      if (partitionFieldValue != null) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -200,6 +246,17 @@ public void process(Object row, int tag) throws HiveException {
           ve.evaluate(batch);
         }
       }
+
+      // Perform any partition expressions.  Results will go into scratch columns.
+      if (reduceSinkPartitionExpressions != null) {
+        for (VectorExpression ve : reduceSinkPartitionExpressions) {
+          ve.evaluate(batch);
+        }
+      }
+
+      if (!filterTopN(batch)) {
+        return;
+      }
   
       // Perform any value expressions.  Results will go into scratch columns.
       if (reduceSinkValueExpressions != null) {
@@ -214,13 +271,9 @@ public void process(Object row, int tag) throws HiveException {
           ve.evaluate(batch);
         }
       }
-  
-      // Perform any partition expressions.  Results will go into scratch columns.
-      if (reduceSinkPartitionExpressions != null) {
-        for (VectorExpression ve : reduceSinkPartitionExpressions) {
-          ve.evaluate(batch);
-        }
-      }
+
+      // For the PTF TopN hash.
+      final boolean isPTFPartitioned = conf.isPTFReduceSink() && !isEmptyPartitions;
 
       final boolean selectedInUse = batch.selectedInUse;
       int[] selected = batch.selected;
@@ -279,10 +332,13 @@ public void process(Object row, int tag) throws HiveException {
           valueBytesWritable.set(valueOutput.getData(), 0, valueOutput.getLength());
         }
 
-        collect(keyWritable, valueBytesWritable);
+        collect(keyWritable, valueBytesWritable,
+            isPTFPartitioned && partitionFieldValuesAreNull());
       }
     } catch (Exception e) {
       throw new HiveException(e);
+    } finally {
+      restoreTopNFilteredBatch();
     }
   }
 }
\ No newline at end of file
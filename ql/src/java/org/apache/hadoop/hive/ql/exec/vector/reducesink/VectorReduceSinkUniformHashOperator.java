@@ -114,6 +114,10 @@ public void process(Object row, int tag) throws HiveException {
         }
       }
 
+      if (!filterTopN(batch)) {
+        return;
+      }
+
       // Perform any value expressions.  Results will go into scratch columns.
       if (reduceSinkValueExpressions != null) {
         for (VectorExpression ve : reduceSinkValueExpressions) {
@@ -126,8 +130,13 @@ public void process(Object row, int tag) throws HiveException {
       boolean selectedInUse = batch.selectedInUse;
       int[] selected = batch.selected;
 
+      // The partition columns are the key columns.
+      final boolean isPTFReduceSink = conf.isPTFReduceSink();
+
       int logical;
       do {
+        final boolean partColsIsNull =
+            isPTFReduceSink && serializedKeySeries.getCurrentIsAllNull();
         if (serializedKeySeries.getCurrentIsAllNull()) {
 
           // Use the same logic as ReduceSinkOperator.toHiveKey.
@@ -173,7 +182,7 @@ public void process(Object row, int tag) throws HiveException {
 
               valueBytesWritable.set(valueOutput.getData(), 0, valueOutput.getLength());
 
-              collect(keyWritable, valueBytesWritable);
+              collect(keyWritable, valueBytesWritable, partColsIsNull);
             } while (++logical < end);
           } else {
             do {
@@ -182,7 +191,7 @@ public void process(Object row, int tag) throws HiveException {
 
               valueBytesWritable.set(valueOutput.getData(), 0, valueOutput.getLength());
 
-              collect(keyWritable, valueBytesWritable);
+              collect(keyWritable, valueBytesWritable, partColsIsNull);
             } while (++logical < end);
 
           }
@@ -190,7 +199,7 @@ public void process(Object row, int tag) throws HiveException {
 
           // Empty value, too.
           do {
-            collect(keyWritable, valueBytesWritable);
+            collect(keyWritable, valueBytesWritable, partColsIsNull);
           } while (++logical < end);
         }
 
@@ -201,6 +210,8 @@ public void process(Object row, int tag) throws HiveException {
 
     } catch (Exception e) {
       throw new HiveException(e);
+    } finally {
+      restoreTopNFilteredBatch();
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.reducesink;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * Filters the rows of a batch going into a top-N reduce sink before they are serialized.
+ *
+ * We keep the N best values of the leading sort key seen so far (per partition for the
+ * windowing reduce sink).  A row whose leading key is worse than all N of them cannot be in the
+ * top N, since N rows are strictly ahead of it, so it is removed from the batch.  The rows that
+ * pass still go through TopNHash, which picks the exact top N on the whole key.
+ *
+ * When the top N is over distinct keys (map side GROUP BY ... LIMIT, or rank() limits pushed
+ * to the windowing reduce sink) only distinct leading key values are counted.
+ *
+ * Only primitive leading keys stored in a LongColumnVector or DoubleColumnVector are
+ * supported.  The values are mapped to longs whose signed order is the sort order, so the
+ * comparisons are the same for all of them.
+ */
+public class VectorTopNKeyFilter {
+
+  // Stop tracking new partitions once this many keys are kept over all partitions.  The rows
+  // of the partitions not tracked pass through.
+  private static final int MAX_TRACKED_KEYS = 1 << 20;
+
+  private final int topN;
+  private final boolean isDistinct;
+
+  private final int keyColumnNum;
+  private final boolean isDoubleKey;
+  private final boolean isDescending;
+  private final boolean isNullLast;
+
+  // Partition columns for the windowing reduce sink, or null.
+  private final int[] partitionColumnNums;
+  private final ColumnVector.Type[] partitionColumnVectorTypes;
+
+  private final TopKeys singleTopKeys;
+  private final Map<Object, TopKeys> partitionTopKeys;
+  private final int maxPartitions;
+
+  private long filteredCount;
+
+  /**
+   * The N best leading key values, kept in a sorted array.  Once the filter warms up almost all
+   * rows are rejected by comparing with the last (worst) value, so inserts are rare.
+   */
+  private static final class TopKeys {
+    private final long[] keys;
+    private int count;
+
+    TopKeys(int topN) {
+      keys = new long[topN];
+    }
+
+    boolean isFull() {
+      return count == keys.length;
+    }
+
+    boolean accept(long key, boolean isDistinct) {
+      if (count == keys.length) {
+        final long worst = keys[count - 1];
+        if (key > worst) {
+          return false;
+        }
+        if (key == worst) {
+          return true;
+        }
+      }
+      int pos = Arrays.binarySearch(keys, 0, count, key);
+      if (pos >= 0) {
+        if (isDistinct) {
+          return true;
+        }
+      } else {
+        pos = -pos - 1;
+      }
+      final int last = (count == keys.length ? count - 1 : count);
+      System.arraycopy(keys, pos, keys, pos + 1, last - pos);
+      keys[pos] = key;
+      if (count < keys.length) {
+        count++;
+      }
+      return true;
+    }
+  }
+
+  private VectorTopNKeyFilter(int topN, boolean isDistinct, int keyColumnNum, boolean isDoubleKey,
+      boolean isDescending, boolean isNullLast, int[] partitionColumnNums,
+      ColumnVector.Type[] partitionColumnVectorTypes) {
+    this.topN = topN;
+    this.isDistinct = isDistinct;
+    this.keyColumnNum = keyColumnNum;
+    this.isDoubleKey = isDoubleKey;
+    this.isDescending = isDescending;
+    this.isNullLast = isNullLast;
+    this.partitionColumnNums = partitionColumnNums;
+    this.partitionColumnVectorTypes = partitionColumnVectorTypes;
+    if (partitionColumnNums == null) {
+      singleTopKeys = new TopKeys(topN);
+      partitionTopKeys = null;
+      maxPartitions = 0;
+    } else {
+      singleTopKeys = null;
+      partitionTopKeys = new HashMap<Object, TopKeys>();
+      maxPartitions = Math.max(1, MAX_TRACKED_KEYS / topN);
+    }
+  }
+
+  private static boolean isLongKey(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case DATE:
+    case INTERVAL_YEAR_MONTH:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isDoubleKey(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+    case FLOAT:
+    case DOUBLE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return the filter, or null if the leading key or a partition column type is not supported
+   */
+  public static VectorTopNKeyFilter create(int topN, boolean isDistinct, int keyColumnNum,
+      TypeInfo keyTypeInfo, boolean isDescending, boolean isNullLast,
+      int[] partitionColumnNums, ColumnVector.Type[] partitionColumnVectorTypes) {
+    if (topN <= 0) {
+      return null;
+    }
+    final boolean isDoubleKey = isDoubleKey(keyTypeInfo);
+    if (!isDoubleKey && !isLongKey(keyTypeInfo)) {
+      return null;
+    }
+    if (partitionColumnNums != null) {
+      for (ColumnVector.Type type : partitionColumnVectorTypes) {
+        switch (type) {
+        case LONG:
+        case DOUBLE:
+        case BYTES:
+          break;
+        default:
+          return null;
+        }
+      }
+    }
+    return new VectorTopNKeyFilter(topN, isDistinct, keyColumnNum, isDoubleKey,
+        isDescending, isNullLast, partitionColumnNums, partitionColumnVectorTypes);
+  }
+
+  /**
+   * Maps a double to a long with the same order as BinarySortable, where -0.0 is before 0.0
+   * and NaN is last.
+   */
+  private static long sortableDoubleBits(double value) {
+    final long bits = Double.doubleToLongBits(value);
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
+  private static Object getPartitionValue(ColumnVector colVector, ColumnVector.Type type,
+      int batchIndex) {
+    final int index = colVector.isRepeating ? 0 : batchIndex;
+    if (!colVector.noNulls && colVector.isNull[index]) {
+      return null;
+    }
+    switch (type) {
+    case LONG:
+      return ((LongColumnVector) colVector).vector[index];
+    case DOUBLE:
+      return ((DoubleColumnVector) colVector).vector[index];
+    case BYTES:
+      {
+        BytesColumnVector bytesColVector = (BytesColumnVector) colVector;
+        final int start = bytesColVector.start[index];
+        return ByteBuffer.wrap(Arrays.copyOfRange(bytesColVector.vector[index], start,
+            start + bytesColVector.length[index]));
+      }
+    default:
+      throw new RuntimeException("Unexpected partition column vector type " + type);
+    }
+  }
+
+  private TopKeys getTopKeys(VectorizedRowBatch batch, int batchIndex) {
+    if (partitionColumnNums == null) {
+      return singleTopKeys;
+    }
+    final Object partitionKey;
+    if (partitionColumnNums.length == 1) {
+      partitionKey = getPartitionValue(
+          batch.cols[partitionColumnNums[0]], partitionColumnVectorTypes[0], batchIndex);
+    } else {
+      Object[] values = new Object[partitionColumnNums.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = getPartitionValue(
+            batch.cols[partitionColumnNums[i]], partitionColumnVectorTypes[i], batchIndex);
+      }
+      partitionKey = Arrays.asList(values);
+    }
+    TopKeys topKeys = partitionTopKeys.get(partitionKey);
+    if (topKeys == null && partitionTopKeys.size() < maxPartitions) {
+      topKeys = new TopKeys(topN);
+      partitionTopKeys.put(partitionKey, topKeys);
+    }
+    return topKeys;
+  }
+
+  private boolean accept(VectorizedRowBatch batch, ColumnVector keyColVector, int batchIndex) {
+    TopKeys topKeys = getTopKeys(batch, batchIndex);
+    if (topKeys == null) {
+      return true;
+    }
+    final int index = keyColVector.isRepeating ? 0 : batchIndex;
+    if (!keyColVector.noNulls && keyColVector.isNull[index]) {
+      // NULLs are not kept.  When they sort first they always pass, when they sort last they
+      // are behind the N values once we have them.
+      return !(isNullLast && topKeys.isFull());
+    }
+    long key;
+    if (isDoubleKey) {
+      key = sortableDoubleBits(((DoubleColumnVector) keyColVector).vector[index]);
+    } else {
+      key = ((LongColumnVector) keyColVector).vector[index];
+    }
+    if (isDescending) {
+      key = ~key;
+    }
+    return topKeys.accept(key, isDistinct);
+  }
+
+  /**
+   * Finds the rows of the batch that can still be in the top N.  The key column must have been
+   * evaluated.  The batch is not changed, since the parent operator forwards the same batch to
+   * its other children.
+   *
+   * @param outSelected receives the batch indices of the rows kept, in order
+   * @return the number of rows kept
+   */
+  public int filter(VectorizedRowBatch batch, int[] outSelected) {
+    final ColumnVector keyColVector = batch.cols[keyColumnNum];
+    final boolean selectedInUse = batch.selectedInUse;
+    final int[] selected = batch.selected;
+    final int size = batch.size;
+
+    int newSize = 0;
+    for (int logical = 0; logical < size; logical++) {
+      final int batchIndex = (selectedInUse ? selected[logical] : logical);
+      if (accept(batch, keyColVector, batchIndex)) {
+        outSelected[newSize++] = batchIndex;
+      }
+    }
+    filteredCount += size - newSize;
+    return newSize;
+  }
+
+  public long getFilteredCount() {
+    return filteredCount;
+  }
+}
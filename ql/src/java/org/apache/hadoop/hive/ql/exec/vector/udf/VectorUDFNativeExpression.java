@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.udf;
+
+import org.apache.hadoop.hive.ql.exec.MapredContext;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriter;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpressionWriterFactory;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.VectorizedUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+/**
+ * A VectorUDFNativeExpression is a vectorized expression for invoking a custom UDF that
+ * implements VectorizedUDF.  The argument column vectors are passed to the UDF as they are,
+ * instead of row by row through writables like the VectorUDFAdaptor does.
+ *
+ * The arguments are all columns: constant arguments are evaluated into repeating scratch
+ * columns by child expressions.
+ */
+public class VectorUDFNativeExpression extends VectorExpression {
+
+  private static final long serialVersionUID = 1L;
+
+  private ExprNodeGenericFuncDesc expr;
+  private int[] argumentColumnNums;
+
+  private transient VectorizedUDF vectorizedUDF;
+  private transient ColumnVector[] arguments;
+
+  public VectorUDFNativeExpression() {
+    super();
+  }
+
+  public VectorUDFNativeExpression(ExprNodeGenericFuncDesc expr, int[] argumentColumnNums,
+      int outputColumnNum) {
+    super(outputColumnNum);
+    this.expr = expr;
+    this.argumentColumnNums = argumentColumnNums;
+  }
+
+  // Initialize transient fields. To be called after deserialization of other fields.
+  private void init() throws HiveException {
+    GenericUDF genericUDF = expr.getGenericUDF();
+    VectorExpressionWriter[] writers =
+        VectorExpressionWriterFactory.getExpressionWriters(expr.getChildren());
+    ObjectInspector[] childrenOIs = new ObjectInspector[writers.length];
+    for (int i = 0; i < childrenOIs.length; i++) {
+      childrenOIs[i] = writers[i].getObjectInspector();
+    }
+    MapredContext context = MapredContext.get();
+    if (context != null) {
+      context.setup(genericUDF);
+    }
+
+    // The UDF resolves its argument and result types as in row mode.
+    genericUDF.initialize(childrenOIs);
+
+    arguments = new ColumnVector[argumentColumnNums.length];
+    vectorizedUDF = (VectorizedUDF) genericUDF;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+
+    if (vectorizedUDF == null) {
+      try {
+        init();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    if (childExpressions != null) {
+      super.evaluateChildren(batch);
+    }
+
+    ColumnVector outV = batch.cols[outputColumnNum];
+
+    // If the output column is of type string, initialize the buffer to receive data.
+    if (outV instanceof BytesColumnVector) {
+      ((BytesColumnVector) outV).initBuffer();
+    }
+
+    final int n = batch.size;
+    if (n == 0) {
+      //Nothing to do
+      return;
+    }
+
+    for (int i = 0; i < argumentColumnNums.length; i++) {
+      arguments[i] = batch.cols[argumentColumnNums[i]];
+    }
+    try {
+      vectorizedUDF.evaluateBatch(arguments, batch.selectedInUse, batch.selected, n, outV);
+    } catch (HiveException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public String vectorExpressionParameters() {
+    return expr.getExprString();
+  }
+
+  @Override
+  public VectorExpressionDescriptor.Descriptor getDescriptor() {
+    return (new VectorExpressionDescriptor.Builder()).build();
+  }
+}
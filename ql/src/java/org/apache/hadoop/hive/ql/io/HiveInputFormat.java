@@ -295,6 +295,14 @@ public static InputFormat<WritableComparable, Writable> wrapForLlap(
     }
     if (isCacheOnly) {
       injectLlapCaches(inputFormat, llapIo);
+      if (!isSupported && Utilities.getIsVectorized(conf)) {
+        // Some cache-only formats can also be read thru IO elevator; the caches injected above
+        // are still used if LLAP IO falls back to the original reader for a split.
+        InputFormat<?, ?> wrappedIf = llapIo.getInputFormat(inputFormat, null);
+        if (wrappedIf != null) {
+          return castInputFormat(wrappedIf);
+        }
+      }
     }
     return inputFormat;
   }
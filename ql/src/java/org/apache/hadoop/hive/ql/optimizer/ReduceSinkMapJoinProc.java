@@ -21,13 +21,17 @@
 import static org.apache.hadoop.hive.ql.plan.ReduceSinkDesc.ReducerTraits.FIXED;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.TreeMap;
 
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
 import org.apache.hadoop.hive.ql.exec.HashTableDummyOperator;
 import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
 import org.apache.hadoop.hive.ql.exec.Operator;
@@ -35,16 +39,22 @@
 import org.apache.hadoop.hive.ql.exec.OperatorUtils;
 import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
 import org.apache.hadoop.hive.ql.exec.RowSchema;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
 import org.apache.hadoop.hive.ql.exec.TableScanOperator;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.lib.Node;
 import org.apache.hadoop.hive.ql.lib.NodeProcessor;
+import org.apache.hadoop.hive.ql.io.AcidUtils;
 import org.apache.hadoop.hive.ql.lib.NodeProcessorCtx;
+import org.apache.hadoop.hive.ql.metadata.Partition;
 import org.apache.hadoop.hive.ql.parse.GenTezProcContext;
+import org.apache.hadoop.hive.ql.parse.PrunedPartitionList;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
 import org.apache.hadoop.hive.ql.plan.BaseWork;
 import org.apache.hadoop.hive.ql.plan.ColStatistics;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDescUtils;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDynamicValueDesc;
 import org.apache.hadoop.hive.ql.plan.HashTableDummyDesc;
 import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
 import org.apache.hadoop.hive.ql.plan.OpTraits;
@@ -53,6 +63,7 @@
 import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
 import org.apache.hadoop.hive.ql.plan.Statistics;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.TezEdgeProperty;
 import org.apache.hadoop.hive.ql.plan.TezEdgeProperty.EdgeType;
 import org.apache.hadoop.hive.ql.plan.TezWork;
@@ -61,6 +72,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 
 public class ReduceSinkMapJoinProc implements NodeProcessor {
@@ -126,6 +138,105 @@ public Object process(Node nd, Stack<Node> stack, NodeProcessorCtx procContext,
     return processReduceSinkToHashJoin(parentRS, mapJoinOp, context);
   }
 
+  /*
+   * Describes the small table side of the map join when its rows only depend on a transactional
+   * table, so that LLAP can share the hash table with the queries reading the same write ids:
+   * the table scan may only be followed by deterministic filters and selects without dynamic
+   * values (semijoin reduction). The partitions of the table are only described by the ones pruned
+   * at compile time, so a table scan pruned by dynamic partition pruning events isn't shared.
+   */
+  @VisibleForTesting
+  static void setSharedSource(GenTezProcContext context, MapJoinDesc joinConf, int pos,
+      ReduceSinkOperator parentRS) throws SemanticException {
+    StringBuilder sb = new StringBuilder();
+    Byte alias = (byte) pos;
+    sb.append("MAPJOIN keys ");
+    appendSharedExprs(sb, joinConf.getKeys().get(alias));
+    sb.append(" filters ");
+    if (joinConf.getFilters() != null) {
+      appendSharedExprs(sb, joinConf.getFilters().get(alias));
+    }
+    sb.append(" key table ").append(new TreeMap<>(joinConf.getKeyTblDesc().getProperties()));
+    sb.append(" value table ");
+    sb.append(new TreeMap<>(joinConf.getValueTblDescs().get(pos).getProperties()));
+    sb.append(" filtered value table ");
+    sb.append(new TreeMap<>(joinConf.getValueFilteredTblDescs().get(pos).getProperties()));
+    sb.append(" RS keys ");
+    appendSharedExprs(sb, parentRS.getConf().getKeyCols());
+    sb.append(" values ");
+    appendSharedExprs(sb, parentRS.getConf().getValueCols());
+
+    Operator<?> op = parentRS;
+    while (!(op instanceof TableScanOperator)) {
+      if (op.getNumParent() != 1) {
+        return;
+      }
+      op = op.getParentOperators().get(0);
+      if (op instanceof FilterOperator) {
+        ExprNodeDesc predicate = ((FilterOperator) op).getConf().getPredicate();
+        if (!isSharedExpr(predicate)) {
+          return;
+        }
+        sb.append(" FIL ").append(predicate.getExprString());
+      } else if (op instanceof SelectOperator) {
+        List<ExprNodeDesc> colList = ((SelectOperator) op).getConf().getColList();
+        for (ExprNodeDesc expr : colList) {
+          if (!isSharedExpr(expr)) {
+            return;
+          }
+        }
+        sb.append(" SEL ");
+        appendSharedExprs(sb, colList);
+      } else if (!(op instanceof TableScanOperator)) {
+        return;
+      }
+    }
+
+    TableScanOperator ts = (TableScanOperator) op;
+    TableScanDesc tsDesc = ts.getConf();
+    if (!tsDesc.isTranscationalTable() || tsDesc.getRowLimit() >= 0
+        || tsDesc.getTableSample() != null || context.dynamicPruningTableScans.contains(ts)) {
+      return;
+    }
+    String tableName = AcidUtils.getFullTableName(tsDesc.getDatabaseName(), tsDesc.getTableName());
+    sb.append(" TS ").append(tableName).append(' ').append(tsDesc.getNeededColumns());
+    if (tsDesc.getTableMetadata().isPartitioned()) {
+      PrunedPartitionList partList = context.parseContext.getPrunedPartitions(ts);
+      List<String> partNames = new ArrayList<String>();
+      for (Partition part : partList.getPartitions()) {
+        partNames.add(part.getName());
+      }
+      Collections.sort(partNames);
+      sb.append(" partitions ").append(partNames);
+    }
+    joinConf.getParentToSharedTable().put(pos, tableName);
+    joinConf.getParentToSharedSource().put(pos, sb.toString());
+  }
+
+  private static boolean isSharedExpr(ExprNodeDesc expr) {
+    if (expr instanceof ExprNodeDynamicValueDesc) {
+      return false;
+    }
+    if (expr.getChildren() != null) {
+      for (ExprNodeDesc child : expr.getChildren()) {
+        if (!isSharedExpr(child)) {
+          return false;
+        }
+      }
+    }
+    return ExprNodeDescUtils.isDeterministic(expr);
+  }
+
+  private static void appendSharedExprs(StringBuilder sb, List<ExprNodeDesc> exprs) {
+    sb.append('[');
+    if (exprs != null) {
+      for (ExprNodeDesc expr : exprs) {
+        sb.append(expr.getExprString()).append(", ");
+      }
+    }
+    sb.append(']');
+  }
+
   public static BaseWork getMapJoinParentWork(GenTezProcContext context, Operator<?> parentRS) {
     BaseWork parentWork;
     if (context.unionWorkMap.containsKey(parentRS)) {
@@ -227,6 +338,11 @@ public static Object processReduceSinkToHashJoin(ReduceSinkOperator parentRS, Ma
       joinConf.getParentKeyCounts().put(pos, keyCount);
     }
     joinConf.getParentDataSizes().put(pos, tableSize);
+    if (context.conf.getBoolVar(HiveConf.ConfVars.LLAP_MAPJOIN_SHARED_HASHTABLE_ENABLED)
+        && !joinConf.isBucketMapJoin() && !joinConf.isDynamicPartitionHashJoin()
+        && !joinConf.isHybridHashJoin()) {
+      setSharedSource(context, joinConf, pos, parentRS);
+    }
 
     int numBuckets = -1;
     EdgeType edgeType = EdgeType.BROADCAST_EDGE;
@@ -110,6 +110,7 @@
 import org.apache.hadoop.hive.ql.plan.BaseWork;
 import org.apache.hadoop.hive.ql.plan.Explain;
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc.ExprNodeDescEqualityWrapper;
 import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
@@ -161,6 +162,7 @@
 import org.apache.hadoop.hive.ql.plan.VectorPartitionDesc;
 import org.apache.hadoop.hive.ql.plan.VectorSelectDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
 import org.apache.hadoop.hive.ql.plan.ptf.OrderExpressionDef;
 import org.apache.hadoop.hive.ql.plan.ptf.PTFExpressionDef;
 import org.apache.hadoop.hive.ql.plan.ptf.PartitionedTableFunctionDef;
@@ -2541,30 +2543,38 @@ private boolean validatePTFOperator(PTFOperator op, VectorizationContext vContex
         return false;
       }
       WindowFrameDef windowFrameDef = evaluatorWindowFrameDefs[i];
-      if (!windowFrameDef.isStartUnbounded()) {
-        setOperatorIssue(functionName + " only UNBOUNDED start frame is supported");
-        return false;
-      }
-      switch (windowFrameDef.getWindowType()) {
-      case RANGE:
-        if (!windowFrameDef.getEnd().isCurrentRow()) {
-          setOperatorIssue(functionName + " only CURRENT ROW end frame is supported for RANGE");
+      List<ExprNodeDesc> exprNodeDescList = evaluatorInputExprNodeDescLists[i];
+      final boolean isSlidingFrame = VectorPTFDesc.isSlidingFrame(supportedFunctionType, windowFrameDef);
+      if (isSlidingFrame) {
+        if (!validatePTFSlidingFrame(functionName, supportedFunctionType, windowFrameDef,
+            exprNodeDescList, vectorPTFDesc)) {
           return false;
         }
-        break;
-      case ROWS:
-        if (!windowFrameDef.isEndUnbounded()) {
-          setOperatorIssue(functionName + " UNBOUNDED end frame is not supported for ROWS window type");
+      } else {
+        if (!windowFrameDef.isStartUnbounded()) {
+          setOperatorIssue(functionName + " only UNBOUNDED start frame is supported");
+          return false;
+        }
+        switch (windowFrameDef.getWindowType()) {
+        case RANGE:
+          if (!windowFrameDef.getEnd().isCurrentRow()) {
+            setOperatorIssue(functionName + " only CURRENT ROW end frame is supported for RANGE");
+            return false;
+          }
+          break;
+        case ROWS:
+          if (!windowFrameDef.isEndUnbounded()) {
+            setOperatorIssue(functionName + " UNBOUNDED end frame is not supported for ROWS window type");
+            return false;
+          }
+          break;
+        default:
+          throw new RuntimeException("Unexpected window type " + windowFrameDef.getWindowType());
+        }
+        if (exprNodeDescList != null && exprNodeDescList.size() > 1) {
+          setOperatorIssue("More than 1 argument expression of aggregation function " + functionName);
           return false;
         }
-        break;
-      default:
-        throw new RuntimeException("Unexpected window type " + windowFrameDef.getWindowType());
-      }
-      List<ExprNodeDesc> exprNodeDescList = evaluatorInputExprNodeDescLists[i];
-      if (exprNodeDescList != null && exprNodeDescList.size() > 1) {
-        setOperatorIssue("More than 1 argument expression of aggregation function " + functionName);
-        return false;
       }
       if (exprNodeDescList != null) {
         ExprNodeDesc exprNodeDesc = exprNodeDescList.get(0);
@@ -2590,9 +2600,12 @@ private boolean validatePTFOperator(PTFOperator op, VectorizationContext vContex
             switch (colVecType) {
             case LONG:
             case DOUBLE:
-            case DECIMAL:
               isSupportedType = true;
               break;
+            case DECIMAL:
+              // The sliding evaluators keep long and double frame aggregations only.
+              isSupportedType = !isSlidingFrame;
+              break;
             default:
               isSupportedType = false;
               break;
@@ -2608,6 +2621,90 @@ private boolean validatePTFOperator(PTFOperator op, VectorizationContext vContex
     return true;
   }
 
+  private boolean validatePTFSlidingFrame(String functionName,
+      SupportedFunctionType supportedFunctionType, WindowFrameDef windowFrameDef,
+      List<ExprNodeDesc> exprNodeDescList, VectorPTFDesc vectorPTFDesc) throws HiveException {
+
+    switch (supportedFunctionType) {
+    case MIN:
+    case MAX:
+    case SUM:
+    case AVG:
+    case COUNT:
+    case FIRST_VALUE:
+    case LAST_VALUE:
+    case LAG:
+      break;
+    default:
+      setOperatorIssue(functionName + " sliding frame is not supported");
+      return false;
+    }
+
+    if (supportedFunctionType == SupportedFunctionType.LAG) {
+      if (exprNodeDescList == null || exprNodeDescList.size() > 3) {
+        setOperatorIssue(functionName + " only 1 to 3 arguments are supported");
+        return false;
+      }
+      for (int i = 1; i < exprNodeDescList.size(); i++) {
+        if (!(exprNodeDescList.get(i) instanceof ExprNodeConstantDesc) ||
+            !(((ExprNodeConstantDesc) exprNodeDescList.get(i)).getValue() instanceof Number)) {
+          setOperatorIssue(functionName + " only constant numeric amount and default are supported");
+          return false;
+        }
+      }
+      return true;
+    }
+
+    if (exprNodeDescList != null && exprNodeDescList.size() > 1) {
+      setOperatorIssue("More than 1 argument expression of aggregation function " + functionName);
+      return false;
+    }
+    BoundaryDef start = windowFrameDef.getStart();
+    BoundaryDef end = windowFrameDef.getEnd();
+    switch (windowFrameDef.getWindowType()) {
+    case ROWS:
+      if (start.isFollowing() || end.isFollowing()) {
+        setOperatorIssue(functionName + " FOLLOWING sliding frame is not supported for ROWS window type");
+        return false;
+      }
+      break;
+    case RANGE:
+      if (!start.isPreceding() || !end.isCurrentRow()) {
+        setOperatorIssue(functionName + " only n PRECEDING to CURRENT ROW sliding frame is supported for RANGE");
+        return false;
+      }
+      if (supportedFunctionType == SupportedFunctionType.FIRST_VALUE ||
+          supportedFunctionType == SupportedFunctionType.LAST_VALUE) {
+        setOperatorIssue(functionName + " sliding frame is not supported for RANGE window type");
+        return false;
+      }
+      ExprNodeDesc[] orderExprNodeDescs = vectorPTFDesc.getOrderExprNodeDescs();
+      if (orderExprNodeDescs.length != 1) {
+        setOperatorIssue(functionName + " only 1 ORDER BY key is supported for RANGE sliding frame");
+        return false;
+      }
+      TypeInfo orderTypeInfo = orderExprNodeDescs[0].getTypeInfo();
+      if (orderTypeInfo.getCategory() != Category.PRIMITIVE) {
+        setOperatorIssue(functionName + " ORDER BY key type " + orderTypeInfo.getTypeName() +
+            " not supported for RANGE sliding frame");
+        return false;
+      }
+      switch (VectorizationContext.getColumnVectorTypeFromTypeInfo(orderTypeInfo)) {
+      case LONG:
+      case DOUBLE:
+        break;
+      default:
+        setOperatorIssue(functionName + " ORDER BY key type " + orderTypeInfo.getTypeName() +
+            " not supported for RANGE sliding frame");
+        return false;
+      }
+      break;
+    default:
+      throw new RuntimeException("Unexpected window type " + windowFrameDef.getWindowType());
+    }
+    return true;
+  }
+
   private boolean validateExprNodeDesc(List<ExprNodeDesc> descs, String expressionTitle) {
     return validateExprNodeDesc(
         descs, expressionTitle, VectorExpressionDescriptor.Mode.PROJECTION, /* allowComplex */ true);
@@ -2759,7 +2856,8 @@ boolean validateExprNodeDesc(ExprNodeDesc desc, String expressionTitle,
   }
 
   private boolean validateGenericUdf(ExprNodeGenericFuncDesc genericUDFExpr) {
-    if (VectorizationContext.isCustomUDF(genericUDFExpr)) {
+    if (VectorizationContext.isCustomUDF(genericUDFExpr) ||
+        genericUDFExpr.getGenericUDF() instanceof VectorizedUDF) {
       return true;
     }
     if (hiveVectorAdaptorUsageMode == HiveVectorAdaptorUsageMode.NONE ||
@@ -3073,12 +3171,15 @@ Operator<? extends OperatorDesc> specializeMapJoinOperator(Operator<? extends Op
 
     boolean minMaxEnabled = HiveConf.getBoolVar(hiveConf,
         HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_MINMAX_ENABLED);
+    boolean bloomFilterEnabled = HiveConf.getBoolVar(hiveConf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_MAPJOIN_NATIVE_BLOOM_FILTER_ENABLED);
 
     vectorDesc.setHashTableImplementationType(hashTableImplementationType);
     vectorDesc.setHashTableKind(hashTableKind);
     vectorDesc.setHashTableKeyType(hashTableKeyType);
     vectorDesc.setVectorMapJoinVariation(vectorMapJoinVariation);
     vectorDesc.setMinMaxEnabled(minMaxEnabled);
+    vectorDesc.setBloomFilterEnabled(bloomFilterEnabled);
     vectorDesc.setVectorMapJoinInfo(vectorMapJoinInfo);
 
     vectorOp = OperatorFactory.getVectorOperator(
@@ -3602,6 +3703,11 @@ private boolean canSpecializeReduceSink(ReduceSinkDesc desc,
 
     boolean hasPTFTopN = (limit >= 0 && memUsage > 0 && desc.isPTFReduceSink());
 
+    // The native operators only take the PTF top N along with the top-N filter.
+    boolean isTopNFilterEnabled =
+        HiveConf.getBoolVar(hiveConf,
+            HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_TOPN_FILTER_ENABLED);
+
     boolean hasDistinctColumns = (desc.getDistinctColumnIndices().size() > 0);
 
     TableDesc keyTableDesc = desc.getKeySerializeInfo();
@@ -3781,6 +3887,7 @@ private boolean canSpecializeReduceSink(ReduceSinkDesc desc,
     vectorDesc.setIsEmptyBuckets(isEmptyBuckets);
     vectorDesc.setIsEmptyPartitions(isEmptyPartitions);
     vectorDesc.setHasPTFTopN(hasPTFTopN);
+    vectorDesc.setIsTopNFilterEnabled(isTopNFilterEnabled);
     vectorDesc.setHasDistinctColumns(hasDistinctColumns);
     vectorDesc.setIsKeyBinarySortable(isKeyBinarySortable);
     vectorDesc.setIsValueLazyBinary(isValueLazyBinary);
@@ -3792,7 +3899,7 @@ private boolean canSpecializeReduceSink(ReduceSinkDesc desc,
     // Many restrictions.
     if (!isVectorizationReduceSinkNativeEnabled ||
         !isTezOrSpark ||
-        hasPTFTopN ||
+        (hasPTFTopN && !isTopNFilterEnabled) ||
         hasDistinctColumns ||
         !isKeyBinarySortable ||
         !isValueLazyBinary ||
@@ -3838,6 +3945,8 @@ public static Operator<? extends OperatorDesc> vectorizeFilterOperator(
     ExprNodeDesc predicateExpr = filterDesc.getPredicate();
     VectorExpression vectorPredicateExpr =
         vContext.getVectorExpression(predicateExpr, VectorExpressionDescriptor.Mode.FILTER);
+    vectorPredicateExpr = vContext.getFusedVectorExpression(
+        predicateExpr, vectorPredicateExpr, VectorExpressionDescriptor.Mode.FILTER);
     vectorFilterDesc.setPredicateExpression(vectorPredicateExpr);
     return OperatorFactory.getVectorOperator(
         filterOp.getCompilationOpContext(), filterDesc,
@@ -4133,6 +4242,8 @@ public static Operator<? extends OperatorDesc> vectorizeSelectOperator(
         // Suppress useless evaluation.
         continue;
       }
+      ve = vContext.getFusedVectorExpression(
+          expr, ve, VectorExpressionDescriptor.Mode.PROJECTION);
       vectorSelectExprs[index++] = ve;
     }
     if (index < size) {
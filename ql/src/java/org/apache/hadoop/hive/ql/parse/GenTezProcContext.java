@@ -19,7 +19,9 @@
 package org.apache.hadoop.hive.ql.parse;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -36,6 +38,7 @@
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator;
 import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
 import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.OperatorUtils;
 import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
 import org.apache.hadoop.hive.ql.exec.TableScanOperator;
 import org.apache.hadoop.hive.ql.exec.Task;
@@ -47,6 +50,7 @@
 import org.apache.hadoop.hive.ql.lib.NodeProcessorCtx;
 import org.apache.hadoop.hive.ql.plan.BaseWork;
 import org.apache.hadoop.hive.ql.plan.DependencyCollectionWork;
+import org.apache.hadoop.hive.ql.plan.DynamicPruningEventDesc;
 import org.apache.hadoop.hive.ql.plan.FileSinkDesc;
 import org.apache.hadoop.hive.ql.plan.MergeJoinWork;
 import org.apache.hadoop.hive.ql.plan.MoveWork;
@@ -157,6 +161,10 @@ public class GenTezProcContext implements NodeProcessorCtx{
   // remember the connections between ts and event
   public final Map<TableScanOperator, List<AppMasterEventOperator>> tsToEventMap;
 
+  // the table scans whose partitions are pruned at runtime by dynamic partition pruning events;
+  // collected up front, since the operator tree is cut while it is walked
+  public final Set<TableScanOperator> dynamicPruningTableScans;
+
   // When processing dynamic partitioned hash joins, some of the small tables may not get processed
   // before the mapjoin's parents are removed during GenTezWork.process(). This is to keep
   // track of which small tables haven't been processed yet.
@@ -198,6 +206,16 @@ public GenTezProcContext(HiveConf conf, ParseContext parseContext,
     this.eventOperatorSet = new LinkedHashSet<AppMasterEventOperator>();
     this.abandonedEventOperatorSet = new LinkedHashSet<AppMasterEventOperator>();
     this.tsToEventMap = new LinkedHashMap<TableScanOperator, List<AppMasterEventOperator>>();
+    this.dynamicPruningTableScans = new HashSet<TableScanOperator>();
+    if (parseContext.getTopOps() != null) {
+      for (AppMasterEventOperator event : OperatorUtils.findOperators(
+          new ArrayList<Operator<?>>(parseContext.getTopOps().values()),
+          AppMasterEventOperator.class)) {
+        if (event.getConf() instanceof DynamicPruningEventDesc) {
+          dynamicPruningTableScans.add(((DynamicPruningEventDesc) event.getConf()).getTableScan());
+        }
+      }
+    }
     this.opMergeJoinWorkMap = new LinkedHashMap<Operator<?>, MergeJoinWork>();
     this.currentMergeJoinOperator = null;
     this.mapJoinToUnprocessedSmallTableReduceSinks = new HashMap<MapJoinOperator, Set<ReduceSinkOperator>>();
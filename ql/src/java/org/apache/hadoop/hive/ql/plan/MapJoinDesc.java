@@ -65,6 +65,11 @@ public class MapJoinDesc extends JoinDesc implements Serializable {
   private Map<Integer, Long> parentKeyCounts = new HashMap<Integer, Long>();
   private Map<Integer, Long> parentDataSizes = new HashMap<Integer, Long>();
 
+  // For the small tables whose hash table can be shared across queries in LLAP: the
+  // transactional table read and a description of the operators and join key layout.
+  private Map<Integer, String> parentToSharedTable = new HashMap<Integer, String>();
+  private Map<Integer, String> parentToSharedSource = new HashMap<Integer, String>();
+
   // table alias (small) --> input file name (big) --> target file names (small)
   private Map<String, Map<String, List<String>>> aliasBucketFileNameMapping;
   private Map<String, Integer> bigTableBucketNumMapping;
@@ -103,6 +108,8 @@ public MapJoinDesc(MapJoinDesc clone) {
     this.parentToInput = clone.parentToInput;
     this.parentKeyCounts = clone.parentKeyCounts;
     this.parentDataSizes = clone.parentDataSizes;
+    this.parentToSharedTable = clone.parentToSharedTable;
+    this.parentToSharedSource = clone.parentToSharedSource;
     this.isBucketMapJoin = clone.isBucketMapJoin;
     this.isHybridHashJoin = clone.isHybridHashJoin;
   }
@@ -149,6 +156,22 @@ public void setParentToInput(Map<Integer, String> parentToInput) {
     this.parentToInput = parentToInput;
   }
 
+  public Map<Integer, String> getParentToSharedTable() {
+    return parentToSharedTable;
+  }
+
+  public void setParentToSharedTable(Map<Integer, String> parentToSharedTable) {
+    this.parentToSharedTable = parentToSharedTable;
+  }
+
+  public Map<Integer, String> getParentToSharedSource() {
+    return parentToSharedSource;
+  }
+
+  public void setParentToSharedSource(Map<Integer, String> parentToSharedSource) {
+    this.parentToSharedSource = parentToSharedSource;
+  }
+
   public Map<Integer, Long> getParentKeyCounts() {
     return parentKeyCounts;
   }
@@ -597,36 +597,41 @@ private VectorizationCondition[] createNativeConditions() {
           HiveConf.ConfVars.HIVE_EXECUTION_ENGINE.varname + " " + engine + " IN " + vectorizableReduceSinkNativeEngines;
       boolean engineInSupported = vectorizableReduceSinkNativeEngines.contains(engine);
 
-      VectorizationCondition[] conditions = new VectorizationCondition[] {
+      List<VectorizationCondition> conditions = new ArrayList<VectorizationCondition>();
+      conditions.add(
           new VectorizationCondition(
               enabled,
-              HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_NEW_ENABLED.varname),
+              HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_NEW_ENABLED.varname));
+      conditions.add(
           new VectorizationCondition(
               engineInSupported,
-              engineInSupportedCondName),
-          new VectorizationCondition(
-              !vectorReduceSinkDesc.getHasPTFTopN(),
-              "No PTF TopN"),
+              engineInSupportedCondName));
+      // With the top-N filter, the native operators take the PTF top N too.
+      if (!vectorReduceSinkDesc.getIsTopNFilterEnabled()) {
+        conditions.add(
+            new VectorizationCondition(
+                !vectorReduceSinkDesc.getHasPTFTopN(),
+                "No PTF TopN"));
+      }
+      conditions.add(
           new VectorizationCondition(
               !vectorReduceSinkDesc.getHasDistinctColumns(),
-              "No DISTINCT columns"),
+              "No DISTINCT columns"));
+      conditions.add(
           new VectorizationCondition(
               vectorReduceSinkDesc.getIsKeyBinarySortable(),
-              "BinarySortableSerDe for keys"),
+              "BinarySortableSerDe for keys"));
+      conditions.add(
           new VectorizationCondition(
               vectorReduceSinkDesc.getIsValueLazyBinary(),
-              "LazyBinarySerDe for values")
-      };
+              "LazyBinarySerDe for values"));
       if (vectorReduceSinkDesc.getIsUnexpectedCondition()) {
-        VectorizationCondition[] newConditions = new VectorizationCondition[conditions.length + 1];
-        System.arraycopy(conditions, 0, newConditions, 0, conditions.length);
-        newConditions[conditions.length] =
+        conditions.add(
             new VectorizationCondition(
                 false,
-                "NOT UnexpectedCondition");
-        conditions = newConditions;
+                "NOT UnexpectedCondition"));
       }
-      return conditions;
+      return conditions.toArray(new VectorizationCondition[0]);
     }
 
     @Explain(vectorization = Vectorization.OPERATOR, displayName = "nativeConditionsMet", explainLevels = { Level.DEFAULT, Level.EXTENDED })
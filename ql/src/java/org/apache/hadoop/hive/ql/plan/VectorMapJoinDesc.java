@@ -97,6 +97,7 @@ public static enum VectorMapJoinVariation {
   private HashTableKeyType hashTableKeyType;
   private VectorMapJoinVariation vectorMapJoinVariation;
   private boolean minMaxEnabled;
+  private boolean bloomFilterEnabled;
 
   private VectorExpression[] allBigTableKeyExpressions;
   private VectorExpression[] allBigTableValueExpressions;
@@ -109,6 +110,7 @@ public VectorMapJoinDesc() {
     hashTableKeyType = HashTableKeyType.NONE;
     vectorMapJoinVariation = VectorMapJoinVariation.NONE;
     minMaxEnabled = false;
+    bloomFilterEnabled = false;
 
     allBigTableKeyExpressions = null;
     allBigTableValueExpressions = null;
@@ -124,6 +126,7 @@ public VectorMapJoinDesc clone() {
     clone.hashTableKeyType = this.hashTableKeyType;
     clone.vectorMapJoinVariation = this.vectorMapJoinVariation;
     clone.minMaxEnabled = this.minMaxEnabled;
+    clone.bloomFilterEnabled = this.bloomFilterEnabled;
     if (vectorMapJoinInfo != null) {
       throw new RuntimeException("Cloning VectorMapJoinInfo not supported");
     }
@@ -170,6 +173,14 @@ public void setMinMaxEnabled(boolean minMaxEnabled) {
     this.minMaxEnabled = minMaxEnabled;
   }
 
+  public boolean getBloomFilterEnabled() {
+    return bloomFilterEnabled;
+  }
+
+  public void setBloomFilterEnabled(boolean bloomFilterEnabled) {
+    this.bloomFilterEnabled = bloomFilterEnabled;
+  }
+
   public VectorExpression[] getAllBigTableKeyExpressions() {
     return allBigTableKeyExpressions;
   }
@@ -41,15 +41,19 @@
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorDoubleLastValue;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorDoubleMax;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorDoubleMin;
+import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorDoubleSliding;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorDoubleSum;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongAvg;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongFirstValue;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongLastValue;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongMax;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongMin;
+import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongSliding;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorLongSum;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorRank;
 import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorRowNumber;
+import org.apache.hadoop.hive.ql.exec.vector.ptf.VectorPTFEvaluatorSlidingCount;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.WindowType;
 import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 
@@ -75,7 +79,8 @@ public static enum SupportedFunctionType {
     AVG,
     FIRST_VALUE,
     LAST_VALUE,
-    COUNT
+    COUNT,
+    LAG
   }
 
   public static HashMap<String, SupportedFunctionType> supportedFunctionsMap =
@@ -91,6 +96,7 @@ public static enum SupportedFunctionType {
     supportedFunctionsMap.put("first_value", SupportedFunctionType.FIRST_VALUE);
     supportedFunctionsMap.put("last_value", SupportedFunctionType.LAST_VALUE);
     supportedFunctionsMap.put("count", SupportedFunctionType.COUNT);
+    supportedFunctionsMap.put("lag", SupportedFunctionType.LAG);
   }
   public static List<String> supportedFunctionNames = new ArrayList<String>();
   static {
@@ -252,12 +258,79 @@ public static VectorPTFEvaluatorBase getEvaluator(SupportedFunctionType function
     return evaluator;
   }
 
+  /**
+   * @return whether the frame slides, i.e. rows leave it as the current row moves on.  These
+   * frames use the sliding evaluators.  lag() is a one row frame lagging the current row.
+   */
+  public static boolean isSlidingFrame(SupportedFunctionType functionType,
+      WindowFrameDef windowFrameDef) {
+    switch (functionType) {
+    case LAG:
+      return true;
+    case ROW_NUMBER:
+    case RANK:
+    case DENSE_RANK:
+      return false;
+    default:
+      if (windowFrameDef.getWindowType() == WindowType.ROWS) {
+        return !windowFrameDef.isEndUnbounded();
+      } else {
+        return !windowFrameDef.isStartUnbounded();
+      }
+    }
+  }
+
+  public static VectorPTFEvaluatorBase getSlidingEvaluator(SupportedFunctionType functionType,
+      WindowFrameDef windowFrameDef, Type columnVectorType, VectorExpression inputVectorExpression,
+      int outputColumnNum, int orderColumnNum, Type orderColumnVectorType, int lagAmt,
+      Object lagDefaultValue) {
+
+    VectorPTFEvaluatorBase evaluator;
+    switch (functionType) {
+    case COUNT:
+      evaluator = new VectorPTFEvaluatorSlidingCount(windowFrameDef, inputVectorExpression,
+          outputColumnNum, orderColumnNum, orderColumnVectorType);
+      break;
+    case MIN:
+    case MAX:
+    case SUM:
+    case AVG:
+    case FIRST_VALUE:
+    case LAST_VALUE:
+    case LAG:
+      switch (columnVectorType) {
+      case LONG:
+        evaluator = new VectorPTFEvaluatorLongSliding(functionType, windowFrameDef,
+            inputVectorExpression, outputColumnNum, orderColumnNum, orderColumnVectorType,
+            lagAmt, lagDefaultValue);
+        break;
+      case DOUBLE:
+        evaluator = new VectorPTFEvaluatorDoubleSliding(functionType, windowFrameDef,
+            inputVectorExpression, outputColumnNum, orderColumnNum, orderColumnVectorType,
+            lagAmt, lagDefaultValue);
+        break;
+      default:
+        throw new RuntimeException("Unexpected column vector type " + columnVectorType + " for sliding " + functionType);
+      }
+      break;
+    default:
+      throw new RuntimeException("Unexpected sliding function type " + functionType);
+    }
+    return evaluator;
+  }
+
   public static VectorPTFEvaluatorBase[] getEvaluators(VectorPTFDesc vectorPTFDesc, VectorPTFInfo vectorPTFInfo) {
     String[] evaluatorFunctionNames = vectorPTFDesc.getEvaluatorFunctionNames();
     int evaluatorCount = evaluatorFunctionNames.length;
     WindowFrameDef[] evaluatorWindowFrameDefs = vectorPTFDesc.getEvaluatorWindowFrameDefs();
     VectorExpression[] evaluatorInputExpressions = vectorPTFInfo.getEvaluatorInputExpressions();
     Type[] evaluatorInputColumnVectorTypes = vectorPTFInfo.getEvaluatorInputColumnVectorTypes();
+    List<ExprNodeDesc>[] evaluatorInputExprNodeDescLists =
+        vectorPTFDesc.getEvaluatorInputExprNodeDescLists();
+
+    // RANGE frames are over the single ORDER BY key.
+    int[] orderColumnMap = vectorPTFInfo.getOrderColumnMap();
+    Type[] orderColumnVectorTypes = vectorPTFInfo.getOrderColumnVectorTypes();
 
     int[] outputColumnMap = vectorPTFInfo.getOutputColumnMap();
 
@@ -272,9 +345,29 @@ public static VectorPTFEvaluatorBase[] getEvaluators(VectorPTFDesc vectorPTFDesc
       // The output* arrays start at index 0 for output evaluator aggregations.
       final int outputColumnNum = outputColumnMap[i];
 
-      VectorPTFEvaluatorBase evaluator =
-          VectorPTFDesc.getEvaluator(
-              functionType, windowFrameDef, columnVectorType, inputVectorExpression, outputColumnNum);
+      VectorPTFEvaluatorBase evaluator;
+      if (isSlidingFrame(functionType, windowFrameDef)) {
+        int lagAmt = 1;
+        Object lagDefaultValue = null;
+        if (functionType == SupportedFunctionType.LAG) {
+          List<ExprNodeDesc> exprNodeDescList = evaluatorInputExprNodeDescLists[i];
+          if (exprNodeDescList.size() > 1) {
+            lagAmt = ((Number) ((ExprNodeConstantDesc) exprNodeDescList.get(1)).getValue()).intValue();
+          }
+          if (exprNodeDescList.size() > 2) {
+            lagDefaultValue = ((ExprNodeConstantDesc) exprNodeDescList.get(2)).getValue();
+          }
+        }
+        evaluator =
+            VectorPTFDesc.getSlidingEvaluator(
+                functionType, windowFrameDef, columnVectorType, inputVectorExpression,
+                outputColumnNum, orderColumnMap[0], orderColumnVectorTypes[0],
+                lagAmt, lagDefaultValue);
+      } else {
+        evaluator =
+            VectorPTFDesc.getEvaluator(
+                functionType, windowFrameDef, columnVectorType, inputVectorExpression, outputColumnNum);
+      }
 
       evaluators[i] = evaluator;
     }
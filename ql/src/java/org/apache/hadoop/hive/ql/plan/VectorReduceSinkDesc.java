@@ -69,6 +69,7 @@ public VectorReduceSinkInfo getVectorReduceSinkInfo() {
   private boolean isEmptyBuckets;
   private boolean isEmptyPartitions;
   private boolean hasPTFTopN;
+  private boolean isTopNFilterEnabled;
   private boolean hasDistinctColumns;
   private boolean isKeyBinarySortable;
   private boolean isValueLazyBinary;
@@ -119,6 +120,12 @@ public void setHasPTFTopN(boolean hasPTFTopN) {
   public boolean getHasPTFTopN() {
     return hasPTFTopN;
   }
+  public void setIsTopNFilterEnabled(boolean isTopNFilterEnabled) {
+    this.isTopNFilterEnabled = isTopNFilterEnabled;
+  }
+  public boolean getIsTopNFilterEnabled() {
+    return isTopNFilterEnabled;
+  }
   public void setHasDistinctColumns(boolean hasDistinctColumns) {
     this.hasDistinctColumns = hasDistinctColumns;
   }
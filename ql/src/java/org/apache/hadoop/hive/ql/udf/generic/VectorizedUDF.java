@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.generic;
+
+import org.apache.hadoop.hive.common.classification.InterfaceAudience;
+import org.apache.hadoop.hive.common.classification.InterfaceStability;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+/**
+ * A GenericUDF that also implements this interface is evaluated a batch of rows at a time in
+ * vectorized mode, on the ColumnVectors of its arguments.  Without it, a GenericUDF with no
+ * built-in vector expression goes through the VectorUDFAdaptor, which converts every row to
+ * writables and back.
+ *
+ * The function is registered like any GenericUDF (CREATE FUNCTION, or FunctionRegistry for
+ * built-ins).  initialize is still called, with the object inspectors of the argument types, so
+ * the function checks its arguments and returns its result type as usual.  evaluate is used
+ * in row mode.
+ *
+ * The column vector types are the ones of the Hive types: LongColumnVector for the integer
+ * family, boolean and date, DoubleColumnVector for float and double, BytesColumnVector for the
+ * string family and binary, DecimalColumnVector, TimestampColumnVector,
+ * IntervalDayTimeColumnVector, and the complex type column vectors.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectorizedUDF {
+
+  /**
+   * Evaluates the function over the rows of a batch.
+   *
+   * A row is NULL in an argument when !noNulls and isNull[row] is set.  When isRepeating is set,
+   * row 0 holds the value of all the rows.  Constant arguments are repeating.
+   *
+   * The result vector is a scratch column that still has the flags of the previous batch.  The
+   * function writes the rows evaluated and sets isRepeating and noNulls, and isNull for the
+   * rows when noNulls is false.  A BytesColumnVector result has its buffer initialized.
+   *
+   * @param arguments the argument vectors
+   * @param selectedInUse whether the rows are the first size entries of selected, or 0 to size-1
+   * @param selected the selected rows when selectedInUse
+   * @param size the number of rows
+   * @param result the result vector
+   */
+  void evaluateBatch(ColumnVector[] arguments, boolean selectedInUse, int[] selected, int size,
+      ColumnVector result) throws HiveException;
+}
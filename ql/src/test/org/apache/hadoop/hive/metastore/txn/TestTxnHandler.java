@@ -977,6 +977,54 @@ public void testMultipleLockWait() throws Exception {
     assertTrue(res.getState() == LockState.ACQUIRED);
   }
 
+  @Test
+  public void testLockManyPartitions() throws Exception {
+    // Test that a lock on many partitions only waits for the locks on the same objects
+    long txnid = openTxn();
+    long writeId = txnHandler.allocateTableWriteIds(new AllocateTableWriteIdsRequest(
+        Collections.singletonList(txnid), "mydb", "mytable")).getTxnToWriteIds().get(0).getWriteId();
+    List<LockComponent> components = new ArrayList<LockComponent>();
+    for (int i = 0; i < 100; i++) {
+      LockComponent comp = new LockComponent(LockType.SHARED_WRITE, LockLevel.PARTITION, "mydb");
+      comp.setTablename("mytable");
+      comp.setPartitionname("p=" + i);
+      comp.setOperationType(DataOperationType.INSERT);
+      components.add(comp);
+    }
+    LockRequest req = new LockRequest(components, "me", "localhost");
+    req.setTxnid(txnid);
+    LockResponse res = txnHandler.lock(req);
+    assertTrue(res.getState() == LockState.ACQUIRED);
+    assertEquals(100, TxnDbUtil.countQueryAgent(conf,
+        "select count(*) from TXN_COMPONENTS where tc_writeid = " + writeId));
+
+    LockComponent comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.PARTITION, "mydb");
+    comp.setTablename("mytable");
+    comp.setPartitionname("p=50");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    res = txnHandler.lock(new LockRequest(Collections.singletonList(comp), "me", "localhost"));
+    assertTrue(res.getState() == LockState.WAITING);
+
+    comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.PARTITION, "mydb");
+    comp.setTablename("mytable");
+    comp.setPartitionname("p=100");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    res = txnHandler.lock(new LockRequest(Collections.singletonList(comp), "me", "localhost"));
+    assertTrue(res.getState() == LockState.ACQUIRED);
+
+    comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.TABLE, "mydb");
+    comp.setTablename("yourtable");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    res = txnHandler.lock(new LockRequest(Collections.singletonList(comp), "me", "localhost"));
+    assertTrue(res.getState() == LockState.ACQUIRED);
+
+    comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.TABLE, "mydb");
+    comp.setTablename("mytable");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    res = txnHandler.lock(new LockRequest(Collections.singletonList(comp), "me", "localhost"));
+    assertTrue(res.getState() == LockState.WAITING);
+  }
+
   @Test
   public void testUnlockOnCommit() throws Exception {
     // Test that committing unlocks
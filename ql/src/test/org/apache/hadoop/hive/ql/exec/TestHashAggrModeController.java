@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestHashAggrModeController {
+
+  private static final int CHECK_INTERVAL = 100;
+  private static final int PASSTHROUGH_ROWS = 1000;
+
+  private void hash(HashAggrModeController controller, long rows, long newEntries) {
+    controller.addHashRows(rows);
+    controller.addHashEntries(newEntries);
+  }
+
+  @Test
+  public void testKeepsHashingWhenReducing() {
+    HashAggrModeController controller =
+        new HashAggrModeController(CHECK_INTERVAL, 0.5f, PASSTHROUGH_ROWS);
+    for (int i = 0; i < 100; i++) {
+      hash(controller, 10, 4);
+      assertFalse(controller.shouldSwitchToPassThrough());
+    }
+    assertTrue(controller.isHashMode());
+    assertEquals(1000, controller.getHashRows());
+    assertEquals(0, controller.getSwitchesToPassThrough());
+  }
+
+  @Test
+  public void testSwitchesBackAndForth() {
+    HashAggrModeController controller =
+        new HashAggrModeController(CHECK_INTERVAL, 0.5f, PASSTHROUGH_ROWS);
+
+    // Not checked before a full interval.
+    hash(controller, CHECK_INTERVAL - 1, CHECK_INTERVAL - 1);
+    assertFalse(controller.shouldSwitchToPassThrough());
+    hash(controller, 1, 1);
+    assertTrue(controller.shouldSwitchToPassThrough());
+    assertFalse(controller.isHashMode());
+
+    controller.addPassThroughRows(PASSTHROUGH_ROWS - 1);
+    assertFalse(controller.shouldSwitchToHash());
+    controller.addPassThroughRows(1);
+    assertTrue(controller.shouldSwitchToHash());
+    assertTrue(controller.isHashMode());
+
+    // Still no reduction, so the next pass-through is twice as long.
+    hash(controller, CHECK_INTERVAL, CHECK_INTERVAL);
+    assertTrue(controller.shouldSwitchToPassThrough());
+    controller.addPassThroughRows(PASSTHROUGH_ROWS);
+    assertFalse(controller.shouldSwitchToHash());
+    controller.addPassThroughRows(PASSTHROUGH_ROWS);
+    assertTrue(controller.shouldSwitchToHash());
+
+    // The key distribution changed, the hash table pays off again.
+    hash(controller, CHECK_INTERVAL, 1);
+    assertFalse(controller.shouldSwitchToPassThrough());
+    assertTrue(controller.isHashMode());
+
+    assertEquals(2, controller.getSwitchesToPassThrough());
+    assertEquals(2, controller.getSwitchesToHash());
+    assertEquals(3 * PASSTHROUGH_ROWS, controller.getPassThroughRows());
+    assertEquals(3 * CHECK_INTERVAL, controller.getHashRows());
+  }
+
+  @Test
+  public void testBackOffResetsAfterReduction() {
+    HashAggrModeController controller =
+        new HashAggrModeController(CHECK_INTERVAL, 0.5f, PASSTHROUGH_ROWS);
+    for (int i = 0; i < 10; i++) {
+      hash(controller, CHECK_INTERVAL, CHECK_INTERVAL);
+      assertTrue(controller.shouldSwitchToPassThrough());
+      controller.addPassThroughRows(PASSTHROUGH_ROWS * 64);
+      assertTrue(controller.shouldSwitchToHash());
+    }
+    hash(controller, CHECK_INTERVAL, 0);
+    assertFalse(controller.shouldSwitchToPassThrough());
+
+    hash(controller, CHECK_INTERVAL, CHECK_INTERVAL);
+    assertTrue(controller.shouldSwitchToPassThrough());
+    controller.addPassThroughRows(PASSTHROUGH_ROWS);
+    assertTrue(controller.shouldSwitchToHash());
+  }
+
+  @Test
+  public void testCounters() {
+    HiveConf hconf = new HiveConf();
+    assertNull(HashAggrModeController.create(hconf));
+
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_ADAPTIVE_ENABLED, true);
+    hconf.set(Operator.CONTEXT_NAME_KEY, "Map 1");
+    HashAggrModeController controller = HashAggrModeController.create(hconf);
+    assertNotNull(controller);
+
+    Map<String, LongWritable> statsMap = new HashMap<String, LongWritable>();
+    controller.publishCounters(statsMap, hconf);
+    controller.addHashRows(5);
+    controller.addPassThroughRows(7);
+    assertEquals(5, statsMap.get("HASH_AGGR_ROWS_Map_1").get());
+    assertEquals(7, statsMap.get("HASH_AGGR_PASSTHROUGH_ROWS_Map_1").get());
+    assertEquals(0, statsMap.get("HASH_AGGR_SWITCHES_TO_PASSTHROUGH_Map_1").get());
+    assertEquals(0, statsMap.get("HASH_AGGR_SWITCHES_TO_HASH_Map_1").get());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestGroupBySpillContainer {
+
+  private static final int NUM_KEYS = 100;
+  private static final int NUM_ROWS = 5000;
+
+  private GroupBySpillContainer createContainer() {
+    return new GroupBySpillContainer(5, System.getProperty("java.io.tmpdir"),
+        new TypeInfo[] { TypeInfoFactory.stringTypeInfo, TypeInfoFactory.longTypeInfo },
+        new TypeInfo[] { TypeInfoFactory.longTypeInfo });
+  }
+
+  private Map<String, Long> spillAndMerge(GroupBySpillContainer container, long maxEntries,
+      final Map<String, Integer> receivedCounts) throws HiveException {
+    List<ObjectInspector> rowObjectInspectors = new ArrayList<ObjectInspector>();
+    rowObjectInspectors.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    rowObjectInspectors.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+    rowObjectInspectors.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+
+    Random random = new Random(8712);
+    Map<String, Long> expected = new HashMap<String, Long>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      int key = random.nextInt(NUM_KEYS);
+      long partial = random.nextInt(1000);
+      Object[] row = new Object[] {
+          new Text("key" + key), new LongWritable(key), new LongWritable(partial) };
+      int partition = container.getPartition(row[0].hashCode());
+      container.spillRow(partition, row, rowObjectInspectors);
+      assertTrue(container.isSpilled(partition));
+
+      Long sum = expected.get("key" + key);
+      expected.put("key" + key, (sum == null ? 0 : sum) + partial);
+    }
+    assertEquals(NUM_ROWS, container.getSpillRowCount());
+
+    final Map<String, Long> actual = new HashMap<String, Long>();
+    GenericUDAFEvaluator evaluator = new GenericUDAFSum.GenericUDAFSumLong();
+    container.mergeSpilledPartitions(new GenericUDAFEvaluator[] { evaluator }, maxEntries,
+        new GroupBySpillContainer.MergedRowReceiver() {
+          @Override
+          public void receive(Object[] keys, Object[] partials) throws HiveException {
+            String key = keys[0].toString();
+            assertEquals(key, "key" + ((LongWritable) keys[1]).get());
+            Long sum = actual.get(key);
+            actual.put(key, (sum == null ? 0 : sum) + ((LongWritable) partials[0]).get());
+            Integer count = receivedCounts.get(key);
+            receivedCounts.put(key, count == null ? 1 : count + 1);
+          }
+        });
+    assertFalse(container.hasSpilled());
+    assertEquals(expected, actual);
+    return actual;
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    GroupBySpillContainer container = createContainer();
+    assertEquals(8, container.getNumPartitions());
+
+    Map<String, Integer> receivedCounts = new HashMap<String, Integer>();
+    spillAndMerge(container, Long.MAX_VALUE, receivedCounts);
+
+    // Each key is received exactly once.
+    assertEquals(NUM_KEYS, receivedCounts.size());
+    for (Integer count : receivedCounts.values()) {
+      assertEquals(1, count.intValue());
+    }
+    container.clear();
+  }
+
+  @Test
+  public void testMergeForwardsEarly() throws Exception {
+    GroupBySpillContainer container = createContainer();
+
+    // With room for only a few keys the merged rows are forwarded early, but the partial
+    // results still add up.
+    Map<String, Integer> receivedCounts = new HashMap<String, Integer>();
+    spillAndMerge(container, 3, receivedCounts);
+    assertEquals(NUM_KEYS, receivedCounts.size());
+    container.clear();
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinTableContainerSerDe;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.junit.Test;
+
+public class TestLlapSharedHashTableRegistry {
+
+  private static Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> createTables(
+      long estimatedMemorySize, boolean hasSpill) {
+    MapJoinTableContainer container = mock(MapJoinTableContainer.class);
+    when(container.getEstimatedMemorySize()).thenReturn(estimatedMemorySize);
+    when(container.hasSpill()).thenReturn(hasSpill);
+    return new ImmutablePair<>(new MapJoinTableContainer[] { null, container },
+        new MapJoinTableContainerSerDe[2]);
+  }
+
+  private static Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> loader(
+      final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables,
+      final AtomicInteger loadCount) {
+    return new Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>() {
+      @Override
+      public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> call() {
+        loadCount.incrementAndGet();
+        return tables;
+      }
+    };
+  }
+
+  @Test
+  public void testSharedAndReleased() throws Exception {
+    LlapSharedHashTableRegistry registry = new LlapSharedHashTableRegistry(1000);
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables = createTables(100, false);
+    AtomicInteger loadCount = new AtomicInteger();
+
+    assertSame(tables, registry.acquire("a", loader(tables, loadCount)));
+    assertSame(tables, registry.acquire("a", loader(createTables(100, false), loadCount)));
+    assertEquals(1, loadCount.get());
+    assertEquals(2, registry.getRefCount("a"));
+    assertEquals(0, registry.getIdleSize());
+
+    registry.release("a");
+    registry.release("a");
+    assertEquals(0, registry.getRefCount("a"));
+    assertEquals(100, registry.getIdleSize());
+
+    // An idle hash table is used again by a later query.
+    assertSame(tables, registry.acquire("a", loader(createTables(100, false), loadCount)));
+    assertEquals(1, loadCount.get());
+    assertEquals(0, registry.getIdleSize());
+    registry.release("a");
+  }
+
+  @Test
+  public void testConcurrentLoadOnce() throws Exception {
+    final LlapSharedHashTableRegistry registry = new LlapSharedHashTableRegistry(1000);
+    final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables =
+        createTables(100, false);
+    final AtomicInteger loadCount = new AtomicInteger();
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch finishLoad = new CountDownLatch(1);
+
+    Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> first =
+        registry.acquireAsync("a",
+            new Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>() {
+          @Override
+          public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> call()
+              throws Exception {
+            loadCount.incrementAndGet();
+            loading.countDown();
+            finishLoad.await();
+            return tables;
+          }
+        });
+    loading.await();
+    Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> second =
+        registry.acquireAsync("a", loader(createTables(100, false), loadCount));
+    finishLoad.countDown();
+
+    assertSame(tables, first.get());
+    assertSame(tables, second.get());
+    assertEquals(1, loadCount.get());
+    assertEquals(2, registry.getRefCount("a"));
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception {
+    LlapSharedHashTableRegistry registry = new LlapSharedHashTableRegistry(250);
+    AtomicInteger loadCount = new AtomicInteger();
+    for (String key : new String[] { "a", "b", "c" }) {
+      registry.acquire(key, loader(createTables(100, false), loadCount));
+    }
+
+    // Hash tables in use are never dropped.
+    registry.release("a");
+    registry.release("b");
+    assertEquals(200, registry.getIdleSize());
+    registry.release("c");
+    assertFalse(registry.contains("a"));
+    assertTrue(registry.contains("b"));
+    assertTrue(registry.contains("c"));
+    assertEquals(200, registry.getIdleSize());
+
+    registry.acquire("a", loader(createTables(100, false), loadCount));
+    assertEquals(4, loadCount.get());
+  }
+
+  @Test
+  public void testNotSharedOnFailureOrSpill() throws Exception {
+    LlapSharedHashTableRegistry registry = new LlapSharedHashTableRegistry(1000);
+    try {
+      registry.acquire("a",
+          new Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>() {
+        @Override
+        public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> call() {
+          throw new IllegalStateException("load failed");
+        }
+      });
+      fail();
+    } catch (HiveException e) {
+      // expected
+    }
+    assertFalse(registry.contains("a"));
+    assertEquals(0, registry.getRefCount("a"));
+
+    AtomicInteger loadCount = new AtomicInteger();
+    Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> spilled = createTables(100, true);
+    assertSame(spilled, registry.acquire("a", loader(spilled, loadCount)));
+    assertFalse(registry.contains("a"));
+    assertEquals(0, registry.getRefCount("a"));
+  }
+
+  @Test
+  public void testReleaseAfterAbort() throws Exception {
+    final LlapSharedHashTableRegistry registry = new LlapSharedHashTableRegistry(1000);
+    final Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> tables =
+        createTables(100, false);
+    AtomicInteger loadCount = new AtomicInteger();
+
+    // Aborted after the hash tables are acquired, before they are used.
+    Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> done =
+        registry.acquireAsync("a", loader(tables, loadCount));
+    done.get();
+    assertEquals(1, registry.getRefCount("a"));
+    registry.release("a", done);
+    assertEquals(0, registry.getRefCount("a"));
+    assertEquals(100, registry.getIdleSize());
+
+    // Aborted while the hash tables are loading; the load completes later.
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch finishLoad = new CountDownLatch(1);
+    Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> running =
+        registry.acquireAsync("b",
+            new Callable<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>>() {
+          @Override
+          public Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]> call()
+              throws Exception {
+            loading.countDown();
+            finishLoad.await();
+            return createTables(200, false);
+          }
+        });
+    loading.await();
+    assertEquals(1, registry.getRefCount("b"));
+    registry.release("b", running);
+    assertTrue(running.isCancelled());
+    finishLoad.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (registry.getIdleSize() != 300 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, registry.getRefCount("b"));
+    assertTrue(registry.contains("b"));
+    assertEquals(300, registry.getIdleSize());
+
+    // Spilled hash tables hold no reference, and releasing them leaves the shared ones alone.
+    assertSame(tables, registry.acquire("a", loader(tables, loadCount)));
+    Future<Pair<MapJoinTableContainer[], MapJoinTableContainerSerDe[]>> spilled =
+        registry.acquireAsync("c", loader(createTables(100, true), loadCount));
+    spilled.get();
+    registry.release("c", spilled);
+    assertEquals(0, registry.getRefCount("c"));
+    assertEquals(1, registry.getRefCount("a"));
+  }
+}
@@ -39,6 +39,7 @@
 import org.apache.hadoop.hive.common.type.HiveDecimal;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.ql.exec.HashAggrModeController;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.OperatorFactory;
 import org.apache.hadoop.hive.ql.exec.vector.expressions.aggregates.VectorUDAFCountStar;
@@ -449,6 +450,171 @@ public void testMultiKeyDoubleShortString() throws HiveException {
   }
 
 
+  @Test
+  public void testNativeHashMultiKeyIntStringInt() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testMultiKeyIntStringInt();
+  }
+
+  @Test
+  public void testNativeHashMultiKeyDoubleShortString() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testMultiKeyDoubleShortString();
+  }
+
+  @Test
+  public void testNativeHashMinLongNullStringKeys() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testMinLongNullStringKeys();
+  }
+
+  @Test
+  public void testNativeHashMinLongNullKeyGroupByCrossBatch() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testMinLongNullKeyGroupByCrossBatch();
+  }
+
+  @Test
+  public void testNativeHashSumLongNullKeyGroupBySingleBatch() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testSumLongNullKeyGroupBySingleBatch();
+  }
+
+  private void setSpillToDisk() {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_ENABLED, true);
+    hconf.setIntVar(HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_SPILL_PARTITIONS, 4);
+    // Spill a partition as soon as there is more than one key in the hash table.
+    hconf.setIntVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_MAXENTRIES, 1);
+  }
+
+  @Test
+  public void testSpillMultiKeyIntStringInt() throws HiveException {
+    setSpillToDisk();
+    testMultiKeyIntStringInt();
+  }
+
+  @Test
+  public void testSpillMultiKeyDoubleShortString() throws HiveException {
+    setSpillToDisk();
+    testMultiKeyDoubleShortString();
+  }
+
+  @Test
+  public void testSpillMinLongNullStringKeys() throws HiveException {
+    setSpillToDisk();
+    testMinLongNullStringKeys();
+  }
+
+  @Test
+  public void testSpillMinLongKeyGroupByCrossBatch() throws HiveException {
+    setSpillToDisk();
+    testMinLongKeyGroupByCrossBatch();
+  }
+
+  @Test
+  public void testSpillAvgLongNullKeyGroupBySingleBatch() throws HiveException {
+    setSpillToDisk();
+    testAvgLongNullKeyGroupBySingleBatch();
+  }
+
+  @Test
+  public void testSpillVarLongNullKeyGroupBySingleBatch() throws HiveException {
+    setSpillToDisk();
+    testVarLongNullKeyGroupBySingleBatch();
+  }
+
+  @Test
+  public void testSpillDecimalKeyTypeAggregate() throws HiveException {
+    setSpillToDisk();
+    testDecimalKeyTypeAggregate();
+  }
+
+  @Test
+  public void testAdaptiveHashAggregation() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_ADAPTIVE_ENABLED, true);
+    hconf.setIntVar(HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL, 1000);
+    hconf.setLongVar(HiveConf.ConfVars.HIVE_MAP_AGGR_HASH_ADAPTIVE_PASSTHROUGH_ROWS, 2000);
+
+    List<String> mapColumnNames = new ArrayList<String>();
+    mapColumnNames.add("Key");
+    mapColumnNames.add("Value");
+    VectorizationContext ctx = new VectorizationContext("name", mapColumnNames);
+
+    Pair<GroupByDesc,VectorGroupByDesc> pair = buildKeyGroupByDesc (ctx, "sum",
+        "Value", TypeInfoFactory.longTypeInfo,
+        "Key", TypeInfoFactory.longTypeInfo);
+    GroupByDesc desc = pair.fst;
+    VectorGroupByDesc vectorDesc = pair.snd;
+
+    CompilationOpContext cCtx = new CompilationOpContext();
+
+    Operator<? extends OperatorDesc> groupByOp = OperatorFactory.get(cCtx, desc);
+
+    VectorGroupByOperator vgo =
+        (VectorGroupByOperator) Vectorizer.vectorizeGroupByOperator(groupByOp, ctx, vectorDesc);
+
+    FakeCaptureVectorToRowOutputOperator out = FakeCaptureVectorToRowOutputOperator.addCaptureOutputChild(cCtx, vgo);
+    vgo.initialize(hconf, null);
+
+    // The partial sums of a key can be forwarded more than once, add them up.
+    final Map<Long, Long> actual = new HashMap<Long, Long>();
+    out.setOutputInspector(new FakeCaptureVectorToRowOutputOperator.OutputInspector() {
+      @Override
+      public void inspectRow(Object row, int tag) throws HiveException {
+        Object[] fields = (Object[]) row;
+        long key = ((LongWritable) fields[0]).get();
+        long sum = ((LongWritable) fields[1]).get();
+        Long previous = actual.get(key);
+        actual.put(key, previous == null ? sum : previous + sum);
+      }
+    });
+
+    // 5000 unique keys, then 20000 rows over 10 keys.
+    final int uniqueRows = 5000;
+    final int totalRows = 25000;
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+    List<Object> keys = new ArrayList<Object>();
+    List<Object> values = new ArrayList<Object>();
+    for (long i = 0; i < totalRows; i++) {
+      long key = i < uniqueRows ? i + 100 : i % 10;
+      keys.add(key);
+      values.add(i);
+      Long previous = expected.get(key);
+      expected.put(key, previous == null ? i : previous + i);
+    }
+
+    FakeVectorRowBatchFromObjectIterables data = new FakeVectorRowBatchFromObjectIterables(
+        100,
+        new String[] {"long", "long"},
+        keys,
+        values);
+    for (VectorizedRowBatch unit: data) {
+      vgo.process(unit,  0);
+    }
+    vgo.close(false);
+
+    assertEquals(expected, actual);
+
+    // Switched to streaming for the unique keys and back to hashing for the repeated ones.
+    Map<String, Long> stats = vgo.getStats();
+    assertTrue(stats.get(
+        HashAggrModeController.Counter.HASH_AGGR_SWITCHES_TO_PASSTHROUGH.toString()) > 0);
+    assertTrue(stats.get(
+        HashAggrModeController.Counter.HASH_AGGR_SWITCHES_TO_HASH.toString()) > 0);
+    assertEquals(totalRows,
+        stats.get(HashAggrModeController.Counter.HASH_AGGR_ROWS.toString()) +
+        stats.get(HashAggrModeController.Counter.HASH_AGGR_PASSTHROUGH_ROWS.toString()));
+
+    // Hashing the repeated keys reduces the output well below the streamed one.
+    assertTrue(out.getCapturedRows().size() < totalRows / 2);
+  }
+
+  @Test
+  public void testAdaptiveNativeHashAggregation() throws HiveException {
+    hconf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_GROUPBY_NATIVE_HASH_ENABLED, true);
+    testAdaptiveHashAggregation();
+  }
+
   @Test
   public void testDoubleValueTypeSum() throws HiveException {
     testKeyTypeAggregate(
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedBatchUtil;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPPlus;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+/**
+ * Test that fused vector expressions give the same results as the regular vector expressions.
+ */
+public class TestFusedVectorExpression {
+
+  private static final List<String> COLUMN_NAMES = Arrays.asList("l0", "l1", "d2", "s3");
+
+  private static VectorizationContext getContext() {
+    HiveConf hiveConf = new HiveConf();
+    hiveConf.setBoolVar(HiveConf.ConfVars.HIVE_VECTORIZATION_EXPRESSION_CODEGEN_ENABLED, true);
+    return new VectorizationContext("name", COLUMN_NAMES, hiveConf);
+  }
+
+  private static ExprNodeDesc column(String name) {
+    TypeInfo typeInfo = name.startsWith("l") ? TypeInfoFactory.longTypeInfo :
+        name.startsWith("d") ? TypeInfoFactory.doubleTypeInfo : TypeInfoFactory.stringTypeInfo;
+    return new ExprNodeColumnDesc(typeInfo, name, "t", false);
+  }
+
+  private static ExprNodeDesc func(TypeInfo typeInfo, GenericUDF udf, ExprNodeDesc... children) {
+    return new ExprNodeGenericFuncDesc(typeInfo, udf, new ArrayList<ExprNodeDesc>(
+        Arrays.asList(children)));
+  }
+
+  private static VectorizedRowBatch getBatch(long seed, boolean repeating,
+      VectorizationContext vContext) {
+    Random random = new Random(seed);
+    String[] scratchTypeNames = vContext.getScratchColumnTypeNames();
+    VectorizedRowBatch batch =
+        new VectorizedRowBatch(COLUMN_NAMES.size() + scratchTypeNames.length);
+    LongColumnVector l0 = new LongColumnVector();
+    LongColumnVector l1 = new LongColumnVector();
+    DoubleColumnVector d2 = new DoubleColumnVector();
+    for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+      l0.vector[i] = random.nextInt(20) - 5;
+      l1.vector[i] = random.nextInt(7) - 3;
+      d2.vector[i] = random.nextDouble() * 10;
+      if (random.nextInt(10) == 0) {
+        l0.isNull[i] = true;
+        l0.noNulls = false;
+      }
+      if (random.nextInt(10) == 0) {
+        d2.isNull[i] = true;
+        d2.noNulls = false;
+      }
+    }
+    l1.isRepeating = repeating;
+    batch.cols[0] = l0;
+    batch.cols[1] = l1;
+    batch.cols[2] = d2;
+    batch.cols[3] = new BytesColumnVector();
+    for (int i = 0; i < scratchTypeNames.length; i++) {
+      batch.cols[COLUMN_NAMES.size() + i] =
+          VectorizedBatchUtil.createColumnVector(scratchTypeNames[i]);
+    }
+    batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+    return batch;
+  }
+
+  private static void assertSameFilter(ExprNodeDesc expr) throws Exception {
+    VectorizationContext vContext = getContext();
+    VectorExpression ve = vContext.getVectorExpression(expr,
+        VectorExpressionDescriptor.Mode.FILTER);
+    VectorExpression fused = vContext.getFusedVectorExpression(expr, ve,
+        VectorExpressionDescriptor.Mode.FILTER);
+    assertTrue(fused instanceof FusedVectorExpression);
+
+    for (boolean repeating : new boolean[] {false, true}) {
+      VectorizedRowBatch expected = getBatch(42, repeating, vContext);
+      VectorizedRowBatch actual = getBatch(42, repeating, vContext);
+      ve.evaluate(expected);
+      fused.evaluate(actual);
+      assertEquals(expected.size, actual.size);
+      for (int j = 0; j < expected.size; j++) {
+        int expectedRow = expected.selectedInUse ? expected.selected[j] : j;
+        int actualRow = actual.selectedInUse ? actual.selected[j] : j;
+        assertEquals(expectedRow, actualRow);
+      }
+    }
+  }
+
+  private static void assertSameProjection(ExprNodeDesc expr) throws Exception {
+    VectorizationContext vContext = getContext();
+    VectorExpression ve = vContext.getVectorExpression(expr);
+    VectorExpression fused = vContext.getFusedVectorExpression(expr, ve,
+        VectorExpressionDescriptor.Mode.PROJECTION);
+    assertTrue(fused instanceof FusedVectorExpression);
+    assertEquals(ve.getOutputColumnNum(), fused.getOutputColumnNum());
+
+    VectorizedRowBatch expected = getBatch(7, false, vContext);
+    VectorizedRowBatch actual = getBatch(7, false, vContext);
+    boolean isDouble = ve.getOutputTypeInfo().equals(TypeInfoFactory.doubleTypeInfo);
+    ve.evaluate(expected);
+    fused.evaluate(actual);
+    ColumnVector expectedCol = expected.cols[ve.getOutputColumnNum()];
+    ColumnVector actualCol = actual.cols[ve.getOutputColumnNum()];
+    for (int i = 0; i < expected.size; i++) {
+      boolean expectedNull = !expectedCol.noNulls && expectedCol.isNull[i];
+      boolean actualNull = !actualCol.noNulls && actualCol.isNull[i];
+      assertEquals("row " + i, expectedNull, actualNull);
+      if (!expectedNull) {
+        if (isDouble) {
+          assertEquals(((DoubleColumnVector) expectedCol).vector[i],
+              ((DoubleColumnVector) actualCol).vector[i], 0.0);
+        } else {
+          assertEquals(((LongColumnVector) expectedCol).vector[i],
+              ((LongColumnVector) actualCol).vector[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFilterArithmeticComparison() throws Exception {
+    // (l0 + l1) > 3 AND d2 IS NOT NULL
+    ExprNodeDesc expr = func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPGreaterThan(),
+            func(TypeInfoFactory.longTypeInfo, new GenericUDFOPPlus(),
+                column("l0"), column("l1")),
+            new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 3L)),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNotNull(), column("d2")));
+    assertSameFilter(expr);
+  }
+
+  @Test
+  public void testFilterOrNot() throws Exception {
+    // NOT (l0 = l1) OR (d2 * l1) > 5.0
+    ExprNodeDesc expr = func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPOr(),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNot(),
+            func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPEqual(),
+                column("l0"), column("l1"))),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPGreaterThan(),
+            func(TypeInfoFactory.doubleTypeInfo, new GenericUDFOPMultiply(),
+                column("d2"), column("l1")),
+            new ExprNodeConstantDesc(TypeInfoFactory.doubleTypeInfo, 5.0)));
+    assertSameFilter(expr);
+  }
+
+  @Test
+  public void testProjectionLongArithmetic() throws Exception {
+    // (l0 - l1) * 3
+    ExprNodeDesc expr = func(TypeInfoFactory.longTypeInfo, new GenericUDFOPMultiply(),
+        func(TypeInfoFactory.longTypeInfo, new GenericUDFOPMinus(), column("l0"), column("l1")),
+        new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 3L));
+    assertSameProjection(expr);
+  }
+
+  @Test
+  public void testProjectionDivide() throws Exception {
+    // (d2 + l0) / l1, NULL when l1 is 0
+    ExprNodeDesc expr = func(TypeInfoFactory.doubleTypeInfo, new GenericUDFOPDivide(),
+        func(TypeInfoFactory.doubleTypeInfo, new GenericUDFOPPlus(), column("d2"), column("l0")),
+        column("l1"));
+    assertSameProjection(expr);
+  }
+
+  @Test
+  public void testUnsupported() throws Exception {
+    // a string column is not supported
+    ExprNodeDesc expr = func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNotNull(), column("s3")),
+        func(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNotNull(), column("l0")));
+    VectorizationContext vContext = getContext();
+    VectorExpression ve = vContext.getVectorExpression(expr,
+        VectorExpressionDescriptor.Mode.FILTER);
+    assertFalse(vContext.getFusedVectorExpression(expr, ve,
+        VectorExpressionDescriptor.Mode.FILTER) instanceof FusedVectorExpression);
+
+    // a single function is not worth fusing
+    expr = func(TypeInfoFactory.longTypeInfo, new GenericUDFOPPlus(), column("l0"), column("l1"));
+    ve = vContext.getVectorExpression(expr);
+    assertTrue(vContext.getFusedVectorExpression(expr, ve,
+        VectorExpressionDescriptor.Mode.PROJECTION) == ve);
+  }
+
+  @Test
+  public void testFallbackToInterpreted() throws Exception {
+    VectorizationContext vContext = getContext();
+    ExprNodeDesc expr = func(TypeInfoFactory.longTypeInfo, new GenericUDFOPPlus(),
+        column("l0"), column("l1"));
+    VectorExpression ve = vContext.getVectorExpression(expr);
+    FusedVectorExpression fused = new FusedVectorExpression("not java", ve);
+    VectorizedRowBatch batch = getBatch(3, false, vContext);
+    fused.evaluate(batch);
+    LongColumnVector out = (LongColumnVector) batch.cols[ve.getOutputColumnNum()];
+    LongColumnVector l0 = (LongColumnVector) batch.cols[0];
+    LongColumnVector l1 = (LongColumnVector) batch.cols[1];
+    assertEquals(l0.vector[1] + l1.vector[1], out.vector[1]);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.groupby;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorAggregationBufferRow;
+import org.apache.hadoop.hive.serde2.WriteBuffers;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestVectorGroupByFastHashTable {
+
+  private static final int CAPACITY = 8;
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int WB_SIZE = 128; // Make sure we cross some buffer boundaries...
+
+  @Test
+  public void testLongKeys() throws Exception {
+    Random random = new Random(4186);
+    VectorGroupByFastLongHashTable table =
+        new VectorGroupByFastLongHashTable(CAPACITY, LOAD_FACTOR);
+    Map<Long, Integer> verifyTable = new HashMap<Long, Integer>();
+
+    for (int i = 0; i < 10000; i++) {
+      long key = random.nextInt(2000) - 1000;
+      int entry = table.findOrAddEntry(key);
+      Integer expected = verifyTable.get(key);
+      if (expected == null) {
+        assertEquals(verifyTable.size(), entry);
+        assertNull(table.getAggregationBufferRow(entry));
+        table.setAggregationBufferRow(entry, new VectorAggregationBufferRow(null));
+        verifyTable.put(key, entry);
+      } else {
+        assertEquals(expected.intValue(), entry);
+        assertNotNull(table.getAggregationBufferRow(entry));
+      }
+      assertEquals(key, table.getKey(entry));
+    }
+    assertEquals(verifyTable.size(), table.size());
+  }
+
+  @Test
+  public void testNullEntry() throws Exception {
+    VectorGroupByFastLongHashTable table =
+        new VectorGroupByFastLongHashTable(CAPACITY, LOAD_FACTOR);
+
+    int entry = table.findOrAddEntry(0L);
+    int nullEntry = table.findOrAddNullEntry();
+    assertNotEquals(entry, nullEntry);
+    assertTrue(table.isNullEntry(nullEntry));
+    assertFalse(table.isNullEntry(entry));
+    assertEquals(nullEntry, table.findOrAddNullEntry());
+
+    // The NULL entry must survive expansion without being hashed.
+    for (long key = 1; key < 100; key++) {
+      table.findOrAddEntry(key);
+    }
+    assertEquals(entry, table.findOrAddEntry(0L));
+    assertEquals(nullEntry, table.findOrAddNullEntry());
+    assertEquals(101, table.size());
+  }
+
+  @Test
+  public void testBytesKeys() throws Exception {
+    Random random = new Random(1412);
+    VectorGroupByFastBytesHashTable table =
+        new VectorGroupByFastBytesHashTable(CAPACITY, LOAD_FACTOR, WB_SIZE);
+    Map<String, Integer> verifyTable = new HashMap<String, Integer>();
+    WriteBuffers.ByteSegmentRef keyRef = new WriteBuffers.ByteSegmentRef();
+
+    for (int i = 0; i < 10000; i++) {
+      String key = Integer.toString(random.nextInt(3000));
+      if (random.nextInt(10) == 0) {
+        key = key + "_a_longer_key_that_might_span_write_buffers";
+      }
+      byte[] keyBytes = ("xx" + key).getBytes(StandardCharsets.UTF_8);
+      int entry = table.findOrAddEntry(keyBytes, 2, keyBytes.length - 2);
+      Integer expected = verifyTable.get(key);
+      if (expected == null) {
+        assertEquals(verifyTable.size(), entry);
+        verifyTable.put(key, entry);
+      } else {
+        assertEquals(expected.intValue(), entry);
+      }
+    }
+    assertEquals(verifyTable.size(), table.size());
+
+    for (Map.Entry<String, Integer> verifyEntry : verifyTable.entrySet()) {
+      table.getKey(verifyEntry.getValue(), keyRef);
+      byte[] keyBytes = Arrays.copyOfRange(keyRef.getBytes(), (int) keyRef.getOffset(),
+          (int) keyRef.getOffset() + keyRef.getLength());
+      assertEquals(verifyEntry.getKey(), new String(keyBytes, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testEmptyBytesKey() throws Exception {
+    VectorGroupByFastBytesHashTable table =
+        new VectorGroupByFastBytesHashTable(CAPACITY, LOAD_FACTOR, WB_SIZE);
+
+    int emptyEntry = table.findOrAddEntry(new byte[0], 0, 0);
+    int nullEntry = table.findOrAddNullEntry();
+    assertNotEquals(emptyEntry, nullEntry);
+    assertEquals(emptyEntry, table.findOrAddEntry(new byte[] {1}, 1, 0));
+    assertEquals(2, table.size());
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    VectorGroupByFastBytesHashTable table =
+        new VectorGroupByFastBytesHashTable(CAPACITY, LOAD_FACTOR, WB_SIZE);
+
+    for (int i = 0; i < 1000; i++) {
+      byte[] keyBytes = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+      table.findOrAddEntry(keyBytes, 0, keyBytes.length);
+    }
+    table.findOrAddNullEntry();
+    assertEquals(1001, table.size());
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(0, table.getKeyBytesSize());
+
+    byte[] keyBytes = "7".getBytes(StandardCharsets.UTF_8);
+    assertEquals(0, table.findOrAddEntry(keyBytes, 0, keyBytes.length));
+    assertNull(table.getAggregationBufferRow(0));
+    assertFalse(table.isNullEntry(0));
+    assertEquals(1, table.findOrAddNullEntry());
+  }
+}
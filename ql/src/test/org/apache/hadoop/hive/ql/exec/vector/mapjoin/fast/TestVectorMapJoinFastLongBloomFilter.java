@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.mapjoin.fast;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.VectorMapJoinLongBloomFilterProbe;
+import org.apache.hadoop.hive.ql.exec.vector.mapjoin.hashtable.VectorMapJoinBlockedBloomFilter;
+import org.apache.hadoop.hive.ql.plan.VectorMapJoinDesc.HashTableKeyType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestVectorMapJoinFastLongBloomFilter extends CommonFastHashTable {
+
+  private static VectorMapJoinFastLongHashSet buildHashSet(Set<Long> keys) throws Exception {
+    VectorMapJoinFastLongHashSet hashSet =
+        new VectorMapJoinFastLongHashSet(
+            false, false, HashTableKeyType.LONG, CAPACITY, LOAD_FACTOR, WB_SIZE, -1);
+    for (long key : keys) {
+      hashSet.testPutRow(key);
+    }
+    assertFalse(hashSet.useBloomFilter());
+    hashSet.buildBloomFilter(16);
+    assertTrue(hashSet.useBloomFilter());
+    return hashSet;
+  }
+
+  @Test
+  public void testNoFalseNegatives() throws Exception {
+    random = new Random(4431);
+    Set<Long> keys = new HashSet<Long>();
+    while (keys.size() < 10000) {
+      keys.add(random.nextLong());
+    }
+    VectorMapJoinBlockedBloomFilter bloomFilter = buildHashSet(keys).bloomFilter();
+    for (long key : keys) {
+      assertTrue(bloomFilter.mightContain(key));
+    }
+
+    // With 16 bits per key, well under 1% of the other keys should pass.
+    int falsePositives = 0;
+    int probes = 100000;
+    for (int i = 0; i < probes; i++) {
+      long key = random.nextLong();
+      if (!keys.contains(key) &&
+          bloomFilter.mightContain(key)) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives " + falsePositives, falsePositives < probes / 100);
+  }
+
+  @Test
+  public void testProbeFiltersBatch() throws Exception {
+    Set<Long> keys = new HashSet<Long>();
+    for (long key = 0; key < 1000; key += 10) {
+      keys.add(key);
+    }
+    VectorMapJoinLongBloomFilterProbe probe =
+        new VectorMapJoinLongBloomFilterProbe(buildHashSet(keys).bloomFilter(), 0.5f);
+
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector joinColVector = new LongColumnVector();
+    batch.cols[0] = joinColVector;
+    for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+      joinColVector.vector[i] = i;
+    }
+    joinColVector.noNulls = false;
+    joinColVector.isNull[10] = true;
+    batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+
+    int newSize = probe.filter(batch, joinColVector);
+    assertEquals(batch.size, newSize);
+    assertTrue(batch.selectedInUse);
+
+    // Every key of the hash set except the NULL row passes, in order.
+    Set<Integer> passed = new HashSet<Integer>();
+    for (int i = 0; i < newSize; i++) {
+      passed.add(batch.selected[i]);
+      if (i > 0) {
+        assertTrue(batch.selected[i] > batch.selected[i - 1]);
+      }
+    }
+    for (long key : keys) {
+      assertEquals(key != 10, passed.contains((int) key));
+    }
+    assertTrue(newSize < 2 * keys.size());
+
+    // A repeating key that is not in the hash set empties the batch.
+    joinColVector.reset();
+    joinColVector.isRepeating = true;
+    joinColVector.vector[0] = 5;
+    batch.selectedInUse = false;
+    batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+    assertEquals(0, probe.filter(batch, joinColVector));
+  }
+
+  @Test
+  public void testProbeSkippedWhenMostRowsPass() throws Exception {
+    Set<Long> keys = new HashSet<Long>();
+    for (long key = 0; key < VectorizedRowBatch.DEFAULT_SIZE; key++) {
+      keys.add(key);
+    }
+    VectorMapJoinLongBloomFilterProbe probe =
+        new VectorMapJoinLongBloomFilterProbe(buildHashSet(keys).bloomFilter(), 0.5f);
+
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector joinColVector = new LongColumnVector();
+    batch.cols[0] = joinColVector;
+    for (int i = 0; i < VectorizedRowBatch.DEFAULT_SIZE; i++) {
+      joinColVector.vector[i] = i;
+    }
+
+    int batches = 0;
+    while (probe.isProbing()) {
+      batch.selectedInUse = false;
+      batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+      assertEquals(VectorizedRowBatch.DEFAULT_SIZE, probe.filter(batch, joinColVector));
+      assertTrue(++batches < 1000);
+    }
+
+    // Skipped batches are left as they are, and probing resumes later.
+    while (!probe.isProbing()) {
+      batch.selectedInUse = false;
+      batch.size = VectorizedRowBatch.DEFAULT_SIZE;
+      assertEquals(VectorizedRowBatch.DEFAULT_SIZE, probe.filter(batch, joinColVector));
+      assertFalse(batch.selectedInUse);
+      assertTrue(++batches < 10000);
+    }
+  }
+}
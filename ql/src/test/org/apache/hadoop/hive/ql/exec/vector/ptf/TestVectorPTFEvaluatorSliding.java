@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.ptf;
+
+import java.util.ArrayList;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector.Type;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.IdentityExpression;
+import org.apache.hadoop.hive.ql.parse.PTFInvocationSpec.Order;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.BoundarySpec;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.Direction;
+import org.apache.hadoop.hive.ql.parse.WindowingSpec.WindowType;
+import org.apache.hadoop.hive.ql.plan.VectorPTFDesc;
+import org.apache.hadoop.hive.ql.plan.VectorPTFDesc.SupportedFunctionType;
+import org.apache.hadoop.hive.ql.plan.ptf.BoundaryDef;
+import org.apache.hadoop.hive.ql.plan.ptf.OrderDef;
+import org.apache.hadoop.hive.ql.plan.ptf.OrderExpressionDef;
+import org.apache.hadoop.hive.ql.plan.ptf.WindowFrameDef;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestVectorPTFEvaluatorSliding {
+
+  private static final int INPUT_COLUMN = 0;
+  private static final int OUTPUT_COLUMN = 1;
+  private static final int ORDER_COLUMN = 2;
+
+  private static BoundaryDef preceding(int amt) {
+    return new BoundaryDef(Direction.PRECEDING, amt);
+  }
+
+  private static BoundaryDef unboundedPreceding() {
+    return new BoundaryDef(Direction.PRECEDING, BoundarySpec.UNBOUNDED_AMOUNT);
+  }
+
+  private static BoundaryDef currentRow() {
+    return new BoundaryDef(Direction.CURRENT, 0);
+  }
+
+  private static WindowFrameDef rows(BoundaryDef start, BoundaryDef end) {
+    return new WindowFrameDef(WindowType.ROWS, start, end);
+  }
+
+  private static WindowFrameDef range(int amt, Order order) {
+    WindowFrameDef windowFrameDef = new WindowFrameDef(WindowType.RANGE, preceding(amt), currentRow());
+    OrderExpressionDef orderExpressionDef = new OrderExpressionDef();
+    orderExpressionDef.setOrder(order);
+    OrderDef orderDef = new OrderDef();
+    orderDef.addExpression(orderExpressionDef);
+    windowFrameDef.setOrderDef(orderDef);
+    return windowFrameDef;
+  }
+
+  private static VectorPTFEvaluatorBase longEvaluator(SupportedFunctionType functionType,
+      WindowFrameDef windowFrameDef) {
+    return VectorPTFDesc.getSlidingEvaluator(functionType, windowFrameDef, Type.LONG,
+        new IdentityExpression(INPUT_COLUMN), OUTPUT_COLUMN, ORDER_COLUMN, Type.LONG, 1, null);
+  }
+
+  private static VectorizedRowBatch batch(boolean isDoubleOutput, Long... values) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(3);
+    LongColumnVector inputColVector = new LongColumnVector();
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        inputColVector.noNulls = false;
+        inputColVector.isNull[i] = true;
+      } else {
+        inputColVector.vector[i] = values[i];
+      }
+    }
+    batch.cols[INPUT_COLUMN] = inputColVector;
+    batch.cols[OUTPUT_COLUMN] = (isDoubleOutput ? new DoubleColumnVector() : new LongColumnVector());
+    batch.cols[ORDER_COLUMN] = new LongColumnVector();
+    batch.size = values.length;
+    return batch;
+  }
+
+  // Streams the rows through the evaluator in batches of batchSize and returns the results.
+  private static Long[] evaluateRows(VectorPTFEvaluatorBase evaluator, int batchSize,
+      Long... values) {
+    assertTrue(evaluator.streamsResult());
+    ArrayList<Long> results = new ArrayList<Long>();
+    for (int start = 0; start < values.length; start += batchSize) {
+      Long[] batchValues = new Long[Math.min(batchSize, values.length - start)];
+      System.arraycopy(values, start, batchValues, 0, batchValues.length);
+      VectorizedRowBatch batch = batch(false, batchValues);
+      evaluator.evaluateGroupBatch(batch, false);
+      LongColumnVector outputColVector = (LongColumnVector) batch.cols[OUTPUT_COLUMN];
+      for (int i = 0; i < batch.size; i++) {
+        results.add(outputColVector.isNull[i] ? null : outputColVector.vector[i]);
+      }
+    }
+    return results.toArray(new Long[0]);
+  }
+
+  @Test
+  public void testRowsSum() {
+    VectorPTFEvaluatorBase evaluator =
+        longEvaluator(SupportedFunctionType.SUM, rows(preceding(2), currentRow()));
+    assertArrayEquals(new Long[] {1L, 3L, 6L, 9L, 7L, 10L},
+        evaluateRows(evaluator, 3, 1L, 2L, 3L, 4L, null, 6L));
+
+    // A new partition.
+    evaluator.resetEvaluator();
+    assertArrayEquals(new Long[] {null, 5L, 5L},
+        evaluateRows(evaluator, 2, null, 5L, null));
+  }
+
+  @Test
+  public void testRowsMinMax() {
+    Long[] values = {5L, 1L, 3L, 2L, 0L, 4L, null, null, null, 7L};
+    assertArrayEquals(new Long[] {5L, 5L, 5L, 3L, 3L, 4L, 4L, 4L, null, 7L},
+        evaluateRows(longEvaluator(SupportedFunctionType.MAX, rows(preceding(2), currentRow())),
+            4, values));
+    assertArrayEquals(new Long[] {5L, 1L, 1L, 1L, 0L, 0L, 0L, 0L, 0L, 0L},
+        evaluateRows(longEvaluator(SupportedFunctionType.MIN, rows(unboundedPreceding(), currentRow())),
+            3, values));
+    assertArrayEquals(new Long[] {null, 5L, 1L, 1L, 1L, 0L, 0L, 0L, 4L, null},
+        evaluateRows(longEvaluator(SupportedFunctionType.MIN, rows(preceding(3), preceding(1))),
+            1, values));
+  }
+
+  @Test
+  public void testRowsFirstLastValue() {
+    Long[] values = {5L, null, 3L, 2L};
+    assertArrayEquals(new Long[] {5L, 5L, null, 3L},
+        evaluateRows(longEvaluator(SupportedFunctionType.FIRST_VALUE, rows(preceding(1), currentRow())),
+            3, values));
+    assertArrayEquals(new Long[] {null, 5L, 5L, 5L},
+        evaluateRows(longEvaluator(SupportedFunctionType.FIRST_VALUE, rows(unboundedPreceding(), preceding(1))),
+            2, values));
+    assertArrayEquals(new Long[] {null, null, 5L, null},
+        evaluateRows(longEvaluator(SupportedFunctionType.LAST_VALUE, rows(preceding(3), preceding(2))),
+            3, values));
+  }
+
+  @Test
+  public void testLag() {
+    Long[] values = {5L, 1L, null, 3L};
+    VectorPTFEvaluatorBase evaluator = VectorPTFDesc.getSlidingEvaluator(SupportedFunctionType.LAG,
+        rows(unboundedPreceding(), new BoundaryDef(Direction.FOLLOWING, BoundarySpec.UNBOUNDED_AMOUNT)),
+        Type.LONG, new IdentityExpression(INPUT_COLUMN), OUTPUT_COLUMN, -1, null, 1, -1);
+    assertArrayEquals(new Long[] {-1L, 5L, 1L, null}, evaluateRows(evaluator, 3, values));
+
+    evaluator = VectorPTFDesc.getSlidingEvaluator(SupportedFunctionType.LAG, null,
+        Type.LONG, new IdentityExpression(INPUT_COLUMN), OUTPUT_COLUMN, -1, null, 2, null);
+    assertArrayEquals(new Long[] {null, null, 5L, 1L}, evaluateRows(evaluator, 1, values));
+  }
+
+  @Test
+  public void testRowsAvgAndCount() {
+    VectorPTFEvaluatorBase evaluator =
+        longEvaluator(SupportedFunctionType.AVG, rows(preceding(1), currentRow()));
+    assertEquals(Type.DOUBLE, evaluator.getResultColumnVectorType());
+    VectorizedRowBatch batch = batch(true, 1L, 2L, null, null);
+    evaluator.evaluateGroupBatch(batch, false);
+    DoubleColumnVector outputColVector = (DoubleColumnVector) batch.cols[OUTPUT_COLUMN];
+    assertEquals(1.0, outputColVector.vector[0], 0.0);
+    assertEquals(1.5, outputColVector.vector[1], 0.0);
+    assertEquals(2.0, outputColVector.vector[2], 0.0);
+    assertTrue(outputColVector.isNull[3]);
+
+    evaluator = VectorPTFDesc.getSlidingEvaluator(SupportedFunctionType.COUNT,
+        rows(preceding(2), currentRow()), Type.LONG, null, OUTPUT_COLUMN, -1, null, 1, null);
+    assertArrayEquals(new Long[] {1L, 2L, 3L, 3L},
+        evaluateRows(evaluator, 3, 1L, null, null, 4L));
+    evaluator = longEvaluator(SupportedFunctionType.COUNT, rows(preceding(2), currentRow()));
+    assertArrayEquals(new Long[] {1L, 1L, 1L, 1L},
+        evaluateRows(evaluator, 3, 1L, null, null, 4L));
+  }
+
+  @Test
+  public void testRowsRingGrowth() {
+    final int rowCount = 1000;
+    Long[] values = new Long[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      values[i] = (long) ((i * 7919) % 101);
+    }
+    final int amt = 50;
+    Long[] maxs = evaluateRows(
+        longEvaluator(SupportedFunctionType.MAX, rows(preceding(amt), currentRow())), 64, values);
+    Long[] sums = evaluateRows(
+        longEvaluator(SupportedFunctionType.SUM, rows(preceding(amt), currentRow())), 64, values);
+    for (int i = 0; i < rowCount; i++) {
+      long max = Long.MIN_VALUE;
+      long sum = 0;
+      for (int j = Math.max(0, i - amt); j <= i; j++) {
+        max = Math.max(max, values[j]);
+        sum += values[j];
+      }
+      assertEquals(max, (long) maxs[i]);
+      assertEquals(sum, (long) sums[i]);
+    }
+  }
+
+  // Evaluates one RANGE group, whose rows all have the ORDER BY value, in one batch per value.
+  private static void evaluateRangeGroup(VectorPTFEvaluatorBase evaluator, Long orderValue,
+      Long... values) {
+    for (int i = 0; i < values.length; i++) {
+      VectorizedRowBatch batch = batch(false, values[i]);
+      ColumnVector orderColVector = batch.cols[ORDER_COLUMN];
+      orderColVector.isRepeating = true;
+      if (orderValue == null) {
+        orderColVector.noNulls = false;
+        orderColVector.isNull[0] = true;
+      } else {
+        ((LongColumnVector) orderColVector).vector[0] = orderValue;
+      }
+      evaluator.evaluateGroupBatch(batch, i == values.length - 1);
+    }
+  }
+
+  @Test
+  public void testRange() {
+    VectorPTFEvaluatorBase evaluator =
+        longEvaluator(SupportedFunctionType.SUM, range(2, Order.ASC));
+    assertFalse(evaluator.streamsResult());
+    evaluateRangeGroup(evaluator, null, 100L);
+    assertEquals(100, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 1L, 1L, 2L);
+    assertEquals(3, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 2L, 3L, null);
+    assertEquals(6, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 4L, 10L);
+    assertEquals(13, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 7L, (Long) null);
+    assertTrue(evaluator.isGroupResultNull());
+
+    evaluator = longEvaluator(SupportedFunctionType.MAX, range(1, Order.DESC));
+    evaluateRangeGroup(evaluator, 9L, 4L, 8L);
+    assertEquals(8, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 8L, 5L);
+    assertEquals(8, evaluator.getLongGroupResult());
+    evaluateRangeGroup(evaluator, 7L, 6L, 1L);
+    assertEquals(6, evaluator.getLongGroupResult());
+
+    evaluator = VectorPTFDesc.getSlidingEvaluator(SupportedFunctionType.COUNT, range(1, Order.ASC),
+        Type.LONG, null, OUTPUT_COLUMN, ORDER_COLUMN, Type.LONG, 1, null);
+    evaluateRangeGroup(evaluator, 1L, 1L, null);
+    evaluateRangeGroup(evaluator, 2L, (Long) null);
+    assertEquals(3, evaluator.getLongGroupResult());
+  }
+}
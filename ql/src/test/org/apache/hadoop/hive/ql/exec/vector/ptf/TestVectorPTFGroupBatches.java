@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.ptf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestVectorPTFGroupBatches {
+
+  private static final int KEY_COLUMN = 0;
+  private static final int LONG_COLUMN = 1;
+  private static final int STRING_COLUMN = 2;
+  private static final long KEY = 7;
+  private static final int BATCH_SIZE = 100;
+
+  /*
+   * Captures the rows that the group batches forward, since the forwarded batches are reused.
+   */
+  private static class CapturingVectorPTFOperator extends VectorPTFOperator {
+    private final List<Integer> batchSizes = new ArrayList<Integer>();
+    private final List<Long> longValues = new ArrayList<Long>();
+    private final List<String> stringValues = new ArrayList<String>();
+
+    CapturingVectorPTFOperator() {
+      super(new CompilationOpContext());
+    }
+
+    @Override
+    public void forward(Object row, ObjectInspector rowInspector) throws HiveException {
+      VectorizedRowBatch batch = (VectorizedRowBatch) row;
+      LongColumnVector keyColVector = (LongColumnVector) batch.cols[KEY_COLUMN];
+      LongColumnVector longColVector = (LongColumnVector) batch.cols[LONG_COLUMN];
+      BytesColumnVector stringColVector = (BytesColumnVector) batch.cols[STRING_COLUMN];
+      batchSizes.add(batch.size);
+      for (int logical = 0; logical < batch.size; logical++) {
+        final int batchIndex = (batch.selectedInUse ? batch.selected[logical] : logical);
+        assertEquals(KEY, keyColVector.vector[keyColVector.isRepeating ? 0 : batchIndex]);
+        longValues.add(longColVector.vector[batchIndex]);
+        stringValues.add(new String(stringColVector.vector[batchIndex],
+            stringColVector.start[batchIndex], stringColVector.length[batchIndex],
+            StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  private static String stringValue(long value) {
+    return String.format("row-%016d", value);
+  }
+
+  private static VectorizedRowBatch newReducerBatch() {
+    VectorizedRowBatch batch = new VectorizedRowBatch(3);
+    batch.cols[KEY_COLUMN] = new LongColumnVector();
+    batch.cols[LONG_COLUMN] = new LongColumnVector();
+    batch.cols[STRING_COLUMN] = new BytesColumnVector();
+    return batch;
+  }
+
+  private static void fillReducerBatch(VectorizedRowBatch batch, long firstValue) {
+    batch.reset();
+    LongColumnVector keyColVector = (LongColumnVector) batch.cols[KEY_COLUMN];
+    keyColVector.isRepeating = true;
+    keyColVector.vector[0] = KEY;
+    LongColumnVector longColVector = (LongColumnVector) batch.cols[LONG_COLUMN];
+    BytesColumnVector stringColVector = (BytesColumnVector) batch.cols[STRING_COLUMN];
+    stringColVector.initBuffer();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      longColVector.vector[i] = firstValue + i;
+      stringColVector.setVal(i, stringValue(firstValue + i).getBytes(StandardCharsets.UTF_8));
+    }
+    batch.size = BATCH_SIZE;
+  }
+
+  /*
+   * Buffers groupBatchCount batches of one group, ends the group with one more batch, and checks
+   * that all the rows are forwarded in order.
+   *
+   * @return the sizes of the forwarded batches
+   */
+  private static List<Integer> bufferAndForwardGroup(HiveConf hconf, int maxBufferedBatchCount,
+      int groupBatchCount) throws HiveException {
+    TypeInfo[] reducerBatchTypeInfos = new TypeInfo[] {
+        TypeInfoFactory.longTypeInfo, TypeInfoFactory.longTypeInfo, TypeInfoFactory.stringTypeInfo };
+    VectorPTFGroupBatches groupBatches = new VectorPTFGroupBatches(hconf, maxBufferedBatchCount);
+    groupBatches.init(
+        reducerBatchTypeInfos,
+        new VectorPTFEvaluatorBase[0],
+        /* outputProjectionColumnMap */ new int[] {KEY_COLUMN, LONG_COLUMN, STRING_COLUMN},
+        /* outputTypeInfos */ new TypeInfo[0],
+        /* keyInputColumnMap */ new int[] {KEY_COLUMN},
+        /* nonKeyInputColumnMap */ new int[] {LONG_COLUMN, STRING_COLUMN},
+        /* streamingEvaluatorNums */ new int[0],
+        newReducerBatch());
+
+    // The reducer reuses its batch.
+    CapturingVectorPTFOperator vecPTFOperator = new CapturingVectorPTFOperator();
+    VectorizedRowBatch batch = newReducerBatch();
+    long value = 0;
+    for (int i = 0; i < groupBatchCount; i++) {
+      fillReducerBatch(batch, value);
+      groupBatches.evaluateGroupBatch(batch, false);
+      groupBatches.bufferGroupBatch(batch);
+      value += BATCH_SIZE;
+    }
+    fillReducerBatch(batch, value);
+    groupBatches.evaluateGroupBatch(batch, true);
+    groupBatches.fillGroupResultsAndForward(vecPTFOperator, batch);
+    value += BATCH_SIZE;
+
+    assertEquals(value, vecPTFOperator.longValues.size());
+    for (int i = 0; i < value; i++) {
+      assertEquals(i, (long) vecPTFOperator.longValues.get(i));
+      assertEquals(stringValue(i), vecPTFOperator.stringValues.get(i));
+    }
+    return vecPTFOperator.batchSizes;
+  }
+
+  private static long batchBytes() {
+    // 16 bytes per long, 12 bytes per string and its characters, as estimated for the budget.
+    return BATCH_SIZE * (16 + 12 + stringValue(0).length());
+  }
+
+  @Test
+  public void testBufferedInMemory() throws HiveException {
+    HiveConf hconf = new HiveConf();
+    List<Integer> batchSizes = bufferAndForwardGroup(hconf, 25, 5);
+    // Each buffered batch is forwarded on its own, then the last one.
+    assertEquals(Arrays.asList(100, 100, 100, 100, 100, 100), batchSizes);
+  }
+
+  @Test
+  public void testSpillOverBatchCount() throws HiveException {
+    HiveConf hconf = new HiveConf();
+    List<Integer> batchSizes = bufferAndForwardGroup(hconf, 2, 5);
+    // The 3 oldest batches are spilled, and read back into one overflow batch.
+    assertEquals(Arrays.asList(300, 100, 100, 100), batchSizes);
+  }
+
+  @Test
+  public void testSpillOverMemoryBytes() throws HiveException {
+    HiveConf hconf = new HiveConf();
+    // Room for 2 buffered batches, but not 3.
+    HiveConf.setLongVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BYTES,
+        batchBytes() * 2 + batchBytes() / 2);
+    List<Integer> batchSizes = bufferAndForwardGroup(hconf, 25, 5);
+    assertEquals(Arrays.asList(300, 100, 100, 100), batchSizes);
+
+    // A batch over the budget on its own is still buffered, once the others are spilled.
+    HiveConf.setLongVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BYTES,
+        batchBytes() / 2);
+    batchSizes = bufferAndForwardGroup(hconf, 25, 5);
+    assertEquals(Arrays.asList(400, 100, 100), batchSizes);
+  }
+
+  @Test
+  public void testSpillMoreThanOverflowBatch() throws HiveException {
+    HiveConf hconf = new HiveConf();
+    HiveConf.setLongVar(hconf, HiveConf.ConfVars.HIVE_VECTORIZATION_PTF_MAX_MEMORY_BUFFERING_BYTES,
+        batchBytes());
+    List<Integer> batchSizes = bufferAndForwardGroup(hconf, 25, 12);
+    // 11 spilled batches are read back in full overflow batches.
+    assertEquals(Arrays.asList(VectorizedRowBatch.DEFAULT_SIZE,
+        11 * BATCH_SIZE - VectorizedRowBatch.DEFAULT_SIZE, 100, 100), batchSizes);
+  }
+}
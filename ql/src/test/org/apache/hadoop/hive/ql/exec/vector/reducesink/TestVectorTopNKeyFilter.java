@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.reducesink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.util.FakeCaptureOutputOperator;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.MapWork;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.VectorReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.VectorReduceSinkInfo;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestVectorTopNKeyFilter {
+
+  private static VectorizedRowBatch longBatch(Long... values) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    LongColumnVector colVector = new LongColumnVector();
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        colVector.noNulls = false;
+        colVector.isNull[i] = true;
+      } else {
+        colVector.vector[i] = values[i];
+      }
+    }
+    batch.cols[0] = colVector;
+    batch.size = values.length;
+    return batch;
+  }
+
+  private static long[] selectedValues(VectorizedRowBatch batch) {
+    long[] result = new long[batch.size];
+    for (int i = 0; i < batch.size; i++) {
+      int batchIndex = batch.selectedInUse ? batch.selected[i] : i;
+      result[i] = ((LongColumnVector) batch.cols[0]).vector[batchIndex];
+    }
+    return result;
+  }
+
+  // Applies the filter result to the batch the way the reduce sink does.
+  private static void filter(VectorTopNKeyFilter filter, VectorizedRowBatch batch) {
+    int[] selected = new int[batch.selected.length];
+    int newSize = filter.filter(batch, selected);
+    batch.selected = selected;
+    batch.size = newSize;
+    batch.selectedInUse = true;
+  }
+
+  private static VectorTopNKeyFilter longFilter(int topN, boolean isDistinct,
+      boolean isDescending, boolean isNullLast) {
+    return VectorTopNKeyFilter.create(topN, isDistinct, 0, TypeInfoFactory.longTypeInfo,
+        isDescending, isNullLast, null, null);
+  }
+
+  @Test
+  public void testAscending() {
+    VectorTopNKeyFilter filter = longFilter(3, false, false, false);
+    VectorizedRowBatch batch = longBatch(10L, 5L, 7L, 12L, 3L, 7L, 20L, 6L);
+    filter(filter, batch);
+    // 12 comes after 10, 5 and 7; 20 comes after 5, 7 and 3.
+    assertArrayEquals(new long[] {10, 5, 7, 3, 7, 6}, selectedValues(batch));
+    assertEquals(2, filter.getFilteredCount());
+
+    // The state carries over to the next batch.
+    batch = longBatch(7L, 8L, 1L);
+    filter(filter, batch);
+    assertArrayEquals(new long[] {1}, selectedValues(batch));
+    assertEquals(4, filter.getFilteredCount());
+  }
+
+  @Test
+  public void testDescending() {
+    VectorTopNKeyFilter filter = longFilter(2, false, true, true);
+    VectorizedRowBatch batch = longBatch(1L, 5L, 3L, 5L, 4L, 6L);
+    filter(filter, batch);
+    assertArrayEquals(new long[] {1, 5, 3, 5, 6}, selectedValues(batch));
+  }
+
+  @Test
+  public void testDistinct() {
+    VectorTopNKeyFilter filter = longFilter(2, true, false, false);
+    VectorizedRowBatch batch = longBatch(5L, 5L, 5L, 7L, 7L, 9L, 6L, 7L);
+    filter(filter, batch);
+    // Duplicates of kept values pass, they are the same group.
+    assertArrayEquals(new long[] {5, 5, 5, 7, 7, 6}, selectedValues(batch));
+
+    filter = longFilter(2, false, false, false);
+    batch = longBatch(5L, 5L, 5L, 7L);
+    filter(filter, batch);
+    assertArrayEquals(new long[] {5, 5, 5}, selectedValues(batch));
+  }
+
+  @Test
+  public void testNulls() {
+    VectorTopNKeyFilter filter = longFilter(1, false, false, false);
+    VectorizedRowBatch batch = longBatch(3L, null, 4L, null);
+    filter(filter, batch);
+    // NULLs sort first, so they are always in the top N.
+    assertArrayEquals(new int[] {0, 1, 3}, Arrays.copyOf(batch.selected, batch.size));
+
+    filter = longFilter(1, false, false, true);
+    batch = longBatch(null, 3L, null, 2L);
+    filter(filter, batch);
+    // The first NULL comes before any value is known.
+    assertArrayEquals(new int[] {0, 1, 3}, Arrays.copyOf(batch.selected, batch.size));
+  }
+
+  @Test
+  public void testDouble() {
+    VectorTopNKeyFilter filter = VectorTopNKeyFilter.create(2, false, 0,
+        TypeInfoFactory.doubleTypeInfo, false, false, null, null);
+    VectorizedRowBatch batch = new VectorizedRowBatch(1);
+    DoubleColumnVector colVector = new DoubleColumnVector();
+    double[] values = {0.5, -1.5, Double.NaN, -0.0, 2.0, -3.0};
+    System.arraycopy(values, 0, colVector.vector, 0, values.length);
+    batch.cols[0] = colVector;
+    batch.size = values.length;
+    filter(filter, batch);
+    assertArrayEquals(new int[] {0, 1, 3, 5}, Arrays.copyOf(batch.selected, batch.size));
+  }
+
+  @Test
+  public void testPartitioned() {
+    VectorTopNKeyFilter filter = VectorTopNKeyFilter.create(1, true, 1,
+        TypeInfoFactory.intTypeInfo, false, false,
+        new int[] {0}, new ColumnVector.Type[] {ColumnVector.Type.BYTES});
+    VectorizedRowBatch batch = new VectorizedRowBatch(2);
+    BytesColumnVector partColVector = new BytesColumnVector();
+    partColVector.initBuffer();
+    String[] partitions = {"a", "b", "a", "b", "a", "c"};
+    for (int i = 0; i < partitions.length; i++) {
+      partColVector.setVal(i, partitions[i].getBytes(StandardCharsets.UTF_8));
+    }
+    LongColumnVector keyColVector = new LongColumnVector();
+    long[] keys = {4, 8, 2, 9, 3, 100};
+    System.arraycopy(keys, 0, keyColVector.vector, 0, keys.length);
+    batch.cols[0] = partColVector;
+    batch.cols[1] = keyColVector;
+    batch.size = keys.length;
+    filter(filter, batch);
+    assertArrayEquals(new int[] {0, 1, 2, 5}, Arrays.copyOf(batch.selected, batch.size));
+  }
+
+  @Test
+  public void testUnsupported() {
+    assertNull(VectorTopNKeyFilter.create(10, false, 0, TypeInfoFactory.stringTypeInfo,
+        false, false, null, null));
+    assertNull(VectorTopNKeyFilter.create(10, false, 0, TypeInfoFactory.intTypeInfo,
+        false, false, new int[] {1}, new ColumnVector.Type[] {ColumnVector.Type.DECIMAL}));
+    assertNull(VectorTopNKeyFilter.create(0, false, 0, TypeInfoFactory.intTypeInfo,
+        false, false, null, null));
+    assertTrue(VectorTopNKeyFilter.create(10, false, 0, TypeInfoFactory.dateTypeInfo,
+        false, false, null, null) != null);
+  }
+
+  @Test
+  public void testBatchSharedWithSibling() throws HiveException {
+    HiveConf hconf = new HiveConf();
+    HiveConf.setBoolVar(hconf,
+        HiveConf.ConfVars.HIVE_VECTORIZATION_REDUCESINK_TOPN_FILTER_ENABLED, true);
+    // The reduce sink names its task after the work, for debug logging.
+    HiveConf.setVar(hconf, HiveConf.ConfVars.PLAN, "//tmp");
+    Utilities.setMapWork(hconf, new MapWork());
+
+    ReduceSinkDesc desc = new ReduceSinkDesc();
+    Properties keyProperties = new Properties();
+    keyProperties.setProperty(serdeConstants.SERIALIZATION_SORT_ORDER, "+");
+    TableDesc keyTableDesc = new TableDesc();
+    keyTableDesc.setProperties(keyProperties);
+    desc.setKeySerializeInfo(keyTableDesc);
+    desc.setTag(-1);
+    desc.setTopN(2);
+    desc.setTopNMemoryUsage(0.1f);
+
+    VectorReduceSinkInfo vectorReduceSinkInfo = new VectorReduceSinkInfo();
+    vectorReduceSinkInfo.setReduceSinkKeyColumnMap(new int[] {0});
+    vectorReduceSinkInfo.setReduceSinkKeyTypeInfos(
+        new TypeInfo[] {TypeInfoFactory.longTypeInfo});
+    vectorReduceSinkInfo.setReduceSinkKeyColumnVectorTypes(
+        new ColumnVector.Type[] {ColumnVector.Type.LONG});
+    VectorReduceSinkDesc vectorDesc = new VectorReduceSinkDesc();
+    vectorDesc.setVectorReduceSinkInfo(vectorReduceSinkInfo);
+    vectorDesc.setIsEmptyValue(true);
+
+    CompilationOpContext ctx = new CompilationOpContext();
+    VectorReduceSinkLongOperator reduceSink =
+        new VectorReduceSinkLongOperator(ctx, desc, null, vectorDesc);
+    reduceSink.initialize(hconf, null);
+    FakeCaptureOutputOperator sibling = new FakeCaptureOutputOperator(ctx);
+    sibling.initialize(hconf, null);
+
+    // The parent hands the same batch to both children, the reduce sink first.
+    VectorizedRowBatch batch = longBatch(10L, 5L, 7L, 12L, 3L, 7L, 20L, 6L);
+    reduceSink.process(batch, 0);
+    assertEquals(4, reduceSink.topNKeyFilter.getFilteredCount());
+    assertEquals(8, batch.size);
+    assertFalse(batch.selectedInUse);
+    sibling.process(batch, 0);
+    assertArrayEquals(new long[] {10, 5, 7, 12, 3, 7, 20, 6}, selectedValues(batch));
+
+    batch = longBatch(7L, 8L, 1L, 2L);
+    batch.selectedInUse = true;
+    batch.selected[0] = 3;
+    batch.selected[1] = 0;
+    batch.selected[2] = 1;
+    batch.size = 3;
+    reduceSink.process(batch, 0);
+    assertEquals(6, reduceSink.topNKeyFilter.getFilteredCount());
+    sibling.process(batch, 0);
+    assertArrayEquals(new long[] {2, 7, 8}, selectedValues(batch));
+    assertEquals(2, sibling.getCapturedRows().size());
+
+    reduceSink.close(false);
+  }
+}
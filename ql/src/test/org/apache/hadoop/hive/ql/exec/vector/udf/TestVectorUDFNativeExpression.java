@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.udf;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.exec.vector.udf.generic.GenericUDFVectorizedAdd;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+/*
+ * Test that custom generic UDFs implementing VectorizedUDF are evaluated
+ * natively on the column vectors instead of through the VectorUDFAdaptor.
+ */
+public class TestVectorUDFNativeExpression {
+
+  private static ExprNodeGenericFuncDesc getAddDesc(ExprNodeDesc right) {
+    TypeInfo typeInfo = TypeInfoFactory.longTypeInfo;
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+    children.add(new ExprNodeColumnDesc(typeInfo, "col0", "tablename", false));
+    children.add(right);
+    return new ExprNodeGenericFuncDesc(typeInfo, new GenericUDFVectorizedAdd(), "myadd",
+        children);
+  }
+
+  private static VectorizedRowBatch getBatch(int columns) {
+    VectorizedRowBatch b = new VectorizedRowBatch(columns);
+    for (int i = 0; i < columns; i++) {
+      b.cols[i] = new LongColumnVector();
+    }
+    LongColumnVector in = (LongColumnVector) b.cols[0];
+    in.vector[0] = 0;
+    in.vector[1] = 1;
+    in.vector[2] = 2;
+    b.size = 3;
+    return b;
+  }
+
+  @Test
+  public void testColumnColumn() throws Exception {
+    TypeInfo typeInfo = TypeInfoFactory.longTypeInfo;
+    VectorizationContext vc =
+        new VectorizationContext("name", Arrays.asList("col0", "col1"));
+    VectorExpression ve = vc.getVectorExpression(
+        getAddDesc(new ExprNodeColumnDesc(typeInfo, "col1", "tablename", false)));
+    assertTrue(ve instanceof VectorUDFNativeExpression);
+    assertNull(ve.getChildExpressions());
+
+    VectorizedRowBatch b = getBatch(3);
+    LongColumnVector in = (LongColumnVector) b.cols[1];
+    in.vector[0] = 10;
+    in.vector[1] = 20;
+    in.vector[2] = 30;
+    ve.evaluate(b);
+    LongColumnVector out = (LongColumnVector) b.cols[ve.getOutputColumnNum()];
+    assertTrue(out.noNulls);
+    assertFalse(out.isRepeating);
+    assertEquals(10, out.vector[0]);
+    assertEquals(21, out.vector[1]);
+    assertEquals(32, out.vector[2]);
+
+    // with nulls and a selected row subset
+    b = getBatch(3);
+    b.cols[0].noNulls = false;
+    b.cols[0].isNull[0] = true;
+    b.selectedInUse = true;
+    b.selected[0] = 0;
+    b.selected[1] = 2;
+    b.size = 2;
+    ve.evaluate(b);
+    out = (LongColumnVector) b.cols[ve.getOutputColumnNum()];
+    assertFalse(out.noNulls);
+    assertTrue(out.isNull[0]);
+    assertFalse(out.isNull[2]);
+    assertEquals(2, out.vector[2]);
+  }
+
+  @Test
+  public void testColumnConstant() throws Exception {
+    VectorizationContext vc = new VectorizationContext("name", Arrays.asList("col0"));
+    VectorExpression ve = vc.getVectorExpression(
+        getAddDesc(new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 100L)));
+    assertTrue(ve instanceof VectorUDFNativeExpression);
+
+    // the constant is evaluated into a repeating scratch column
+    VectorizedRowBatch b = getBatch(3);
+    ve.evaluate(b);
+    LongColumnVector out = (LongColumnVector) b.cols[ve.getOutputColumnNum()];
+    assertTrue(out.noNulls);
+    assertEquals(100, out.vector[0]);
+    assertEquals(101, out.vector[1]);
+    assertEquals(102, out.vector[2]);
+
+    // with the input column repeating
+    b = getBatch(3);
+    b.cols[0].isRepeating = true;
+    ((LongColumnVector) b.cols[0]).vector[0] = 7;
+    ve.evaluate(b);
+    out = (LongColumnVector) b.cols[ve.getOutputColumnNum()];
+    assertTrue(out.isRepeating);
+    assertTrue(out.noNulls);
+    assertEquals(107, out.vector[0]);
+  }
+}
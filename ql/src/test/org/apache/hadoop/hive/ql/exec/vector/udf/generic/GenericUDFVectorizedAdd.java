@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.udf.generic;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.VectorizedUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+@Description(name = "myadd",
+value = "_FUNC_(a, b) - Returns a + b for bigint a and b")
+/*
+ * A custom generic UDF that is also evaluated a batch at a time, for test purposes.
+ */
+public class GenericUDFVectorizedAdd extends GenericUDF implements VectorizedUDF {
+  private transient PrimitiveObjectInspector[] argumentOIs;
+  private final LongWritable result = new LongWritable();
+
+  @Override
+  public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+    if (arguments.length != 2) {
+      throw new UDFArgumentLengthException("The function 'MYADD' accepts 2 arguments.");
+    }
+    argumentOIs = new PrimitiveObjectInspector[] {
+        (PrimitiveObjectInspector) arguments[0], (PrimitiveObjectInspector) arguments[1]};
+    return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+  }
+
+  @Override
+  public Object evaluate(DeferredObject[] arguments) throws HiveException {
+    Object a = arguments[0].get();
+    Object b = arguments[1].get();
+    if (a == null || b == null) {
+      return null;
+    }
+    result.set(PrimitiveObjectInspectorUtils.getLong(a, argumentOIs[0]) +
+        PrimitiveObjectInspectorUtils.getLong(b, argumentOIs[1]));
+    return result;
+  }
+
+  @Override
+  public void evaluateBatch(ColumnVector[] arguments, boolean selectedInUse, int[] selected,
+      int size, ColumnVector result) throws HiveException {
+    LongColumnVector a = (LongColumnVector) arguments[0];
+    LongColumnVector b = (LongColumnVector) arguments[1];
+    LongColumnVector out = (LongColumnVector) result;
+    if (a.isRepeating && b.isRepeating) {
+      out.isRepeating = true;
+      out.noNulls = (a.noNulls || !a.isNull[0]) && (b.noNulls || !b.isNull[0]);
+      out.isNull[0] = !out.noNulls;
+      out.vector[0] = a.vector[0] + b.vector[0];
+      return;
+    }
+    out.isRepeating = false;
+    out.noNulls = a.noNulls && b.noNulls;
+    for (int j = 0; j < size; j++) {
+      final int i = (selectedInUse ? selected[j] : j);
+      final int ai = (a.isRepeating ? 0 : i);
+      final int bi = (b.isRepeating ? 0 : i);
+      out.isNull[i] = (!a.noNulls && a.isNull[ai]) || (!b.noNulls && b.isNull[bi]);
+      out.vector[i] = a.vector[ai] + b.vector[bi];
+    }
+  }
+
+  @Override
+  public String getDisplayString(String[] children) {
+    return getStandardDisplayString("myadd", children);
+  }
+}
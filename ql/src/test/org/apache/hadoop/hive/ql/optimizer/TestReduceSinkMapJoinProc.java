@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.hive.metastore.api.hive_metastoreConstants;
+import org.apache.hadoop.hive.ql.CompilationOpContext;
+import org.apache.hadoop.hive.ql.Context;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.ReduceSinkOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Task;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.GenTezProcContext;
+import org.apache.hadoop.hive.ql.parse.ParseContext;
+import org.apache.hadoop.hive.ql.parse.SemanticAnalyzer;
+import org.apache.hadoop.hive.ql.plan.DynamicPruningEventDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.ReduceSinkDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReduceSinkMapJoinProc {
+
+  private HiveConf conf;
+  private CompilationOpContext cCtx;
+  private TableScanOperator smallTs;
+  private TableScanOperator bigTs;
+  private ReduceSinkOperator smallRs;
+  private MapJoinDesc joinConf;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HiveConf(SemanticAnalyzer.class);
+    SessionState.start(conf);
+    cCtx = new CompilationOpContext();
+
+    smallTs = (TableScanOperator) OperatorFactory.get(cCtx,
+        new TableScanDesc("small", newTable("small", true)));
+    ExprNodeDesc key = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "key", "small", false);
+    ReduceSinkDesc rsDesc = new ReduceSinkDesc();
+    rsDesc.setKeyCols(new ArrayList<ExprNodeDesc>(Arrays.asList(key)));
+    smallRs = (ReduceSinkOperator) OperatorFactory.getAndMakeChild(rsDesc, smallTs);
+    bigTs = (TableScanOperator) OperatorFactory.get(cCtx,
+        new TableScanDesc("big", newTable("big", false)));
+
+    joinConf = new MapJoinDesc();
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<Byte, List<ExprNodeDesc>>();
+    keys.put((byte) 0, Arrays.asList(key));
+    keys.put((byte) 1, Arrays.asList(key));
+    joinConf.setKeys(keys);
+    joinConf.setKeyTblDesc(Utilities.defaultTd);
+    List<TableDesc> valueTblDescs = Arrays.asList(Utilities.defaultTd, Utilities.defaultTd);
+    joinConf.setValueTblDescs(valueTblDescs);
+    joinConf.setValueFilteredTblDescs(valueTblDescs);
+  }
+
+  private static Table newTable(String tableName, boolean isTransactional) {
+    org.apache.hadoop.hive.metastore.api.Table tTable =
+        new org.apache.hadoop.hive.metastore.api.Table();
+    tTable.setDbName("default");
+    tTable.setTableName(tableName);
+    tTable.setSd(new StorageDescriptor());
+    tTable.setPartitionKeys(new ArrayList<FieldSchema>());
+    tTable.setParameters(new HashMap<String, String>());
+    if (isTransactional) {
+      tTable.getParameters().put(hive_metastoreConstants.TABLE_IS_TRANSACTIONAL, "true");
+    }
+    return new Table(tTable);
+  }
+
+  @SuppressWarnings("unchecked")
+  private GenTezProcContext newContext() throws IOException {
+    ParseContext pctx = new ParseContext();
+    pctx.setContext(new Context(conf));
+    HashMap<String, TableScanOperator> topOps = new HashMap<String, TableScanOperator>();
+    topOps.put("small", smallTs);
+    topOps.put("big", bigTs);
+    pctx.setTopOps(topOps);
+    return new GenTezProcContext(conf, pctx, Collections.EMPTY_LIST,
+        new ArrayList<Task<? extends Serializable>>(), Collections.EMPTY_SET,
+        Collections.EMPTY_SET);
+  }
+
+  @Test
+  public void testSharedSource() throws Exception {
+    ReduceSinkMapJoinProc.setSharedSource(newContext(), joinConf, 0, smallRs);
+    assertEquals("default.small", joinConf.getParentToSharedTable().get(0));
+    assertTrue(joinConf.getParentToSharedSource().get(0).contains(" TS default.small "));
+  }
+
+  @Test
+  public void testNoSharedSourceForDynamicPruningTarget() throws Exception {
+    // The big table side prunes the partitions of the small table at runtime
+    DynamicPruningEventDesc eventDesc = new DynamicPruningEventDesc();
+    eventDesc.setTableScan(smallTs);
+    OperatorFactory.getAndMakeChild(eventDesc, bigTs);
+    GenTezProcContext context = newContext();
+    assertTrue(context.dynamicPruningTableScans.contains(smallTs));
+
+    ReduceSinkMapJoinProc.setSharedSource(context, joinConf, 0, smallRs);
+    assertTrue(joinConf.getParentToSharedTable().isEmpty());
+    assertTrue(joinConf.getParentToSharedSource().isEmpty());
+  }
+}
@@ -46,6 +46,7 @@
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -288,6 +289,8 @@ private enum TXN_STATUS {
   private TXN_STATUS transactionStatus = TXN_STATUS.NO_STATE;
   private Pattern partitionValidationPattern;
   private Counter directSqlErrors;
+  /** The IDs of the notification events added in the current transaction from the ID block. */
+  private final List<Long> uncommittedEventIds = new ArrayList<>();
 
   /**
    * A Autocloseable wrapper around Query class to pass the Query object to the caller and let the caller release
@@ -682,6 +685,7 @@ public PersistenceManager getPersistenceManager() {
   @Override
   public void shutdown() {
     LOG.debug("RawStore: {}, with PersistenceManager: {} will be shutdown", this, pm);
+    releaseEventIds();
     if (pm != null) {
       pm.close();
       pm = null;
@@ -749,6 +753,7 @@ public boolean commitTransaction() {
     if ((openTrasactionCalls == 0) && currentTransaction.isActive()) {
       transactionStatus = TXN_STATUS.COMMITED;
       currentTransaction.commit();
+      releaseEventIds();
     }
     return true;
   }
@@ -783,6 +788,7 @@ public void rollbackTransaction() {
     } finally {
       openTrasactionCalls = 0;
       transactionStatus = TXN_STATUS.ROLLBACK;
+      releaseEventIds();
       // remove all detached objects from the cache, since the transaction is
       // being rolled back they are no longer relevant, and this prevents them
       // from reattaching in future transactions
@@ -8750,18 +8756,24 @@ public NotificationEventResponse getNextNotification(NotificationEventRequest rq
     NotificationEventResponse result = new NotificationEventResponse();
     result.setEvents(new ArrayList<>());
     try {
+      // Don't return the events past one that this metastore hasn't committed yet.
+      long maxEvent = getNotificationReadLimit();
       openTransaction();
       long lastEvent = rqst.getLastEvent();
-      query = pm.newQuery(MNotificationLog.class, "eventId > lastEvent");
-      query.declareParameters("java.lang.Long lastEvent");
+      query = pm.newQuery(MNotificationLog.class, "eventId > lastEvent && eventId < maxEvent");
+      query.declareParameters("java.lang.Long lastEvent, java.lang.Long maxEvent");
       query.setOrdering("eventId ascending");
-      Collection<MNotificationLog> events = (Collection) query.execute(lastEvent);
+      int maxEvents = rqst.getMaxEvents() > 0 ? rqst.getMaxEvents() : Integer.MAX_VALUE;
+      if (rqst.getMaxEvents() > 0) {
+        // Don't read the whole tail of the log from the DB when only a batch is needed.
+        query.setRange(0, maxEvents);
+      }
+      Collection<MNotificationLog> events = (Collection) query.execute(lastEvent, maxEvent);
       commited = commitTransaction();
       if (events == null) {
         return result;
       }
       Iterator<MNotificationLog> i = events.iterator();
-      int maxEvents = rqst.getMaxEvents() > 0 ? rqst.getMaxEvents() : Integer.MAX_VALUE;
       int numEvents = 0;
       while (i.hasNext() && numEvents++ < maxEvents) {
         result.addToEvents(translateDbToThrift(i.next()));
@@ -8772,7 +8784,7 @@ public NotificationEventResponse getNextNotification(NotificationEventRequest rq
     }
   }
 
-  private void prepareQuotes() throws SQLException {
+  private void prepareQuotes(PersistenceManager pm) throws SQLException {
     if (dbType == DatabaseProduct.MYSQL) {
       assert pm.currentTransaction().isActive();
       JDOConnection jdoConn = pm.getDataStoreConnection();
@@ -8789,11 +8801,11 @@ private void prepareQuotes() throws SQLException {
     }
   }
 
-  private void lockForUpdate() throws MetaException {
+  private void lockForUpdate(PersistenceManager pm) throws MetaException {
     String selectQuery = "select \"NEXT_EVENT_ID\" from \"NOTIFICATION_SEQUENCE\"";
     String selectForUpdateQuery = sqlGenerator.addForUpdateClause(selectQuery);
     new RetryingExecutor(conf, () -> {
-      prepareQuotes();
+      prepareQuotes(pm);
       Query query = pm.newQuery("javax.jdo.query.SQL", selectForUpdateQuery);
       query.setUnique(true);
       // only need to execute it to get db Lock
@@ -8857,13 +8869,173 @@ public long getSleepInterval() {
     }
   }
 
+  /**
+   * The notification event IDs that this metastore has taken from NOTIFICATION_SEQUENCE in
+   * advance, with the IDs of the events that are not committed yet.
+   */
+  static class NotificationIdBlock {
+    /** The IDs of the block that are not used yet are [nextId, endId). */
+    private long nextId = 0, endId = 0;
+    private final TreeSet<Long> uncommitted = new TreeSet<>();
+
+    synchronized long take(ObjectStore store, int blockSize) throws MetaException {
+      if (nextId == endId) {
+        nextId = store.allocateNotificationEventIds(blockSize);
+        endId = nextId + blockSize;
+      }
+      long eventId = nextId++;
+      uncommitted.add(eventId);
+      return eventId;
+    }
+
+    synchronized void release(Collection<Long> eventIds) {
+      uncommitted.removeAll(eventIds);
+    }
+
+    /**
+     * @return The lowest ID of the events of this metastore that are not committed yet. If there
+     *         are none, the next ID of the block, as the IDs taken later are all above it; or
+     *         Long.MAX_VALUE if no block was taken yet.
+     */
+    synchronized long getLowestUncommitted() {
+      if (!uncommitted.isEmpty()) {
+        return uncommitted.first();
+      }
+      return endId == 0 ? Long.MAX_VALUE : nextId;
+    }
+
+    @VisibleForTesting
+    synchronized void reset() {
+      nextId = endId = 0;
+      uncommitted.clear();
+    }
+  }
+
+  private static final NotificationIdBlock notificationIdBlock = new NotificationIdBlock();
+  private static final AtomicBoolean isNotificationIdBlockSizeIgnored = new AtomicBoolean(false);
+
+  @VisibleForTesting
+  static NotificationIdBlock getNotificationIdBlock() {
+    return notificationIdBlock;
+  }
+
+  /**
+   * @return The number of notification event IDs to take from NOTIFICATION_SEQUENCE at a time.
+   *         Blocks are only taken when this is the only metastore adding events, as the readers
+   *         of one metastore can't tell which IDs another one has handed out without committing.
+   */
+  private int getNotificationIdBlockSize() {
+    int blockSize = MetastoreConf.getIntVar(conf, ConfVars.NOTIFICATION_SEQUENCE_BLOCK_SIZE);
+    if (blockSize > 1
+        && !MetastoreConf.getBoolVar(conf, ConfVars.NOTIFICATION_SEQUENCE_SINGLE_METASTORE)) {
+      if (isNotificationIdBlockSizeIgnored.compareAndSet(false, true)) {
+        LOG.warn("Ignoring " + ConfVars.NOTIFICATION_SEQUENCE_BLOCK_SIZE.getVarname() + "="
+            + blockSize + " because " + ConfVars.NOTIFICATION_SEQUENCE_SINGLE_METASTORE.getVarname()
+            + " is false");
+      }
+      return 1;
+    }
+    return blockSize;
+  }
+
+  /**
+   * @return The ID of the first notification event that readers must not return yet, as this
+   *         metastore may still commit it or an event before it. Must be called before the
+   *         transaction of the read is opened, so that the read sees all the events below it.
+   */
+  private long getNotificationReadLimit() {
+    long limit = notificationIdBlock.getLowestUncommitted();
+    if (limit == Long.MAX_VALUE && getNotificationIdBlockSize() > 1) {
+      // No block was taken yet; the ones taken from now on start at the next ID in the DB.
+      long nextEventId = getNextNotificationEventId();
+      limit = Math.min(nextEventId, notificationIdBlock.getLowestUncommitted());
+    }
+    return limit;
+  }
+
+  /**
+   * @return The next notification event ID in NOTIFICATION_SEQUENCE, read in a transaction of
+   *         its own.
+   */
+  private long getNextNotificationEventId() {
+    PersistenceManager readPm = getPersistenceManager();
+    Transaction tx = readPm.currentTransaction();
+    Query query = null;
+    try {
+      tx.begin();
+      query = readPm.newQuery(MNotificationNextId.class);
+      Collection<MNotificationNextId> ids = (Collection) query.execute();
+      long nextEventId =
+          CollectionUtils.isEmpty(ids) ? 1L : ids.iterator().next().getNextEventId();
+      tx.commit();
+      return nextEventId;
+    } finally {
+      if (query != null) {
+        query.closeAll();
+      }
+      if (tx.isActive()) {
+        tx.rollback();
+      }
+      readPm.close();
+    }
+  }
+
+  private void releaseEventIds() {
+    if (!uncommittedEventIds.isEmpty()) {
+      notificationIdBlock.release(uncommittedEventIds);
+      uncommittedEventIds.clear();
+    }
+  }
+
+  /**
+   * Takes a block of event IDs from NOTIFICATION_SEQUENCE in a transaction of its own, so that
+   * the row isn't locked until the transaction adding the event commits.
+   * @return The first ID of the block.
+   */
+  private long allocateNotificationEventIds(int count) throws MetaException {
+    PersistenceManager blockPm = getPersistenceManager();
+    Transaction tx = blockPm.currentTransaction();
+    Query query = null;
+    try {
+      tx.begin();
+      lockForUpdate(blockPm);
+      query = blockPm.newQuery(MNotificationNextId.class);
+      Collection<MNotificationNextId> ids = (Collection) query.execute();
+      MNotificationNextId mNotificationNextId;
+      if (CollectionUtils.isEmpty(ids)) {
+        mNotificationNextId = new MNotificationNextId(1L);
+        blockPm.makePersistent(mNotificationNextId);
+      } else {
+        mNotificationNextId = ids.iterator().next();
+      }
+      long firstId = mNotificationNextId.getNextEventId();
+      mNotificationNextId.setNextEventId(firstId + count);
+      tx.commit();
+      LOG.debug("Allocated notification event IDs [{}, {})", firstId, firstId + count);
+      return firstId;
+    } finally {
+      if (query != null) {
+        query.closeAll();
+      }
+      if (tx.isActive()) {
+        tx.rollback();
+      }
+      blockPm.close();
+    }
+  }
+
   @Override
   public void addNotificationEvent(NotificationEvent entry) {
+    int blockSize = getNotificationIdBlockSize();
+    if (blockSize > 1) {
+      addNotificationEventFromBlock(entry, blockSize);
+      return;
+    }
     boolean commited = false;
     Query query = null;
     try {
       openTransaction();
-      lockForUpdate();
+      lockForUpdate(pm);
       query = pm.newQuery(MNotificationNextId.class);
       Collection<MNotificationNextId> ids = (Collection) query.execute();
       MNotificationNextId mNotificationNextId = null;
@@ -8889,6 +9061,22 @@ public void addNotificationEvent(NotificationEvent entry) {
     }
   }
 
+  private void addNotificationEventFromBlock(NotificationEvent entry, int blockSize) {
+    boolean commited = false;
+    try {
+      openTransaction();
+      long eventId = notificationIdBlock.take(this, blockSize);
+      uncommittedEventIds.add(eventId);
+      entry.setEventId(eventId);
+      pm.makePersistent(translateThriftToDb(entry));
+      commited = commitTransaction();
+    } catch (Exception e) {
+      LOG.error("couldnot add the notification event", e);
+    } finally {
+      rollbackAndCleanup(commited, (Query) null);
+    }
+  }
+
   @Override
   public void cleanNotificationEvents(int olderThan) {
     boolean commited = false;
@@ -8914,12 +9102,13 @@ public CurrentNotificationEventId getCurrentNotificationEventId() {
     boolean commited = false;
     Query query = null;
     try {
+      long maxEvent = getNotificationReadLimit();
       openTransaction();
       query = pm.newQuery(MNotificationNextId.class);
       Collection<MNotificationNextId> ids = (Collection) query.execute();
       long id = 0;
       if (CollectionUtils.isNotEmpty(ids)) {
-        id = ids.iterator().next().getNextEventId() - 1;
+        id = Math.min(ids.iterator().next().getNextEventId(), maxEvent) - 1;
       }
       commited = commitTransaction();
       return new CurrentNotificationEventId(id);
@@ -35,6 +35,7 @@
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -104,6 +105,9 @@
 import org.apache.hadoop.hive.metastore.api.WMPool;
 import org.apache.hadoop.hive.metastore.conf.MetastoreConf;
 import org.apache.hadoop.hive.metastore.conf.MetastoreConf.ConfVars;
+import org.apache.hadoop.hive.metastore.messaging.AlterPartitionMessage;
+import org.apache.hadoop.hive.metastore.messaging.MessageDeserializer;
+import org.apache.hadoop.hive.metastore.messaging.MessageFactory;
 import org.apache.hadoop.hive.metastore.partition.spec.PartitionSpecProxy;
 import org.apache.hadoop.hive.metastore.utils.FileUtils;
 import org.apache.hadoop.hive.metastore.utils.JavaUtils;
@@ -134,6 +138,13 @@ public class CachedStore implements RawStore, Configurable {
   // Time after which metastore cache is updated from metastore DB by the background update thread
   private static long cacheRefreshPeriodMS = DEFAULT_CACHE_REFRESH_PERIOD;
   private static AtomicBoolean isCachePrewarmed = new AtomicBoolean(false);
+  // Whether the partition memory budget of the shared cache is set; it's set once, by the first
+  // CachedStore to be configured, as the partitions already cached are tracked against it
+  private static final AtomicBoolean isPartitionCacheSizeSet = new AtomicBoolean(false);
+  // The id of the last notification event that the cache is up to date with; -1 if unknown
+  private static final AtomicLong lastEventId = new AtomicLong(-1);
+  // The times of the last full reload of the cache from metastore DB, and of the last update
+  private static volatile long lastFullUpdateTimeMS = 0, lastUpdateTimeMS = 0;
   private RawStore rawStore = null;
   private Configuration conf;
   private PartitionExpressionProxy expressionProxy = null;
@@ -173,6 +184,10 @@ private void setConfInternal(Configuration conf) {
       }
     }
     rawStore.setConf(conf);
+    if (isPartitionCacheSizeSet.compareAndSet(false, true)) {
+      sharedCache.setMaxPartitionCacheSize(
+          MetastoreConf.getLongVar(conf, ConfVars.CACHED_RAW_STORE_MAX_PARTITION_CACHE_SIZE));
+    }
     Configuration oldConf = this.conf;
     this.conf = conf;
     if (expressionProxy != null && conf != oldConf) {
@@ -250,7 +265,9 @@ static void prewarm(RawStore rawStore) {
             List<ColumnStatistics> partitionColStats = null;
             AggrStats aggrStatsAllPartitions = null;
             AggrStats aggrStatsAllButDefaultPartition = null;
-            if (table.isSetPartitionKeys()) {
+            if (table.isSetPartitionKeys() && sharedCache.isPartitionCacheLazy()) {
+              // The partitions are cached when they are looked up
+            } else if (table.isSetPartitionKeys()) {
               Deadline.startTimer("getPartitions");
               partitions = rawStore.getPartitions(dbName, tblName, Integer.MAX_VALUE);
               Deadline.stopTimer();
@@ -318,6 +335,17 @@ static void setCachePrewarmedState(boolean state) {
     isCachePrewarmed.set(state);
   }
 
+  @VisibleForTesting
+  static void setMaxPartitionCacheSize(long maxSize) {
+    isPartitionCacheSizeSet.set(true);
+    sharedCache.setMaxPartitionCacheSize(maxSize);
+  }
+
+  @VisibleForTesting
+  static SharedCache getSharedCache() {
+    return sharedCache;
+  }
+
   private static void initBlackListWhiteList(Configuration conf) {
     if (whitelistPatterns == null || blacklistPatterns == null) {
       whitelistPatterns = createPatterns(MetastoreConf.getAsString(conf,
@@ -392,9 +420,19 @@ static void setCacheRefreshPeriod(long time) {
   static class CacheUpdateMasterWork implements Runnable {
     private boolean shouldRunPrewarm = true;
     private final RawStore rawStore;
+    private final boolean incrementalUpdate;
+    private final long fullUpdateFrequencyMS, eventTtlMS;
+    private final int eventBatchSize;
 
     CacheUpdateMasterWork(Configuration conf, boolean shouldRunPrewarm) {
       this.shouldRunPrewarm = shouldRunPrewarm;
+      this.incrementalUpdate =
+          MetastoreConf.getBoolVar(conf, ConfVars.CACHED_RAW_STORE_INCREMENTAL_UPDATE);
+      this.fullUpdateFrequencyMS = MetastoreConf.getTimeVar(conf,
+          ConfVars.CACHED_RAW_STORE_FULL_UPDATE_FREQUENCY, TimeUnit.MILLISECONDS);
+      this.eventTtlMS =
+          MetastoreConf.getTimeVar(conf, ConfVars.EVENT_DB_LISTENER_TTL, TimeUnit.MILLISECONDS);
+      this.eventBatchSize = MetastoreConf.getIntVar(conf, ConfVars.CACHED_RAW_STORE_EVENT_BATCH_SIZE);
       String rawStoreClassName =
           MetastoreConf.getVar(conf, ConfVars.CACHED_RAW_STORE_IMPL, ObjectStore.class.getName());
       try {
@@ -414,17 +452,54 @@ public void run() {
         update();
       } else {
         try {
+          // The events logged while the cache is being prewarmed are applied after it
+          long eventId = getCurrentEventId();
+          long startTime = System.currentTimeMillis();
           prewarm(rawStore);
+          setUpdated(eventId, startTime, true);
         } catch (Exception e) {
           LOG.error("Prewarm failure", e);
           return;
         }
+        // Keep the cache up to date from the notification log from now on; otherwise the later
+        // runs find the cache prewarmed and leave it as it is.
+        if (incrementalUpdate) {
+          shouldRunPrewarm = false;
+        }
       }
     }
 
     void update() {
       Deadline.registerIfNot(1000000);
+      long now = System.currentTimeMillis();
+      // The events can only be applied if none of them could have been cleaned up since the last
+      // update; the full reload also covers what the events don't (e.g. the column stats).
+      if (incrementalUpdate && lastEventId.get() >= 0 && now - lastUpdateTimeMS < eventTtlMS
+          && now - lastFullUpdateTimeMS < fullUpdateFrequencyMS) {
+        try {
+          applyEvents(now);
+          return;
+        } catch (Exception e) {
+          LOG.warn("Updating CachedStore: unable to apply the notification events after "
+              + lastEventId.get() + "; reloading the cache", e);
+        }
+      }
+      fullUpdate();
+    }
+
+    private void fullUpdate() {
       LOG.debug("CachedStore: updating cached objects");
+      long eventId, startTime = System.currentTimeMillis();
+      try {
+        eventId = getCurrentEventId();
+      } catch (MetaException e) {
+        LOG.error("Updating CachedStore: error happen when refresh; skipping this iteration", e);
+        return;
+      }
+      if (incrementalUpdate) {
+        // The changes applied from the events are about to be read from the DB again
+        sharedCache.resetDirtyFlags();
+      }
       List<String> dbNames;
       try {
         dbNames = rawStore.getAllDatabases();
@@ -452,15 +527,188 @@ void update() {
           updateTableColStats(rawStore, dbName, tblName);
           // Update the partitions for a table in cache
           updateTablePartitions(rawStore, dbName, tblName);
+          if (sharedCache.isPartitionCacheLazy()) {
+            // The partition stats aren't cached
+            continue;
+          }
           // Update the partition col stats for a table in cache
           updateTablePartitionColStats(rawStore, dbName, tblName);
           // Update aggregate partition column stats for a table in cache
           updateTableAggregatePartitionColStats(rawStore, dbName, tblName);
         }
       }
+      setUpdated(eventId, startTime, true);
+      sharedCache.incrementUpdateCount();
+    }
+
+    /**
+     * @return The id of the last notification event; -1 if the cache isn't updated from the
+     *         notification log.
+     */
+    private long getCurrentEventId() throws MetaException {
+      return incrementalUpdate ? rawStore.getCurrentNotificationEventId().getEventId() : -1;
+    }
+
+    private void setUpdated(long eventId, long time, boolean isFullUpdate) {
+      lastEventId.set(eventId);
+      lastUpdateTimeMS = time;
+      if (isFullUpdate) {
+        lastFullUpdateTimeMS = time;
+      }
+    }
+
+    /**
+     * Applies the notification events logged since the last update to the cache. The objects
+     * that the events are about are read from the DB again, so applying an event more than once
+     * is harmless; the event ids are only used as the position in the log, and may have gaps.
+     */
+    private void applyEvents(long startTime) throws Exception {
+      MessageDeserializer deserializer = MessageFactory.getInstance().getDeserializer();
+      int numEvents = 0;
+      while (true) {
+        NotificationEventRequest rqst = new NotificationEventRequest(lastEventId.get());
+        rqst.setMaxEvents(eventBatchSize);
+        List<NotificationEvent> events = rawStore.getNextNotification(rqst).getEvents();
+        if (events == null || events.isEmpty()) {
+          break;
+        }
+        for (NotificationEvent event : events) {
+          applyEvent(deserializer, event);
+          lastEventId.set(event.getEventId());
+        }
+        numEvents += events.size();
+        if (events.size() < eventBatchSize) {
+          break;
+        }
+      }
+      LOG.debug("CachedStore: applied {} notification events, up to {}", numEvents,
+          lastEventId.get());
+      setUpdated(lastEventId.get(), startTime, false);
       sharedCache.incrementUpdateCount();
     }
 
+    private void applyEvent(MessageDeserializer deserializer, NotificationEvent event)
+        throws Exception {
+      String dbName = normalize(event.getDbName()), tblName = normalize(event.getTableName());
+      switch (event.getEventType()) {
+      case MessageFactory.CREATE_DATABASE_EVENT:
+      case MessageFactory.ALTER_DATABASE_EVENT:
+        refreshDatabase(dbName);
+        break;
+      case MessageFactory.DROP_DATABASE_EVENT:
+        sharedCache.removeDatabaseFromCache(dbName);
+        break;
+      case MessageFactory.CREATE_TABLE_EVENT:
+        refreshTable(dbName, tblName, dbName, tblName);
+        break;
+      case MessageFactory.ALTER_TABLE_EVENT: {
+        // The event is logged for the new name of a renamed table
+        Table tblBefore = deserializer.getAlterTableMessage(event.getMessage()).getTableObjBefore();
+        refreshTable(normalize(tblBefore.getDbName()), normalize(tblBefore.getTableName()),
+            dbName, tblName);
+        break;
+      }
+      case MessageFactory.DROP_TABLE_EVENT:
+        if (sharedCache.getTableFromCache(dbName, tblName) != null) {
+          sharedCache.removeTableFromCache(dbName, tblName);
+        }
+        break;
+      case MessageFactory.ADD_PARTITION_EVENT:
+        for (Map<String, String> partSpec :
+            deserializer.getAddPartitionMessage(event.getMessage()).getPartitions()) {
+          refreshPartition(dbName, tblName, null, partSpec);
+        }
+        break;
+      case MessageFactory.ALTER_PARTITION_EVENT: {
+        AlterPartitionMessage msg = deserializer.getAlterPartitionMessage(event.getMessage());
+        refreshPartition(dbName, tblName, msg.getPtnObjBefore().getValues(),
+            msg.getPtnObjAfter().getValues());
+        break;
+      }
+      case MessageFactory.DROP_PARTITION_EVENT:
+        for (Map<String, String> partSpec :
+            deserializer.getDropPartitionMessage(event.getMessage()).getPartitions()) {
+          refreshPartition(dbName, tblName, null, partSpec);
+        }
+        break;
+      default:
+        // Nothing that is cached has changed, or the full reload will pick up the change
+        break;
+      }
+    }
+
+    private void refreshDatabase(String dbName) throws MetaException {
+      try {
+        sharedCache.alterDatabaseInCache(dbName, rawStore.getDatabase(dbName));
+      } catch (NoSuchObjectException e) {
+        sharedCache.removeDatabaseFromCache(dbName);
+      }
+    }
+
+    private void refreshTable(String oldDbName, String oldTblName, String dbName, String tblName)
+        throws MetaException {
+      Table table = shouldCacheTable(dbName, tblName) ? rawStore.getTable(dbName, tblName) : null;
+      boolean isCached = sharedCache.getTableFromCache(oldDbName, oldTblName) != null;
+      boolean isRenamed = !oldDbName.equals(dbName) || !oldTblName.equals(tblName);
+      if (isCached && (table == null || isRenamed)) {
+        // The partition events before the rename could not be applied under the old name; reload
+        // the partitions of a renamed table.
+        sharedCache.removeTableFromCache(oldDbName, oldTblName);
+        isCached = false;
+      }
+      if (table != null && isCached) {
+        sharedCache.alterTableInCache(dbName, tblName, table);
+      } else if (table != null) {
+        sharedCache.addTableToCache(dbName, tblName, table);
+        updateTablePartitions(rawStore, dbName, tblName);
+      }
+    }
+
+    private void refreshPartition(String dbName, String tblName, List<String> oldPartVals,
+        Map<String, String> partSpec) throws MetaException {
+      Table table = sharedCache.getTableFromCache(dbName, tblName);
+      if (table == null) {
+        return;
+      }
+      List<String> partVals = new ArrayList<>(table.getPartitionKeysSize());
+      for (FieldSchema partKey : table.getPartitionKeys()) {
+        partVals.add(partSpec.get(partKey.getName()));
+      }
+      refreshPartition(dbName, tblName, oldPartVals, partVals);
+    }
+
+    private void refreshPartition(String dbName, String tblName, List<String> oldPartVals,
+        List<String> partVals) throws MetaException {
+      if (sharedCache.getTableFromCache(dbName, tblName) == null) {
+        return;
+      }
+      if (oldPartVals != null && !oldPartVals.equals(partVals)
+          && sharedCache.existPartitionFromCache(dbName, tblName, oldPartVals)) {
+        sharedCache.removePartitionFromCache(dbName, tblName, oldPartVals);
+      }
+      boolean isCached = sharedCache.existPartitionFromCache(dbName, tblName, partVals);
+      if (!isCached && sharedCache.isPartitionCacheLazy()) {
+        // It's cached when it's looked up
+        return;
+      }
+      try {
+        Partition part = rawStore.getPartition(dbName, tblName, partVals);
+        if (isCached) {
+          sharedCache.alterPartitionInCache(dbName, tblName, partVals, part);
+        } else {
+          sharedCache.addPartitionToCache(dbName, tblName, part);
+        }
+      } catch (NoSuchObjectException e) {
+        if (isCached) {
+          sharedCache.removePartitionFromCache(dbName, tblName, partVals);
+        }
+      }
+    }
+
+    private static String normalize(String name) {
+      return name == null ? null : StringUtils.normalizeIdentifier(name);
+    }
+
     private void updateDatabases(RawStore rawStore, List<String> dbNames) {
       List<Database> databases = new ArrayList<>(dbNames.size());
       for (String dbName : dbNames) {
@@ -514,9 +762,27 @@ private void updateTableColStats(RawStore rawStore, String dbName, String tblNam
 
     private void updateTablePartitions(RawStore rawStore, String dbName, String tblName) {
       try {
-        Deadline.startTimer("getPartitions");
-        List<Partition> partitions = rawStore.getPartitions(dbName, tblName, Integer.MAX_VALUE);
-        Deadline.stopTimer();
+        List<Partition> partitions;
+        if (sharedCache.isPartitionCacheLazy()) {
+          // Only refresh the partitions that are cached
+          Table table = sharedCache.getTableFromCache(StringUtils.normalizeIdentifier(dbName),
+              StringUtils.normalizeIdentifier(tblName));
+          if (table == null) {
+            return;
+          }
+          List<String> partNames = new ArrayList<>();
+          for (Partition part : sharedCache.listCachedPartitions(table.getDbName(),
+              table.getTableName(), -1)) {
+            partNames.add(Warehouse.makePartName(table.getPartitionKeys(), part.getValues()));
+          }
+          Deadline.startTimer("getPartitionsByNames");
+          partitions = rawStore.getPartitionsByNames(dbName, tblName, partNames);
+          Deadline.stopTimer();
+        } else {
+          Deadline.startTimer("getPartitions");
+          partitions = rawStore.getPartitions(dbName, tblName, Integer.MAX_VALUE);
+          Deadline.stopTimer();
+        }
         sharedCache.refreshPartitionsInCache(StringUtils.normalizeIdentifier(dbName),
             StringUtils.normalizeIdentifier(tblName), partitions);
       } catch (MetaException | NoSuchObjectException e) {
@@ -804,12 +1070,36 @@ public Partition getPartition(String dbName, String tblName, List<String> part_v
     }
     Partition part = sharedCache.getPartitionFromCache(dbName, tblName, part_vals);
     if (part == null) {
-      // The table containing the partition is not yet loaded in cache
-      return rawStore.getPartition(dbName, tblName, part_vals);
+      // The table containing the partition is not yet loaded in cache, or the partition is not
+      return getPartitionAndCache(dbName, tblName, part_vals);
+    }
+    return part;
+  }
+
+  /**
+   * Reads a partition that isn't in the cache from the raw store, and caches it if the partitions
+   * are cached when they are looked up.
+   */
+  private Partition getPartitionAndCache(String dbName, String tblName, List<String> partVals)
+      throws MetaException, NoSuchObjectException {
+    Partition part = rawStore.getPartition(dbName, tblName, partVals);
+    if (sharedCache.isPartitionCacheLazy()) {
+      sharedCache.addPartitionToCache(dbName, tblName, part);
     }
     return part;
   }
 
+  /**
+   * @return The cached table, if its partitions can be listed from the cache; null if the table
+   *         isn't cached, or only some of its partitions are.
+   */
+  private Table getTableWithAllPartitions(String dbName, String tblName) {
+    if (sharedCache.isPartitionCacheLazy()) {
+      return null;
+    }
+    return sharedCache.getTableFromCache(dbName, tblName);
+  }
+
   @Override
   public boolean doesPartitionExist(String dbName, String tblName,
       List<String> part_vals) throws MetaException, NoSuchObjectException {
@@ -823,7 +1113,16 @@ public boolean doesPartitionExist(String dbName, String tblName,
       // The table containing the partition is not yet loaded in cache
       return rawStore.doesPartitionExist(dbName, tblName, part_vals);
     }
-    return sharedCache.existPartitionFromCache(dbName, tblName, part_vals);
+    boolean exists = sharedCache.existPartitionFromCache(dbName, tblName, part_vals);
+    if (!exists && sharedCache.isPartitionCacheLazy()) {
+      try {
+        getPartitionAndCache(dbName, tblName, part_vals);
+        exists = true;
+      } catch (NoSuchObjectException e) {
+        // It doesn't exist
+      }
+    }
+    return exists;
   }
 
   @Override
@@ -865,9 +1164,9 @@ public List<Partition> getPartitions(String dbName, String tblName, int max)
     if (!shouldCacheTable(dbName, tblName)) {
       return rawStore.getPartitions(dbName, tblName, max);
     }
-    Table tbl = sharedCache.getTableFromCache(dbName, tblName);
+    Table tbl = getTableWithAllPartitions(dbName, tblName);
     if (tbl == null) {
-      // The table containing the partitions is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.getPartitions(dbName, tblName, max);
     }
     List<Partition> parts = sharedCache.listCachedPartitions(dbName, tblName, max);
@@ -996,9 +1295,9 @@ public List<String> listPartitionNames(String dbName, String tblName,
     if (!shouldCacheTable(dbName, tblName)) {
       return rawStore.listPartitionNames(dbName, tblName, max_parts);
     }
-    Table tbl = sharedCache.getTableFromCache(dbName, tblName);
+    Table tbl = getTableWithAllPartitions(dbName, tblName);
     if (tbl == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.listPartitionNames(dbName, tblName, max_parts);
     }
     List<String> partitionNames = new ArrayList<>();
@@ -1082,9 +1381,9 @@ public boolean getPartitionsByExpr(String dbName, String tblName, byte[] expr,
           result);
     }
     List<String> partNames = new LinkedList<>();
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.getPartitionsByExpr(dbName, tblName, expr, defaultPartitionName, maxParts,
           result);
     }
@@ -1109,9 +1408,9 @@ public int getNumPartitionsByExpr(String dbName, String tblName, byte[] expr)
     }
     String defaultPartName = MetastoreConf.getVar(getConf(), ConfVars.DEFAULTPARTITIONNAME);
     List<String> partNames = new LinkedList<>();
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.getNumPartitionsByExpr(dbName, tblName, expr);
     }
     getPartitionNamesPrunedByExprNoTxn(table, expr, defaultPartName, Short.MAX_VALUE, partNames,
@@ -1145,12 +1444,21 @@ public List<Partition> getPartitionsByNames(String dbName, String tblName,
       return rawStore.getPartitionsByNames(dbName, tblName, partNames);
     }
     List<Partition> partitions = new ArrayList<>();
+    List<String> missingPartNames = new ArrayList<>();
     for (String partName : partNames) {
       Partition part = sharedCache.getPartitionFromCache(dbName, tblName, partNameToVals(partName));
       if (part!=null) {
         partitions.add(part);
+      } else {
+        missingPartNames.add(partName);
       }
     }
+    if (sharedCache.isPartitionCacheLazy() && !missingPartNames.isEmpty()) {
+      List<Partition> missingParts =
+          rawStore.getPartitionsByNames(dbName, tblName, missingPartNames);
+      sharedCache.addPartitionsToCache(dbName, tblName, missingParts);
+      partitions.addAll(missingParts);
+    }
     return partitions;
   }
 
@@ -1325,6 +1633,9 @@ public Partition getPartitionWithAuth(String dbName, String tblName,
       return rawStore.getPartitionWithAuth(dbName, tblName, partVals, userName, groupNames);
     }
     Partition p = sharedCache.getPartitionFromCache(dbName, tblName, partVals);
+    if (p == null && sharedCache.isPartitionCacheLazy()) {
+      p = getPartitionAndCache(dbName, tblName, partVals);
+    }
     if (p != null) {
       String partName = Warehouse.makePartName(table.getPartitionKeys(), partVals);
       PrincipalPrivilegeSet privs = getPartitionPrivilegeSet(dbName, tblName, partName,
@@ -1343,9 +1654,9 @@ public List<Partition> getPartitionsWithAuth(String dbName, String tblName,
     if (!shouldCacheTable(dbName, tblName)) {
       return rawStore.getPartitionsWithAuth(dbName, tblName, maxParts, userName, groupNames);
     }
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.getPartitionsWithAuth(dbName, tblName, maxParts, userName, groupNames);
     }
     List<Partition> partitions = new ArrayList<>();
@@ -1372,9 +1683,9 @@ public List<String> listPartitionNamesPs(String dbName, String tblName,
     if (!shouldCacheTable(dbName, tblName)) {
       return rawStore.listPartitionNamesPs(dbName, tblName, partVals, maxParts);
     }
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.listPartitionNamesPs(dbName, tblName, partVals, maxParts);
     }
     List<String> partNames = new ArrayList<>();
@@ -1410,9 +1721,9 @@ public List<Partition> listPartitionsPsWithAuth(String dbName, String tblName,
       return rawStore.listPartitionsPsWithAuth(dbName, tblName, partVals, maxParts, userName,
           groupNames);
     }
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.listPartitionsPsWithAuth(dbName, tblName, partVals, maxParts, userName,
           groupNames);
     }
@@ -1514,14 +1825,26 @@ public boolean updatePartitionColumnStatistics(ColumnStatistics colStats, List<S
         return succ;
       }
       List<ColumnStatisticsObj> statsObjs = colStats.getStatsObj();
-      Partition part = getPartition(dbName, tblName, partVals);
+      Partition part;
+      if (sharedCache.isPartitionCacheLazy()) {
+        // Only update a partition that is already cached; the partition column stats aren't read
+        // from the cache when the partitions are cached on demand.
+        part = sharedCache.getPartitionFromCache(dbName, tblName, partVals);
+        if (part == null) {
+          return succ;
+        }
+      } else {
+        part = getPartition(dbName, tblName, partVals);
+      }
       List<String> colNames = new ArrayList<>();
       for (ColumnStatisticsObj statsObj : statsObjs) {
         colNames.add(statsObj.getColName());
       }
       StatsSetupConst.setColumnStatsState(part.getParameters(), colNames);
       sharedCache.alterPartitionInCache(dbName, tblName, partVals, part);
-      sharedCache.updatePartitionColStatsInCache(dbName, tblName, partVals, colStats.getStatsObj());
+      if (!sharedCache.isPartitionCacheLazy()) {
+        sharedCache.updatePartitionColStatsInCache(dbName, tblName, partVals, statsObjs);
+      }
     }
     return succ;
   }
@@ -1559,9 +1882,9 @@ public AggrStats get_aggr_stats_for(String dbName, String tblName, List<String>
     if (!shouldCacheTable(dbName, tblName)) {
       rawStore.get_aggr_stats_for(dbName, tblName, partNames, colNames);
     }
-    Table table = sharedCache.getTableFromCache(dbName, tblName);
+    Table table = getTableWithAllPartitions(dbName, tblName);
     if (table == null) {
-      // The table is not yet loaded in cache
+      // The table or its partitions are not yet loaded in cache
       return rawStore.get_aggr_stats_for(dbName, tblName, partNames, colNames);
     }
     List<String> allPartNames = rawStore.listPartitionNames(dbName, tblName, (short) -1);
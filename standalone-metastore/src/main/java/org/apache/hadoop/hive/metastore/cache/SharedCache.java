@@ -23,6 +23,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -66,6 +67,13 @@ public class SharedCache {
   private static MessageDigest md;
   static final private Logger LOG = LoggerFactory.getLogger(SharedCache.class.getName());
   private AtomicLong cacheUpdateCount = new AtomicLong(0);
+  // The memory budget for the cached partitions, in bytes; when it's set, the partitions are only
+  // cached when they are accessed, and the least recently used ones are evicted to stay within it
+  private volatile long maxPartitionCacheSize = 0;
+  // The estimated sizes of the cached partitions, in the access order; guarded by itself
+  private final LinkedHashMap<PartitionRef, Long> partitionLru =
+      new LinkedHashMap<PartitionRef, Long>(16, 0.75f, true);
+  private long partitionCacheSize = 0;
 
   static enum StatsType {
     ALL(0), ALLBUTDEFAULT(1);
@@ -159,7 +167,7 @@ void cachePartition(Partition part, SharedCache sharedCache) {
       try {
         tableLock.writeLock().lock();
         PartitionWrapper wrapper = makePartitionWrapper(part, sharedCache);
-        partitionCache.put(CacheUtils.buildPartitionCacheKey(part.getValues()), wrapper);
+        putPartition(CacheUtils.buildPartitionCacheKey(part.getValues()), wrapper, sharedCache);
         isPartitionCacheDirty.set(true);
         // Invalidate cached aggregate stats
         if (!aggrColStatsCache.isEmpty()) {
@@ -175,7 +183,7 @@ void cachePartitions(List<Partition> parts, SharedCache sharedCache) {
         tableLock.writeLock().lock();
         for (Partition part : parts) {
           PartitionWrapper wrapper = makePartitionWrapper(part, sharedCache);
-          partitionCache.put(CacheUtils.buildPartitionCacheKey(part.getValues()), wrapper);
+          putPartition(CacheUtils.buildPartitionCacheKey(part.getValues()), wrapper, sharedCache);
           isPartitionCacheDirty.set(true);
         }
         // Invalidate cached aggregate stats
@@ -187,6 +195,14 @@ void cachePartitions(List<Partition> parts, SharedCache sharedCache) {
       }
     }
 
+    private void putPartition(String key, PartitionWrapper wrapper, SharedCache sharedCache) {
+      PartitionWrapper oldWrapper = partitionCache.put(key, wrapper);
+      if (oldWrapper != null && oldWrapper.getSdHash() != null) {
+        sharedCache.decrSd(oldWrapper.getSdHash());
+      }
+      sharedCache.trackPartition(this, key, wrapper);
+    }
+
     public Partition getPartition(List<String> partVals, SharedCache sharedCache) {
       Partition part = null;
       try {
@@ -231,17 +247,23 @@ public boolean containsPartition(List<String> partVals) {
     }
 
     public Partition removePartition(List<String> partVal, SharedCache sharedCache) {
+      return removePartition(CacheUtils.buildPartitionCacheKey(partVal), sharedCache);
+    }
+
+    private Partition removePartition(String partialKey, SharedCache sharedCache) {
       Partition part = null;
       try {
         tableLock.writeLock().lock();
-        PartitionWrapper wrapper = partitionCache.remove(CacheUtils.buildPartitionCacheKey(partVal));
+        PartitionWrapper wrapper = partitionCache.remove(partialKey);
+        sharedCache.untrackPartition(this, partialKey);
         isPartitionCacheDirty.set(true);
-        if (wrapper.getSdHash() != null) {
-          sharedCache.decrSd(wrapper.getSdHash());
+        if (wrapper != null) {
+          if (wrapper.getSdHash() != null) {
+            sharedCache.decrSd(wrapper.getSdHash());
+          }
+          part = CacheUtils.assemble(wrapper, sharedCache);
         }
-        part = CacheUtils.assemble(wrapper, sharedCache);
         // Remove col stats
-        String partialKey = CacheUtils.buildPartitionCacheKey(partVal);
         Iterator<Entry<String, ColumnStatisticsObj>> iterator =
             partitionColStatsCache.entrySet().iterator();
         while (iterator.hasNext()) {
@@ -316,6 +338,12 @@ public void refreshPartitions(List<Partition> partitions, SharedCache sharedCach
           wrapper = makePartitionWrapper(part, sharedCache);
           newPartitionCache.put(key, wrapper);
         }
+        for (String key : partitionCache.keySet()) {
+          sharedCache.untrackPartition(this, key);
+        }
+        for (Entry<String, PartitionWrapper> entry : newPartitionCache.entrySet()) {
+          sharedCache.trackPartition(this, entry.getKey(), entry.getValue());
+        }
         partitionCache = newPartitionCache;
       } finally {
         tableLock.writeLock().unlock();
@@ -613,9 +641,10 @@ private PartitionWrapper makePartitionWrapper(Partition part, SharedCache shared
         StorageDescriptor sd = part.getSd();
         sharedCache.increSd(sd, sdHash);
         partCopy.setSd(null);
-        wrapper = new PartitionWrapper(partCopy, sdHash, sd.getLocation(), sd.getParameters());
+        wrapper = new PartitionWrapper(partCopy, sdHash, getLocation(), sd.getLocation(),
+            sd.getParameters());
       } else {
-        wrapper = new PartitionWrapper(partCopy, null, null, null);
+        wrapper = new PartitionWrapper(partCopy, null, null, null, null);
       }
       return wrapper;
     }
@@ -623,14 +652,24 @@ private PartitionWrapper makePartitionWrapper(Partition part, SharedCache shared
 
   static class PartitionWrapper {
     Partition p;
+    // The partitions are usually located under the table, so the location is kept relative to the
+    // table location when it can be; the prefix is the string that the table wrapper holds anyway
+    String locationPrefix;
     String location;
     Map<String, String> parameters;
     byte[] sdHash;
 
-    PartitionWrapper(Partition p, byte[] sdHash, String location, Map<String, String> parameters) {
+    PartitionWrapper(Partition p, byte[] sdHash, String tblLocation, String location,
+        Map<String, String> parameters) {
       this.p = p;
       this.sdHash = sdHash;
-      this.location = location;
+      if (tblLocation != null && location != null && location.length() > tblLocation.length()
+          && location.startsWith(tblLocation) && location.charAt(tblLocation.length()) == '/') {
+        this.locationPrefix = tblLocation;
+        this.location = location.substring(tblLocation.length());
+      } else {
+        this.location = location;
+      }
       this.parameters = parameters;
     }
 
@@ -643,7 +682,7 @@ public byte[] getSdHash() {
     }
 
     public String getLocation() {
-      return location;
+      return locationPrefix == null ? location : locationPrefix + location;
     }
 
     public Map<String, String> getParameters() {
@@ -669,6 +708,150 @@ public int getRefCount() {
     }
   }
 
+  /**
+   * A cached partition; the table is referenced by identity, so that it's unaffected by renames.
+   */
+  private static final class PartitionRef {
+    private final TableWrapper tblWrapper;
+    private final String partKey;
+
+    PartitionRef(TableWrapper tblWrapper, String partKey) {
+      this.tblWrapper = tblWrapper;
+      this.partKey = partKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(tblWrapper) + partKey.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PartitionRef)) {
+        return false;
+      }
+      PartitionRef other = (PartitionRef) obj;
+      return tblWrapper == other.tblWrapper && partKey.equals(other.partKey);
+    }
+  }
+
+  /**
+   * Sets the memory budget for the cached partitions. It should be set before any partition is
+   * cached, as the partitions cached while there's no budget aren't tracked, so they are never
+   * evicted. The partitions that are already tracked are kept, and evicted if they no longer fit.
+   * @param maxSize The budget in bytes; 0 to cache all the partitions of the cached tables.
+   */
+  public void setMaxPartitionCacheSize(long maxSize) {
+    maxPartitionCacheSize = Math.max(maxSize, 0);
+    evictPartitions();
+  }
+
+  /**
+   * @return true if the partitions are only cached when they are accessed, so the partitions of
+   *         a cached table may be missing from the cache.
+   */
+  public boolean isPartitionCacheLazy() {
+    return maxPartitionCacheSize > 0;
+  }
+
+  @VisibleForTesting
+  long getPartitionCacheSize() {
+    synchronized (partitionLru) {
+      return partitionCacheSize;
+    }
+  }
+
+  private void trackPartition(TableWrapper tblWrapper, String partKey, PartitionWrapper wrapper) {
+    if (!isPartitionCacheLazy()) {
+      return;
+    }
+    long size = estimatePartitionSize(partKey, wrapper);
+    synchronized (partitionLru) {
+      Long oldSize = partitionLru.put(new PartitionRef(tblWrapper, partKey), size);
+      partitionCacheSize += size - (oldSize == null ? 0 : oldSize);
+    }
+  }
+
+  private void untrackPartition(TableWrapper tblWrapper, String partKey) {
+    if (!isPartitionCacheLazy()) {
+      return;
+    }
+    synchronized (partitionLru) {
+      Long oldSize = partitionLru.remove(new PartitionRef(tblWrapper, partKey));
+      if (oldSize != null) {
+        partitionCacheSize -= oldSize;
+      }
+    }
+  }
+
+  private void touchPartition(TableWrapper tblWrapper, List<String> partVals) {
+    if (!isPartitionCacheLazy()) {
+      return;
+    }
+    synchronized (partitionLru) {
+      partitionLru.get(new PartitionRef(tblWrapper, CacheUtils.buildPartitionCacheKey(partVals)));
+    }
+  }
+
+  private void untrackPartitions(TableWrapper tblWrapper) {
+    if (!isPartitionCacheLazy()) {
+      return;
+    }
+    for (String partKey : tblWrapper.partitionCache.keySet()) {
+      untrackPartition(tblWrapper, partKey);
+    }
+  }
+
+  /**
+   * Evicts the least recently used partitions until the cached ones fit in the budget. Shouldn't
+   * be called with a table lock held, as it locks the tables of the evicted partitions.
+   */
+  private void evictPartitions() {
+    while (isPartitionCacheLazy()) {
+      PartitionRef victim;
+      synchronized (partitionLru) {
+        if (partitionCacheSize <= maxPartitionCacheSize || partitionLru.isEmpty()) {
+          return;
+        }
+        victim = partitionLru.keySet().iterator().next();
+      }
+      // Untracks the partition, even if it's no longer cached.
+      victim.tblWrapper.removePartition(victim.partKey, this);
+    }
+  }
+
+  /**
+   * Roughly estimates the heap taken by a cached partition, from its strings and maps; the shared
+   * storage descriptor isn't counted.
+   */
+  @VisibleForTesting
+  static long estimatePartitionSize(String partKey, PartitionWrapper wrapper) {
+    Partition part = wrapper.getPartition();
+    long size = 256 + estimateSize(partKey) + estimateSize(wrapper.location)
+        + estimateSize(wrapper.getParameters()) + estimateSize(part.getParameters());
+    if (part.getValues() != null) {
+      for (String value : part.getValues()) {
+        size += 16 + estimateSize(value);
+      }
+    }
+    return size;
+  }
+
+  private static long estimateSize(String str) {
+    return str == null ? 0 : 40 + 2L * str.length();
+  }
+
+  private static long estimateSize(Map<String, String> map) {
+    if (map == null) {
+      return 0;
+    }
+    long size = 64;
+    for (Entry<String, String> entry : map.entrySet()) {
+      size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+    }
+    return size;
+  }
+
   public Database getDatabaseFromCache(String name) {
     Database db = null;
     try {
@@ -843,10 +1026,14 @@ public void populateTableInCache(Table table, ColumnStatistics tableColStats,
       cacheLock.writeLock().lock();
       // 2. Skip overwriting exisiting table object
       // (which is present because it was added after prewarm started)
-      tableCache.putIfAbsent(CacheUtils.buildTableCacheKey(dbName, tableName), tblWrapper);
+      if (tableCache.putIfAbsent(CacheUtils.buildTableCacheKey(dbName, tableName), tblWrapper)
+          != null) {
+        untrackPartitions(tblWrapper);
+      }
     } finally {
       cacheLock.writeLock().unlock();
     }
+    evictPartitions();
   }
 
   public void completeTableCachePrewarm() {
@@ -920,6 +1107,7 @@ public void removeTableFromCache(String dbName, String tblName) {
       if (sdHash != null) {
         decrSd(sdHash);
       }
+      untrackPartitions(tblWrapper);
       isTableCacheDirty.set(true);
     } finally {
       cacheLock.writeLock().unlock();
@@ -1026,8 +1214,19 @@ public void refreshTablesInCache(String dbName, List<Table> tables) {
         }
         newTableCache.put(CacheUtils.buildTableCacheKey(dbName, tblName), tblWrapper);
       }
-      tableCache.clear();
-      tableCache = newTableCache;
+      // Only replace the tables of this database
+      Iterator<Entry<String, TableWrapper>> iterator = tableCache.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<String, TableWrapper> entry = iterator.next();
+        TableWrapper tblWrapper = entry.getValue();
+        if (StringUtils.normalizeIdentifier(dbName).equals(tblWrapper.getTable().getDbName())) {
+          iterator.remove();
+          if (newTableCache.get(entry.getKey()) != tblWrapper) {
+            untrackPartitions(tblWrapper);
+          }
+        }
+      }
+      tableCache.putAll(newTableCache);
     } finally {
       cacheLock.writeLock().unlock();
     }
@@ -1130,6 +1329,7 @@ public void addPartitionToCache(String dbName, String tblName, Partition part) {
     } finally {
       cacheLock.readLock().unlock();
     }
+    evictPartitions();
   }
 
   public void addPartitionsToCache(String dbName, String tblName, List<Partition> parts) {
@@ -1142,6 +1342,7 @@ public void addPartitionsToCache(String dbName, String tblName, List<Partition>
     } finally {
       cacheLock.readLock().unlock();
     }
+    evictPartitions();
   }
 
   public Partition getPartitionFromCache(String dbName, String tblName,
@@ -1152,6 +1353,9 @@ public Partition getPartitionFromCache(String dbName, String tblName,
       TableWrapper tblWrapper = tableCache.get(CacheUtils.buildTableCacheKey(dbName, tblName));
       if (tblWrapper != null) {
         part = tblWrapper.getPartition(partVals, this);
+        if (part != null) {
+          touchPartition(tblWrapper, partVals);
+        }
       }
     } finally {
       cacheLock.readLock().unlock();
@@ -1166,6 +1370,9 @@ public boolean existPartitionFromCache(String dbName, String tblName, List<Strin
       TableWrapper tblWrapper = tableCache.get(CacheUtils.buildTableCacheKey(dbName, tblName));
       if (tblWrapper != null) {
         existsPart = tblWrapper.containsPartition(partVals);
+        if (existsPart) {
+          touchPartition(tblWrapper, partVals);
+        }
       }
     } finally {
       cacheLock.readLock().unlock();
@@ -1226,6 +1433,7 @@ public void alterPartitionInCache(String dbName, String tblName, List<String> pa
     } finally {
       cacheLock.readLock().unlock();
     }
+    evictPartitions();
   }
 
   public void alterPartitionsInCache(String dbName, String tblName, List<List<String>> partValsList,
@@ -1239,6 +1447,7 @@ public void alterPartitionsInCache(String dbName, String tblName, List<List<Stri
     } finally {
       cacheLock.readLock().unlock();
     }
+    evictPartitions();
   }
 
   public void refreshPartitionsInCache(String dbName, String tblName, List<Partition> partitions) {
@@ -1251,6 +1460,7 @@ public void refreshPartitionsInCache(String dbName, String tblName, List<Partiti
     } finally {
       cacheLock.readLock().unlock();
     }
+    evictPartitions();
   }
 
   public void removePartitionColStatsFromCache(String dbName, String tblName,
@@ -1397,4 +1607,22 @@ public long getUpdateCount() {
   public void incrementUpdateCount() {
     cacheUpdateCount.incrementAndGet();
   }
+
+  /**
+   * Forgets the changes made to the databases, tables and partitions in cache so far, so that
+   * they don't make the next refresh skip. To be called before reading the objects that the cache
+   * is refreshed with from the metastore DB; the changes made after that still make it skip.
+   */
+  void resetDirtyFlags() {
+    try {
+      cacheLock.readLock().lock();
+      isDatabaseCacheDirty.set(false);
+      isTableCacheDirty.set(false);
+      for (TableWrapper tblWrapper : tableCache.values()) {
+        tblWrapper.isPartitionCacheDirty.set(false);
+      }
+    } finally {
+      cacheLock.readLock().unlock();
+    }
+  }
 }
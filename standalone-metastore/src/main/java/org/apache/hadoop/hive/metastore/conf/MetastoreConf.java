@@ -292,6 +292,28 @@ public enum ConfVars {
     CACHED_RAW_STORE_CACHE_UPDATE_FREQUENCY("metastore.cached.rawstore.cache.update.frequency",
         "hive.metastore.cached.rawstore.cache.update.frequency", 60, TimeUnit.SECONDS,
         "The time after which metastore cache is updated from metastore DB."),
+    CACHED_RAW_STORE_INCREMENTAL_UPDATE("metastore.cached.rawstore.incremental.update",
+        "hive.metastore.cached.rawstore.incremental.update", false,
+        "Whether to keep the metastore cache up to date by applying the events from the notification\n" +
+        "log once it is prewarmed; otherwise the cache is only loaded from metastore DB when it is\n" +
+        "prewarmed. Requires DbNotificationListener to be configured on all the metastore instances.\n" +
+        "The events are applied in ID order, which needs metastore.notification.sequence.block.size\n" +
+        "to be 1 unless metastore.notification.sequence.single.metastore is set."),
+    CACHED_RAW_STORE_FULL_UPDATE_FREQUENCY("metastore.cached.rawstore.full.update.frequency",
+        "hive.metastore.cached.rawstore.full.update.frequency", 3600, TimeUnit.SECONDS,
+        "The time after which the metastore cache that is updated from the notification log is\n" +
+        "still reloaded from metastore DB, to reconcile the changes that the events don't cover\n" +
+        "(e.g. the column statistics). Should be well below metastore.event.db.listener.timetolive."),
+    CACHED_RAW_STORE_EVENT_BATCH_SIZE("metastore.cached.rawstore.event.batch.size",
+        "hive.metastore.cached.rawstore.event.batch.size", 1000,
+        "The maximum number of notification events to read in one batch when updating the\n" +
+        "metastore cache from the notification log."),
+    CACHED_RAW_STORE_MAX_PARTITION_CACHE_SIZE("metastore.cached.rawstore.max.partition.cache.size",
+        "hive.metastore.cached.rawstore.max.partition.cache.size", 0L,
+        "The approximate memory budget for the partitions in the metastore cache, in bytes. When\n" +
+        "it's set, the partitions are only cached when they are looked up, the least recently\n" +
+        "used ones are evicted to stay within the budget, and the partition listings and stats\n" +
+        "are read from the underlying store. 0 caches all the partitions of the cached tables."),
     CACHED_RAW_STORE_CACHED_OBJECTS_WHITELIST("metastore.cached.rawstore.cached.object.whitelist",
         "hive.metastore.cached.rawstore.cached.object.whitelist", ".*", "Comma separated list of regular expressions \n " +
         "to select the tables (and its partitions, stats etc) that will be cached by CachedStore. \n" +
@@ -610,6 +632,19 @@ public enum ConfVars {
         "hive.notification.sequence.lock.retry.sleep.interval", 500, TimeUnit.MILLISECONDS,
         "Sleep interval between retries to acquire a notification lock as described part of property "
             + NOTIFICATION_SEQUENCE_LOCK_MAX_RETRIES.name()),
+    NOTIFICATION_SEQUENCE_BLOCK_SIZE("metastore.notification.sequence.block.size",
+        "hive.notification.sequence.block.size", 1,
+        "Number of notification event IDs that a metastore takes from NOTIFICATION_SEQUENCE at a time.\n" +
+        "With 1, the NOTIFICATION_SEQUENCE row stays locked until the metastore transaction that adds the\n" +
+        "event commits, so the event IDs are in commit order. With more, the row is only locked while a\n" +
+        "block is taken, so the transactions adding events don't serialize on it, and the IDs can have\n" +
+        "gaps. More than 1 is only used with metastore.notification.sequence.single.metastore."),
+    NOTIFICATION_SEQUENCE_SINGLE_METASTORE("metastore.notification.sequence.single.metastore",
+        "hive.notification.sequence.single.metastore", false,
+        "Whether this is the only metastore instance adding events to NOTIFICATION_LOG. Required for\n" +
+        "metastore.notification.sequence.block.size to take effect: the metastore keeps the events of\n" +
+        "its blocks that are not committed yet from its readers, so that they don't skip them, but it\n" +
+        "can't do that for the blocks of other metastores."),
     ORM_RETRIEVE_MAPNULLS_AS_EMPTY_STRINGS("metastore.orm.retrieveMapNullsAsEmptyStrings",
         "hive.metastore.orm.retrieveMapNullsAsEmptyStrings",false,
         "Thrift does not support nulls in maps, so any nulls present in maps retrieved from ORM must " +
@@ -782,6 +817,16 @@ public enum ConfVars {
             "select query has incorrect syntax or something similar inside a transaction, the\n" +
             "entire transaction will fail and fall-back to DataNucleus will not be possible. You\n" +
             "should disable the usage of direct SQL inside transactions if that happens in your case."),
+    TXN_LOCKS_IN_MEMORY("metastore.txn.locks.in.memory", "hive.txn.locks.in.memory", false,
+        "Whether to keep the lock queue of the transaction manager in the metastore memory. The\n" +
+            "locks are then checked, heartbeated and released without going to the database, and\n" +
+            "their state is written to HIVE_LOCKS in the background; the locks that are there are\n" +
+            "reloaded when the metastore starts. This is only correct when a single metastore\n" +
+            "instance serves the transaction and lock calls."),
+    TXN_LOCKS_IN_MEMORY_FLUSH_INTERVAL("metastore.txn.locks.in.memory.flush.interval",
+        "hive.txn.locks.in.memory.flush.interval", 1000, TimeUnit.MILLISECONDS,
+        "How often the changes to the in-memory locks are written to HIVE_LOCKS, when\n" +
+            "metastore.txn.locks.in.memory is set."),
     TXN_MAX_OPEN_BATCH("metastore.txn.max.open.batch", "hive.txn.max.open.batch", 1000,
         "Maximum number of transactions that can be fetched in one call to open_txns().\n" +
             "This controls how many transactions streaming agents such as Flume or Storm open\n" +
@@ -0,0 +1,535 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.metastore.txn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.api.LockState;
+import org.apache.hadoop.hive.metastore.api.ShowLocksResponseElement;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf.ConfVars;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The lock queue of {@link TxnHandler} kept in memory, for a metastore that is the only one to
+ * serve the lock calls.  It is authoritative for the conflict checks, the state of the locks and
+ * the heartbeats of the locks that are not part of a txn; the HIVE_LOCKS rows are still inserted
+ * (and deleted with their txn) by {@link TxnHandler}, but the changes made here are written to
+ * HIVE_LOCKS in batches by a background thread.
+ *
+ * The locks are striped by database; all the reads and changes of the locks in a database are
+ * made while holding its stripe, see {@link #lockDbs(Collection)}.  The conflict check of a lock
+ * request holds the stripes of all its databases, so it sees a stable view of the locks it may
+ * conflict with, like the CheckLock mutex does for the locks in the database.
+ *
+ * If the metastore dies before some changes are written, the locks are reloaded from HIVE_LOCKS
+ * in the state they were last written in.  This never lets a lock through that conflicts with
+ * one a client holds: a lock that is waiting blocks the later conflicting locks just like an
+ * acquired one does (see TxnHandler.jumpTable), and the released locks come back until their txn
+ * ends or they time out.  The heartbeat times here are taken from the metastore clock.
+ */
+class InMemoryLockTable {
+  static final private Logger LOG = LoggerFactory.getLogger(InMemoryLockTable.class.getName());
+
+  private static final int NUM_STRIPES = 64;
+
+  private final DataSource connPool;
+  private final ReentrantLock[] stripes = new ReentrantLock[NUM_STRIPES];
+  /**
+   * The locks in each stripe by [db], [db, table] and [db, table, partition], and then by
+   * ext lock id; [db, null] are the db locks, and [db, table, null] the table locks.
+   */
+  private final List<Map<List<String>, TreeMap<Long, List<ShowLocksResponseElement>>>> index =
+      new ArrayList<>(NUM_STRIPES);
+  /** All the locks by ext lock id; the lists are never changed. */
+  private final ConcurrentHashMap<Long, List<ShowLocksResponseElement>> locks =
+      new ConcurrentHashMap<>();
+  /** The ext lock ids of the locks of each txn. */
+  private final ConcurrentHashMap<Long, Set<Long>> txnLocks = new ConcurrentHashMap<>();
+  /** The ext lock ids of the locks that changed since they were last written to HIVE_LOCKS. */
+  private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService flusher;
+
+  InMemoryLockTable(Configuration conf, DataSource connPool) {
+    this.connPool = connPool;
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new ReentrantLock();
+      index.add(new HashMap<List<String>, TreeMap<Long, List<ShowLocksResponseElement>>>());
+    }
+    long interval = MetastoreConf.getTimeVar(
+        conf, ConfVars.TXN_LOCKS_IN_MEMORY_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("InMemoryLockTable-flusher").build());
+    flusher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        flush();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Holds the stripes of some databases; the locks in them can be read and changed until it's
+   * closed.
+   */
+  final class Section implements AutoCloseable {
+    private final int[] lockedStripes;
+
+    private Section(int[] lockedStripes) {
+      this.lockedStripes = lockedStripes;
+    }
+
+    @Override
+    public void close() {
+      for (int i = lockedStripes.length - 1; i >= 0; i--) {
+        stripes[lockedStripes[i]].unlock();
+      }
+    }
+  }
+
+  /**
+   * Locks the stripes of the databases, always in the same order so that 2 sections never
+   * deadlock.
+   */
+  Section lockDbs(Collection<String> dbs) {
+    Set<Integer> stripeIds = new TreeSet<>();
+    for (String db : dbs) {
+      stripeIds.add(getStripe(db));
+    }
+    int[] lockedStripes = new int[stripeIds.size()];
+    int i = 0;
+    for (int stripe : stripeIds) {
+      stripes[stripe].lock();
+      lockedStripes[i++] = stripe;
+    }
+    return new Section(lockedStripes);
+  }
+
+  private Section lockDbsOf(List<ShowLocksResponseElement> lock) {
+    List<String> dbs = new ArrayList<>(lock.size());
+    for (ShowLocksResponseElement e : lock) {
+      dbs.add(e.getDbname());
+    }
+    return lockDbs(dbs);
+  }
+
+  private static int getStripe(String db) {
+    return (db.hashCode() & Integer.MAX_VALUE) % NUM_STRIPES;
+  }
+
+  /**
+   * Adds a lock request, whose rows are being inserted into HIVE_LOCKS.
+   * @param lock all the components of the request, with the same ext lock id
+   */
+  void add(List<ShowLocksResponseElement> lock) {
+    List<ShowLocksResponseElement> components = Collections.unmodifiableList(lock);
+    long extLockId = lock.get(0).getLockid();
+    try (Section section = lockDbsOf(components)) {
+      locks.put(extLockId, components);
+      for (ShowLocksResponseElement e : components) {
+        for (List<String> key : getKeys(e)) {
+          Map<List<String>, TreeMap<Long, List<ShowLocksResponseElement>>> stripeIndex =
+              index.get(getStripe(e.getDbname()));
+          TreeMap<Long, List<ShowLocksResponseElement>> keyLocks = stripeIndex.get(key);
+          if (keyLocks == null) {
+            keyLocks = new TreeMap<>();
+            stripeIndex.put(key, keyLocks);
+          }
+          List<ShowLocksResponseElement> keyComponents = keyLocks.get(extLockId);
+          if (keyComponents == null) {
+            keyComponents = new ArrayList<>(1);
+            keyLocks.put(extLockId, keyComponents);
+          }
+          keyComponents.add(e);
+        }
+      }
+      long txnId = components.get(0).getTxnid();
+      if (txnId != 0) {
+        Set<Long> extLockIds = txnLocks.get(txnId);
+        if (extLockIds == null) {
+          extLockIds = ConcurrentHashMap.newKeySet();
+          Set<Long> existing = txnLocks.putIfAbsent(txnId, extLockIds);
+          if (existing != null) {
+            extLockIds = existing;
+          }
+        }
+        extLockIds.add(extLockId);
+      }
+    }
+  }
+
+  private static List<List<String>> getKeys(ShowLocksResponseElement e) {
+    List<List<String>> keys = new ArrayList<>(3);
+    keys.add(Collections.singletonList(e.getDbname()));
+    keys.add(Arrays.asList(e.getDbname(), e.getTablename()));
+    if (e.getTablename() != null) {
+      keys.add(Arrays.asList(e.getDbname(), e.getTablename(), e.getPartname()));
+    }
+    return keys;
+  }
+
+  /**
+   * @return A copy of the components of the lock; null if there is no such lock.
+   */
+  List<ShowLocksResponseElement> get(long extLockId) {
+    List<ShowLocksResponseElement> lock = locks.get(extLockId);
+    if (lock == null) {
+      return null;
+    }
+    try (Section section = lockDbsOf(lock)) {
+      List<ShowLocksResponseElement> result = new ArrayList<>(lock.size());
+      for (ShowLocksResponseElement e : lock) {
+        result.add(e.deepCopy());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Finds the locks that come before a lock and lock the same objects, or the objects that
+   * contain them, or the objects they contain.  Must be called within a {@link Section} that
+   * holds the database.
+   * @return The components of these locks; they must not be changed.
+   */
+  List<ShowLocksResponseElement> getOverlapping(
+      String db, String table, String partition, long beforeExtLockId) {
+    List<List<String>> keys;
+    if (table == null) {
+      keys = Collections.singletonList(Collections.singletonList(db));
+    } else if (partition == null) {
+      keys = Arrays.asList(Arrays.asList(db, null), Arrays.asList(db, table));
+    } else {
+      keys = Arrays.asList(Arrays.asList(db, null), Arrays.asList(db, table, null),
+          Arrays.asList(db, table, partition));
+    }
+    Map<List<String>, TreeMap<Long, List<ShowLocksResponseElement>>> stripeIndex =
+        index.get(getStripe(db));
+    List<ShowLocksResponseElement> result = new ArrayList<>();
+    for (List<String> key : keys) {
+      TreeMap<Long, List<ShowLocksResponseElement>> keyLocks = stripeIndex.get(key);
+      if (keyLocks == null) {
+        continue;
+      }
+      for (List<ShowLocksResponseElement> components : keyLocks.headMap(beforeExtLockId).values()) {
+        result.addAll(components);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Acquires all the components of a lock.  Must be called within a {@link Section} that holds
+   * the databases of the lock.
+   * @return false if there is no such lock
+   */
+  boolean acquire(long extLockId, long now) {
+    List<ShowLocksResponseElement> lock = locks.get(extLockId);
+    if (lock == null) {
+      return false;
+    }
+    for (ShowLocksResponseElement e : lock) {
+      e.setState(LockState.ACQUIRED);
+      if (e.getTxnid() == 0) {
+        e.setLastheartbeat(now);
+      }
+      e.setAcquiredat(now);
+      e.unsetBlockedByExtId();
+      e.unsetBlockedByIntId();
+    }
+    dirty.add(extLockId);
+    return true;
+  }
+
+  /**
+   * Records the lock that a component of a waiting lock waits for.  Must be called within a
+   * {@link Section} that holds the database of the component.
+   */
+  void setBlockedBy(long extLockId, long intLockId, long blockedByExtId, long blockedByIntId) {
+    List<ShowLocksResponseElement> lock = locks.get(extLockId);
+    if (lock == null) {
+      return;
+    }
+    for (ShowLocksResponseElement e : lock) {
+      if (e.getLockIdInternal() == intLockId) {
+        e.setBlockedByExtId(blockedByExtId);
+        e.setBlockedByIntId(blockedByIntId);
+        dirty.add(extLockId);
+      }
+    }
+  }
+
+  /**
+   * @return false if there is no such lock
+   */
+  boolean heartbeat(long extLockId, long now) {
+    List<ShowLocksResponseElement> lock = locks.get(extLockId);
+    if (lock == null) {
+      return false;
+    }
+    try (Section section = lockDbsOf(lock)) {
+      if (locks.get(extLockId) != lock) {
+        return false;
+      }
+      for (ShowLocksResponseElement e : lock) {
+        e.setLastheartbeat(now);
+      }
+      dirty.add(extLockId);
+      return true;
+    }
+  }
+
+  /**
+   * Removes a lock, e.g. because it's released.
+   * @param waitingOnly Whether to only remove the lock if it's not acquired.
+   * @return false if the lock wasn't removed
+   */
+  boolean remove(long extLockId, boolean waitingOnly) {
+    List<ShowLocksResponseElement> lock = locks.get(extLockId);
+    if (lock == null) {
+      return false;
+    }
+    try (Section section = lockDbsOf(lock)) {
+      if (locks.get(extLockId) != lock) {
+        return false;
+      }
+      if (waitingOnly) {
+        for (ShowLocksResponseElement e : lock) {
+          if (e.getState() == LockState.ACQUIRED) {
+            return false;
+          }
+        }
+      }
+      removeLock(extLockId, lock);
+    }
+    dirty.add(extLockId);
+    return true;
+  }
+
+  /**
+   * Removes the locks of the txns that have ended; they are already deleted from HIVE_LOCKS.
+   */
+  void removeTxns(Collection<Long> txnIds) {
+    for (long txnId : txnIds) {
+      Set<Long> extLockIds = txnLocks.remove(txnId);
+      if (extLockIds == null) {
+        continue;
+      }
+      for (long extLockId : extLockIds) {
+        List<ShowLocksResponseElement> lock = locks.get(extLockId);
+        if (lock == null) {
+          continue;
+        }
+        try (Section section = lockDbsOf(lock)) {
+          if (locks.get(extLockId) == lock) {
+            removeLock(extLockId, lock);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the locks that are not part of a txn and have not been heartbeated since the given
+   * time; the caller deletes them from HIVE_LOCKS.
+   * @return The ext lock ids of the removed locks.
+   */
+  List<Long> removeTimedOut(long maxHeartbeat) {
+    List<Long> result = new ArrayList<>();
+    for (Map.Entry<Long, List<ShowLocksResponseElement>> entry : locks.entrySet()) {
+      List<ShowLocksResponseElement> lock = entry.getValue();
+      if (lock.get(0).getTxnid() != 0) {
+        continue;
+      }
+      try (Section section = lockDbsOf(lock)) {
+        if (locks.get(entry.getKey()) != lock || !isTimedOut(lock, maxHeartbeat)) {
+          continue;
+        }
+        removeLock(entry.getKey(), lock);
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  private static boolean isTimedOut(List<ShowLocksResponseElement> lock, long maxHeartbeat) {
+    for (ShowLocksResponseElement e : lock) {
+      if (e.getLastheartbeat() >= maxHeartbeat) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void removeLock(long extLockId, List<ShowLocksResponseElement> lock) {
+    locks.remove(extLockId);
+    for (ShowLocksResponseElement e : lock) {
+      Map<List<String>, TreeMap<Long, List<ShowLocksResponseElement>>> stripeIndex =
+          index.get(getStripe(e.getDbname()));
+      for (List<String> key : getKeys(e)) {
+        TreeMap<Long, List<ShowLocksResponseElement>> keyLocks = stripeIndex.get(key);
+        if (keyLocks != null && keyLocks.remove(extLockId) != null && keyLocks.isEmpty()) {
+          stripeIndex.remove(key);
+        }
+      }
+    }
+    long txnId = lock.get(0).getTxnid();
+    if (txnId != 0) {
+      Set<Long> extLockIds = txnLocks.get(txnId);
+      if (extLockIds != null) {
+        extLockIds.remove(extLockId);
+      }
+    }
+  }
+
+  /**
+   * @return A copy of the locks on the given objects; null or empty names match everything.
+   */
+  List<ShowLocksResponseElement> getLocks(String db, String table, String partition) {
+    List<ShowLocksResponseElement> result = new ArrayList<>();
+    for (long extLockId : locks.keySet()) {
+      List<ShowLocksResponseElement> lock = get(extLockId);
+      if (lock == null) {
+        continue;
+      }
+      for (ShowLocksResponseElement e : lock) {
+        if (matches(db, e.getDbname()) && matches(table, e.getTablename())
+            && matches(partition, e.getPartname())) {
+          result.add(e);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean matches(String filter, String value) {
+    return filter == null || filter.isEmpty() || filter.equals(value);
+  }
+
+  /**
+   * @return The number of lock components, like the number of rows in HIVE_LOCKS.
+   */
+  int size() {
+    int size = 0;
+    for (List<ShowLocksResponseElement> lock : locks.values()) {
+      size += lock.size();
+    }
+    return size;
+  }
+
+  /**
+   * Writes the changes made since the last flush to HIVE_LOCKS, in a single db transaction.  The
+   * locks are written in their current state, so only the last change of a lock is written.
+   */
+  synchronized void flush() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+    List<Long> extLockIds = new ArrayList<>(dirty);
+    dirty.removeAll(extLockIds);
+    Connection dbConn = null;
+    PreparedStatement update = null, delete = null;
+    try {
+      dbConn = connPool.getConnection();
+      dbConn.setAutoCommit(false);
+      dbConn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+      update = dbConn.prepareStatement("update HIVE_LOCKS set hl_lock_state = ?," +
+          " hl_last_heartbeat = ?, hl_acquired_at = ?, hl_blockedby_ext_id = ?," +
+          " hl_blockedby_int_id = ? where hl_lock_ext_id = ? and hl_lock_int_id = ?");
+      delete = dbConn.prepareStatement("delete from HIVE_LOCKS where hl_lock_ext_id = ?");
+      int updates = 0, deletes = 0;
+      for (long extLockId : extLockIds) {
+        List<ShowLocksResponseElement> lock = get(extLockId);
+        if (lock == null) {
+          delete.setLong(1, extLockId);
+          delete.addBatch();
+          deletes++;
+          continue;
+        }
+        for (ShowLocksResponseElement e : lock) {
+          update.setString(1, String.valueOf(e.getState() == LockState.ACQUIRED ?
+              TxnHandler.LOCK_ACQUIRED : TxnHandler.LOCK_WAITING));
+          update.setLong(2, e.getLastheartbeat());
+          setLongOrNull(update, 3, e.isSetAcquiredat(), e.getAcquiredat());
+          setLongOrNull(update, 4, e.isSetBlockedByExtId(), e.getBlockedByExtId());
+          setLongOrNull(update, 5, e.isSetBlockedByIntId(), e.getBlockedByIntId());
+          update.setLong(6, e.getLockid());
+          update.setLong(7, e.getLockIdInternal());
+          update.addBatch();
+          updates++;
+        }
+      }
+      if (updates > 0) {
+        update.executeBatch();
+      }
+      if (deletes > 0) {
+        delete.executeBatch();
+      }
+      dbConn.commit();
+      LOG.debug("Wrote " + updates + " lock components and deleted " + deletes + " locks");
+    } catch (SQLException e) {
+      TxnHandler.rollbackDBConn(dbConn);
+      // Write them with the next flush.
+      dirty.addAll(extLockIds);
+      LOG.warn("Failed to write the in-memory locks to HIVE_LOCKS: " + e.getMessage(), e);
+    } finally {
+      TxnHandler.closeStmt(update);
+      TxnHandler.closeStmt(delete);
+      TxnHandler.closeDbConn(dbConn);
+    }
+  }
+
+  private static void setLongOrNull(PreparedStatement pStmt, int index, boolean isSet, long value)
+      throws SQLException {
+    if (isSet) {
+      pStmt.setLong(index, value);
+    } else {
+      pStmt.setNull(index, Types.BIGINT);
+    }
+  }
+
+  /**
+   * Stops the background writes, and writes the remaining changes.
+   */
+  void close() {
+    flusher.shutdownNow();
+    flush();
+  }
+}
@@ -21,11 +21,13 @@
 import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -292,6 +294,11 @@ public static OpertaionType fromDataOperationType(DataOperationType dop) {
    * (e.g. via Compactor services)
    */
   private final static ConcurrentHashMap<String, Semaphore> derbyKey2Lock = new ConcurrentHashMap<>();
+  /**
+   * The lock queue kept in memory, if {@link ConfVars#TXN_LOCKS_IN_MEMORY} is set; shared by all
+   * the instances, like the connection pools.
+   */
+  private static volatile InMemoryLockTable lockTable;
   private static final String hostname = JavaUtils.hostname();
 
   // Private methods should never catch SQLException and then throw MetaException.  The public
@@ -343,6 +350,15 @@ public void setConf(Configuration conf) {
           closeDbConn(dbConn);
         }
       }
+      if (lockTable == null && MetastoreConf.getBoolVar(conf, ConfVars.TXN_LOCKS_IN_MEMORY)) {
+        try {
+          lockTable = recoverLockTable();
+        } catch (SQLException | MetaException e) {
+          String msg = "Unable to load the locks from HIVE_LOCKS, " + e.getMessage();
+          LOG.error(msg);
+          throw new RuntimeException(e);
+        }
+      }
     }
 
     numOpenTxns = Metrics.getOrCreateGauge(MetricsConstants.NUM_OPEN_TXNS);
@@ -361,6 +377,58 @@ public Configuration getConf() {
     return conf;
   }
 
+  /**
+   * Creates the in-memory lock table with the locks in HIVE_LOCKS.  The locks that are not part
+   * of a txn are given a new heartbeat, since their last heartbeats may not have been written.
+   */
+  private InMemoryLockTable recoverLockTable() throws SQLException, MetaException {
+    Connection dbConn = null;
+    Statement stmt = null;
+    ResultSet rs = null;
+    try {
+      dbConn = getDbConn(Connection.TRANSACTION_READ_COMMITTED);
+      stmt = dbConn.createStatement();
+      LOG.debug("Going to execute query <" + SHOW_LOCKS_QUERY + ">");
+      rs = stmt.executeQuery(SHOW_LOCKS_QUERY);
+      Map<Long, List<ShowLocksResponseElement>> locks = new HashMap<>();
+      long now = System.currentTimeMillis();
+      while (rs.next()) {
+        ShowLocksResponseElement e = readShowLocksElement(rs);
+        if (e.getTxnid() == 0) {
+          e.setLastheartbeat(now);
+        }
+        List<ShowLocksResponseElement> lock = locks.get(e.getLockid());
+        if (lock == null) {
+          lock = new ArrayList<>();
+          locks.put(e.getLockid(), lock);
+        }
+        lock.add(e);
+      }
+      LOG.debug("Going to rollback");
+      dbConn.rollback();
+      InMemoryLockTable table = new InMemoryLockTable(conf, connPool);
+      for (List<ShowLocksResponseElement> lock : locks.values()) {
+        table.add(lock);
+      }
+      LOG.info("Loaded " + locks.size() + " locks from HIVE_LOCKS into the in-memory lock table");
+      return table;
+    } finally {
+      close(rs, stmt, dbConn);
+    }
+  }
+
+  /**
+   * Drops the in-memory lock table, if any, so that it's loaded again from HIVE_LOCKS by the
+   * next instance.
+   */
+  @VisibleForTesting
+  static synchronized void resetLockTable() {
+    if (lockTable != null) {
+      lockTable.close();
+      lockTable = null;
+    }
+  }
+
   @Override
   @RetrySemantics.ReadOnly
   public GetOpenTxnsInfoResponse getOpenTxnsInfo() throws MetaException {
@@ -624,6 +692,7 @@ public void abortTxn(AbortTxnRequest rqst) throws NoSuchTxnException, MetaExcept
 
         LOG.debug("Going to commit");
         dbConn.commit();
+        removeInMemoryLocks(Collections.singletonList(txnid));
       } catch (SQLException e) {
         LOG.debug("Going to rollback");
         rollbackDBConn(dbConn);
@@ -655,6 +724,7 @@ public void abortTxns(AbortTxnsRequest rqst) throws NoSuchTxnException, MetaExce
         }
         LOG.debug("Going to commit");
         dbConn.commit();
+        removeInMemoryLocks(txnids);
       } catch (SQLException e) {
         LOG.debug("Going to rollback");
         rollbackDBConn(dbConn);
@@ -806,6 +876,7 @@ public void commitTxn(CommitTxnRequest rqst)
               throw new IllegalStateException(msg + " FAILED!");
             }
             dbConn.commit();
+            removeInMemoryLocks(Collections.singletonList(txnid));
             close(null, stmt, dbConn);
             throw new TxnAbortedException(msg);
           } else {
@@ -847,6 +918,7 @@ public void commitTxn(CommitTxnRequest rqst)
         modCount = stmt.executeUpdate(s);
         LOG.debug("Going to commit");
         dbConn.commit();
+        removeInMemoryLocks(Collections.singletonList(txnid));
 
         // Update registry with modifications
         s = "select ctc_database, ctc_table, ctc_timestamp from COMPLETED_TXN_COMPONENTS where ctc_txnid = " + txnid;
@@ -1292,8 +1364,13 @@ private ConnectionLockIdPair enqueueLockWithRetry(LockRequest rqst) throws NoSuc
     Connection dbConn = null;
     try {
       Statement stmt = null;
+      PreparedStatement pStmt = null;
       ResultSet rs = null;
       ResultSet lockHandle = null;
+      long extLockId = 0;
+      boolean inMemoryLockAdded = false;
+      final int batchSize =
+          MetastoreConf.getIntVar(conf, ConfVars.DIRECT_SQL_MAX_ELEMENTS_VALUES_CLAUSE);
       try {
         lockInternal();
         dbConn = getDbConn(Connection.TRANSACTION_READ_COMMITTED);
@@ -1322,13 +1399,15 @@ private ConnectionLockIdPair enqueueLockWithRetry(LockRequest rqst) throws NoSuc
           throw new MetaException("Transaction tables not properly " +
             "initialized, no record found in next_lock_id");
         }
-        long extLockId = rs.getLong(1);
+        extLockId = rs.getLong(1);
         s = "update NEXT_LOCK_ID set nl_next = " + (extLockId + 1);
         LOG.debug("Going to execute update <" + s + ">");
         stmt.executeUpdate(s);
 
         if (txnid > 0) {
-          List<String> rows = new ArrayList<>();
+          int rows = 0;
+          // The write ids allocated by this txn, read once for all the components below
+          Map<List<String>, Long> writeIds = null;
           // For each component in this lock request,
           // add an entry to the txn_components table
           for (LockComponent lc : rqst.getComponent()) {
@@ -1386,33 +1465,55 @@ private ConnectionLockIdPair enqueueLockWithRetry(LockRequest rqst) throws NoSuc
               // It is assumed the caller have already allocated write id for adding/updating data to
               // the acid tables. However, DDL operatons won't allocate write id and hence this query
               // may return empty result sets.
-              // Get the write id allocated by this txn for the given table writes
-              s = "select t2w_writeid from TXN_TO_WRITE_ID where"
-                      + " t2w_database = " + quoteString(dbName.toLowerCase())
-                      + " and t2w_table = " + quoteString(tblName.toLowerCase())
-                      + " and t2w_txnid = " + txnid;
-              LOG.debug("Going to execute query <" + s + ">");
-              rs = stmt.executeQuery(s);
-              if (rs.next()) {
-                writeId = rs.getLong(1);
+              // Get the write ids allocated by this txn for the table writes; a query may lock
+              // thousands of partitions of the same few tables.
+              if (writeIds == null) {
+                writeIds = new HashMap<>();
+                s = "select t2w_database, t2w_table, t2w_writeid from TXN_TO_WRITE_ID where"
+                        + " t2w_txnid = " + txnid;
+                LOG.debug("Going to execute query <" + s + ">");
+                rs = stmt.executeQuery(s);
+                while (rs.next()) {
+                  writeIds.put(Arrays.asList(rs.getString(1), rs.getString(2)), rs.getLong(3));
+                }
+                close(rs);
               }
+              writeId = writeIds.get(Arrays.asList(dbName.toLowerCase(), tblName.toLowerCase()));
             }
-            rows.add(txnid + ", '" + dbName + "', " +
-                    (tblName == null ? "null" : "'" + tblName + "'") + ", " +
-                    (partName == null ? "null" : "'" + partName + "'")+ "," +
-                    quoteString(OpertaionType.fromDataOperationType(lc.getOperationType()).toString())+ "," +
-                    (writeId == null ? "null" : writeId));
+            if (pStmt == null) {
+              s = "insert into TXN_COMPONENTS (tc_txnid, tc_database, tc_table, tc_partition,"
+                  + " tc_operation_type, tc_writeid) values (?, ?, ?, ?, ?, ?)";
+              LOG.debug("Going to execute batch update <" + s + ">");
+              pStmt = dbConn.prepareStatement(s);
+            }
+            pStmt.setLong(1, txnid);
+            pStmt.setString(2, dbName);
+            setStringOrNull(pStmt, 3, tblName);
+            setStringOrNull(pStmt, 4, partName);
+            pStmt.setString(5, OpertaionType.fromDataOperationType(lc.getOperationType()).toString());
+            if (writeId == null) {
+              pStmt.setNull(6, Types.BIGINT);
+            } else {
+              pStmt.setLong(6, writeId);
+            }
+            addToBatch(pStmt, ++rows, batchSize);
           }
-          List<String> queries = sqlGenerator.createInsertValuesStmt(
-              "TXN_COMPONENTS (tc_txnid, tc_database, tc_table, tc_partition, tc_operation_type, tc_writeid)", rows);
-          for(String query : queries) {
-            LOG.debug("Going to execute update <" + query + ">");
-            int modCount = stmt.executeUpdate(query);
+          if (pStmt != null) {
+            pStmt.executeBatch();
+            closeStmt(pStmt);
+            pStmt = null;
           }
         }
 
-        List<String> rows = new ArrayList<>();
+        s = "insert into HIVE_LOCKS (hl_lock_ext_id, hl_lock_int_id, hl_txnid, hl_db, hl_table,"
+            + " hl_partition, hl_lock_state, hl_lock_type, hl_last_heartbeat, hl_user, hl_host,"
+            + " hl_agent_info) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        LOG.debug("Going to execute batch update <" + s + ">");
+        pStmt = dbConn.prepareStatement(s);
         long intLockId = 0;
+        long now = getDbTime(dbConn);
+        List<ShowLocksResponseElement> inMemoryLock = lockTable == null ? null :
+            new ArrayList<ShowLocksResponseElement>(rqst.getComponentSize());
         for (LockComponent lc : rqst.getComponent()) {
           if(lc.isSetOperationType() && lc.getOperationType() == DataOperationType.UNSET &&
             (MetastoreConf.getBoolVar(conf, ConfVars.HIVE_IN_TEST) || MetastoreConf.getBoolVar(conf, ConfVars.HIVE_IN_TEZ_TEST))) {
@@ -1442,25 +1543,39 @@ private ConnectionLockIdPair enqueueLockWithRetry(LockRequest rqst) throws NoSuc
               lockChar = LOCK_SEMI_SHARED;
               break;
           }
-          long now = getDbTime(dbConn);
-            rows.add(extLockId + ", " + intLockId + "," + txnid + ", " +
-            quoteString(dbName) + ", " +
-            valueOrNullLiteral(tblName) + ", " +
-            valueOrNullLiteral(partName) + ", " +
-            quoteChar(LOCK_WAITING) + ", " + quoteChar(lockChar) + ", " +
-            //for locks associated with a txn, we always heartbeat txn and timeout based on that
-            (isValidTxn(txnid) ? 0 : now) + ", " +
-            valueOrNullLiteral(rqst.getUser()) + ", " +
-            valueOrNullLiteral(rqst.getHostname()) + ", " +
-            valueOrNullLiteral(rqst.getAgentInfo()));// + ")";
+          pStmt.setLong(1, extLockId);
+          pStmt.setLong(2, intLockId);
+          pStmt.setLong(3, txnid);
+          pStmt.setString(4, dbName);
+          setStringOrNull(pStmt, 5, tblName);
+          setStringOrNull(pStmt, 6, partName);
+          pStmt.setString(7, String.valueOf(LOCK_WAITING));
+          pStmt.setString(8, String.valueOf(lockChar));
+          //for locks associated with a txn, we always heartbeat txn and timeout based on that
+          pStmt.setLong(9, isValidTxn(txnid) ? 0 : now);
+          setStringOrNull(pStmt, 10, rqst.getUser());
+          setStringOrNull(pStmt, 11, rqst.getHostname());
+          setStringOrNull(pStmt, 12, rqst.getAgentInfo());
+          addToBatch(pStmt, (int) intLockId, batchSize);
+          if (inMemoryLock != null) {
+            ShowLocksResponseElement e = new ShowLocksResponseElement(extLockId, dbName,
+                LockState.WAITING, lockType, isValidTxn(txnid) ? 0 : System.currentTimeMillis(),
+                rqst.getUser(), rqst.getHostname());
+            e.setTablename(tblName);
+            e.setPartname(partName);
+            e.setTxnid(txnid);
+            e.setLockIdInternal(intLockId);
+            e.setAgentInfo(rqst.getAgentInfo());
+            inMemoryLock.add(e);
+          }
         }
-        List<String> queries = sqlGenerator.createInsertValuesStmt(
-          "HIVE_LOCKS (hl_lock_ext_id, hl_lock_int_id, hl_txnid, hl_db, " +
-            "hl_table, hl_partition,hl_lock_state, hl_lock_type, " +
-            "hl_last_heartbeat, hl_user, hl_host, hl_agent_info)", rows);
-        for(String query : queries) {
-          LOG.debug("Going to execute update <" + query + ">");
-          int modCount = stmt.executeUpdate(query);
+        pStmt.executeBatch();
+        if (inMemoryLock != null) {
+          /* Added while NEXT_LOCK_ID is still locked, so that the in-memory locks are checked in
+          the same order as the ext lock ids; see the note on fairness above.  No other lock
+          can conflict with it before the commit, since all the earlier ones ignore it.*/
+          lockTable.add(inMemoryLock);
+          inMemoryLockAdded = true;
         }
         dbConn.commit();
         success = true;
@@ -1473,7 +1588,11 @@ private ConnectionLockIdPair enqueueLockWithRetry(LockRequest rqst) throws NoSuc
           StringUtils.stringifyException(e));
       } finally {
         close(lockHandle);
+        closeStmt(pStmt);
         close(rs, stmt, null);
+        if (inMemoryLockAdded && !success) {
+          lockTable.remove(extLockId, false);
+        }
         if (!success) {
           /* This needs to return a "live" connection to be used by operation that follows it.
           Thus it only closes Connection on failure/retry. */
@@ -1582,6 +1701,10 @@ public LockResponse checkLock(CheckLockRequest rqst)
   @RetrySemantics.Idempotent
   public void unlock(UnlockRequest rqst)
     throws NoSuchLockException, TxnOpenException, MetaException {
+    if (lockTable != null) {
+      unlockInMemory(rqst.getLockid());
+      return;
+    }
     try {
       Connection dbConn = null;
       Statement stmt = null;
@@ -1651,6 +1774,29 @@ public void unlock(UnlockRequest rqst)
     }
   }
 
+  /**
+   * The same as {@link #unlock(UnlockRequest)}, against the in-memory locks; the rows are deleted
+   * from HIVE_LOCKS with the next flush.
+   */
+  private void unlockInMemory(long extLockId) throws TxnOpenException {
+    List<ShowLocksResponseElement> lock = lockTable.get(extLockId);
+    //if a lock is associated with a txn we can only "unlock" if it's in WAITING state
+    // which really means that the caller wants to give up waiting for the lock
+    if (lock == null || !lockTable.remove(extLockId, lock.get(0).getTxnid() != 0)) {
+      lock = lockTable.get(extLockId);
+      if (lock == null) {
+        LOG.info("No lock in " + LOCK_WAITING + " mode found for unlock(" +
+          JavaUtils.lockIdToString(extLockId) + ")");
+        //bail here to make the operation idempotent
+        return;
+      }
+      String msg = "Unlocking locks associated with transaction not permitted.  " +
+        new LockInfo(lock.get(0));
+      LOG.error(msg);
+      throw new TxnOpenException(msg);
+    }
+  }
+
   /**
    * used to sort entries in {@link org.apache.hadoop.hive.metastore.api.ShowLocksResponse}
    */
@@ -1663,19 +1809,23 @@ private static class LockInfoExt extends LockInfo {
   }
   @RetrySemantics.ReadOnly
   public ShowLocksResponse showLocks(ShowLocksRequest rqst) throws MetaException {
+    if (lockTable != null) {
+      List<LockInfoExt> sortedList = new ArrayList<>();
+      for (ShowLocksResponseElement e :
+          lockTable.getLocks(rqst.getDbname(), rqst.getTablename(), rqst.getPartname())) {
+        sortedList.add(new LockInfoExt(e));
+      }
+      return toShowLocksResponse(sortedList);
+    }
     try {
       Connection dbConn = null;
-      ShowLocksResponse rsp = new ShowLocksResponse();
-      List<ShowLocksResponseElement> elems = new ArrayList<>();
       List<LockInfoExt> sortedList = new ArrayList<>();
       Statement stmt = null;
       try {
         dbConn = getDbConn(Connection.TRANSACTION_READ_COMMITTED);
         stmt = dbConn.createStatement();
 
-        String s = "select hl_lock_ext_id, hl_txnid, hl_db, hl_table, hl_partition, hl_lock_state, " +
-          "hl_lock_type, hl_last_heartbeat, hl_acquired_at, hl_user, hl_host, hl_lock_int_id," +
-          "hl_blockedby_ext_id, hl_blockedby_int_id, hl_agent_info from HIVE_LOCKS";
+        String s = SHOW_LOCKS_QUERY;
 
         // Some filters may have been specified in the SHOW LOCKS statement. Add them to the query.
         String dbName = rqst.getDbname();
@@ -1707,41 +1857,7 @@ public ShowLocksResponse showLocks(ShowLocksRequest rqst) throws MetaException {
         LOG.debug("Doing to execute query <" + s + ">");
         ResultSet rs = stmt.executeQuery(s);
         while (rs.next()) {
-          ShowLocksResponseElement e = new ShowLocksResponseElement();
-          e.setLockid(rs.getLong(1));
-          long txnid = rs.getLong(2);
-          if (!rs.wasNull()) e.setTxnid(txnid);
-          e.setDbname(rs.getString(3));
-          e.setTablename(rs.getString(4));
-          String partition = rs.getString(5);
-          if (partition != null) e.setPartname(partition);
-          switch (rs.getString(6).charAt(0)) {
-            case LOCK_ACQUIRED: e.setState(LockState.ACQUIRED); break;
-            case LOCK_WAITING: e.setState(LockState.WAITING); break;
-            default: throw new MetaException("Unknown lock state " + rs.getString(6).charAt(0));
-          }
-          switch (rs.getString(7).charAt(0)) {
-            case LOCK_SEMI_SHARED: e.setType(LockType.SHARED_WRITE); break;
-            case LOCK_EXCLUSIVE: e.setType(LockType.EXCLUSIVE); break;
-            case LOCK_SHARED: e.setType(LockType.SHARED_READ); break;
-            default: throw new MetaException("Unknown lock type " + rs.getString(6).charAt(0));
-          }
-          e.setLastheartbeat(rs.getLong(8));
-          long acquiredAt = rs.getLong(9);
-          if (!rs.wasNull()) e.setAcquiredat(acquiredAt);
-          e.setUser(rs.getString(10));
-          e.setHostname(rs.getString(11));
-          e.setLockIdInternal(rs.getLong(12));
-          long id = rs.getLong(13);
-          if(!rs.wasNull()) {
-            e.setBlockedByExtId(id);
-          }
-          id = rs.getLong(14);
-          if(!rs.wasNull()) {
-            e.setBlockedByIntId(id);
-          }
-          e.setAgentInfo(rs.getString(15));
-          sortedList.add(new LockInfoExt(e));
+          sortedList.add(new LockInfoExt(readShowLocksElement(rs)));
         }
         LOG.debug("Going to rollback");
         dbConn.rollback();
@@ -1753,19 +1869,70 @@ public ShowLocksResponse showLocks(ShowLocksRequest rqst) throws MetaException {
         closeStmt(stmt);
         closeDbConn(dbConn);
       }
-      //this ensures that "SHOW LOCKS" prints the locks in the same order as they are examined
-      //by checkLock() - makes diagnostics easier.
-      Collections.sort(sortedList, new LockInfoComparator());
-      for(LockInfoExt lockInfoExt : sortedList) {
-        elems.add(lockInfoExt.e);
-      }
-      rsp.setLocks(elems);
-      return rsp;
+      return toShowLocksResponse(sortedList);
     } catch (RetryException e) {
       return showLocks(rqst);
     }
   }
 
+  private static ShowLocksResponse toShowLocksResponse(List<LockInfoExt> sortedList) {
+    ShowLocksResponse rsp = new ShowLocksResponse();
+    List<ShowLocksResponseElement> elems = new ArrayList<>();
+    //this ensures that "SHOW LOCKS" prints the locks in the same order as they are examined
+    //by checkLock() - makes diagnostics easier.
+    Collections.sort(sortedList, new LockInfoComparator());
+    for(LockInfoExt lockInfoExt : sortedList) {
+      elems.add(lockInfoExt.e);
+    }
+    rsp.setLocks(elems);
+    return rsp;
+  }
+
+  private static final String SHOW_LOCKS_QUERY = "select hl_lock_ext_id, hl_txnid, hl_db, " +
+    "hl_table, hl_partition, hl_lock_state, hl_lock_type, hl_last_heartbeat, hl_acquired_at, " +
+    "hl_user, hl_host, hl_lock_int_id, hl_blockedby_ext_id, hl_blockedby_int_id, hl_agent_info " +
+    "from HIVE_LOCKS";
+
+  // Assumes the result set is set to a valid row of SHOW_LOCKS_QUERY
+  private static ShowLocksResponseElement readShowLocksElement(ResultSet rs)
+    throws SQLException, MetaException {
+    ShowLocksResponseElement e = new ShowLocksResponseElement();
+    e.setLockid(rs.getLong(1));
+    long txnid = rs.getLong(2);
+    if (!rs.wasNull()) e.setTxnid(txnid);
+    e.setDbname(rs.getString(3));
+    e.setTablename(rs.getString(4));
+    String partition = rs.getString(5);
+    if (partition != null) e.setPartname(partition);
+    switch (rs.getString(6).charAt(0)) {
+      case LOCK_ACQUIRED: e.setState(LockState.ACQUIRED); break;
+      case LOCK_WAITING: e.setState(LockState.WAITING); break;
+      default: throw new MetaException("Unknown lock state " + rs.getString(6).charAt(0));
+    }
+    switch (rs.getString(7).charAt(0)) {
+      case LOCK_SEMI_SHARED: e.setType(LockType.SHARED_WRITE); break;
+      case LOCK_EXCLUSIVE: e.setType(LockType.EXCLUSIVE); break;
+      case LOCK_SHARED: e.setType(LockType.SHARED_READ); break;
+      default: throw new MetaException("Unknown lock type " + rs.getString(6).charAt(0));
+    }
+    e.setLastheartbeat(rs.getLong(8));
+    long acquiredAt = rs.getLong(9);
+    if (!rs.wasNull()) e.setAcquiredat(acquiredAt);
+    e.setUser(rs.getString(10));
+    e.setHostname(rs.getString(11));
+    e.setLockIdInternal(rs.getLong(12));
+    long id = rs.getLong(13);
+    if(!rs.wasNull()) {
+      e.setBlockedByExtId(id);
+    }
+    id = rs.getLong(14);
+    if(!rs.wasNull()) {
+      e.setBlockedByIntId(id);
+    }
+    e.setAgentInfo(rs.getString(15));
+    return e;
+  }
+
   /**
    * {@code ids} should only have txnid or lockid but not both, ideally.
    * Currently DBTxnManager.heartbeat() enforces this.
@@ -2340,6 +2507,9 @@ public void cleanupRecords(HiveObjectType type, Database db, Table table,
    */
   @VisibleForTesting
   public int numLocksInLockTable() throws SQLException, MetaException {
+    if (lockTable != null) {
+      return lockTable.size();
+    }
     Connection dbConn = null;
     Statement stmt = null;
     ResultSet rs = null;
@@ -2667,6 +2837,73 @@ private boolean isPartitionLock() {
     }
   }
 
+  /**
+   * The locks that a lock may conflict with, indexed by the object they lock.  If table is null on
+   * either of 2 locks in the same db, then one of them locks the whole database and they overlap;
+   * otherwise they overlap if they are on the same table, and either of them locks the whole
+   * table (partition is null) or they are on the same partition.
+   */
+  private static final class LockIndex {
+    // The positions of the locks, in ascending order, by [db], [db, table] and
+    // [db, table, partition]; [db, null] are the db locks, and [db, table, null] the table locks.
+    private final Map<List<String>, List<Integer>> positions = new HashMap<>();
+
+    LockIndex(LockInfo[] locks) {
+      for (int i = 0; i < locks.length; i++) {
+        add(Collections.singletonList(locks[i].db), i);
+        add(Arrays.asList(locks[i].db, locks[i].table), i);
+        if (locks[i].table != null) {
+          add(Arrays.asList(locks[i].db, locks[i].table, locks[i].partition), i);
+        }
+      }
+    }
+
+    private void add(List<String> key, int position) {
+      List<Integer> keyPositions = positions.get(key);
+      if (keyPositions == null) {
+        keyPositions = new ArrayList<>();
+        positions.put(key, keyPositions);
+      }
+      keyPositions.add(position);
+    }
+
+    /**
+     * @return The positions of the locks that overlap with the given one, in ascending order.
+     */
+    int[] getOverlapping(LockInfo info) {
+      List<List<String>> keys;
+      if (info.table == null) {
+        keys = Collections.singletonList(Collections.singletonList(info.db));
+      } else if (info.partition == null) {
+        keys = Arrays.asList(Arrays.asList(info.db, null), Arrays.asList(info.db, info.table));
+      } else {
+        keys = Arrays.asList(Arrays.asList(info.db, null),
+            Arrays.asList(info.db, info.table, null),
+            Arrays.asList(info.db, info.table, info.partition));
+      }
+      int count = 0;
+      for (List<String> key : keys) {
+        List<Integer> keyPositions = positions.get(key);
+        count += keyPositions == null ? 0 : keyPositions.size();
+      }
+      int[] result = new int[count];
+      count = 0;
+      for (List<String> key : keys) {
+        List<Integer> keyPositions = positions.get(key);
+        if (keyPositions != null) {
+          for (int position : keyPositions) {
+            result[count++] = position;
+          }
+        }
+      }
+      // The keys are disjoint; only their order needs to be restored.
+      if (keys.size() > 1) {
+        Arrays.sort(result);
+      }
+      return result;
+    }
+  }
+
   private static class LockInfoComparator implements Comparator<LockInfo> {
     private static final LockTypeComparator lockTypeComparator = new LockTypeComparator();
     public boolean equals(Object other) {
@@ -2860,6 +3097,15 @@ private int abortTxns(Connection dbConn, List<Long> txnids, long max_heartbeat,
   private static boolean isValidTxn(long txnId) {
     return txnId != 0;
   }
+  /**
+   * Drops the locks of the txns that have just been committed or aborted from the in-memory lock
+   * table; their rows are already deleted from HIVE_LOCKS.
+   */
+  private static void removeInMemoryLocks(List<Long> txnids) {
+    if (lockTable != null) {
+      lockTable.removeTxns(txnids);
+    }
+  }
   /**
    * Lock acquisition is meant to be fair, so every lock can only block on some lock with smaller
    * hl_lock_ext_id by only checking earlier locks.
@@ -2892,16 +3138,9 @@ private LockResponse checkLock(Connection dbConn, long extLockId)
      */
     boolean isPartOfDynamicPartitionInsert = true;
     try {
-      /**
-       * checkLock() must be mutex'd against any other checkLock to make sure 2 conflicting locks
-       * are not granted by parallel checkLock() calls.
-       */
-      handle = getMutexAPI().acquireLock(MUTEX_KEY.CheckLock.name());
       List<LockInfo> locksBeingChecked = getLockInfoFromLockId(dbConn, extLockId);//being acquired now
       response.setLockid(extLockId);
 
-      LOG.debug("checkLock(): Setting savepoint. extLockId=" + JavaUtils.lockIdToString(extLockId));
-      Savepoint save = dbConn.setSavepoint();
       StringBuilder query = new StringBuilder("select hl_lock_ext_id, " +
         "hl_lock_int_id, hl_db, hl_table, hl_partition, hl_lock_state, " +
         "hl_lock_type, hl_txnid from HIVE_LOCKS where hl_db in (");
@@ -2965,11 +3204,24 @@ private LockResponse checkLock(Connection dbConn, long extLockId)
             throw new IllegalStateException(msg + " FAILED!");
           }
           dbConn.commit();
+          removeInMemoryLocks(Collections.singletonList(writeSet.get(0).txnId));
           throw new TxnAbortedException(msg);
         }
         close(rs, stmt, null);
       }
 
+      if (lockTable != null) {
+        return checkLockInMemory(extLockId, locksBeingChecked, response);
+      }
+      LOG.debug("checkLock(): Setting savepoint. extLockId=" + JavaUtils.lockIdToString(extLockId));
+      Savepoint save = dbConn.setSavepoint();
+      /**
+       * checkLock() must be mutex'd against any other checkLock to make sure 2 conflicting locks
+       * are not granted by parallel checkLock() calls.  Only the part that reads the other locks
+       * and acquires these ones needs it; the locks being checked and the WRITE_SET are read
+       * before taking it, so that the other lockers wait as little as possible.
+       */
+      handle = getMutexAPI().acquireLock(MUTEX_KEY.CheckLock.name());
       boolean first = true;
       for (String s : strings) {
         if (first) first = false;
@@ -3048,6 +3300,9 @@ private LockResponse checkLock(Connection dbConn, long extLockId)
         }
       }
 
+      // Index the locks by what they lock, so that each lock being checked is only compared with
+      // the locks on the same objects rather than with every lock in the db.
+      LockIndex lockIndex = new LockIndex(locks);
       for (LockInfo info : locksBeingChecked) {
         // If we've found it and it's already been marked acquired,
         // then just look at the other locks.
@@ -3058,31 +3313,9 @@ private LockResponse checkLock(Connection dbConn, long extLockId)
 
         // Look at everything in front of this lock to see if it should block
         // it or not.
-        for (int i = locks.length - 1; i >= 0; i--) {
-          // Check if we're operating on the same database, if not, move on
-          if (!info.db.equals(locks[i].db)) {
-            continue;
-          }
-
-          // If table is null on either of these, then they are claiming to
-          // lock the whole database and we need to check it.  Otherwise,
-          // check if they are operating on the same table, if not, move on.
-          if (info.table != null && locks[i].table != null
-            && !info.table.equals(locks[i].table)) {
-            continue;
-          }
-          // if here, we may be checking a DB level lock against a Table level lock.  Alternatively,
-          // we could have used Intention locks (for example a request for S lock on table would
-          // cause an IS lock DB that contains the table).  Similarly, at partition level.
-
-          // If partition is null on either of these, then they are claiming to
-          // lock the whole table and we need to check it.  Otherwise,
-          // check if they are operating on the same partition, if not, move on.
-          if (info.partition != null && locks[i].partition != null
-            && !info.partition.equals(locks[i].partition)) {
-            continue;
-          }
-
+        int[] overlapping = lockIndex.getOverlapping(info);
+        for (int j = overlapping.length - 1; j >= 0; j--) {
+          int i = overlapping[j];
           // We've found something that matches what we're trying to lock,
           // so figure out if we can lock it too.
           LockAction lockAction = jumpTable.get(info.type).get(locks[i].type).get(locks[i].state);
@@ -3135,6 +3368,57 @@ private LockResponse checkLock(Connection dbConn, long extLockId)
     }
     return response;
   }
+  /**
+   * The same as the rest of {@link #checkLock(Connection, long)}, against the in-memory locks.
+   * The stripes of the databases of the locks being checked stand in for the CheckLock mutex.
+   */
+  private LockResponse checkLockInMemory(long extLockId, List<LockInfo> locksBeingChecked,
+      LockResponse response) throws NoSuchLockException {
+    Set<String> dbs = new HashSet<>();
+    for (LockInfo info : locksBeingChecked) {
+      dbs.add(info.db);
+    }
+    try (InMemoryLockTable.Section section = lockTable.lockDbs(dbs)) {
+      LockInfoComparator comparator = new LockInfoComparator();
+      for (LockInfo info : locksBeingChecked) {
+        if (info.state == LockState.ACQUIRED) {
+          continue;
+        }
+        List<LockInfo> locks = new ArrayList<>();
+        for (ShowLocksResponseElement e :
+            lockTable.getOverlapping(info.db, info.table, info.partition, extLockId)) {
+          locks.add(new LockInfo(e));
+        }
+        Collections.sort(locks, comparator);
+        for (int i = locks.size() - 1; i >= 0; i--) {
+          LockInfo lock = locks.get(i);
+          LockAction lockAction = jumpTable.get(info.type).get(lock.type).get(lock.state);
+          LOG.debug("desired Lock: " + info + " checked Lock: " + lock + " action: " + lockAction);
+          switch (lockAction) {
+            case WAIT:
+              if(!ignoreConflict(info, lock)) {
+                lockTable.setBlockedBy(info.extLockId, info.intLockId, lock.extLockId, lock.intLockId);
+                response.setState(LockState.WAITING);
+                LOG.debug("Lock(" + info + ") waiting for Lock(" + lock + ")");
+                return response;
+              }
+              //fall through to ACQUIRE
+            case ACQUIRE:
+              break;
+            case KEEP_LOOKING:
+              continue;
+          }
+          break;
+        }
+      }
+      if (!lockTable.acquire(extLockId, System.currentTimeMillis())) {
+        throw new NoSuchLockException("No such lock(s): (" + JavaUtils.lockIdToString(extLockId) +
+          ") " + JavaUtils.txnIdToString(locksBeingChecked.get(0).txnId));
+      }
+    }
+    response.setState(LockState.ACQUIRED);
+    return response;
+  }
   private void acquire(Connection dbConn, Statement stmt, List<LockInfo> locksBeingChecked)
     throws SQLException, NoSuchLockException, MetaException {
     if(locksBeingChecked == null || locksBeingChecked.isEmpty()) {
@@ -3227,6 +3511,12 @@ private void heartbeatLock(Connection dbConn, long extLockId)
     throws NoSuchLockException, SQLException, MetaException {
     // If the lock id is 0, then there are no locks in this heartbeat
     if (extLockId == 0) return;
+    if (lockTable != null) {
+      if (!lockTable.heartbeat(extLockId, System.currentTimeMillis())) {
+        throw new NoSuchLockException("No such lock: " + JavaUtils.lockIdToString(extLockId));
+      }
+      return;
+    }
     Statement stmt = null;
     try {
       stmt = dbConn.createStatement();
@@ -3472,6 +3762,10 @@ private static void ensureValidTxn(Connection dbConn, long txnid, Statement stmt
 
   private LockInfo getTxnIdFromLockId(Connection dbConn, long extLockId)
     throws NoSuchLockException, MetaException, SQLException {
+    if (lockTable != null) {
+      List<ShowLocksResponseElement> lock = lockTable.get(extLockId);
+      return lock == null ? null : new LockInfo(lock.get(0));
+    }
     Statement stmt = null;
     ResultSet rs = null;
     try {
@@ -3496,6 +3790,18 @@ private LockInfo getTxnIdFromLockId(Connection dbConn, long extLockId)
   // NEVER call this function without first calling heartbeat(long, long)
   private List<LockInfo> getLockInfoFromLockId(Connection dbConn, long extLockId)
     throws NoSuchLockException, MetaException, SQLException {
+    if (lockTable != null) {
+      List<ShowLocksResponseElement> lock = lockTable.get(extLockId);
+      if (lock == null) {
+        throw new MetaException("This should never happen!  We already " +
+          "checked the lock(" + JavaUtils.lockIdToString(extLockId) + ") existed but now we can't find it!");
+      }
+      List<LockInfo> ourLockInfo = new ArrayList<>(lock.size());
+      for (ShowLocksResponseElement e : lock) {
+        ourLockInfo.add(new LockInfo(e));
+      }
+      return ourLockInfo;
+    }
     Statement stmt = null;
     try {
       stmt = dbConn.createStatement();
@@ -3529,6 +3835,10 @@ private void timeOutLocks(Connection dbConn, long now) {
     ResultSet rs = null;
     try {
       stmt = dbConn.createStatement();
+      if (lockTable != null) {
+        timeOutLocksInMemory(dbConn, stmt);
+        return;
+      }
       long maxHeartbeatTime = now - timeout;
       //doing a SELECT first is less efficient but makes it easier to debug things
       String s = "select distinct hl_lock_ext_id from HIVE_LOCKS where hl_last_heartbeat < " +
@@ -3583,6 +3893,32 @@ private void timeOutLocks(Connection dbConn, long now) {
     }
   }
 
+  /**
+   * The same as {@link #timeOutLocks(Connection, long)}, against the in-memory locks, whose
+   * heartbeats are on the metastore clock.
+   */
+  private void timeOutLocksInMemory(Connection dbConn, Statement stmt) throws SQLException {
+    long maxHeartbeatTime = System.currentTimeMillis() - timeout;
+    List<Long> extLockIDs = lockTable.removeTimedOut(maxHeartbeatTime);
+    if (extLockIDs.isEmpty()) {
+      return;
+    }
+    List<String> queries = new ArrayList<>();
+    StringBuilder prefix = new StringBuilder("delete from HIVE_LOCKS where hl_txnid = 0 and ");
+    TxnUtils.buildQueryWithINClause(conf, queries, prefix, new StringBuilder(), extLockIDs,
+      "hl_lock_ext_id", true, false);
+    int deletedLocks = 0;
+    for (String query : queries) {
+      LOG.debug("Removing expired locks via: " + query);
+      deletedLocks += stmt.executeUpdate(query);
+    }
+    Collections.sort(extLockIDs);//easier to read logs
+    LOG.info("Deleted " + deletedLocks + " int locks from HIVE_LOCKS due to timeout (" +
+      "HL_LOCK_EXT_ID list:  " + extLockIDs + ") maxHeartbeatTime=" + maxHeartbeatTime);
+    LOG.debug("Going to commit");
+    dbConn.commit();
+  }
+
   /**
    * Isolation Level Notes
    * Plain: RC is OK
@@ -3636,6 +3972,7 @@ public void performTimeOuts() {
         for(List<Long> batchToAbort : timedOutTxns) {
           if(abortTxns(dbConn, batchToAbort, now - timeout, true) == batchToAbort.size()) {
             dbConn.commit();
+            removeInMemoryLocks(batchToAbort);
             numTxnsAborted += batchToAbort.size();
             //todo: add TXNS.COMMENT filed and set it to 'aborted by system due to timeout'
             Collections.sort(batchToAbort);//easier to read logs
@@ -3906,12 +4243,26 @@ private boolean isDuplicateKeyError(SQLException ex) {
   private static String getMessage(SQLException ex) {
     return ex.getMessage() + " (SQLState=" + ex.getSQLState() + ", ErrorCode=" + ex.getErrorCode() + ")";
   }
+  private static void setStringOrNull(PreparedStatement pStmt, int index, String value)
+      throws SQLException {
+    if (value == null) {
+      pStmt.setNull(index, Types.VARCHAR);
+    } else {
+      pStmt.setString(index, value);
+    }
+  }
   /**
-   * Useful for building SQL strings
-   * @param value may be {@code null}
+   * Adds the current parameters to the batch, and executes it once it has as many rows as
+   * a generated multi-row insert would; the statement is parsed once, whatever the row count.
+   * @param rows the number of rows added so far, including this one
+   * @param batchSize the number of rows to execute at once
    */
-  private static String valueOrNullLiteral(String value) {
-    return value == null ? "null" : quoteString(value);
+  private static void addToBatch(PreparedStatement pStmt, int rows, int batchSize)
+      throws SQLException {
+    pStmt.addBatch();
+    if (rows % batchSize == 0) {
+      pStmt.executeBatch();
+    }
   }
   static String quoteString(String input) {
     return "'" + input + "'";
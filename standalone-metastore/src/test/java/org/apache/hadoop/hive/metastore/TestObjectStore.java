@@ -485,6 +485,95 @@ public void testNotificationOps() throws InterruptedException {
     Assert.assertEquals(0, eventResponse.getEventsSize());
   }
 
+  /**
+   * Test the notification event IDs taken in blocks
+   */
+  @Test
+  public void testNotificationIdBlock() {
+    Configuration conf = MetastoreConf.newMetastoreConf();
+    MetaStoreTestUtils.setConfForStandloneMode(conf);
+    MetastoreConf.setLongVar(conf, MetastoreConf.ConfVars.NOTIFICATION_SEQUENCE_BLOCK_SIZE, 10);
+    MetastoreConf.setBoolVar(conf, MetastoreConf.ConfVars.NOTIFICATION_SEQUENCE_SINGLE_METASTORE,
+        true);
+    ObjectStore.getNotificationIdBlock().reset();
+    ObjectStore store = new ObjectStore();
+    store.setConf(conf);
+    ObjectStore otherStore = new ObjectStore();
+    otherStore.setConf(conf);
+    String eventType = EventMessage.EventType.CREATE_DATABASE.toString();
+
+    long lastEventId = store.getCurrentNotificationEventId().getEventId();
+    NotificationEvent first = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(first);
+    NotificationEvent second = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(second);
+    Assert.assertEquals(lastEventId + 1, first.getEventId());
+    Assert.assertEquals(lastEventId + 2, second.getEventId());
+
+    // The events committed after an uncommitted one aren't returned until it commits.
+    otherStore.openTransaction();
+    NotificationEvent uncommitted = new NotificationEvent(0, 0, eventType, "");
+    otherStore.addNotificationEvent(uncommitted);
+    NotificationEvent committed = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(committed);
+    Assert.assertTrue(uncommitted.getEventId() < committed.getEventId());
+    Assert.assertEquals(uncommitted.getEventId() - 1,
+        store.getCurrentNotificationEventId().getEventId());
+
+    Assert.assertTrue(otherStore.commitTransaction());
+    Assert.assertTrue(store.getCurrentNotificationEventId().getEventId()
+        >= committed.getEventId());
+    NotificationEventResponse eventResponse =
+        store.getNextNotification(new NotificationEventRequest(second.getEventId()));
+    Assert.assertEquals(2, eventResponse.getEventsSize());
+    Assert.assertEquals(uncommitted.getEventId(), eventResponse.getEvents().get(0).getEventId());
+    Assert.assertEquals(committed.getEventId(), eventResponse.getEvents().get(1).getEventId());
+
+    // Once all the events are committed, the events added later are still held back until they
+    // commit, as they get the IDs above the ones committed so far.
+    Assert.assertEquals(committed.getEventId(), store.getCurrentNotificationEventId().getEventId());
+    otherStore.openTransaction();
+    NotificationEvent next = new NotificationEvent(0, 0, eventType, "");
+    otherStore.addNotificationEvent(next);
+    NotificationEvent last = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(last);
+    Assert.assertEquals(committed.getEventId() + 1, next.getEventId());
+    Assert.assertEquals(committed.getEventId() + 2, last.getEventId());
+    Assert.assertEquals(committed.getEventId(), store.getCurrentNotificationEventId().getEventId());
+    eventResponse = store.getNextNotification(new NotificationEventRequest(second.getEventId()));
+    Assert.assertEquals(2, eventResponse.getEventsSize());
+    Assert.assertTrue(otherStore.commitTransaction());
+    eventResponse = store.getNextNotification(new NotificationEventRequest(committed.getEventId()));
+    Assert.assertEquals(2, eventResponse.getEventsSize());
+    Assert.assertEquals(next.getEventId(), eventResponse.getEvents().get(0).getEventId());
+    Assert.assertEquals(last.getEventId(), eventResponse.getEvents().get(1).getEventId());
+    otherStore.shutdown();
+  }
+
+  /**
+   * Test that the notification event IDs aren't taken in blocks unless this is the only metastore
+   */
+  @Test
+  public void testNotificationIdBlockNeedsSingleMetastore() {
+    Configuration conf = MetastoreConf.newMetastoreConf();
+    MetaStoreTestUtils.setConfForStandloneMode(conf);
+    MetastoreConf.setLongVar(conf, MetastoreConf.ConfVars.NOTIFICATION_SEQUENCE_BLOCK_SIZE, 10);
+    ObjectStore.getNotificationIdBlock().reset();
+    ObjectStore store = new ObjectStore();
+    store.setConf(conf);
+    String eventType = EventMessage.EventType.CREATE_DATABASE.toString();
+
+    long lastEventId = store.getCurrentNotificationEventId().getEventId();
+    NotificationEvent first = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(first);
+    NotificationEvent second = new NotificationEvent(0, 0, eventType, "");
+    store.addNotificationEvent(second);
+    Assert.assertEquals(lastEventId + 1, first.getEventId());
+    Assert.assertEquals(lastEventId + 2, second.getEventId());
+    Assert.assertEquals(Long.MAX_VALUE, ObjectStore.getNotificationIdBlock().getLowestUncommitted());
+    Assert.assertEquals(lastEventId + 2, store.getCurrentNotificationEventId().getEventId());
+  }
+
   @Ignore(
       "This test is here to allow testing with other databases like mysql / postgres etc\n"
           + " with  user changes to the code. This cannot be run on apache derby because of\n"
@@ -19,6 +19,7 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +28,7 @@
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.common.StatsSetupConst;
 import org.apache.hadoop.hive.common.ndv.hll.HyperLogLog;
 import org.apache.hadoop.hive.metastore.MetaStoreTestUtils;
 import org.apache.hadoop.hive.metastore.ObjectStore;
@@ -41,6 +43,7 @@
 import org.apache.hadoop.hive.metastore.api.Database;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.NoSuchObjectException;
+import org.apache.hadoop.hive.metastore.api.NotificationEvent;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.hadoop.hive.metastore.api.PrincipalType;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
@@ -49,6 +52,8 @@
 import org.apache.hadoop.hive.metastore.columnstats.cache.LongColumnStatsDataInspector;
 import org.apache.hadoop.hive.metastore.columnstats.cache.StringColumnStatsDataInspector;
 import org.apache.hadoop.hive.metastore.conf.MetastoreConf;
+import org.apache.hadoop.hive.metastore.messaging.MessageFactory;
+import org.apache.hadoop.hive.metastore.messaging.PartitionFiles;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -351,6 +356,255 @@ public void testPartitionOps() throws Exception {
     sharedCache.getSdCache().clear();
   }
 
+  @Test
+  public void testIncrementalUpdate() throws Exception {
+    MetastoreConf.setBoolVar(cachedStore.getConf(),
+        MetastoreConf.ConfVars.CACHED_RAW_STORE_INCREMENTAL_UPDATE, true);
+    MessageFactory msgFactory = MessageFactory.getInstance();
+    // Add a db, a partitioned table and its partitions via ObjectStore
+    String dbName = "testIncrementalUpdate";
+    Database db = createTestDb(dbName, "user1");
+    objectStore.createDatabase(db);
+    List<FieldSchema> cols = Arrays.asList(new FieldSchema("col1", "int", "integer column"));
+    List<FieldSchema> ptnCols =
+        Arrays.asList(new FieldSchema("part1", "string", "string partition column"));
+    String tblName = "tbl";
+    Table tbl = createTestTbl(dbName, tblName, "user1", cols, ptnCols);
+    objectStore.createTable(tbl);
+    tbl = objectStore.getTable(dbName, tblName);
+    Map<String, String> partParams = new HashMap<String, String>();
+    for (String ptnColVal : Arrays.asList("aaa", "bbb")) {
+      objectStore.addPartition(
+          new Partition(Arrays.asList(ptnColVal), dbName, tblName, 0, 0, tbl.getSd(), partParams));
+    }
+
+    // Prewarm CachedStore; the first update reloads the cache, and finds the last event
+    CachedStore.setCachePrewarmedState(false);
+    CachedStore.prewarm(objectStore);
+    updateCache(cachedStore);
+
+    // Add a table and a partition, drop a partition, and rename the partitioned table via
+    // ObjectStore, logging the events for them
+    String tblName2 = "tbl2";
+    Table tbl2 = createTestTbl(dbName, tblName2, "user1", cols, new ArrayList<FieldSchema>());
+    objectStore.createTable(tbl2);
+    addNotificationEvent(MessageFactory.CREATE_TABLE_EVENT, dbName, tblName2,
+        msgFactory.buildCreateTableMessage(tbl2, Collections.<String>emptyIterator()).toString());
+    Partition ptn3 =
+        new Partition(Arrays.asList("ccc"), dbName, tblName, 0, 0, tbl.getSd(), partParams);
+    objectStore.addPartition(ptn3);
+    addNotificationEvent(MessageFactory.ADD_PARTITION_EVENT, dbName, tblName,
+        msgFactory.buildAddPartitionMessage(tbl, Collections.singletonList(ptn3).iterator(),
+            Collections.<PartitionFiles>emptyIterator()).toString());
+    Partition ptn1 = objectStore.getPartition(dbName, tblName, Arrays.asList("aaa"));
+    objectStore.dropPartition(dbName, tblName, Arrays.asList("aaa"));
+    addNotificationEvent(MessageFactory.DROP_PARTITION_EVENT, dbName, tblName,
+        msgFactory.buildDropPartitionMessage(tbl, Collections.singletonList(ptn1).iterator())
+            .toString());
+    String newTblName = "tbl_new";
+    Table newTbl = new Table(tbl);
+    newTbl.setTableName(newTblName);
+    objectStore.alterTable(dbName, tblName, newTbl);
+    addNotificationEvent(MessageFactory.ALTER_TABLE_EVENT, dbName, newTblName,
+        msgFactory.buildAlterTableMessage(tbl, newTbl, false).toString());
+    // Alter the db via ObjectStore without logging an event
+    Database dbAlt = new Database(db);
+    dbAlt.setOwnerName("user2");
+    objectStore.alterDatabase(dbName, dbAlt);
+
+    updateCache(cachedStore);
+
+    // The changes that events were logged for are in the cache
+    List<String> tblNames = cachedStore.getAllTables(dbName);
+    Collections.sort(tblNames);
+    Assert.assertEquals(Arrays.asList(tblName2, newTblName), tblNames);
+    List<String> partNames = cachedStore.listPartitionNames(dbName, newTblName, (short) -1);
+    Collections.sort(partNames);
+    Assert.assertEquals(Arrays.asList("part1=bbb", "part1=ccc"), partNames);
+    // The rest is left to the full update
+    Assert.assertEquals("user1", cachedStore.getDatabase(dbName).getOwnerName());
+
+    // Clean up
+    objectStore.dropPartition(dbName, newTblName, Arrays.asList("bbb"));
+    objectStore.dropPartition(dbName, newTblName, Arrays.asList("ccc"));
+    objectStore.dropTable(dbName, newTblName);
+    objectStore.dropTable(dbName, tblName2);
+    objectStore.dropDatabase(dbName);
+    MetastoreConf.setBoolVar(cachedStore.getConf(),
+        MetastoreConf.ConfVars.CACHED_RAW_STORE_INCREMENTAL_UPDATE, false);
+    sharedCache.getDatabaseCache().clear();
+    sharedCache.getTableCache().clear();
+    sharedCache.getSdCache().clear();
+  }
+
+  @Test
+  public void testLazyPartitionCache() throws Exception {
+    CachedStore.setMaxPartitionCacheSize(1024 * 1024);
+    // Add a db, a partitioned table and its partitions via ObjectStore
+    String dbName = "testLazyPartitionCache";
+    Database db = createTestDb(dbName, "user1");
+    objectStore.createDatabase(db);
+    List<FieldSchema> cols = Arrays.asList(new FieldSchema("col1", "int", "integer column"));
+    List<FieldSchema> ptnCols =
+        Arrays.asList(new FieldSchema("part1", "string", "string partition column"));
+    String tblName = "tbl";
+    Table tbl = createTestTbl(dbName, tblName, "user1", cols, ptnCols);
+    objectStore.createTable(tbl);
+    tbl = objectStore.getTable(dbName, tblName);
+    for (String ptnColVal : Arrays.asList("aaa", "bbb")) {
+      objectStore.addPartition(new Partition(Arrays.asList(ptnColVal), dbName, tblName, 0, 0,
+          tbl.getSd(), new HashMap<String, String>()));
+    }
+
+    // Prewarm CachedStore; the partitions are not cached until they are looked up
+    CachedStore.setCachePrewarmedState(false);
+    CachedStore.prewarm(objectStore);
+    Partition ptn1 = cachedStore.getPartition(dbName, tblName, Arrays.asList("aaa"));
+    Assert.assertEquals(objectStore.getPartition(dbName, tblName, Arrays.asList("aaa")), ptn1);
+    List<String> partNames = cachedStore.listPartitionNames(dbName, tblName, (short) -1);
+    Collections.sort(partNames);
+    Assert.assertEquals(Arrays.asList("part1=aaa", "part1=bbb"), partNames);
+
+    // Drop both partitions behind the back of CachedStore
+    objectStore.dropPartition(dbName, tblName, Arrays.asList("aaa"));
+    objectStore.dropPartition(dbName, tblName, Arrays.asList("bbb"));
+    Assert.assertEquals(ptn1, cachedStore.getPartition(dbName, tblName, Arrays.asList("aaa")));
+    Assert.assertFalse(cachedStore.doesPartitionExist(dbName, tblName, Arrays.asList("bbb")));
+    Assert.assertTrue(cachedStore.listPartitionNames(dbName, tblName, (short) -1).isEmpty());
+
+    cachedStore.dropTable(dbName, tblName);
+    cachedStore.dropDatabase(dbName);
+    CachedStore.setMaxPartitionCacheSize(0);
+  }
+
+  @Test
+  public void testPartitionCacheBudgetSharedByStores() throws Exception {
+    // Add a db, a partitioned table and its partitions via ObjectStore
+    // SharedCache is looked up directly, with the normalized names
+    String dbName = "testpartitioncachebudgetsharedbystores";
+    Database db = createTestDb(dbName, "user1");
+    objectStore.createDatabase(db);
+    List<FieldSchema> cols = Arrays.asList(new FieldSchema("col1", "int", "integer column"));
+    List<FieldSchema> ptnCols =
+        Arrays.asList(new FieldSchema("part1", "string", "string partition column"));
+    String tblName = "tbl";
+    Table tbl = createTestTbl(dbName, tblName, "user1", cols, ptnCols);
+    objectStore.createTable(tbl);
+    tbl = objectStore.getTable(dbName, tblName);
+    for (String ptnColVal : Arrays.asList("aaa", "bbb", "ccc")) {
+      objectStore.addPartition(new Partition(Arrays.asList(ptnColVal), dbName, tblName, 0, 0,
+          tbl.getSd(), new HashMap<String, String>()));
+    }
+    // All the partitions have the same size
+    SharedCache sizingCache = new SharedCache();
+    sizingCache.setMaxPartitionCacheSize(1024 * 1024);
+    sizingCache.addTableToCache(dbName, tblName, tbl);
+    sizingCache.addPartitionToCache(dbName, tblName,
+        objectStore.getPartition(dbName, tblName, Arrays.asList("aaa")));
+    long partSize = sizingCache.getPartitionCacheSize();
+
+    CachedStore.setMaxPartitionCacheSize(partSize * 2 + partSize / 2);
+    CachedStore.setCachePrewarmedState(false);
+    CachedStore.prewarm(objectStore);
+    SharedCache cache = CachedStore.getSharedCache();
+    cachedStore.getPartition(dbName, tblName, Arrays.asList("aaa"));
+    cachedStore.getPartition(dbName, tblName, Arrays.asList("bbb"));
+    Assert.assertEquals(partSize * 2, cache.getPartitionCacheSize());
+
+    // Another CachedStore, as for another handler thread, keeps the budget and the partitions
+    // cached so far
+    Configuration conf = MetastoreConf.newMetastoreConf();
+    MetastoreConf.setBoolVar(conf, MetastoreConf.ConfVars.HIVE_IN_TEST, true);
+    MetaStoreTestUtils.setConfForStandloneMode(conf);
+    CachedStore cachedStore2 = new CachedStore();
+    cachedStore2.setConfForTest(conf);
+    Assert.assertTrue(cache.isPartitionCacheLazy());
+    Assert.assertEquals(partSize * 2, cache.getPartitionCacheSize());
+
+    // The least recently used partition is evicted to make room for the new one
+    cachedStore2.getPartition(dbName, tblName, Arrays.asList("ccc"));
+    Assert.assertEquals(partSize * 2, cache.getPartitionCacheSize());
+    Assert.assertFalse(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("aaa")));
+    Assert.assertTrue(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("bbb")));
+    Assert.assertTrue(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("ccc")));
+
+    for (String ptnColVal : Arrays.asList("aaa", "bbb", "ccc")) {
+      cachedStore.dropPartition(dbName, tblName, Arrays.asList(ptnColVal));
+    }
+    cachedStore.dropTable(dbName, tblName);
+    cachedStore.dropDatabase(dbName);
+    CachedStore.setMaxPartitionCacheSize(0);
+  }
+
+  @Test
+  public void testLazyPartitionCacheStatsUpdate() throws Exception {
+    CachedStore.setMaxPartitionCacheSize(1024 * 1024);
+    // Add a db, a partitioned table and its partitions via ObjectStore
+    // SharedCache is looked up directly, with the normalized names
+    String dbName = "testlazypartitioncachestatsupdate";
+    Database db = createTestDb(dbName, "user1");
+    objectStore.createDatabase(db);
+    List<FieldSchema> cols = Arrays.asList(new FieldSchema("col1", "int", "integer column"));
+    List<FieldSchema> ptnCols =
+        Arrays.asList(new FieldSchema("part1", "string", "string partition column"));
+    String tblName = "tbl";
+    Table tbl = createTestTbl(dbName, tblName, "user1", cols, ptnCols);
+    objectStore.createTable(tbl);
+    tbl = objectStore.getTable(dbName, tblName);
+    for (String ptnColVal : Arrays.asList("aaa", "bbb")) {
+      objectStore.addPartition(new Partition(Arrays.asList(ptnColVal), dbName, tblName, 0, 0,
+          tbl.getSd(), new HashMap<String, String>()));
+    }
+
+    CachedStore.setCachePrewarmedState(false);
+    CachedStore.prewarm(objectStore);
+    SharedCache cache = CachedStore.getSharedCache();
+    cachedStore.getPartition(dbName, tblName, Arrays.asList("aaa"));
+    long partCacheSize = cache.getPartitionCacheSize();
+
+    // Updating the stats of a partition that isn't cached doesn't cache it
+    cachedStore.updatePartitionColumnStatistics(
+        createPartitionColStats(dbName, tblName, "part1=bbb", "col1"), Arrays.asList("bbb"));
+    Assert.assertEquals(partCacheSize, cache.getPartitionCacheSize());
+    Assert.assertTrue(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("aaa")));
+    Assert.assertFalse(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("bbb")));
+    Assert.assertEquals(1, cache.listCachedPartitions(dbName, tblName, -1).size());
+    Assert.assertNull(cache.getPartitionColStatsFromCache(dbName, tblName,
+        Arrays.asList("bbb"), "col1"));
+
+    // A cached partition is updated, but its stats aren't cached
+    cachedStore.updatePartitionColumnStatistics(
+        createPartitionColStats(dbName, tblName, "part1=aaa", "col1"), Arrays.asList("aaa"));
+    Assert.assertTrue(StatsSetupConst.areColumnStatsUptoDate(
+        cache.getPartitionFromCache(dbName, tblName, Arrays.asList("aaa")).getParameters(),
+        "col1"));
+    Assert.assertFalse(cache.existPartitionFromCache(dbName, tblName, Arrays.asList("bbb")));
+    Assert.assertNull(cache.getPartitionColStatsFromCache(dbName, tblName,
+        Arrays.asList("aaa"), "col1"));
+
+    for (String ptnColVal : Arrays.asList("aaa", "bbb")) {
+      cachedStore.dropPartition(dbName, tblName, Arrays.asList(ptnColVal));
+    }
+    cachedStore.dropTable(dbName, tblName);
+    cachedStore.dropDatabase(dbName);
+    CachedStore.setMaxPartitionCacheSize(0);
+  }
+
+  private ColumnStatistics createPartitionColStats(String dbName, String tblName,
+      String partName, String colName) {
+    ColumnStatisticsDesc statsDesc = new ColumnStatisticsDesc(false, dbName, tblName);
+    statsDesc.setPartName(partName);
+    ColumnStatisticsData data = new ColumnStatisticsData();
+    LongColumnStatsDataInspector longStats = new LongColumnStatsDataInspector();
+    longStats.setLowValue(0);
+    longStats.setHighValue(100);
+    longStats.setNumNulls(50);
+    longStats.setNumDVs(30);
+    data.setLongStats(longStats);
+    return new ColumnStatistics(statsDesc,
+        Arrays.asList(new ColumnStatisticsObj(colName, "int", data)));
+  }
+
   //@Test
   public void testTableColStatsOps() throws Exception {
     // Add a db via ObjectStore
@@ -639,6 +893,60 @@ public void testSharedStorePartition() {
     Assert.assertEquals(t.getSd().getLocation(), "loc1new");
   }
 
+  @Test
+  public void testSharedStorePartitionEviction() {
+    String dbName = "db1";
+    String tblName = "tbl1";
+    List<FieldSchema> cols = Arrays.asList(new FieldSchema("col1", "int", "integer column"));
+    List<FieldSchema> ptnCols =
+        Arrays.asList(new FieldSchema("part1", "string", "string partition column"));
+    Table tbl = createTestTbl(dbName, tblName, "user1", cols, ptnCols);
+    List<Partition> parts = new ArrayList<>();
+    for (String ptnColVal : Arrays.asList("201701", "201702", "201703")) {
+      StorageDescriptor sd = new StorageDescriptor(tbl.getSd());
+      sd.setLocation(tbl.getSd().getLocation() + "/part1=" + ptnColVal);
+      parts.add(new Partition(Arrays.asList(ptnColVal), dbName, tblName, 0, 0, sd,
+          new HashMap<String, String>()));
+    }
+    // All the partitions have the same size
+    SharedCache sizingCache = new SharedCache();
+    sizingCache.setMaxPartitionCacheSize(1024 * 1024);
+    sizingCache.addTableToCache(dbName, tblName, tbl);
+    sizingCache.addPartitionToCache(dbName, tblName, parts.get(0));
+    long partSize = sizingCache.getPartitionCacheSize();
+    Assert.assertTrue(partSize > 0);
+
+    sharedCache.setMaxPartitionCacheSize(partSize * 2 + partSize / 2);
+    Assert.assertTrue(sharedCache.isPartitionCacheLazy());
+    sharedCache.addTableToCache(dbName, tblName, tbl);
+    sharedCache.addPartitionToCache(dbName, tblName, parts.get(0));
+    sharedCache.addPartitionToCache(dbName, tblName, parts.get(1));
+    // Use the first partition, so that the second one is the least recently used
+    Partition t = sharedCache.getPartitionFromCache(dbName, tblName, Arrays.asList("201701"));
+    Assert.assertEquals(parts.get(0).getSd().getLocation(), t.getSd().getLocation());
+    sharedCache.addPartitionToCache(dbName, tblName, parts.get(2));
+    Assert.assertTrue(sharedCache.existPartitionFromCache(dbName, tblName,
+        Arrays.asList("201701")));
+    Assert.assertFalse(sharedCache.existPartitionFromCache(dbName, tblName,
+        Arrays.asList("201702")));
+    Assert.assertTrue(sharedCache.existPartitionFromCache(dbName, tblName,
+        Arrays.asList("201703")));
+    Assert.assertEquals(partSize * 2, sharedCache.getPartitionCacheSize());
+
+    // The locations outside the table location are kept as they are
+    Partition part4 = new Partition(parts.get(2));
+    part4.getSd().setLocation(tbl.getSd().getLocation() + "2/part1=201704");
+    part4.setValues(Arrays.asList("201704"));
+    sharedCache.addPartitionToCache(dbName, tblName, part4);
+    t = sharedCache.getPartitionFromCache(dbName, tblName, Arrays.asList("201704"));
+    Assert.assertEquals(part4.getSd().getLocation(), t.getSd().getLocation());
+    t = sharedCache.getPartitionFromCache(dbName, tblName, Arrays.asList("201703"));
+    Assert.assertEquals(parts.get(2).getSd().getLocation(), t.getSd().getLocation());
+
+    sharedCache.removeTableFromCache(dbName, tblName);
+    Assert.assertEquals(0, sharedCache.getPartitionCacheSize());
+  }
+
   @Test
   public void testAggrStatsRepeatedRead() throws Exception {
     String dbName = "testTableColStatsOps";
@@ -1022,6 +1330,15 @@ private Table createTestTbl(String dbName, String tblName, String tblOwner,
     return tbl;
   }
 
+  private void addNotificationEvent(String eventType, String dbName, String tblName,
+      String message) {
+    NotificationEvent event =
+        new NotificationEvent(0, (int) (System.currentTimeMillis() / 1000), eventType, message);
+    event.setDbName(dbName);
+    event.setTableName(tblName);
+    objectStore.addNotificationEvent(event);
+  }
+
   // This method will return only after the cache has updated once
   private void updateCache(CachedStore cachedStore) throws InterruptedException {
     int maxTries = 100000;
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.metastore.txn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.metastore.annotation.MetastoreUnitTest;
+import org.apache.hadoop.hive.metastore.api.CheckLockRequest;
+import org.apache.hadoop.hive.metastore.api.CommitTxnRequest;
+import org.apache.hadoop.hive.metastore.api.DataOperationType;
+import org.apache.hadoop.hive.metastore.api.LockComponent;
+import org.apache.hadoop.hive.metastore.api.LockLevel;
+import org.apache.hadoop.hive.metastore.api.LockRequest;
+import org.apache.hadoop.hive.metastore.api.LockResponse;
+import org.apache.hadoop.hive.metastore.api.LockState;
+import org.apache.hadoop.hive.metastore.api.LockType;
+import org.apache.hadoop.hive.metastore.api.OpenTxnRequest;
+import org.apache.hadoop.hive.metastore.api.ShowLocksRequest;
+import org.apache.hadoop.hive.metastore.api.ShowLocksResponse;
+import org.apache.hadoop.hive.metastore.api.ShowLocksResponseElement;
+import org.apache.hadoop.hive.metastore.api.TxnOpenException;
+import org.apache.hadoop.hive.metastore.api.UnlockRequest;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf;
+import org.apache.hadoop.hive.metastore.conf.MetastoreConf.ConfVars;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the locking in {@link TxnHandler} with the in-memory lock table.
+ */
+@Category(MetastoreUnitTest.class)
+public class TestInMemoryLockTable {
+  private Configuration conf;
+  private TxnStore txnHandler;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = MetastoreConf.newMetastoreConf();
+    TxnDbUtil.setConfValues(conf);
+    MetastoreConf.setBoolVar(conf, ConfVars.TXN_LOCKS_IN_MEMORY, true);
+    // Only flush explicitly, so that the tests can tell what is in HIVE_LOCKS.
+    MetastoreConf.setTimeVar(conf, ConfVars.TXN_LOCKS_IN_MEMORY_FLUSH_INTERVAL, 1, TimeUnit.HOURS);
+    TxnDbUtil.prepDb(conf);
+    txnHandler = TxnUtils.getTxnStore(conf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    TxnHandler.resetLockTable();
+    TxnDbUtil.cleanDb(conf);
+  }
+
+  @Test
+  public void testConflictingLockWaits() throws Exception {
+    long txnid = openTxn();
+    LockComponent comp = new LockComponent(LockType.SHARED_WRITE, LockLevel.PARTITION, "mydb");
+    comp.setTablename("mytable");
+    comp.setPartitionname("mypartition=myvalue");
+    comp.setOperationType(DataOperationType.UPDATE);
+    LockRequest req = new LockRequest(Collections.singletonList(comp), "me", "localhost");
+    req.setTxnid(txnid);
+    LockResponse res = txnHandler.lock(req);
+    assertEquals(LockState.ACQUIRED, res.getState());
+    long writeLockId = res.getLockid();
+
+    comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.TABLE, "mydb");
+    comp.setTablename("mytable");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    req = new LockRequest(Collections.singletonList(comp), "me", "localhost");
+    res = txnHandler.lock(req);
+    assertEquals(LockState.WAITING, res.getState());
+    long exclusiveLockId = res.getLockid();
+
+    ShowLocksResponseElement waiting = getLock(exclusiveLockId);
+    assertEquals(LockState.WAITING, waiting.getState());
+    assertEquals(writeLockId, waiting.getBlockedByExtId());
+
+    txnHandler.commitTxn(new CommitTxnRequest(txnid));
+    res = txnHandler.checkLock(new CheckLockRequest(exclusiveLockId));
+    assertEquals(LockState.ACQUIRED, res.getState());
+    assertEquals(1, txnHandler.showLocks(new ShowLocksRequest()).getLocksSize());
+    assertEquals(1, TxnDbUtil.countQueryAgent(conf, "select count(*) from HIVE_LOCKS"));
+  }
+
+  @Test
+  public void testUnlockOpenTxnLock() throws Exception {
+    long txnid = openTxn();
+    LockComponent comp = new LockComponent(LockType.SHARED_READ, LockLevel.TABLE, "mydb");
+    comp.setTablename("mytable");
+    comp.setOperationType(DataOperationType.SELECT);
+    LockRequest req = new LockRequest(Collections.singletonList(comp), "me", "localhost");
+    req.setTxnid(txnid);
+    LockResponse res = txnHandler.lock(req);
+    assertEquals(LockState.ACQUIRED, res.getState());
+    try {
+      txnHandler.unlock(new UnlockRequest(res.getLockid()));
+      fail("Expected a TxnOpenException");
+    } catch (TxnOpenException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFlushAndRecovery() throws Exception {
+    LockComponent comp = new LockComponent(LockType.EXCLUSIVE, LockLevel.DB, "mydb");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    LockRequest req = new LockRequest(Collections.singletonList(comp), "me", "localhost");
+    LockResponse res = txnHandler.lock(req);
+    assertEquals(LockState.ACQUIRED, res.getState());
+    long lockId = res.getLockid();
+    // The lock is inserted synchronously, but acquired in memory only.
+    assertEquals(1, TxnDbUtil.countQueryAgent(conf,
+        "select count(*) from HIVE_LOCKS where hl_lock_state = 'w'"));
+
+    TxnHandler.resetLockTable();
+    assertEquals(1, TxnDbUtil.countQueryAgent(conf,
+        "select count(*) from HIVE_LOCKS where hl_lock_state = 'a'"));
+
+    txnHandler = TxnUtils.getTxnStore(conf);
+    ShowLocksResponseElement recovered = getLock(lockId);
+    assertEquals(LockState.ACQUIRED, recovered.getState());
+    assertEquals("mydb", recovered.getDbname());
+
+    txnHandler.unlock(new UnlockRequest(lockId));
+    assertEquals(0, txnHandler.showLocks(new ShowLocksRequest()).getLocksSize());
+    TxnHandler.resetLockTable();
+    assertEquals(0, TxnDbUtil.countQueryAgent(conf, "select count(*) from HIVE_LOCKS"));
+  }
+
+  @Test
+  public void testTimeOutLocks() throws Exception {
+    MetastoreConf.setTimeVar(conf, ConfVars.TXN_TIMEOUT, 1, TimeUnit.MILLISECONDS);
+    txnHandler = TxnUtils.getTxnStore(conf);
+    LockComponent comp = new LockComponent(LockType.SHARED_READ, LockLevel.TABLE, "mydb");
+    comp.setTablename("mytable");
+    comp.setOperationType(DataOperationType.NO_TXN);
+    LockRequest req = new LockRequest(Collections.singletonList(comp), "me", "localhost");
+    LockResponse res = txnHandler.lock(req);
+    assertEquals(LockState.ACQUIRED, res.getState());
+    Thread.sleep(10);
+    txnHandler.performTimeOuts();
+    assertEquals(0, txnHandler.showLocks(new ShowLocksRequest()).getLocksSize());
+    assertEquals(0, TxnDbUtil.countQueryAgent(conf, "select count(*) from HIVE_LOCKS"));
+  }
+
+  private long openTxn() throws Exception {
+    List<Long> txns = txnHandler.openTxns(new OpenTxnRequest(1, "me", "localhost")).getTxn_ids();
+    return txns.get(0);
+  }
+
+  private ShowLocksResponseElement getLock(long lockId) throws Exception {
+    ShowLocksResponse locks = txnHandler.showLocks(new ShowLocksRequest());
+    for (ShowLocksResponseElement e : locks.getLocks()) {
+      if (e.getLockid() == lockId) {
+        return e;
+      }
+    }
+    fail("Lock " + lockId + " not found");
+    return null;
+  }
+}